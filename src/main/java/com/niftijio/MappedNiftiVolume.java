@@ -0,0 +1,231 @@
+package com.niftijio;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.GZIPInputStream;
+
+/** A NIFTI volume whose voxels are left in their stored type rather than being converted to doubles.
+ * <p>
+ * Uncompressed files are memory-mapped, so only the parts of the volume which are used are read from disk and the
+ * voxels do not occupy the Java heap. Compressed files are decompressed in a single pass into one buffer of the stored
+ * size. The voxels can be accessed through a typed view of the buffer, which is in the byte order of the file, or one
+ * at a time through {@link #get}, which applies scl_slope and scl_inter as each voxel is read.
+ * <p>
+ * Voxels are ordered as in the file, with x varying fastest, then y, z and the fourth dimension. Unlike
+ * {@link NiftiVolume}, unsigned types are converted to their full unsigned range.
+ */
+public class MappedNiftiVolume
+{
+    private static final int GZIP_BUFFER_SIZE = 1 << 20;
+
+    public final NiftiHeader header;
+    private final ByteBuffer buffer;
+    private final int nx, ny, nz, dim;
+
+    private MappedNiftiVolume(NiftiHeader hdr, ByteBuffer buffer)
+    {
+        this.header = hdr;
+        this.buffer = buffer;
+        this.buffer.order(hdr.little_endian ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+
+        int nz = hdr.dim[3];
+        int dim = hdr.dim[4];
+        if (hdr.dim[0] == 2)
+            nz = 1;
+        if (dim == 0)
+            dim = 1;
+
+        this.nx = hdr.dim[1];
+        this.ny = hdr.dim[2];
+        this.nz = nz;
+        this.dim = dim;
+    }
+
+    /** Read a NIFTI volume from a file, memory-mapping the voxels if the file is not compressed.
+     *
+     * @param filename the name of the file to read
+     * @return a NIFTI volume whose voxels are backed by the file, or by a single buffer if the file is compressed
+     * @throws IOException if the file cannot be read, or if its datatype is not supported
+     */
+    public static MappedNiftiVolume read(String filename) throws IOException {
+        NiftiHeader hdr = NiftiHeader.read(filename);
+        long dataSize = getDataSize(hdr);
+
+        if (hdr.filename.endsWith(".gz"))
+        {
+            InputStream is = new BufferedInputStream(new GZIPInputStream(new FileInputStream(hdr.filename), GZIP_BUFFER_SIZE), GZIP_BUFFER_SIZE);
+            try {
+                DataInputStream di = new DataInputStream(is);
+                di.readFully(new byte[(int) hdr.vox_offset]);
+                byte[] data = new byte[(int) dataSize];
+                di.readFully(data);
+                return new MappedNiftiVolume(hdr, ByteBuffer.wrap(data));
+            } finally {
+                is.close();
+            }
+        }
+
+        // The mapping remains valid after the file has been closed
+        RandomAccessFile file = new RandomAccessFile(hdr.filename, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            if ((long) hdr.vox_offset + dataSize > channel.size())
+                throw new IOException("The file " + hdr.filename + " is shorter than its header describes");
+            return new MappedNiftiVolume(hdr, channel.map(FileChannel.MapMode.READ_ONLY, (long) hdr.vox_offset, dataSize));
+        } finally {
+            file.close();
+        }
+    }
+
+    public int sizeX() {return nx;}
+    public int sizeY() {return ny;}
+    public int sizeZ() {return nz;}
+    public int dimension() {return dim;}
+
+    /** Returns the voxel value, scaled by scl_slope and scl_inter if scl_slope is not zero.
+     */
+    public double get(int x, int y, int z, int d)
+    {
+        int idx = ((d * nz + z) * ny + y) * nx + x;
+        double v;
+
+        switch (header.datatype)
+        {
+        case NiftiHeader.NIFTI_TYPE_INT8:
+            v = buffer.get(idx);
+            break;
+        case NiftiHeader.NIFTI_TYPE_UINT8:
+            v = buffer.get(idx) & 0xff;
+            break;
+        case NiftiHeader.NIFTI_TYPE_INT16:
+            v = buffer.getShort(idx * 2);
+            break;
+        case NiftiHeader.NIFTI_TYPE_UINT16:
+            v = buffer.getShort(idx * 2) & 0xffff;
+            break;
+        case NiftiHeader.NIFTI_TYPE_INT32:
+            v = buffer.getInt(idx * 4);
+            break;
+        case NiftiHeader.NIFTI_TYPE_UINT32:
+            v = buffer.getInt(idx * 4) & 0xffffffffL;
+            break;
+        case NiftiHeader.NIFTI_TYPE_INT64:
+            v = buffer.getLong(idx * 8);
+            break;
+        case NiftiHeader.NIFTI_TYPE_UINT64:
+            long l = buffer.getLong(idx * 8);
+            v = l >= 0 ? (double) l : (double) (l >>> 1) * 2d + (l & 1);
+            break;
+        case NiftiHeader.NIFTI_TYPE_FLOAT32:
+            v = buffer.getFloat(idx * 4);
+            break;
+        case NiftiHeader.NIFTI_TYPE_FLOAT64:
+        default:
+            v = buffer.getDouble(idx * 8);
+            break;
+        }
+
+        if (header.scl_slope != 0)
+            v = v * header.scl_slope + header.scl_inter;
+        return v;
+    }
+
+    /** Returns a read-only view of the stored voxels, in the byte order of the file.
+     */
+    public ByteBuffer getByteBuffer()
+    {
+        return view();
+    }
+
+    /** Returns a read-only view of the unscaled voxels of an INT16 or UINT16 volume.
+     */
+    public ShortBuffer getShortBuffer()
+    {
+        checkDatatype(NiftiHeader.NIFTI_TYPE_INT16, NiftiHeader.NIFTI_TYPE_UINT16);
+        return view().asShortBuffer();
+    }
+
+    /** Returns a read-only view of the unscaled voxels of an INT32 or UINT32 volume.
+     */
+    public IntBuffer getIntBuffer()
+    {
+        checkDatatype(NiftiHeader.NIFTI_TYPE_INT32, NiftiHeader.NIFTI_TYPE_UINT32);
+        return view().asIntBuffer();
+    }
+
+    /** Returns a read-only view of the unscaled voxels of an INT64 or UINT64 volume.
+     */
+    public LongBuffer getLongBuffer()
+    {
+        checkDatatype(NiftiHeader.NIFTI_TYPE_INT64, NiftiHeader.NIFTI_TYPE_UINT64);
+        return view().asLongBuffer();
+    }
+
+    /** Returns a read-only view of the unscaled voxels of a FLOAT32 volume.
+     */
+    public FloatBuffer getFloatBuffer()
+    {
+        checkDatatype(NiftiHeader.NIFTI_TYPE_FLOAT32, NiftiHeader.NIFTI_TYPE_FLOAT32);
+        return view().asFloatBuffer();
+    }
+
+    /** Returns a read-only view of the unscaled voxels of a FLOAT64 volume.
+     */
+    public DoubleBuffer getDoubleBuffer()
+    {
+        checkDatatype(NiftiHeader.NIFTI_TYPE_FLOAT64, NiftiHeader.NIFTI_TYPE_FLOAT64);
+        return view().asDoubleBuffer();
+    }
+
+    private ByteBuffer view()
+    {
+        // Each view has its own position, so that views can be used independently by different threads
+        return buffer.asReadOnlyBuffer().order(buffer.order());
+    }
+
+    private void checkDatatype(short first, short second)
+    {
+        if (header.datatype != first && header.datatype != second)
+            throw new IllegalStateException("The volume has datatype " + NiftiHeader.decodeDatatype(header.datatype) + ", not " + NiftiHeader.decodeDatatype(first));
+    }
+
+    private static long getDataSize(NiftiHeader hdr) throws IOException
+    {
+        switch (hdr.datatype)
+        {
+        case NiftiHeader.NIFTI_TYPE_INT8:
+        case NiftiHeader.NIFTI_TYPE_UINT8:
+        case NiftiHeader.NIFTI_TYPE_INT16:
+        case NiftiHeader.NIFTI_TYPE_UINT16:
+        case NiftiHeader.NIFTI_TYPE_INT32:
+        case NiftiHeader.NIFTI_TYPE_UINT32:
+        case NiftiHeader.NIFTI_TYPE_INT64:
+        case NiftiHeader.NIFTI_TYPE_UINT64:
+        case NiftiHeader.NIFTI_TYPE_FLOAT32:
+        case NiftiHeader.NIFTI_TYPE_FLOAT64:
+            break;
+        default:
+            throw new IOException("Sorry, cannot yet read nifti-1 datatype " + NiftiHeader.decodeDatatype(hdr.datatype));
+        }
+
+        long voxels = (long) hdr.dim[1] * hdr.dim[2] * (hdr.dim[0] == 2 ? 1 : hdr.dim[3]) * (hdr.dim[4] == 0 ? 1 : hdr.dim[4]);
+        long size = voxels * NiftiHeader.bytesPerVoxel(hdr.datatype);
+
+        // A single buffer is indexed by int
+        if (size > Integer.MAX_VALUE)
+            throw new IOException("The volume in " + hdr.filename + " is too large to be read into a single buffer");
+        return size;
+    }
+}
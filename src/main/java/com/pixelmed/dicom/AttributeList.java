@@ -246,13 +246,17 @@ public class AttributeList extends TreeMap<AttributeTag,Attribute> {
 	}
 
 	/***/
-	protected static DicomDictionary dictionary;
+	protected static volatile DicomDictionary dictionary;
 	
 	/***/
 	protected static void createDictionaryifNecessary() {
 		if (dictionary == null) {
+			synchronized (AttributeList.class) {
+				if (dictionary == null) {
 //System.err.println("AttributeList.createDictionaryifNecessary(): creating static dictionary");
-			dictionary = new DicomDictionary();
+					dictionary = new DicomDictionary();
+				}
+			}
 		}
 	}
 
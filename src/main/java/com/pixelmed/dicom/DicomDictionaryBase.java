@@ -2,6 +2,8 @@
 
 package com.pixelmed.dicom;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.HashMap;
 import java.util.TreeSet;
 import java.util.Iterator;
@@ -15,6 +17,10 @@ import java.util.Iterator;
  * attributes and associated information, and implements methods for accessing
  * that information.</p>
  *
+ * <p>If a precompiled {@link com.pixelmed.dicom.DicomDictionaryImage image} of the dictionary is available
+ * the information is read from the image, and the create methods of the concrete sub-class are not called,
+ * so the protected maps remain null.</p>
+ *
  * @author	dclunie
  */
 public abstract class DicomDictionaryBase {
@@ -28,6 +34,8 @@ public abstract class DicomDictionaryBase {
 	protected HashMap tagByName;
 	protected HashMap fullNameByTag;
 
+	private final DicomDictionaryImage image;
+
 	/**
 	 * <p>Concrete sub-classes implement this method to create a list of all tags in the dictionary.</p>
 	 */
@@ -59,16 +67,49 @@ public abstract class DicomDictionaryBase {
 	protected abstract void createFullNameByTag();
 
 	/**
-	 * <p>Instantiate a dictionary by calling all create methods of the concrete sub-class.</p>
+	 * <p>Instantiate a dictionary from its precompiled image if there is one, otherwise by calling all create methods of the concrete sub-class.</p>
 	 */
 	public DicomDictionaryBase() {
 //System.err.println("DicomDictionaryBase: constructing");
-		createTagList();
-		createValueRepresentationsByTag();
-		createInformationEntityByTag();
-		createNameByTag();
-		createTagByName();
-		createFullNameByTag();
+		image = loadPrecompiledImage();
+		if (image == null) {
+			createTagList();
+			createValueRepresentationsByTag();
+			createInformationEntityByTag();
+			createNameByTag();
+			createTagByName();
+			createFullNameByTag();
+		}
+	}
+
+	/**
+	 * <p>Open the precompiled image of the dictionary.</p>
+	 *
+	 * <p>By default this is a resource next to the concrete class, with the name of the class and a ".bin" suffix.</p>
+	 *
+	 * @return	a stream from which the image can be read, or null if there is no image
+	 */
+	protected InputStream getPrecompiledImage() {
+		return getClass().getResourceAsStream(getClass().getSimpleName()+".bin");
+	}
+
+	private DicomDictionaryImage loadPrecompiledImage() {
+		InputStream in = getPrecompiledImage();
+		if (in != null) {
+			try {
+				try {
+					return DicomDictionaryImage.read(in);
+				}
+				finally {
+					in.close();
+				}
+			}
+			catch (IOException e) {
+				// An unreadable image is ignored and the generated code is used instead
+				System.err.println("DicomDictionaryBase: ignoring precompiled dictionary: "+e);
+			}
+		}
+		return null;
 	}
 
 	/**
@@ -78,6 +119,13 @@ public abstract class DicomDictionaryBase {
 	 * @return		the value representation of the attribute as an array of two bytes
 	 */
 	public byte[] getValueRepresentationFromTag(AttributeTag tag) {
+		if (image != null) {
+			int index = image.indexOf(tag);
+			if (index < 0 && tag.isRepeatingGroup()) {
+				index = image.indexOf(tag.getTagWithRepeatingGroupBase());
+			}
+			return index < 0 ? null : image.getValueRepresentation(index);
+		}
 		byte[] vr = (byte[])valueRepresentationsByTag.get(tag);
 //System.err.println("DicomDictionaryBase.getValueRepresentationFromTag: "+tag+" returns "+vr);
 		if (vr == null) {
@@ -95,6 +143,10 @@ public abstract class DicomDictionaryBase {
 	 * @return		the information entity of the attribute
 	 */
 	public InformationEntity getInformationEntityFromTag(AttributeTag tag) {
+		if (image != null) {
+			int index = image.indexOf(tag);
+			return index < 0 ? null : image.getInformationEntity(index);
+		}
 		return (InformationEntity)informationEntityByTag.get(tag);
 	}
 
@@ -111,6 +163,9 @@ public abstract class DicomDictionaryBase {
 	 * @return		the tag of the attribute
 	 */
 	public AttributeTag getTagFromName(String name) {
+		if (image != null) {
+			return image.getTagFromName(name);
+		}
 		return (AttributeTag)tagByName.get(name);
 	}
 
@@ -123,6 +178,10 @@ public abstract class DicomDictionaryBase {
 	 * @return		the string name of the attribute
 	 */
 	public String getNameFromTag(AttributeTag tag) {
+		if (image != null) {
+			int index = image.indexOf(tag);
+			return index < 0 ? null : image.getName(index);
+		}
 		return (String)nameByTag.get(tag);
 	}
 
@@ -135,6 +194,6 @@ public abstract class DicomDictionaryBase {
 	 *
 	 * @return		an iterator
 	 */
-	public Iterator getTagIterator() { return tagList.iterator(); }
+	public Iterator getTagIterator() { return image != null ? image.getTagIterator() : tagList.iterator(); }
 
 }
@@ -0,0 +1,497 @@
+/* Copyright (c) 2001-2014, David A. Clunie DBA Pixelmed Publishing. All rights reserved. */
+
+package com.pixelmed.dicom;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>A compact, precompiled form of a {@link com.pixelmed.dicom.DicomDictionaryBase DicomDictionaryBase}, which can be
+ * read from the classpath much faster than the generated dictionary code can populate its maps.</p>
+ *
+ * <p>The entries are held in parallel arrays sorted by tag. Tags are located using a minimal-collision perfect hash
+ * (hash and displace), whose displacements are computed when the image is written, so a lookup is two hash
+ * computations and one comparison. The names are held as encoded bytes and only decoded when they are used, and
+ * the map from names to tags is only built if it is used.</p>
+ *
+ * <p>The image is written by running the main method with the path of the file to create, which should then be
+ * placed on the classpath next to the dictionary class, named after that class with a ".bin" suffix.</p>
+ *
+ * @author	tdoel
+ */
+class DicomDictionaryImage {
+
+	private static final int MAGIC = 0x50584444;	// "PXDD"
+	private static final int VERSION = 2;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final int HASH_SEED = 0x2f0b3c5d;
+	private static final int DISPLACEMENT_MULTIPLIER = 0x9e3779b9;
+	private static final int MAXIMUM_DISPLACEMENT = 1 << 20;
+
+	private static final InformationEntity[] INFORMATION_ENTITIES = {
+		null,
+		InformationEntity.PATIENT,
+		InformationEntity.STUDY,
+		InformationEntity.PROCEDURESTEP,
+		InformationEntity.SERIES,
+		InformationEntity.CONCATENATION,
+		InformationEntity.INSTANCE,
+		InformationEntity.FRAME
+	};
+
+	private final int[] tags;
+	private final byte[][] valueRepresentations;
+	private final InformationEntity[] informationEntities;
+	private final EncodedStrings names;
+	private final EncodedStrings fullNames;
+
+	private final int bucketBits;
+	private final int slotBits;
+	private final int[] displacements;
+	private final char[] slots;
+
+	private volatile Map<String,AttributeTag> tagByName;
+	private volatile List<AttributeTag> tagList;
+
+	private DicomDictionaryImage(int[] tags,byte[][] valueRepresentations,InformationEntity[] informationEntities,EncodedStrings names,EncodedStrings fullNames,int bucketBits,int slotBits,int[] displacements,char[] slots) {
+		this.tags=tags;
+		this.valueRepresentations=valueRepresentations;
+		this.informationEntities=informationEntities;
+		this.names=names;
+		this.fullNames=fullNames;
+		this.bucketBits=bucketBits;
+		this.slotBits=slotBits;
+		this.displacements=displacements;
+		this.slots=slots;
+	}
+
+	/**
+	 * <p>Get the number of entries in the dictionary.</p>
+	 *
+	 * @return	the number of tags
+	 */
+	int size() { return tags.length; }
+
+	/**
+	 * <p>Find the entry for a tag.</p>
+	 *
+	 * @param	tag	the tag to find
+	 * @return		the index of the entry, or -1 if the tag is not in the dictionary
+	 */
+	int indexOf(AttributeTag tag) {
+		int key = toKey(tag);
+		int slot = getSlot(key,displacements[getBucket(key,bucketBits)],slotBits);
+		int index = slots[slot] - 1;
+		return index >= 0 && tags[index] == key ? index : -1;
+	}
+
+	byte[] getValueRepresentation(int index)			{ return valueRepresentations[index]; }
+
+	InformationEntity getInformationEntity(int index)	{ return informationEntities[index]; }
+
+	String getName(int index)							{ return names.get(index); }
+
+	String getFullName(int index)						{ return fullNames.get(index); }
+
+	/**
+	 * <p>Get the tag of an attribute from its name, building the map from names to tags on first use.</p>
+	 *
+	 * @param	name	the name of the attribute
+	 * @return			the tag, or null if there is no attribute with this name
+	 */
+	AttributeTag getTagFromName(String name) {
+		Map<String,AttributeTag> map = tagByName;
+		if (map == null) {
+			map = new HashMap<String,AttributeTag>(tags.length*2);
+			for (int index=0; index<tags.length; ++index) {
+				String entryName = names.get(index);
+				if (entryName != null) {
+					map.put(entryName,toTag(tags[index]));
+				}
+			}
+			tagByName = map;
+		}
+		return map.get(name);
+	}
+
+	/**
+	 * <p>Get an iterator over every tag in the dictionary, in ascending tag order.</p>
+	 *
+	 * @return	an iterator which does not support removal
+	 */
+	Iterator<AttributeTag> getTagIterator() {
+		List<AttributeTag> list = tagList;
+		if (list == null) {
+			list = new ArrayList<AttributeTag>(tags.length);
+			for (int key : tags) {
+				list.add(toTag(key));
+			}
+			list = Collections.unmodifiableList(list);
+			tagList = list;
+		}
+		return list.iterator();
+	}
+
+	/**
+	 * <p>Read an image.</p>
+	 *
+	 * @param	in	the stream to read from, which is not closed
+	 * @return		the image
+	 * @throws	IOException	if the stream is not a valid image
+	 */
+	static DicomDictionaryImage read(InputStream in) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(readFully(in));
+		try {
+			if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+				throw new IOException("Not a dictionary image");
+			}
+			int count = buffer.getInt();
+			int bucketBits = buffer.getInt();
+			int slotBits = buffer.getInt();
+			if (count < 0 || count >= Character.MAX_VALUE || bucketBits < 0 || bucketBits > 24 || slotBits < 0 || slotBits > 24 || (1<<slotBits) < count) {
+				throw new IOException("Corrupt dictionary image header");
+			}
+
+			int[] tags = new int[count];
+			buffer.asIntBuffer().get(tags);
+			buffer.position(buffer.position()+count*4);
+
+			char[] valueRepresentationCodes = new char[count];
+			buffer.asCharBuffer().get(valueRepresentationCodes);
+			buffer.position(buffer.position()+count*2);
+
+			// Share one array between all entries with the same value representation
+			Map<Character,byte[]> distinctValueRepresentations = new HashMap<Character,byte[]>();
+			byte[][] valueRepresentations = new byte[count][];
+			for (int i=0; i<count; ++i) {
+				char code = valueRepresentationCodes[i];
+				if (code != 0) {
+					byte[] vr = distinctValueRepresentations.get(code);
+					if (vr == null) {
+						vr = new byte[] { (byte)(code>>8), (byte)code };
+						distinctValueRepresentations.put(code,vr);
+					}
+					valueRepresentations[i] = vr;
+				}
+			}
+
+			InformationEntity[] informationEntities = new InformationEntity[count];
+			for (int i=0; i<count; ++i) {
+				int code = buffer.get() & 0xff;
+				if (code >= INFORMATION_ENTITIES.length) {
+					throw new IOException("Corrupt dictionary image information entity");
+				}
+				informationEntities[i] = INFORMATION_ENTITIES[code];
+			}
+
+			EncodedStrings names = EncodedStrings.read(buffer,count);
+			EncodedStrings fullNames = EncodedStrings.read(buffer,count);
+
+			int[] displacements = new int[1<<bucketBits];
+			buffer.asIntBuffer().get(displacements);
+			buffer.position(buffer.position()+displacements.length*4);
+
+			char[] slots = new char[1<<slotBits];
+			buffer.asCharBuffer().get(slots);
+			buffer.position(buffer.position()+slots.length*2);
+			for (char slot : slots) {
+				if (slot > count) {
+					throw new IOException("Corrupt dictionary image hash table");
+				}
+			}
+
+			if (buffer.getInt() != MAGIC || buffer.hasRemaining()) {
+				throw new IOException("Corrupt dictionary image trailer");
+			}
+			return new DicomDictionaryImage(tags,valueRepresentations,informationEntities,names,fullNames,bucketBits,slotBits,displacements,slots);
+		}
+		catch (RuntimeException e) {
+			// Buffer underflows and invalid offsets indicate a truncated or corrupt image
+			throw new IOException("Corrupt dictionary image: "+e);
+		}
+	}
+
+	/**
+	 * <p>Write this image.</p>
+	 *
+	 * @param	out	the stream to write to, which is flushed but not closed
+	 * @throws	IOException
+	 */
+	void write(OutputStream out) throws IOException {
+		DataOutputStream dout = new DataOutputStream(new BufferedOutputStream(out));
+		dout.writeInt(MAGIC);
+		dout.writeInt(VERSION);
+		dout.writeInt(tags.length);
+		dout.writeInt(bucketBits);
+		dout.writeInt(slotBits);
+		for (int key : tags) {
+			dout.writeInt(key);
+		}
+		for (byte[] vr : valueRepresentations) {
+			dout.writeChar(vr == null ? 0 : ((vr[0]&0xff)<<8) | (vr[1]&0xff));
+		}
+		for (InformationEntity ie : informationEntities) {
+			dout.writeByte(Arrays.asList(INFORMATION_ENTITIES).indexOf(ie));
+		}
+		names.write(dout);
+		fullNames.write(dout);
+		for (int displacement : displacements) {
+			dout.writeInt(displacement);
+		}
+		for (char slot : slots) {
+			dout.writeChar(slot);
+		}
+		dout.writeInt(MAGIC);
+		dout.flush();
+	}
+
+	/**
+	 * <p>Create an image from a dictionary whose maps have been populated by the generated code.</p>
+	 *
+	 * @param	dictionary	the source dictionary
+	 * @return			the image
+	 */
+	static DicomDictionaryImage create(DicomDictionaryBase dictionary) {
+		List<AttributeTag> tagList = new ArrayList<AttributeTag>();
+		for (Iterator i = dictionary.tagList.iterator(); i.hasNext();) {
+			tagList.add((AttributeTag)i.next());
+		}
+		int count = tagList.size();
+		int[] tags = new int[count];
+		byte[][] valueRepresentations = new byte[count][];
+		InformationEntity[] informationEntities = new InformationEntity[count];
+		String[] names = new String[count];
+		String[] fullNames = new String[count];
+		for (int index=0; index<count; ++index) {
+			AttributeTag tag = tagList.get(index);
+			tags[index] = toKey(tag);
+			valueRepresentations[index] = (byte[])dictionary.valueRepresentationsByTag.get(tag);
+			informationEntities[index] = (InformationEntity)dictionary.informationEntityByTag.get(tag);
+			names[index] = (String)dictionary.nameByTag.get(tag);
+			fullNames[index] = (String)dictionary.fullNameByTag.get(tag);
+			if ("".equals(names[index]) || "".equals(fullNames[index])) {
+				throw new IllegalStateException("Empty names cannot be distinguished from missing names in an image");
+			}
+		}
+
+		// Around four keys per bucket and a table at most half full keeps the displacement search short
+		int bucketBits = bitsFor(Math.max(1,count/4));
+		int slotBits = bitsFor(count*2);
+		int[] displacements = new int[1<<bucketBits];
+		char[] slots = new char[1<<slotBits];
+
+		List<List<Integer>> buckets = new ArrayList<List<Integer>>();
+		for (int b=0; b<displacements.length; ++b) {
+			buckets.add(new ArrayList<Integer>());
+		}
+		for (int index=0; index<count; ++index) {
+			buckets.get(getBucket(tags[index],bucketBits)).add(index);
+		}
+
+		// Place the largest buckets first, while the table is emptiest
+		Integer[] bucketOrder = new Integer[displacements.length];
+		for (int b=0; b<bucketOrder.length; ++b) {
+			bucketOrder[b] = b;
+		}
+		final List<List<Integer>> finalBuckets = buckets;
+		Arrays.sort(bucketOrder,new java.util.Comparator<Integer>() {
+			public int compare(Integer b1,Integer b2) {
+				return finalBuckets.get(b2).size() - finalBuckets.get(b1).size();
+			}
+		});
+
+		int[] bucketSlots = new int[count];
+		for (int b : bucketOrder) {
+			List<Integer> bucket = buckets.get(b);
+			if (bucket.isEmpty()) {
+				break;
+			}
+			int displacement = 0;
+			while (!tryPlace(bucket,displacement,tags,slots,slotBits,bucketSlots)) {
+				if (++displacement > MAXIMUM_DISPLACEMENT) {
+					throw new IllegalStateException("Unable to construct a perfect hash for the dictionary");
+				}
+			}
+			displacements[b] = displacement;
+		}
+		return new DicomDictionaryImage(tags,valueRepresentations,informationEntities,EncodedStrings.encode(names),EncodedStrings.encode(fullNames),bucketBits,slotBits,displacements,slots);
+	}
+
+	private static boolean tryPlace(List<Integer> bucket,int displacement,int[] tags,char[] slots,int slotBits,int[] bucketSlots) {
+		int placed = 0;
+		for (int index : bucket) {
+			int slot = getSlot(tags[index],displacement,slotBits);
+			boolean free = slots[slot] == 0;
+			for (int j=0; free && j<placed; ++j) {
+				free = bucketSlots[j] != slot;
+			}
+			if (!free) {
+				return false;
+			}
+			bucketSlots[placed++] = slot;
+		}
+		for (int j=0; j<placed; ++j) {
+			slots[bucketSlots[j]] = (char)(bucket.get(j) + 1);
+		}
+		return true;
+	}
+
+	private static int getBucket(int key,int bucketBits) {
+		return bucketBits == 0 ? 0 : mix(key ^ HASH_SEED) >>> (32-bucketBits);
+	}
+
+	private static int getSlot(int key,int displacement,int slotBits) {
+		return slotBits == 0 ? 0 : mix(key + displacement*DISPLACEMENT_MULTIPLIER) >>> (32-slotBits);
+	}
+
+	// The finalisation step of MurmurHash3, which spreads every input bit over the whole result
+	private static int mix(int h) {
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+
+	private static int bitsFor(int n) {
+		int bits = 0;
+		while ((1<<bits) < n) {
+			++bits;
+		}
+		return bits;
+	}
+
+	private static int toKey(AttributeTag tag) {
+		return (tag.getGroup()<<16) | (tag.getElement()&0xffff);
+	}
+
+	private static AttributeTag toTag(int key) {
+		return new AttributeTag(key>>>16,key&0xffff);
+	}
+
+	private static byte[] readFully(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(256*1024);
+		byte[] buffer = new byte[32*1024];
+		int length;
+		while ((length = in.read(buffer)) != -1) {
+			out.write(buffer,0,length);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * <p>A list of strings stored as a single block of UTF-8 bytes, each of which is decoded when first used.</p>
+	 *
+	 * <p>Null is stored as an empty string, so empty strings cannot be stored.</p>
+	 */
+	private static class EncodedStrings {
+		private final int[] offsets;
+		private final byte[] bytes;
+		private final String[] decoded;
+
+		private EncodedStrings(int[] offsets,byte[] bytes) {
+			this.offsets=offsets;
+			this.bytes=bytes;
+			this.decoded=new String[offsets.length-1];
+		}
+
+		String get(int index) {
+			// Strings are immutable, so a race between threads decoding the same string is harmless
+			String string = decoded[index];
+			if (string == null) {
+				int length = offsets[index+1] - offsets[index];
+				if (length == 0) {
+					return null;
+				}
+				string = new String(bytes,offsets[index],length,UTF8);
+				decoded[index] = string;
+			}
+			return string;
+		}
+
+		static EncodedStrings encode(String[] strings) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			int[] offsets = new int[strings.length+1];
+			for (int i=0; i<strings.length; ++i) {
+				if (strings[i] != null) {
+					byte[] encoded = strings[i].getBytes(UTF8);
+					out.write(encoded,0,encoded.length);
+				}
+				offsets[i+1] = out.size();
+			}
+			return new EncodedStrings(offsets,out.toByteArray());
+		}
+
+		static EncodedStrings read(ByteBuffer buffer,int count) throws IOException {
+			int[] offsets = new int[count+1];
+			buffer.asIntBuffer().get(offsets);
+			buffer.position(buffer.position()+offsets.length*4);
+			for (int i=0; i<count; ++i) {
+				if (offsets[i] < 0 || offsets[i+1] < offsets[i]) {
+					throw new IOException("Corrupt dictionary image string offsets");
+				}
+			}
+			byte[] bytes = new byte[offsets[count]];
+			buffer.get(bytes);
+			return new EncodedStrings(offsets,bytes);
+		}
+
+		void write(DataOutputStream dout) throws IOException {
+			for (int offset : offsets) {
+				dout.writeInt(offset);
+			}
+			dout.write(bytes);
+		}
+	}
+
+	/**
+	 * <p>A dictionary which always populates its maps from the generated code, used as the source of an image.</p>
+	 */
+	private static class GeneratedDicomDictionary extends DicomDictionary {
+		protected InputStream getPrecompiledImage() {
+			return null;
+		}
+	}
+
+	/**
+	 * <p>Create a {@link com.pixelmed.dicom.DicomDictionaryBase DicomDictionaryBase} which ignores any precompiled image.</p>
+	 *
+	 * @return	a dictionary populated from the generated code
+	 */
+	static DicomDictionary createGeneratedDictionary() {
+		return new GeneratedDicomDictionary();
+	}
+
+	/**
+	 * <p>Write an image of the standard {@link com.pixelmed.dicom.DicomDictionary DicomDictionary}.</p>
+	 *
+	 * @param	arg	the path of the image file to write, normally src/main/resources/com/pixelmed/dicom/DicomDictionary.bin
+	 */
+	public static void main(String arg[]) {
+		try {
+			DicomDictionaryImage image = create(createGeneratedDictionary());
+			OutputStream out = new FileOutputStream(arg[0]);
+			try {
+				image.write(out);
+			}
+			finally {
+				out.close();
+			}
+			System.err.println("Wrote "+image.size()+" entries to "+arg[0]);
+		}
+		catch (Exception e) {
+			e.printStackTrace(System.err);
+			System.exit(1);
+		}
+	}
+}
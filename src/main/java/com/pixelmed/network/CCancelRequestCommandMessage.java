@@ -0,0 +1,61 @@
+/* Copyright (c) 2001-2014, David A. Clunie DBA Pixelmed Publishing. All rights reserved. */
+
+package com.pixelmed.network;
+
+import com.pixelmed.dicom.*;
+
+import java.io.*;
+
+/**
+ * <p>A C-CANCEL request, which asks the peer to stop sending responses to an outstanding C-FIND, C-MOVE or C-GET request.</p>
+ *
+ * @author	tdoel
+ */
+public class CCancelRequestCommandMessage extends RequestCommandMessage {
+
+	private byte bytes[];
+
+	private static final AttributeTag groupLengthTag = new AttributeTag(0x0000,0x0000);
+	private int groupLength;
+	private int commandField;
+	private int messageIDBeingRespondedTo;
+
+	/**
+	 * @param	messageIDBeingRespondedTo	the message ID of the request to cancel
+	 * @throws	IOException
+	 * @throws	DicomException
+	 */
+	public CCancelRequestCommandMessage(int messageIDBeingRespondedTo) throws DicomException, IOException {
+
+		this.messageIDBeingRespondedTo=messageIDBeingRespondedTo;
+		commandField = MessageServiceElementCommand.C_CANCEL_RQ;
+		int dataSetType = 0x0101;	// none
+
+		AttributeList list = new AttributeList();
+		{ AttributeTag t = groupLengthTag;                        Attribute a = new UnsignedLongAttribute(t);     a.addValue(0);                          list.put(t,a); }
+		{ AttributeTag t = TagFromName.CommandField;              Attribute a = new UnsignedShortAttribute(t);    a.addValue(commandField);               list.put(t,a); }
+		{ AttributeTag t = TagFromName.MessageIDBeingRespondedTo; Attribute a = new UnsignedShortAttribute(t);    a.addValue(messageIDBeingRespondedTo);  list.put(t,a); }
+		{ AttributeTag t = TagFromName.CommandDataSetType;        Attribute a = new UnsignedShortAttribute(t);    a.addValue(dataSetType);                list.put(t,a); }
+
+		ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		DicomOutputStream dout = new DicomOutputStream(bout,null/* no meta-header */,TransferSyntax.ImplicitVRLittleEndian);
+		list.write(dout);
+		bytes = bout.toByteArray();
+
+		groupLength = bytes.length-12;
+		bytes[8]=(byte)groupLength;					// little endian
+		bytes[9]=(byte)(groupLength>>8);
+		bytes[10]=(byte)(groupLength>>16);
+		bytes[11]=(byte)(groupLength>>24);
+	}
+
+	/***/
+	public int getGroupLength()			{ return groupLength; }
+	/***/
+	public int getCommandField()			{ return commandField; }
+	/***/
+	public int getMessageIDBeingRespondedTo()	{ return messageIDBeingRespondedTo; }
+
+	/***/
+	public byte[] getBytes() { return bytes; }
+}
@@ -43,10 +43,21 @@ public class FindSOPClassSCU extends SOPClass {
 	/***/
 	private int debugLevel;
 
+	/***/
+	private CFindResponseHandler responseHandler;
+
 	/***/
 	private class CFindResponseHandler extends CompositeResponseHandler {
 		/***/
 		private IdentifierHandler identifierHandler;
+		/***/
+		private Association association;
+		/***/
+		private byte presentationContextID;
+		/***/
+		private int messageID;
+		/***/
+		private boolean cancelSent;
 
 		/**
 		 * @param	identifierHandler
@@ -83,7 +94,7 @@ if (debugLevel > 1) System.err.println("FindSOPClassSCU.CFindResponseHandler.eva
 			// FF00 Pending - Matches are continuing - Current Match is supplied and any Optional Keys were supported in the same manner as Required Keys.
 			// FF01 Pending - Matches are continuing - Warning that one or more Optional Keys were not supported for existence and/or matching for this Identifier.
 
-			success = status == 0x0000;	// success
+			success = status == 0x0000 || (cancelSent && status == 0xFE00);	// success, or cancelled at our request
 			
 			if (status != 0xFF00 && status != 0xFF01) {
 if (debugLevel > 1) System.err.println("FindSOPClassSCU.CFindResponseHandler.evaluateStatusAndSetSuccess: status no longer pending, so stop");
@@ -97,6 +108,9 @@ if (debugLevel > 1) System.err.println("FindSOPClassSCU.CFindResponseHandler.eva
 		protected void makeUseOfDataSet(AttributeList list) {
 if (debugLevel > 1) System.err.println("FindSOPClassSCU.CFindResponseHandler.makeUseOfDataSet:");
 if (debugLevel > 1) System.err.print(list);
+			if (cancelSent) {
+				return;		// responses which crossed with our C-CANCEL request are not wanted
+			}
 			try {
 				identifierHandler.doSomethingWithIdentifier(list);
 			}
@@ -104,6 +118,28 @@ if (debugLevel > 1) System.err.print(list);
 				// do not stop ... other identifiers may be OK
 				e.printStackTrace(System.err);
 			}
+			if (association != null && identifierHandler.isCancelled()) {
+				try {
+if (debugLevel > 0) System.err.println("FindSOPClassSCU.CFindResponseHandler.makeUseOfDataSet(): sending C-CANCEL for message ID "+messageID);
+					association.send(presentationContextID,new CCancelRequestCommandMessage(messageID).getBytes(),null);
+					cancelSent = true;
+				}
+				catch (Exception e) {
+					// keep receiving, since the final response will still arrive if the peer did not see the cancellation
+					e.printStackTrace(System.err);
+				}
+			}
+		}
+
+		/**
+		 * @param	association				the Association on which the request was sent
+		 * @param	presentationContextID	the presentation context used for the request
+		 * @param	messageID				the message ID of the request
+		 */
+		void setRequest(Association association,byte presentationContextID,int messageID) {
+			this.association=association;
+			this.presentationContextID=presentationContextID;
+			this.messageID=messageID;
 		}
 	}
 	
@@ -150,7 +186,11 @@ if (debugLevel > 1) System.err.print(identifier);
 		// Decide which presentation context we are going to use ...
 		byte usePresentationContextID = association.getSuitablePresentationContextID(affectedSOPClass);
 if (debugLevel > 1) System.err.println("Using context ID "+usePresentationContextID);
-		byte cFindRequestCommandMessage[] = new CFindRequestCommandMessage(affectedSOPClass).getBytes();
+		CFindRequestCommandMessage cFindRequest = new CFindRequestCommandMessage(affectedSOPClass);
+		byte cFindRequestCommandMessage[] = cFindRequest.getBytes();
+		if (responseHandler != null) {
+			responseHandler.setRequest(association,usePresentationContextID,cFindRequest.getMessageID());
+		}
 		byte cFindIdentifier[] = new IdentifierMessage(identifier,association.getTransferSyntaxForPresentationContextID(usePresentationContextID)).getBytes();
 		// for some reason association.send(usePresentationContextID,cFindRequestCommandMessage,cFindIdentifier) fails with Oldenburg imagectn
 		// so send the command and the identifier separately ...
@@ -178,7 +218,7 @@ if (debugLevel > 1) System.err.println("FindSOPClassSCU: got PDU");
 			String affectedSOPClass,AttributeList identifier,IdentifierHandler identifierHandler,
 			int debugLevel) throws DicomNetworkException, DicomException, IOException {
 		this.debugLevel=debugLevel;
-		CFindResponseHandler responseHandler = new CFindResponseHandler(identifierHandler,debugLevel);
+		responseHandler = new CFindResponseHandler(identifierHandler,debugLevel);
 		association.setReceivedDataHandler(responseHandler);
 		try {
 			performFind(association,affectedSOPClass,identifier);
@@ -212,7 +252,7 @@ if (debugLevel > 1) System.err.println("FindSOPClassSCU: got PDU");
 			int debugLevel) throws DicomNetworkException, DicomException, IOException {
 		this.debugLevel=debugLevel;
 		Association association = getSuitableAssociation(hostname,port,calledAETitle,callingAETitle,affectedSOPClass,debugLevel);
-		CFindResponseHandler responseHandler = new CFindResponseHandler(identifierHandler,debugLevel);
+		responseHandler = new CFindResponseHandler(identifierHandler,debugLevel);
 		association.setReceivedDataHandler(responseHandler);
 		try {
 			performFind(association,affectedSOPClass,identifier);
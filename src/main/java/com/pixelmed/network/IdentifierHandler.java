@@ -28,4 +28,16 @@ public class IdentifierHandler {
 		System.err.println("IdentifierHandler.doSomethingWithIdentifier():");
 		System.err.print(identifier);
 	}
+
+	/**
+	 * <p>Called after each response identifier has been handled, to determine whether the query should be cancelled.</p>
+	 *
+	 * <p>If this returns true, a C-CANCEL request is sent, and any further identifiers received before the
+	 * final response are discarded. The default is never to cancel.</p>
+	 *
+	 * @return	true if no more identifiers are wanted
+	 */
+	public boolean isCancelled() {
+		return false;
+	}
 }
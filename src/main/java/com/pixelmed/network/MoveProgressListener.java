@@ -0,0 +1,35 @@
+/* Copyright (c) 2001-2014, David A. Clunie DBA Pixelmed Publishing. All rights reserved. */
+
+package com.pixelmed.network;
+
+/**
+ * <p>This interface provides a mechanism for following the progress of a C-MOVE operation.</p>
+ *
+ * <p>A {@link com.pixelmed.network.MoveSOPClassSCU MoveSOPClassSCU} calls
+ * {@link #moveResponseReceived(int,int,int,int,int) moveResponseReceived()} for each pending and final C-MOVE
+ * response, with the sub-operation counts contained in that response.</p>
+ *
+ * @author	tdoel
+ */
+public interface MoveProgressListener {
+
+	/**
+	 * <p>Called when a C-MOVE response is received.</p>
+	 *
+	 * <p>Counts which were absent from the response are reported as -1.</p>
+	 *
+	 * @param	status			the status of the response, 0xFF00 if further responses will follow
+	 * @param	remaining		the number of remaining sub-operations
+	 * @param	completed		the number of completed sub-operations
+	 * @param	failed			the number of failed sub-operations
+	 * @param	warning			the number of sub-operations which completed with a warning
+	 */
+	void moveResponseReceived(int status,int remaining,int completed,int failed,int warning);
+
+	/**
+	 * <p>Called when a C-MOVE response lists the instances whose sub-operations failed.</p>
+	 *
+	 * @param	failedSOPInstanceUIDs	the values of the Failed SOP Instance UID List (0008,0058)
+	 */
+	void failedSOPInstancesReceived(String[] failedSOPInstanceUIDs);
+}
@@ -42,6 +42,9 @@ public class MoveSOPClassSCU extends SOPClass {
 	
 	protected CMoveResponseHandler responseHandler;
 
+	/***/
+	protected MoveProgressListener progressListener;
+
 	/***/
 	protected class CMoveResponseHandler extends CompositeResponseHandler {
 	
@@ -87,6 +90,14 @@ if (debugLevel > -1) System.err.println(new java.util.Date().toString()+": Move
 			
 			int failedSuboperations = Attribute.getSingleIntegerValueOrDefault(list,TagFromName.NumberOfFailedSuboperations,0);
 
+			if (progressListener != null) {
+				progressListener.moveResponseReceived(status,
+					Attribute.getSingleIntegerValueOrDefault(list,TagFromName.NumberOfRemainingSuboperations,-1),
+					Attribute.getSingleIntegerValueOrDefault(list,TagFromName.NumberOfCompletedSuboperations,-1),
+					Attribute.getSingleIntegerValueOrDefault(list,TagFromName.NumberOfFailedSuboperations,-1),
+					Attribute.getSingleIntegerValueOrDefault(list,TagFromName.NumberOfWarningSuboperations,-1));
+			}
+
 			success = status == 0x0000;		// success
 			
 			if (status != 0xFF00 && failedSuboperations == 0) {
@@ -119,6 +130,12 @@ if (debugLevel > 1) System.err.println(new java.util.Date().toString()+": MoveSO
 if (debugLevel > 1) System.err.print(list);
 			// we only get here if there are failed sub-operations, in which case we get a list
 			// in Failed SOP Instance UID List (0008,0058)
+			if (progressListener != null) {
+				String[] failedSOPInstanceUIDs = Attribute.getStringValues(list.get(TagFromName.FailedSOPInstanceUIDList));
+				if (failedSOPInstanceUIDs != null) {
+					progressListener.failedSOPInstancesReceived(failedSOPInstanceUIDs);
+				}
+			}
 			setDone(true);
 		}
 	}
@@ -226,19 +243,56 @@ if (debugLevel > 1) System.err.println("MoveSOPClassSCU.performMove(): got PDU")
 	 */
 	public MoveSOPClassSCU(String hostname,int port,String calledAETitle,String callingAETitle,String moveDestination,
 			String affectedSOPClass,AttributeList identifier,int debugLevel) throws DicomNetworkException, DicomException, IOException {
+		this(hostname,port,calledAETitle,callingAETitle,moveDestination,affectedSOPClass,identifier,null,debugLevel);
+	}
+
+	/**
+	 * <p>Perform a C-MOVE on a new Association, which is released or aborted before returning.</p>
+	 *
+	 * @param	hostname			their hostname or IP address
+	 * @param	port				their port
+	 * @param	calledAETitle		their AE Title
+	 * @param	callingAETitle		our AE Title
+	 * @param	moveDestination		the AE Title of the Storage AE to which the instances are to be sent
+	 * @param	affectedSOPClass	the SOP Class defining which retrieve model, e.g. {@link com.pixelmed.dicom.SOPClass#StudyRootQueryRetrieveInformationModelMove SOPClass.StudyRootQueryRetrieveInformationModelMove}
+	 * @param	identifier			the list of unique keys and move level
+	 * @param	progressListener	notified of the sub-operation counts in each C-MOVE response, or null
+	 * @param	debugLevel			zero for no debugging messages, higher values more verbose messages
+	 * @throws	IOException
+	 * @throws	DicomException
+	 * @throws	DicomNetworkException
+	 */
+	public MoveSOPClassSCU(String hostname,int port,String calledAETitle,String callingAETitle,String moveDestination,
+			String affectedSOPClass,AttributeList identifier,MoveProgressListener progressListener,int debugLevel) throws DicomNetworkException, DicomException, IOException {
 
 		this.debugLevel=debugLevel;
+		this.progressListener=progressListener;
 		Association association = getSuitableAssociation(hostname,port,calledAETitle,callingAETitle,affectedSOPClass,debugLevel);
+		boolean closed = false;
 		try {
 			performMove(association,moveDestination,affectedSOPClass,identifier);
 if (debugLevel > 1) System.err.println(new java.util.Date().toString()+": MoveSOPClassSCU: releasing association");
 			// State 6
 			association.release();
+			closed = true;
 		}
 		catch (AReleaseException e) {
 			// State 1
 			// the other end released and didn't wait for us to do it
 			association = null;
+			closed = true;
+		}
+		finally {
+			if (!closed) {
+				// don't leave the association open, since the caller may be making many of them
+				try {
+					association.abort();
+				}
+				catch (DicomNetworkException e) {
+					// don't hide the exception that caused the abort
+					System.err.println("MoveSOPClassSCU: could not abort association after failure: "+e);
+				}
+			}
 		}
 		if (!responseHandler.wasSuccessful()) {
 			throw new DicomNetworkException("C-MOVE reports failure status 0x"+Integer.toString(responseHandler.getStatus()&0xFFFF,16));
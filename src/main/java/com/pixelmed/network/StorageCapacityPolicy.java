@@ -0,0 +1,32 @@
+/* Copyright (c) 2001-2011, David A. Clunie DBA Pixelmed Publishing. All rights reserved. */
+
+package com.pixelmed.network;
+
+/**
+ * <p>This interface provides a mechanism for limiting the rate at which data sets are received
+ * when the storage available for them is running out.</p>
+ *
+ * <p>A {@link com.pixelmed.network.StorageSOPClassSCP StorageSOPClassSCP} waits for the delay returned by
+ * {@link #getAssociationAcceptanceDelay() getAssociationAcceptanceDelay()} before accepting each new association,
+ * in the thread for that association, and refuses each C-STORE
+ * request with a status of {@link com.pixelmed.network.ResponseStatus#RefusedOutOfResources RefusedOutOfResources}
+ * when {@link #canStoreReceivedObjects() canStoreReceivedObjects()} returns false.</p>
+ *
+ * @author	tdoel
+ */
+public interface StorageCapacityPolicy {
+
+	/**
+	 * <p>Get the time to wait before accepting a new association.</p>
+	 *
+	 * @return	the delay in milliseconds, or zero to accept the association immediately
+	 */
+	long getAssociationAcceptanceDelay();
+
+	/**
+	 * <p>Determine whether a data set which is about to be received can be stored.</p>
+	 *
+	 * @return	false if the data set should be refused because storage is running out
+	 */
+	boolean canStoreReceivedObjects();
+}
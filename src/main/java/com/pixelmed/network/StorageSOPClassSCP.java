@@ -73,6 +73,10 @@ public class StorageSOPClassSCP extends SOPClass implements Runnable {
 		/***/
 		private File temporaryReceivedFile;
 		/***/
+		private boolean receivingDataSet;
+		/***/
+		private boolean refusedOutOfResources;
+		/***/
 		private File savedImagesFolder;
 
 		/**
@@ -96,7 +100,7 @@ public class StorageSOPClassSCP extends SOPClass implements Runnable {
 				csrq.getAffectedSOPClassUID(),
 				csrq.getAffectedSOPInstanceUID(),
 				csrq.getMessageID(),
-				ResponseStatus.Success
+				refusedOutOfResources ? ResponseStatus.RefusedOutOfResources : ResponseStatus.Success
 				).getBytes();
 		}
 		
@@ -112,6 +116,8 @@ public class StorageSOPClassSCP extends SOPClass implements Runnable {
 			out=null;
 			csrq=null;
 			receivedFile=null;
+			receivingDataSet=false;
+			refusedOutOfResources=false;
 			this.savedImagesFolder=savedImagesFolder;
 		}
 
@@ -167,8 +173,14 @@ public class StorageSOPClassSCP extends SOPClass implements Runnable {
 					// This is where the C_STORE command is processed
 					 if (command == MessageServiceElementCommand.C_STORE_RQ) {
 
+						 // On the first fragment, decide whether there is space to store the data set; if not it is discarded and refused
+						 if (!receivingDataSet) {
+							 receivingDataSet=true;
+							 refusedOutOfResources = storageCapacityPolicy != null && !storageCapacityPolicy.canStoreReceivedObjects();
+						 }
+
 						 // out is initially null - this means we are receiving the first fragment, so create the file and write the DICOM header
-						 if (out == null && savedImagesFolder != null) {
+						 if (out == null && !refusedOutOfResources && savedImagesFolder != null) {
 							FileMetaInformation fmi = new FileMetaInformation(
 								csrq.getAffectedSOPClassUID(),
 								csrq.getAffectedSOPInstanceUID(),
@@ -231,6 +243,24 @@ public class StorageSOPClassSCP extends SOPClass implements Runnable {
 
 		/***/
 		public String getReceivedFileName() { return receivedFile == null ? null : receivedFile.getPath(); }
+
+		/**
+		 * <p>Discard a data set whose last fragment was never received, because the association was aborted or the connection failed.</p>
+		 */
+		public void abandonIncompleteDataSet() {
+			if (out != null) {
+				try {
+					out.close();
+				}
+				catch (IOException e) {
+					System.err.println("StorageSOPClassSCP.CompositeCommandReceivedPDUHandler.abandonIncompleteDataSet(): Could not close temporary file "+e);
+				}
+				if (temporaryReceivedFile != null && !temporaryReceivedFile.delete()) {
+					System.err.println("StorageSOPClassSCP.CompositeCommandReceivedPDUHandler.abandonIncompleteDataSet(): Could not delete temporary file");
+				}
+				out=null;
+			}
+		}
 	}
 
 	class UnsupportedOperationException extends DicomNetworkException {
@@ -252,7 +282,16 @@ public class StorageSOPClassSCP extends SOPClass implements Runnable {
 	private boolean receiveAndProcessOneRequestMessage(Association association) throws AReleaseException, DicomNetworkException, DicomException, IOException {
 		CompositeCommandReceivedPDUHandler receivedPDUHandler = new CompositeCommandReceivedPDUHandler(savedImagesFolder, debugLevel);
 		association.setReceivedDataHandler(receivedPDUHandler);
-		association.waitForPDataPDUsUntilHandlerReportsDone();	// throws AReleaseException if release request instead
+		boolean completed = false;
+		try {
+			association.waitForPDataPDUsUntilHandlerReportsDone();	// throws AReleaseException if release request instead
+			completed = true;
+		}
+		finally {
+			if (!completed) {
+				receivedPDUHandler.abandonIncompleteDataSet();
+			}
+		}
 		{
 			String receivedFileName=receivedPDUHandler.getReceivedFileName();	// null if C-ECHO
 			if (receivedFileName != null) {
@@ -296,6 +335,8 @@ public class StorageSOPClassSCP extends SOPClass implements Runnable {
 	/***/
 	private PresentationContextSelectionPolicy presentationContextSelectionPolicy;
 	/***/
+	private StorageCapacityPolicy storageCapacityPolicy;
+	/***/
 	private int debugLevel;
 
 	/**
@@ -324,6 +365,38 @@ public class StorageSOPClassSCP extends SOPClass implements Runnable {
 							  AssociationStatusHandler associationStatusHandler,
 							  PresentationContextSelectionPolicy presentationContextSelectionPolicy,
 							  int debugLevel) throws DicomNetworkException, DicomException, IOException {
+		this(socket,calledAETitle,ourMaximumLengthReceived,socketReceiveBufferSize,socketSendBufferSize,savedImagesFolder,storedFilePathStrategy,
+			receivedObjectHandler,associationStatusHandler,presentationContextSelectionPolicy,null,debugLevel);
+	}
+	
+	/**
+	 * <p>Construct an instance of an association acceptor and storage, query, retrieve and verification SCP
+	 * to be passed to the constructor of a thread that will be started.</p>
+	 *
+	 * @param	socket								the socket on which a transport connection open indication has been received
+	 * @param	calledAETitle						our AE Title
+	 * @param	ourMaximumLengthReceived			the maximum PDU length that we will offer to receive
+	 * @param	socketReceiveBufferSize				the TCP socket receive buffer size to set (if possible), 0 means leave at the default
+	 * @param	socketSendBufferSize				the TCP socket send buffer size to set (if possible), 0 means leave at the default
+	 * @param	savedImagesFolder					the folder in which to store received data sets (may be null, to ignore received data for testing)
+	 * @param	storedFilePathStrategy				the strategy to use for naming received files and folders
+	 * @param	receivedObjectHandler				the handler to call after each data set has been received and stored
+	 * @param	associationStatusHandler			the handler to call when the Association is closed
+	 * @param	presentationContextSelectionPolicy	which SOP Classes and Transfer Syntaxes to accept and reject
+	 * @param	storageCapacityPolicy				the policy used to refuse data sets when storage is running out, or null to accept all data sets
+	 * @param	debugLevel							zero for no debugging messages, higher values more verbose messages
+	 * @throws	IOException
+	 * @throws	DicomException
+	 * @throws	DicomNetworkException
+	 */
+	public StorageSOPClassSCP(Socket socket, String calledAETitle,
+							  int ourMaximumLengthReceived, int socketReceiveBufferSize, int socketSendBufferSize,
+							  File savedImagesFolder, StoredFilePathStrategy storedFilePathStrategy,
+							  ReceivedObjectHandler receivedObjectHandler,
+							  AssociationStatusHandler associationStatusHandler,
+							  PresentationContextSelectionPolicy presentationContextSelectionPolicy,
+							  StorageCapacityPolicy storageCapacityPolicy,
+							  int debugLevel) throws DicomNetworkException, DicomException, IOException {
 		this.socket=socket;
 		this.calledAETitle=calledAETitle;
 		this.ourMaximumLengthReceived=ourMaximumLengthReceived;
@@ -334,6 +407,7 @@ public class StorageSOPClassSCP extends SOPClass implements Runnable {
 		this.receivedObjectHandler=receivedObjectHandler;
 		this.associationStatusHandler=associationStatusHandler;
 		this.presentationContextSelectionPolicy=presentationContextSelectionPolicy;
+		this.storageCapacityPolicy=storageCapacityPolicy;
 		this.debugLevel=debugLevel;
 		storedFilePathStrategy.setDebugLevel(debugLevel);
 	}
@@ -345,6 +419,7 @@ public class StorageSOPClassSCP extends SOPClass implements Runnable {
 	 */
 	public void run() {
 		try {
+			delayWhileStorageIsRunningOut();
 			Association association = AssociationFactory.createNewAssociation(socket,calledAETitle,
 				ourMaximumLengthReceived,socketReceiveBufferSize,socketSendBufferSize,
 				presentationContextSelectionPolicy,
@@ -364,6 +439,25 @@ public class StorageSOPClassSCP extends SOPClass implements Runnable {
 			}
 		}
 	}
+
+	/**
+	 * <p>Slow down the sender while storage is running out, before we acknowledge the association.</p>
+	 *
+	 * <p>This is done in the thread for this association rather than in the dispatcher, so that other associations are not held up.</p>
+	 */
+	private void delayWhileStorageIsRunningOut() {
+		if (storageCapacityPolicy != null) {
+			long delay = storageCapacityPolicy.getAssociationAcceptanceDelay();
+			if (delay > 0) {
+				try {
+					Thread.sleep(delay);
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+	}
 }
 
 
@@ -99,6 +99,8 @@ System.err.println("StorageSOPClassSCPDispatcher.DefaultReceivedObjectHandler.se
 	/***/
 	private AssociationStatusHandler associationStatusHandler;
 	/***/
+	private StorageCapacityPolicy storageCapacityPolicy;
+	/***/
 	private boolean secureTransport;
 	/***/
 	private PresentationContextSelectionPolicy presentationContextSelectionPolicy;
@@ -137,12 +139,22 @@ System.err.println("StorageSOPClassSCPDispatcher.DefaultReceivedObjectHandler.se
 
 		this.debugLevel=0;
 		this.associationStatusHandler=null;
+		this.storageCapacityPolicy=null;
 		this.ourMaximumLengthReceived=AssociationFactory.getDefaultMaximumLengthReceived();
 		this.socketReceiveBufferSize=AssociationFactory.getDefaultReceiveBufferSize();
 		this.socketSendBufferSize=AssociationFactory.getDefaultSendBufferSize();
 	}
 
 
+	/**
+	 * <p>Set the policy used to slow down and refuse storage when storage is running out.</p>
+	 *
+	 * @param	storageCapacityPolicy	the policy, or null to always accept data sets without delay
+	 */
+	public void setStorageCapacityPolicy(StorageCapacityPolicy storageCapacityPolicy) {
+		this.storageCapacityPolicy=storageCapacityPolicy;
+	}
+
 	/**
 	 * Start a new thread with a new dispatcher
 	 */
@@ -165,6 +177,15 @@ System.err.println("StorageSOPClassSCPDispatcher.DefaultReceivedObjectHandler.se
 		}
 	}
 
+	/**
+	 * <p>Is the dispatcher accepting connections?</p>
+	 *
+	 * @return	true if the dispatcher has been started and has not been asked to shut down
+	 */
+	public boolean isListening() {
+		return mainThread != null && mainThread.isAlive() && !wantToShutdown;
+	}
+
 	/**
 	 * <p>Request the dispatcher to stop listening and exit the thread.</p>
 	 */
@@ -207,7 +228,7 @@ System.err.println("StorageSOPClassSCPDispatcher.DefaultReceivedObjectHandler.se
 						executingThread = new Thread(new StorageSOPClassSCP(socket,calledAETitle,
 							ourMaximumLengthReceived,socketReceiveBufferSize,socketSendBufferSize,savedImagesFolder,storedFilePathStrategy,
 							receivedObjectHandler,associationStatusHandler,
-								presentationContextSelectionPolicy,
+								presentationContextSelectionPolicy,storageCapacityPolicy,
 							debugLevel));
 						executingThread.start();
 					}
@@ -0,0 +1,31 @@
+/* Copyright (c) 2001-2014, David A. Clunie DBA Pixelmed Publishing. All rights reserved. */
+
+package com.pixelmed.query;
+
+/**
+ * <p>This interface receives the top level records of a {@link com.pixelmed.query.QueryTreeModel QueryTreeModel}
+ * as each query response arrives.</p>
+ *
+ * @see com.pixelmed.query.QueryTreeModel#performIncrementalQuery(com.pixelmed.dicom.AttributeList,IncrementalQueryListener)
+ *
+ * @author	tdoel
+ */
+public interface IncrementalQueryListener {
+
+	/**
+	 * <p>Called on the querying thread for each record received.</p>
+	 *
+	 * <p>The record has not yet been added to the tree; this should be done on the event dispatch thread
+	 * by calling {@link com.pixelmed.query.QueryTreeModel#insertRecords(java.util.List) insertRecords()}.</p>
+	 *
+	 * @param	record	the new record
+	 */
+	void recordReceived(QueryTreeRecord record);
+
+	/**
+	 * <p>Called after each record is received, to determine whether the query should be cancelled.</p>
+	 *
+	 * @return	true if no more records are wanted
+	 */
+	boolean isCancelled();
+}
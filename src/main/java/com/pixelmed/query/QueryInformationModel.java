@@ -223,6 +223,20 @@ if (debugLevel > 1) System.err.println("QueryInformationModel.performQuery(): re
 		return new QueryTreeModel(this,filter,debugLevel);
 	}
 
+	/**
+	 * <p>Create a tree for a hierarchical query whose top level is populated incrementally.</p>
+	 *
+	 * <p>The top level is not queried until {@link com.pixelmed.query.QueryTreeModel#performIncrementalQuery(AttributeList,IncrementalQueryListener) performIncrementalQuery()}
+	 * is called on the returned tree.</p>
+	 *
+	 * @param	filter			the query request identifier as a list of DICOM attributes
+	 * @return				an initially empty tree suitable for browsing
+	 * @throws	DicomException		thrown if there is a problem creating the tree
+	 */
+	public QueryTreeModel createIncrementalHierarchicalQuery(AttributeList filter) throws DicomException {
+		return new QueryTreeModel(this,filter,true,debugLevel);
+	}
+
 	/**
 	 * <p>Retrieve DICOM object(s) from the specified location.</p>
 	 *
@@ -248,6 +262,24 @@ if (debugLevel > 1) System.err.println("performHierarchicalMoveFrom(): reusing e
 		}
 	}
 
+	/**
+	 * <p>Retrieve DICOM object(s) from the specified location using a new Association.</p>
+	 *
+	 * <p>Unlike {@link #performHierarchicalMoveFrom(AttributeList,String) performHierarchicalMoveFrom()}, this
+	 * never uses the cached Association, so it may be called concurrently from several threads, each
+	 * retrieval using its own Association.</p>
+	 *
+	 * @param		identifier				the move request identifier as a list of DICOM attributes
+	 * @param		retrieveAE				the AE title of where to move the object(s) from
+	 * @param		progressListener		notified of the sub-operation counts in each C-MOVE response, or null
+	 * @throws	IOException				thrown if there is an generic IO problem
+	 * @throws	DicomException			thrown if there is a problem performing or parsing the query
+	 * @throws	DicomNetworkException	thrown if there is a problem with the DICOM network protocol
+	 */
+	public void performHierarchicalMoveFromOnNewAssociation(AttributeList identifier,String retrieveAE,MoveProgressListener progressListener) throws IOException, DicomException, DicomNetworkException {
+		new MoveSOPClassSCU(hostname,port,retrieveAE,callingAETitle,callingAETitle,getMoveSOPClassUID(),identifier,progressListener,debugLevel);
+	}
+
 	/**
 	 * <p>Release any cached Associations.</p>
 	 *
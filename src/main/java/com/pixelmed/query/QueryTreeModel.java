@@ -2,14 +2,18 @@
 
 package com.pixelmed.query;
 
+import javax.swing.event.TreeModelEvent;
 import javax.swing.event.TreeModelListener;
 import javax.swing.tree.TreeModel;
 import javax.swing.tree.TreePath;
 
+import java.io.IOException;
+import java.util.List;
 import java.util.Vector;
 
 import com.pixelmed.dicom.AttributeList;
 import com.pixelmed.dicom.DicomException;
+import com.pixelmed.network.DicomNetworkException;
 
 /**
  * <p>The {@link com.pixelmed.query.QueryTreeModel QueryTreeModel} class implements a
@@ -113,6 +117,68 @@ public class QueryTreeModel implements TreeModel {
 		}
 	}
 
+	/**
+	 * <p>Construct a tree model with a root node on top, whose children are added incrementally.</p>
+	 *
+	 * <p>No query is performed when the top level of the tree is first displayed. Instead, the top level
+	 * is populated by one or more calls to {@link #performIncrementalQuery(AttributeList,IncrementalQueryListener) performIncrementalQuery()},
+	 * so that the tree can be displayed and browsed whilst the responses are still arriving. Lower levels are
+	 * populated as nodes are expanded, as usual.</p>
+	 *
+	 * @param	q						the query information model to build the tree from
+	 * @param	filter					the query request identifier as a list of DICOM attributes
+	 * @param	populateIncrementally	if true, the top level is populated by performIncrementalQuery()
+	 * @param	debugLevel				0 is no debugging (silent), &gt; 0 more verbose levels of debugging
+	 * @throws	DicomException	thrown if there are problems building the tree
+	 */
+	public QueryTreeModel(QueryInformationModel q,AttributeList filter,boolean populateIncrementally,int debugLevel) throws DicomException {
+		this(q,filter,debugLevel);
+		if (root != null && populateIncrementally) {
+			root.setChildrenPopulatedIncrementally();
+		}
+	}
+
+	/**
+	 * <p>Query for the top level of the tree, passing each record to a listener as it is received.</p>
+	 *
+	 * <p>The records are not added to the tree; the listener should pass them to
+	 * {@link #insertRecords(List) insertRecords()} on the event dispatch thread. The query may be cancelled
+	 * part way through by the listener, in which case a C-CANCEL is sent.</p>
+	 *
+	 * @param	queryFilter		the query request identifier for this query, e.g., the tree filter restricted to a range of dates
+	 * @param	listener		receives each top level record
+	 * @throws	IOException				thrown if there is an generic IO problem
+	 * @throws	DicomException			thrown if there is a problem performing or parsing the query
+	 * @throws	DicomNetworkException	thrown if there is a problem with the DICOM network protocol
+	 */
+	public void performIncrementalQuery(AttributeList queryFilter,IncrementalQueryListener listener) throws IOException, DicomException, DicomNetworkException {
+		if (root != null) {
+			root.performIncrementalQueryForChildren(queryFilter,listener);
+		}
+	}
+
+	/**
+	 * <p>Add records to the top level of the tree and notify the listeners.</p>
+	 *
+	 * <p>Must be called on the event dispatch thread.</p>
+	 *
+	 * @param	records		the records received by an incremental query
+	 */
+	public void insertRecords(List<QueryTreeRecord> records) {
+		if (root == null) {
+			return;
+		}
+		for (QueryTreeRecord record : records) {
+			int index = root.insertChild(record);
+			if (index >= 0 && listeners != null) {
+				TreeModelEvent event = new TreeModelEvent(this,new Object[] { root },new int[] { index },new Object[] { record });
+				for (int i=0; i<listeners.size(); ++i) {
+					((TreeModelListener)(listeners.elementAt(i))).treeNodesInserted(event);
+				}
+			}
+		}
+	}
+
 	/**
 	 * @param	node
 	 */
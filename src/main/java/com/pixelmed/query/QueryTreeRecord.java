@@ -328,7 +328,19 @@ if (debugLevel > 0) System.err.println("QueryTreeRecord.populateChildren(): uniq
 	 * @param	child	the child node to be added
 	 */
 	public void addChild(QueryTreeRecord child) {
-if (debugLevel > 1) System.err.println("QueryTreeRecord.addChild(): child="+child);
+		insertChild(child);
+	}
+
+	/**
+	 * <p>Add a child to this nodes sorted collection of children.</p>
+	 *
+	 * <p>If the children have already been populated, the count of children is updated to include the new child.</p>
+	 *
+	 * @param	child	the child node to be added
+	 * @return			the index at which the child was added, or -1 if an equal child was already present
+	 */
+	public int insertChild(QueryTreeRecord child) {
+if (debugLevel > 1) System.err.println("QueryTreeRecord.insertChild(): child="+child);
 		if (children == null) {
 			children=new ArrayList();
 		}
@@ -336,10 +348,62 @@ if (debugLevel > 1) System.err.println("QueryTreeRecord.addChild(): child="+chil
 		// and is way faster than children.add(child) followed by Collections.sort(children)
 		int index = Collections.binarySearch(children,child);
 		if (index < 0) {
-			children.add(-index-1,child);
+			index = -index-1;
+			children.add(index,child);
+			if (childrenPopulated) {
+				numberOfChildren = children.size();
+			}
+			return index;
+		}
+		return -1;
+	}
+
+	/**
+	 * <p>Query for the children of this node, passing each one to a listener as it is received rather than adding it.</p>
+	 *
+	 * <p>Any number of such queries may be performed, for example to retrieve the children in pages. Since the
+	 * children are not added by this method, {@link #setChildrenPopulatedIncrementally() setChildrenPopulatedIncrementally()}
+	 * should first be called to prevent a query being performed when the children are first requested.</p>
+	 *
+	 * @param	queryFilter	the query request identifier, which may differ from the filter used for the rest of the tree
+	 * @param	listener	receives each child, and is asked after each one whether the query should be cancelled
+	 * @throws	IOException				thrown if there is an generic IO problem
+	 * @throws	DicomException			thrown if there is a problem performing or parsing the query
+	 * @throws	DicomNetworkException	thrown if there is a problem with the DICOM network protocol
+	 */
+	public void performIncrementalQueryForChildren(AttributeList queryFilter,final IncrementalQueryListener listener) throws IOException, DicomException, DicomNetworkException {
+		InformationEntity queryLevel = getQueryLevelToPopulateChildren();
+		if (queryLevel != null) {
+			final AttributeTag uniqueKeyTagFromThisLevel = q.getUniqueKeyForInformationEntity(queryLevel);
+			IdentifierHandler handler = new OurResponseIdentifierHandler(this,queryLevel,uniqueKeyTagFromThisLevel) {
+				public void doSomethingWithIdentifier(AttributeList responseIdentifier) throws DicomException {
+					String value = q.getStringValueForTreeFromResponseIdentifier(ie,responseIdentifier);
+					Attribute uniqueKey = responseIdentifier.get(uniqueKeyTagFromThisLevel);
+					if (uniqueKey == null || uniqueKey.getVL() == 0) {
+						throw new DicomException("Invalid query response for "+ie+" without unique key value in "+uniqueKeyTagFromThisLevel+" from "+q);
+					}
+					else {
+						listener.recordReceived(new QueryTreeRecord(q,filter,parentNode,value,ie,uniqueKey,responseIdentifier,debugLevel));
+					}
+				}
+
+				public boolean isCancelled() {
+					return listener.isCancelled();
+				}
+			};
+			q.performQuery(queryFilter,uniqueKeys,queryLevel,handler);
 		}
 	}
 
+	/**
+	 * <p>Mark this node as having no children, which will be added later by calls to
+	 * {@link #insertChild(QueryTreeRecord) insertChild()} rather than by a query when they are first requested.</p>
+	 */
+	public void setChildrenPopulatedIncrementally() {
+		childrenPopulated = true;
+		numberOfChildren = children == null ? 0 : children.size();
+	}
+
 	/**
 	 * <p>Add a sibling to this node,
 	 * that is add a child to this
@@ -16,11 +16,11 @@ import org.dcm4che3.data.VR;
 import org.dcm4che3.io.DicomOutputStream;
 import org.dcm4che3.util.UIDUtils;
 import uk.ac.ucl.cs.cmic.giftcloud.util.CloseableResource;
-import uk.ac.ucl.cs.cmic.giftcloud.util.Optional;
 
-import java.io.DataInputStream;
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.Date;
 
 /**
@@ -37,7 +37,26 @@ public class DicomFileBuilder {
     private static final String charset = "ISO_IR 100";
     private static final String imageType = "ORIGINAL\\PRIMARY";
     private static final String MANUFACTURER = "mpg2dcm";
-    private byte[] buffer = new byte[8192];
+
+    /**
+     * Private creator of the block in a DICOM header file which records the MPEG file providing the pixel data
+     */
+    public static final String VIDEO_FILE_PRIVATE_CREATOR = "mpg2dcm";
+
+    /**
+     * Private creator element reserving block 0x10 of group 0x0009
+     */
+    public static final int VIDEO_FILE_PRIVATE_CREATOR_TAG = 0x00090010;
+
+    /**
+     * Private element in a DICOM header file containing the absolute path of the MPEG file
+     */
+    public static final int VIDEO_FILE_TAG = 0x00091010;
+
+    // The largest even length which can be stored in a fragment item, since 0xFFFFFFFF denotes an undefined length
+    private static final long MAXIMUM_FRAGMENT_LENGTH = 0xFFFFFFFEL;
+
+    private byte[] buffer = new byte[65536];
     private final Attributes dicomAttributes;
 
     /**
@@ -55,44 +74,195 @@ public class DicomFileBuilder {
         this.dicomAttributes = dicomAttributes;
     }
 
+    /**
+     * Create a DICOM file from the provided MPEG file
+     *
+     * <p>The MPEG data are copied directly from the input file to the output file using the file channels, without
+     * passing through the Java heap. Files of any size are supported, since the data are split into multiple fragments
+     * where they are too large for a single fragment.
+     *
+     * @param dicomOutputFile File object describing the DICOM file to be created
+     * @param mpegFile the MPEG file
+     * @throws IOException if the MPEG file could not be read or the DICOM file could not be written
+     */
+    public void writeDicomFile(final File dicomOutputFile, final File mpegFile) throws IOException {
+        new CloseableResource<Void, FileInputStream>() {
+            @Override
+            public Void run() throws IOException {
+                resource = new FileInputStream(mpegFile);
+                final FileChannel mpegChannel = resource.getChannel();
+                writeDicomFile(dicomOutputFile, mpegChannel.size(), new ChannelFragmentWriter(mpegChannel, mpegFile));
+                return null;
+            }
+        }.tryWithResource();
+    }
+
     /**
      * Create a DICOM file from the provided MPEG input stream
      *
      * @param dicomOutputFile File object describing the DICOM file to be created
-     * @param mpgInput a DataInputStream to the MPEG file
-     * @throws IOException
+     * @param mpgInput a stream to the MPEG data
+     * @param length the number of bytes of MPEG data to read from the stream
+     * @throws IOException if the MPEG stream could not be read or the DICOM file could not be written
+     */
+    public void writeDicomFile(final File dicomOutputFile, final InputStream mpgInput, final long length) throws IOException {
+        writeDicomFile(dicomOutputFile, length, new FragmentWriter() {
+            @Override
+            public void writeFragment(final DicomOutputStream dicomOutputStream, final WritableByteChannel dicomChannel, final long offset, final long length) throws IOException {
+                long remaining = length;
+                while (remaining > 0) {
+                    final int r = mpgInput.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (r < 0) {
+                        throw new EOFException("The MPEG stream ended unexpectedly");
+                    }
+                    dicomOutputStream.write(buffer, 0, r);
+                    remaining -= r;
+                }
+            }
+        });
+    }
+
+    /**
+     * Create a DICOM file containing the file meta information and DICOM tags, but not the pixel data
+     *
+     * <p>The header file, together with the MPEG file from which it was created, describes a complete DICOM instance
+     * without making a copy of the video. The pixel data can be added when the instance is serialised, using
+     * {@link #writeEncapsulatedPixelData(OutputStream, File)}.
+     *
+     * <p>The path of the MPEG file is stored in the header in the private element {@link #VIDEO_FILE_TAG}, so the
+     * header can still be completed after it has been moved, copied or read by another process. This element should
+     * be removed when the pixel data are added.
+     *
+     * @param dicomHeaderFile File object describing the DICOM header file to be created
+     * @param mpegFile the MPEG file which provides the pixel data
+     * @throws IOException if the DICOM file could not be written
      */
-    public void writeDicomFile(final File dicomOutputFile, final DataInputStream mpgInput, final Optional<Integer> length) throws IOException {
+    public void writeDicomHeaderFile(final File dicomHeaderFile, final File mpegFile) throws IOException {
+
+        // Ensure that essential tags are set to default values if not already present
+        setDefaultAttributes();
+
+        final Attributes headerAttributes = new Attributes(dicomAttributes);
+        headerAttributes.setString(VIDEO_FILE_PRIVATE_CREATOR_TAG, VR.LO, VIDEO_FILE_PRIVATE_CREATOR);
+        headerAttributes.setString(VIDEO_FILE_TAG, VR.UT, mpegFile.getAbsolutePath());
+
+        new CloseableResource<Void, FileOutputStream>() {
+            @Override
+            public Void run() throws IOException {
+                resource = new FileOutputStream(dicomHeaderFile);
+                final DicomOutputStream dicomOutputStream = new DicomOutputStream(new BufferedOutputStream(resource), UID.ExplicitVRLittleEndian);
+                dicomOutputStream.writeDataset(headerAttributes.createFileMetaInformation(transferSyntax), headerAttributes);
+                dicomOutputStream.flush();
+                return null;
+            }
+        }.tryWithResource();
+    }
+
+    /**
+     * Writes the Pixel Data element for an MPEG file to a stream, in explicit VR little endian encoding
+     *
+     * <p>Appending this to a DICOM header file created by {@link #writeDicomHeaderFile(File, File)}, without the
+     * private video file element, produces the same DICOM file as {@link #writeDicomFile(File, File)}. The output stream is flushed but not closed.
+     *
+     * @param outputStream the stream to which the pixel data will be written
+     * @param mpegFile the MPEG file
+     * @throws IOException if the MPEG file could not be read or the stream could not be written
+     */
+    public static void writeEncapsulatedPixelData(final OutputStream outputStream, final File mpegFile) throws IOException {
+        new CloseableResource<Void, FileInputStream>() {
+            @Override
+            public Void run() throws IOException {
+                resource = new FileInputStream(mpegFile);
+                final FileChannel mpegChannel = resource.getChannel();
+                final DicomOutputStream dicomOutputStream = new DicomOutputStream(outputStream, UID.ExplicitVRLittleEndian);
+                writeEncapsulatedPixelData(dicomOutputStream, Channels.newChannel(outputStream), mpegChannel.size(), new ChannelFragmentWriter(mpegChannel, mpegFile));
+                dicomOutputStream.flush();
+                return null;
+            }
+        }.tryWithResource();
+    }
+
+    private void writeDicomFile(final File dicomOutputFile, final long mpegLength, final FragmentWriter fragmentWriter) throws IOException {
 
         // Ensure that essential tags are set to default values if not already present
         setDefaultAttributes();
 
         // Create the DICOM file
-        new CloseableResource<Void, DicomOutputStream>() {
+        new CloseableResource<Void, FileOutputStream>() {
             @Override
             public Void run() throws IOException {
-                resource = new DicomOutputStream(dicomOutputFile);
+                resource = new FileOutputStream(dicomOutputFile);
+                final FileChannel dicomChannel = resource.getChannel();
+                final DicomOutputStream dicomOutputStream = new DicomOutputStream(new BufferedOutputStream(resource), UID.ExplicitVRLittleEndian);
 
                 // Write out the DICOM headers
-                resource.writeDataset(dicomAttributes.createFileMetaInformation(transferSyntax), dicomAttributes);
+                dicomOutputStream.writeDataset(dicomAttributes.createFileMetaInformation(transferSyntax), dicomAttributes);
 
-                // If no length is specified, we set the length to -1 (UNDEFINED LENGTH) and then write out a sequence delimitation tag to terminate the pixel data
-                final int mpgLength = length.orElse(-1);
+                writeEncapsulatedPixelData(dicomOutputStream, dicomChannel, mpegLength, fragmentWriter);
+                dicomOutputStream.flush();
+                return null;
+            }
+        }.tryWithResource();
+    }
 
-                // Write out the DICOM pixel data
-                resource.writeHeader(Tag.PixelData, VR.OB, mpgLength);
-                int r;
-                while ((r = mpgInput.read(buffer)) > 0) {
-                    resource.write(buffer, 0, r);
-                }
+    /**
+     * Writes the MPEG data as encapsulated pixel data: an empty basic offset table item, followed by the MPEG data
+     * in one or more fragment items, followed by a sequence delimiter. Each fragment must have an even length of less
+     * than 2^32 - 1 bytes, so the final fragment is padded if necessary
+     */
+    private static void writeEncapsulatedPixelData(final DicomOutputStream dicomOutputStream, final WritableByteChannel dicomChannel, final long mpegLength, final FragmentWriter fragmentWriter) throws IOException {
+
+        // Encapsulated pixel data always has an undefined length
+        dicomOutputStream.writeHeader(Tag.PixelData, VR.OB, -1);
+        dicomOutputStream.writeHeader(Tag.Item, null, 0);
+
+        long offset = 0;
+        while (offset < mpegLength) {
+            final long fragmentLength = Math.min(MAXIMUM_FRAGMENT_LENGTH, mpegLength - offset);
+            final boolean padded = (fragmentLength & 1) != 0;
+            dicomOutputStream.writeHeader(Tag.Item, null, (int) (padded ? fragmentLength + 1 : fragmentLength));
+            fragmentWriter.writeFragment(dicomOutputStream, dicomChannel, offset, fragmentLength);
+            if (padded) {
+                dicomOutputStream.write(0);
+            }
+            offset += fragmentLength;
+        }
+
+        dicomOutputStream.writeHeader(Tag.SequenceDelimitationItem, null, 0);
+    }
+
+    /**
+     * Copies a fragment of MPEG data into the DICOM file
+     */
+    private interface FragmentWriter {
+        void writeFragment(final DicomOutputStream dicomOutputStream, final WritableByteChannel dicomChannel, final long offset, final long length) throws IOException;
+    }
+
+    /**
+     * Copies fragments directly from the MPEG file channel to the output channel
+     */
+    private static class ChannelFragmentWriter implements FragmentWriter {
+        private final FileChannel mpegChannel;
+        private final File mpegFile;
 
-                // If no length is specified, we have previously set the length to -1 (UNDEFINED LENGTH), so we need to write out a sequence delimitation tag to terminate the pixel data
-                if (!length.isPresent()) {
-                    resource.writeHeader(Tag.SequenceDelimitationItem, null, 0);
+        ChannelFragmentWriter(final FileChannel mpegChannel, final File mpegFile) {
+            this.mpegChannel = mpegChannel;
+            this.mpegFile = mpegFile;
+        }
+
+        @Override
+        public void writeFragment(final DicomOutputStream dicomOutputStream, final WritableByteChannel dicomChannel, final long offset, final long length) throws IOException {
+            // Anything buffered in the DICOM stream must reach the output before writing through the channel
+            dicomOutputStream.flush();
+            long transferred = 0;
+            while (transferred < length) {
+                final long count = mpegChannel.transferTo(offset + transferred, length - transferred, dicomChannel);
+                if (count <= 0) {
+                    throw new EOFException("The MPEG file " + mpegFile.getPath() + " ended unexpectedly");
                 }
-                return null;
+                transferred += count;
             }
-        }.tryWithResource();
+        }
     }
 
     /** Sets DICOM tags from MPEG metaheader information
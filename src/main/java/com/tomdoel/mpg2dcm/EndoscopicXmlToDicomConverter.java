@@ -19,7 +19,13 @@ import org.xml.sax.SAXException;
 import javax.xml.parsers.ParserConfigurationException;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
 
 /**
  * Creates a DICOM file from an XML file describing an endoscopy data structure with MPEG-2 videos
@@ -31,35 +37,115 @@ import java.text.ParseException;
  */
 public class EndoscopicXmlToDicomConverter {
 
+    /**
+     * Creates a DICOM file for each video referenced in the XML file
+     *
+     * @param xmlInputFile the XML file describing the endoscopic procedure
+     * @param dicomOutputPath the directory in which to create the DICOM files
+     */
     public static void convert(final File xmlInputFile, final String dicomOutputPath) throws IOException, SAXException, ParserConfigurationException, ParseException {
+        convert(xmlInputFile, dicomOutputPath, new VideoConverter() {
+            @Override
+            public void convert(final File videoFile, final File dicomOutputFile, final Attributes dicomAttributes) throws IOException {
+                MpegFileConverter.convertWithAttributes(videoFile, dicomOutputFile, dicomAttributes);
+            }
+        });
+    }
+
+    /**
+     * Creates a DICOM header file for each video referenced in the XML file. The header files do not contain the
+     * pixel data, which should be written from the video file when each DICOM instance is serialised. Each header file
+     * records the path of its video file in the private element {@link DicomFileBuilder#VIDEO_FILE_TAG}
+     *
+     * @param xmlInputFile the XML file describing the endoscopic procedure
+     * @param dicomOutputPath the directory in which to create the DICOM header files
+     * @return a map from each DICOM header file to the video file which provides its pixel data
+     */
+    public static Map<File, File> convertToHeaders(final File xmlInputFile, final String dicomOutputPath) throws IOException, SAXException, ParserConfigurationException, ParseException {
+        return convert(xmlInputFile, dicomOutputPath, new VideoConverter() {
+            @Override
+            public void convert(final File videoFile, final File dicomOutputFile, final Attributes dicomAttributes) throws IOException {
+                MpegFileConverter.writeHeaderWithAttributes(videoFile, dicomOutputFile, dicomAttributes);
+            }
+        });
+    }
+
+    private static Map<File, File> convert(final File xmlInputFile, final String dicomOutputPath, final VideoConverter videoConverter) throws IOException, SAXException, ParserConfigurationException, ParseException {
         // Parse the XML file
         final EndoscopicFileProcessor converter = new EndoscopicFileProcessor(xmlInputFile);
 
         // Generate DICOM tags from the XML file - these will be shared across all files
         final Attributes sharedDicomAttributes = converter.getDicomAttributes();
 
-        int seriesNumber = 0;
+        final Map<File, File> dicomFiles = new LinkedHashMap<File, File>();
+        final List<Future<?>> conversions = new ArrayList<Future<?>>();
+
+        // The videos are independent so they are converted in parallel
+        final int numberOfThreads = Math.max(1, Math.min(converter.getVideoFileNames().size(), Runtime.getRuntime().availableProcessors()));
+        final ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+
+        try {
+            int seriesNumber = 0;
+
+            // Iterate over all video files
+            for (final File videoFile : converter.getVideoFileNames()) {
 
-        // Iterate over all video files
-        for (final File videoFile : converter.getVideoFileNames()) {
+                seriesNumber++;
 
-            seriesNumber++;
+                final Attributes fileDicomAttributes = new Attributes(sharedDicomAttributes);
 
-            final Attributes fileDicomAttributes = new Attributes(sharedDicomAttributes);
+                // Create a DICOM file in the output directory
+                final File dicomOutputFile = new File(dicomOutputPath, FilenameUtils.getBaseName(videoFile.getName()) + ".dcm");
 
-            // Create a DICOM file in the output directory
-            final File dicomOutputFile = new File(dicomOutputPath, FilenameUtils.getBaseName(videoFile.getName()) + ".dcm");
+                // Add a series number
+                fileDicomAttributes.setString(Tag.SeriesNumber, VR.IS, Integer.toString(seriesNumber));
 
-            // Add a series number
-            fileDicomAttributes.setString(Tag.SeriesNumber, VR.IS, Integer.toString(seriesNumber));
+                // We give a unique series instance UID to each video. For the first video we use the provided series UID if it exists.
+                if (seriesNumber > 1 || !fileDicomAttributes.contains(Tag.SeriesNumber)) {
+                    fileDicomAttributes.setString(Tag.SeriesInstanceUID, VR.UI, UIDUtils.createUID());
+                }
 
-            // We give a unique series instance UID to each video. For the first video we use the provided series UID if it exists.
-            if (seriesNumber > 1 || !fileDicomAttributes.contains(Tag.SeriesNumber)) {
-                fileDicomAttributes.setString(Tag.SeriesInstanceUID, VR.UI, UIDUtils.createUID());
+                // Add the shared DICOM tags and write to a DICOM file
+                conversions.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        videoConverter.convert(videoFile, dicomOutputFile, fileDicomAttributes);
+                        return null;
+                    }
+                }));
+                dicomFiles.put(dicomOutputFile, videoFile);
             }
 
-            // Add the shared DICOM tags and write to a DICOM file
-            MpegFileConverter.convertWithAttributes(videoFile, dicomOutputFile, fileDicomAttributes);
+            for (final Future<?> conversion : conversions) {
+                waitForConversion(conversion);
+            }
+
+        } finally {
+            executor.shutdownNow();
         }
+
+        return dicomFiles;
+    }
+
+    private static void waitForConversion(final Future<?> conversion) throws IOException {
+        try {
+            conversion.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while converting videos");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            } else {
+                throw new IOException(e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Creates the DICOM output for a single video file
+     */
+    private interface VideoConverter {
+        void convert(final File videoFile, final File dicomOutputFile, final Attributes dicomAttributes) throws IOException;
     }
 }
@@ -9,10 +9,9 @@
 package com.tomdoel.mpg2dcm;
 
 import org.dcm4che3.data.Attributes;
-import uk.ac.ucl.cs.cmic.giftcloud.util.CloseableResource;
 
-import java.io.*;
-import uk.ac.ucl.cs.cmic.giftcloud.util.Optional;
+import java.io.File;
+import java.io.IOException;
 
 
 /**
@@ -46,26 +45,28 @@ public class MpegFileConverter{
      * @throws IOException if the MPEG file could not be opened or the DICOM file could not be written
      */
     public static void convertWithAttributes(final File mpegFile, final File dicomOutputFile, final Attributes dicomAttributes) throws IOException {
-        new CloseableResource<Void, BufferedInputStream>() {
-            @Override
-            public Void run() throws IOException {
-                resource = new BufferedInputStream(new FileInputStream(mpegFile));
-                // Mark the stream because the file will be parsed initially to find the metadata
-                resource.mark(0);
-                final DataInputStream dataInputStream = new DataInputStream(resource);
-                final DicomFileBuilder dicomFileBuilder = new DicomFileBuilder(dicomAttributes);
+        final DicomFileBuilder dicomFileBuilder = new DicomFileBuilder(dicomAttributes);
 
-                // Set Dicom attributes based on the metadata from the mpeg file
-                dicomFileBuilder.applyMpegMetaHeader(MpegMetaData.getMetaDataFromMpegStream(dataInputStream));
+        // Set Dicom attributes based on the metadata from the mpeg file
+        dicomFileBuilder.applyMpegMetaHeader(MpegMetaData.getMetaDataFromMpegFile(mpegFile));
 
-                // Reset the stream to start from the beginning of the file
-                resource.reset();
-
-                // Write the
-                dicomFileBuilder.writeDicomFile(dicomOutputFile, dataInputStream, Optional.of((int)mpegFile.length()));
+        // Write the DICOM file, copying the MPEG data directly from the file
+        dicomFileBuilder.writeDicomFile(dicomOutputFile, mpegFile);
+    }
 
-                return null;
-            }
-        }.tryWithResource();
+    /**
+     * Create a DICOM header file for an MPEG2 file. This is the same as the file produced by
+     * {@link #convertWithAttributes(File, File, Attributes)} but without the pixel data, which can be written
+     * from the MPEG file when required using {@link DicomFileBuilder#writeEncapsulatedPixelData(java.io.OutputStream, File)}
+     *
+     * @param mpegFile the MPEG2 file
+     * @param dicomHeaderFile the DICOM header file that will be produced
+     * @param dicomAttributes contains DICOM tags which should be applied to the header. These will override default values.
+     * @throws IOException if the MPEG file could not be opened or the DICOM file could not be written
+     */
+    public static void writeHeaderWithAttributes(final File mpegFile, final File dicomHeaderFile, final Attributes dicomAttributes) throws IOException {
+        final DicomFileBuilder dicomFileBuilder = new DicomFileBuilder(dicomAttributes);
+        dicomFileBuilder.applyMpegMetaHeader(MpegMetaData.getMetaDataFromMpegFile(mpegFile));
+        dicomFileBuilder.writeDicomHeaderFile(dicomHeaderFile, mpegFile);
     }
 }
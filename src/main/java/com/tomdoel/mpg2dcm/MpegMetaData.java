@@ -8,11 +8,12 @@
 
 package com.tomdoel.mpg2dcm;
 
+import uk.ac.ucl.cs.cmic.giftcloud.util.CloseableResource;
 import uk.ac.ucl.cs.cmic.giftcloud.util.Optional;
 
-import java.io.BufferedInputStream;
-import java.io.IOException;
-import java.io.InputStream;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 /**
  * Stores metadata derived from an MPEG file
@@ -23,6 +24,10 @@ import java.io.InputStream;
  * @version 1.0
  */
 public class MpegMetaData {
+
+    // The sequence header is expected near the start of the stream, so only this many bytes are searched
+    private static final long HEADER_SEARCH_LENGTH = 1024 * 1024;
+
     private Optional<AspectRatio> aspectRatio = Optional.empty();
     private Optional<FrameRate> frameRate = Optional.empty();
     private Optional<Integer> Rows = Optional.empty();
@@ -75,20 +80,7 @@ public class MpegMetaData {
                 return mpegMetaData;
             }
             if (byteArray[0] == 0 && byteArray[1] == 0 && byteArray[2] == 0x01 && (byteArray[3] & 0xFF) == 0xB3) {
-                int size0 = mpegStream.read();
-                int size1 = mpegStream.read();
-                int size2 = mpegStream.read();
-                int aspectframe = mpegStream.read();
-                int cols = (size0 << 4) + (size1 & 0xF0);
-                int rows = ((size1 & 0x0F) << 8) + size2;
-                int aspectRatioType = (aspectframe & 0xF0) >> 4;
-                int frameRateType = (aspectframe & 0x0F);
-                final FrameRate frameRate = FrameRate.getFrameRate(frameRateType);
-                final AspectRatio aspectRatio = AspectRatio.getAspectRatioFromMpegCode(aspectRatioType);
-                mpegMetaData.setAspectRatio(aspectRatio);
-                mpegMetaData.setFrameRate(frameRate);
-                mpegMetaData.setColumns(cols);
-                mpegMetaData.setRows(rows);
+                mpegMetaData.setFromSequenceHeader(mpegStream.read(), mpegStream.read(), mpegStream.read(), mpegStream.read());
                 return mpegMetaData;
             } else {
                 mpegStream.reset();
@@ -98,6 +90,58 @@ public class MpegMetaData {
         }
     }
 
+    /**
+     * Reads in MPEG metadata from an MPEG file
+     *
+     * <p>Only the start of the file is read, since the sequence header is at the start of the stream. This is read
+     * directly from the file channel into a heap buffer. It is not mapped into memory, because a mapping is only
+     * released when it is garbage collected, and until then the file cannot be deleted or renamed on Windows
+     *
+     * @param mpegFile the MPEG file
+     * @return MpegMetaData object containing parsed header information
+     * @throws IOException if a failure occurred when reading from the file
+     */
+    public static MpegMetaData getMetaDataFromMpegFile(final File mpegFile) throws IOException {
+        final ByteBuffer prefix = new CloseableResource<ByteBuffer, FileInputStream>() {
+            @Override
+            public ByteBuffer run() throws IOException {
+                resource = new FileInputStream(mpegFile);
+                final FileChannel channel = resource.getChannel();
+                final ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(channel.size(), HEADER_SEARCH_LENGTH));
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer) < 0) {
+                        break;
+                    }
+                }
+                buffer.flip();
+                return buffer;
+            }
+        }.tryWithResource();
+
+        final MpegMetaData mpegMetaData = new MpegMetaData();
+        final int limit = prefix.limit();
+        for (int position = 0; position + 8 <= limit; position++) {
+            if (prefix.get(position) == 0 && prefix.get(position + 1) == 0 && prefix.get(position + 2) == 0x01 && (prefix.get(position + 3) & 0xFF) == 0xB3) {
+                mpegMetaData.setFromSequenceHeader(prefix.get(position + 4) & 0xFF, prefix.get(position + 5) & 0xFF, prefix.get(position + 6) & 0xFF, prefix.get(position + 7) & 0xFF);
+                break;
+            }
+        }
+        return mpegMetaData;
+    }
+
+    private void setFromSequenceHeader(final int size0, final int size1, final int size2, final int aspectframe) {
+        int cols = (size0 << 4) + ((size1 & 0xF0) >> 4);
+        int rows = ((size1 & 0x0F) << 8) + size2;
+        int aspectRatioType = (aspectframe & 0xF0) >> 4;
+        int frameRateType = (aspectframe & 0x0F);
+        final FrameRate frameRate = FrameRate.getFrameRate(frameRateType);
+        final AspectRatio aspectRatio = AspectRatio.getAspectRatioFromMpegCode(aspectRatioType);
+        setAspectRatio(aspectRatio);
+        setFrameRate(frameRate);
+        setColumns(cols);
+        setRows(rows);
+    }
+
     private void setAspectRatio(AspectRatio aspectRatio) {
         this.aspectRatio = Optional.of(aspectRatio);
     }
@@ -27,6 +27,8 @@ import org.nrg.dcm.edit.*;
 import uk.ac.ucl.cs.cmic.giftcloud.data.AssignedSessionVariable;
 import uk.ac.ucl.cs.cmic.giftcloud.data.SessionVariable;
 import uk.ac.ucl.cs.cmic.giftcloud.data.SessionVariableNames;
+import uk.ac.ucl.cs.cmic.giftcloud.metrics.LatencyHistogram;
+import uk.ac.ucl.cs.cmic.giftcloud.metrics.MetricsRegistry;
 import uk.ac.ucl.cs.cmic.giftcloud.restserver.DicomProjectAnonymisationScripts;
 import uk.ac.ucl.cs.cmic.giftcloud.restserver.GiftCloudLabel;
 import uk.ac.ucl.cs.cmic.giftcloud.restserver.GiftCloudProperties;
@@ -43,6 +45,8 @@ import java.util.Map;
  * Handles anonymisation of DICOM tags using XNAT anonymisation scripts
  */
 public class DicomMetaDataAnonymiser {
+    private static final LatencyHistogram anonymiseLatency = MetricsRegistry.getDefault().histogram("anonymise.metaData");
+
     private final DicomProjectAnonymisationScripts dicomProjectAnonymisationScripts;
     private GiftCloudReporter reporter;
     private String anonymisationMethodString;
@@ -59,8 +63,9 @@ public class DicomMetaDataAnonymiser {
      */
     public StopTagInputHandler makeStopTagInputHandler() throws IOException {
 
-        // The minimum stop tag is set to PatientBirthDate, because we will check the patient name, id and birth date tags to ensure anonymisation has occurred.
-        long top = Tag.PatientBirthDate;
+        // The minimum stop tag is set to PatientIdentityRemoved, because we will check the patient name, id and birth date tags to ensure anonymisation has occurred,
+        // and PatientIdentityRemoved to determine whether data which has already been anonymised can be copied unchanged
+        long top = Tag.PatientIdentityRemoved;
 
         // We go through the script applicators and check if any requires a higher tag number
         for (final ScriptApplicator a : dicomProjectAnonymisationScripts.getDicomScriptApplicators()) {
@@ -85,16 +90,20 @@ public class DicomMetaDataAnonymiser {
      * @throws ScriptEvaluationException
      */
     synchronized public void anonymiseMetaData(final File outputDicomFile, final UploadParameters uploadParameters, final DicomObject originalDicomObject) throws AttributeException, ScriptEvaluationException, IOException {
+        final long startNanos = System.nanoTime();
+        try {
+            final Iterable<org.nrg.dcm.edit.ScriptApplicator> applicators = dicomProjectAnonymisationScripts.getDicomScriptApplicators();
+            fixSessionVariableValues(uploadParameters.getProjectName(), uploadParameters.getSubjectLabel(), uploadParameters.getExperimentLabel(), originalDicomObject, applicators);
 
-        final Iterable<org.nrg.dcm.edit.ScriptApplicator> applicators = dicomProjectAnonymisationScripts.getDicomScriptApplicators();
-        fixSessionVariableValues(uploadParameters.getProjectName(), uploadParameters.getSubjectLabel(), uploadParameters.getExperimentLabel(), originalDicomObject, applicators);
+            for (final ScriptApplicator a : applicators) {
+                a.apply(outputDicomFile, originalDicomObject);
+            }
 
-        for (final ScriptApplicator a : applicators) {
-            a.apply(outputDicomFile, originalDicomObject);
+            originalDicomObject.putString(Tag.PatientIdentityRemoved, VR.CS, "YES");
+            originalDicomObject.putString(Tag.DeidentificationMethod, VR.LO, anonymisationMethodString);
+        } finally {
+            anonymiseLatency.recordSince(startNanos);
         }
-
-        originalDicomObject.putString(Tag.PatientIdentityRemoved, VR.CS, "YES");
-        originalDicomObject.putString(Tag.DeidentificationMethod, VR.LO, anonymisationMethodString);
     }
 
     /** Set the predefined variables for project, subject and session, so that these can be used in the DICOM anonymisation scripts
@@ -5,6 +5,7 @@ package uk.ac.ucl.cs.cmic.giftcloud.dicom;
 
 import com.google.common.io.ByteStreams;
 import com.pixelmed.dicom.DicomException;
+import com.tomdoel.mpg2dcm.DicomFileBuilder;
 import org.apache.commons.lang.StringUtils;
 import org.dcm4che2.data.*;
 import org.dcm4che2.io.*;
@@ -15,11 +16,15 @@ import org.slf4j.LoggerFactory;
 import uk.ac.ucl.cs.cmic.giftcloud.uploader.DicomPixelDataAnonymiser;
 import uk.ac.ucl.cs.cmic.giftcloud.util.GiftCloudException;
 import uk.ac.ucl.cs.cmic.giftcloud.util.GiftCloudUploaderError;
+import uk.ac.ucl.cs.cmic.giftcloud.util.Optional;
 
 import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
@@ -31,20 +36,21 @@ public class DicomSeriesZipper extends SeriesZipper {
     private final boolean dataAlreadyAnonymised;
     private final DicomMetaDataAnonymiser metaDataAnonymiser;
     private final UploadParameters uploadParameters;
-    private final StopTagInputHandler stopTagInputHandler;
+    private final DicomInputHandler inputHandler;
 
     public DicomSeriesZipper(final boolean dataAlreadyAnonymised, final DicomMetaDataAnonymiser metaDataAnonymiser, final DicomPixelDataAnonymiser pixelDataAnonymiser, final UploadParameters uploadParameters) throws IOException {
         this.dataAlreadyAnonymised = dataAlreadyAnonymised;
         this.metaDataAnonymiser = metaDataAnonymiser;
         this.uploadParameters = uploadParameters;
         this.pixelDataAnonymiser = pixelDataAnonymiser;
-        this.stopTagInputHandler = metaDataAnonymiser.makeStopTagInputHandler();
+        final StopTagInputHandler stopTagInputHandler = metaDataAnonymiser.makeStopTagInputHandler();
+        this.inputHandler = null == stopTagInputHandler ? null : new DeflateAwareInputHandler(stopTagInputHandler);
     }
 
     public void processNextFile(final File nextFile, final ZipOutputStream zos) throws AttributeException, IOException, ScriptEvaluationException, DicomException {
         final RedactedFileWrapper redactedFileWrapper = pixelDataAnonymiser.createRedactedFile(nextFile, dataAlreadyAnonymised);
         try {
-            addFileToZip(redactedFileWrapper.getFileToProcess(), zos, stopTagInputHandler);
+            addFileToZip(redactedFileWrapper.getFileToProcess(), zos, inputHandler);
         } finally {
             redactedFileWrapper.cleanup();
         }
@@ -68,7 +74,21 @@ public class DicomSeriesZipper extends SeriesZipper {
 
                 final DicomObject o = dis.readDicomObject();
 
-                if (metaDataAnonymiser.anonymisationIsRequired(o)) {
+                // A header file created from an endoscopy video refers to the video which provides its pixel data.
+                // The reference is read before the anonymisation scripts run, as they may remove private elements
+                final Optional<File> videoFile = VirtualDicomFiles.getVideoFile(o);
+                if (videoFile.isPresent()) {
+                    if (!videoFile.get().isFile()) {
+                        throw new IOException("The video file " + videoFile.get().getPath() + " which provides the pixel data for " + f.getPath() + " could not be found");
+                    }
+                    VirtualDicomFiles.removeVideoFileReference(o);
+                }
+
+                // PatientIdentityRemoved is only trusted if the data has already been anonymised. It is decided before
+                // the anonymisation scripts are run, because they set PatientIdentityRemoved on the decoded object
+                final boolean anonymisationRequired = !dataAlreadyAnonymised || metaDataAnonymiser.anonymisationIsRequired(o);
+
+                if (anonymisationRequired) {
                     // Temporarily store patient details to confirm they have been modified by the anonymisation scripts
                     final String originalPatientName = o.getString(Tag.PatientName);
                     final String originalPatientId = o.getString(Tag.PatientID);
@@ -96,15 +116,18 @@ public class DicomSeriesZipper extends SeriesZipper {
 
                 final String tsuid = o.getString(Tag.TransferSyntaxUID, UID.ImplicitVRLittleEndian);
                 final TransferSyntax tsOriginal = TransferSyntax.valueOf(tsuid);
-                if (tsOriginal.deflated() && null != handler) {
-                    // Can't do a simple binary copy with deflated transfer syntax.
-                    // Use no stop handler because we have to deserialize and serialize the entire object.
-                    try {
-                        dis.close();
-                    } catch (IOException ignore) {}
-                    addFileToZip(f, zos, null);
+
+                if (!anonymisationRequired && !videoFile.isPresent() && canCopyRawFile(f, o, tsOriginal)) {
+                    // Nothing in the file needs to change, so copy the bytes straight into the zip entry
+                    zos.putNextEntry(new ZipEntry(removeCompressionSuffix(f.getName())));
+                    remainder = copyRawFile(f, fin, zos);
+                    zos.closeEntry();
+                    logger.trace("copied {}, {} bytes", f, remainder);
                     return;
                 }
+
+                // With a deflated transfer syntax the input handler does not stop early, so the entire object has
+                // already been read in a single pass and is re-encoded below without the deflation
                 final TransferSyntax ts = tsOriginal.deflated() ? TransferSyntax.ExplicitVRLittleEndian : tsOriginal;
                 
                 zos.putNextEntry(new ZipEntry(removeCompressionSuffix(f.getName())));
@@ -115,12 +138,13 @@ public class DicomSeriesZipper extends SeriesZipper {
                 fmi.initFileMetaInformation(o.getString(Tag.SOPClassUID), o.getString(Tag.SOPInstanceUID), ts.uid());
                 dos.writeFileMetaInformation(fmi);
                 dos.writeDataset(o, ts);
-                if (null != handler) {
+                if (null != handler && !tsOriginal.deflated()) {
                     bis.reset();
                     remainder = ByteStreams.copy(bis, zos);
                 } else {
                     remainder = 0;
                 }
+                addVideoPixelData(videoFile, zos);
             } catch (IOException e) {
                 throw ioexception = e;
             } finally {
@@ -163,4 +187,62 @@ public class DicomSeriesZipper extends SeriesZipper {
         logger.trace("added {}, {} bytes streamed", f, remainder);
     }
 
+    /**
+     * For a DICOM header file without pixel data, writes the pixel data from the video file directly into the zip entry
+     */
+    private static void addVideoPixelData(final Optional<File> videoFile, final ZipOutputStream zos) throws IOException {
+        if (videoFile.isPresent()) {
+            DicomFileBuilder.writeEncapsulatedPixelData(zos, videoFile.get());
+        }
+    }
+
+    /**
+     * A file can be copied without modification if it is a complete, uncompressed Part 10 file with a non-deflated
+     * transfer syntax
+     */
+    private static boolean canCopyRawFile(final File f, final DicomObject o, final TransferSyntax ts) {
+        return !f.getName().endsWith(".gz") && !ts.deflated() && o.contains(Tag.TransferSyntaxUID);
+    }
+
+    /**
+     * Copies the whole of a file into the current zip entry
+     *
+     * @return the number of bytes copied
+     */
+    private static long copyRawFile(final File f, final FileInputStream fin, final ZipOutputStream zos) throws IOException {
+        final FileChannel inputChannel = fin.getChannel();
+        final WritableByteChannel outputChannel = Channels.newChannel(zos);
+        final long length = f.length();
+        long position = 0;
+        while (position < length) {
+            final long transferred = inputChannel.transferTo(position, length - position, outputChannel);
+            if (transferred <= 0) {
+                break;
+            }
+            position += transferred;
+        }
+        return position;
+    }
+
+    /**
+     * Delegates to a stop tag handler, unless the dataset uses a deflated transfer syntax. Deflated data cannot be copied
+     * as raw bytes after the stop tag, so in that case the whole object is read in the same pass
+     */
+    private static class DeflateAwareInputHandler implements DicomInputHandler {
+        private final DicomInputHandler stopTagInputHandler;
+
+        DeflateAwareInputHandler(final DicomInputHandler stopTagInputHandler) {
+            this.stopTagInputHandler = stopTagInputHandler;
+        }
+
+        @Override
+        public boolean readValue(final DicomInputStream in) throws IOException {
+            if (in.getTransferSyntax().deflated()) {
+                return in.readValue(in);
+            } else {
+                return stopTagInputHandler.readValue(in);
+            }
+        }
+    }
+
 }
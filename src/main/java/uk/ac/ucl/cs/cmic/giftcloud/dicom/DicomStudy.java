@@ -21,7 +21,7 @@ import org.nrg.dcm.edit.DicomUtils;
 import uk.ac.ucl.cs.cmic.giftcloud.data.Study;
 import uk.ac.ucl.cs.cmic.giftcloud.restserver.Project;
 import uk.ac.ucl.cs.cmic.giftcloud.restserver.XnatModalityParams;
-import uk.ac.ucl.cs.cmic.giftcloud.util.MapRegistry;
+import uk.ac.ucl.cs.cmic.giftcloud.util.IndexedRegistry;
 import uk.ac.ucl.cs.cmic.giftcloud.util.Registry;
 
 import java.io.File;
@@ -40,7 +40,7 @@ public class DicomStudy extends MapEntity implements Entity, Study {
         add(Tag.StudyTime);
     }});
 
-    private final Registry<Series> series = new MapRegistry<Series>(new TreeMap<Series, Series>());
+    private final Registry<Series> series = new IndexedRegistry<Series>();
     private final String patientId;
     private final String patientName;
     private final String studyUid;
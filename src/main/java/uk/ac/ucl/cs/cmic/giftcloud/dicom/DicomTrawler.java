@@ -19,6 +19,8 @@ import org.nrg.util.EditProgressMonitor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.ac.ucl.cs.cmic.giftcloud.data.Study;
+import uk.ac.ucl.cs.cmic.giftcloud.metrics.LatencyHistogram;
+import uk.ac.ucl.cs.cmic.giftcloud.metrics.MetricsRegistry;
 import uk.ac.ucl.cs.cmic.giftcloud.restserver.SeriesImportFilterApplicatorRetriever;
 import uk.ac.ucl.cs.cmic.giftcloud.restserver.ZipSeriesUploader;
 import uk.ac.ucl.cs.cmic.giftcloud.util.GiftCloudUploaderError;
@@ -53,6 +55,8 @@ public final class DicomTrawler implements Trawler {
             }});
     }
 
+    private static final LatencyHistogram readLatency = MetricsRegistry.getDefault().histogram("trawl.readHeader");
+
     private final Logger logger = LoggerFactory.getLogger(DicomTrawler.class);
 
     private final List<GiftCloudUploaderError> errors = new ArrayList<GiftCloudUploaderError>();
@@ -69,6 +73,7 @@ public final class DicomTrawler implements Trawler {
 			final File f = files.next();
 			if (f.isFile()) {
 				final DicomObject o;
+				final long startNanos = System.nanoTime();
 				try {
 					o = DicomUtils.read(f, new StopTagInputHandler(APP_MAX_TAG + 1)); // We don't need anything higher than this tag.
 				} catch (IOException e) {
@@ -77,6 +82,8 @@ public final class DicomTrawler implements Trawler {
 				} catch (Exception e) {
 					remaining.add(f);
 					continue;
+				} finally {
+					readLatency.recordSince(startNanos);
 				}
                 if (StringUtils.isBlank(o.getString(Tag.SOPClassUID))) {
                     errors.add(GiftCloudUploaderError.SOP_CLASS_UID_NOT_FOUND);
@@ -28,4 +28,6 @@ public interface FileCollection {
     Collection<File> getFiles();
 
     long getSize();
+
+    SeriesStatistics getStatistics();
 }
@@ -30,6 +30,7 @@ public class Series extends MapEntity implements Entity,Comparable<Series>,Itera
     }});
 
     private final Set<File> files = Sets.newLinkedHashSet();
+    private final SeriesStatistics statistics = new SeriesStatistics();
     private boolean uploadAllowed = true;
     private XnatModalityParams modalityParams;
 
@@ -50,7 +51,11 @@ public class Series extends MapEntity implements Entity,Comparable<Series>,Itera
     }
 
     public void addFile(final File f, final DicomObject o) {
-        files.add(f);
+        // The size is recorded once here so that it does not need to be read from the file system again. A header
+        // file created from a video is uploaded with the video as its pixel data, so the video is included in the size
+        if (files.add(f)) {
+            statistics.addFile(f.length() + VirtualDicomFiles.getVideoLength(o), o.getString(Tag.TransferSyntaxUID));
+        }
     }
 
     
@@ -116,11 +121,14 @@ public class Series extends MapEntity implements Entity,Comparable<Series>,Itera
     }
 
     public long getSize() {
-        long size = 0;
-        for (final File f : files) {
-            size += f.length();
-        }
-        return size;
+        return statistics.getTotalBytes();
+    }
+
+    /**
+     * @return the size and transfer syntax totals for the files added so far
+     */
+    public SeriesStatistics getStatistics() {
+        return statistics.copy();
     }
 
     public Iterator<File> iterator() {
@@ -27,11 +27,13 @@ public class SeriesFileCollection implements FileCollection {
     private final Collection<File> files;
     private final long size;
     private final int fileCount;
+    private final SeriesStatistics statistics;
 
     public SeriesFileCollection(final Series series) {
         files = series.getFiles();
         size = series.getSize();
         fileCount = series.getFileCount();
+        statistics = series.getStatistics();
     }
 
     @Override
@@ -48,4 +50,9 @@ public class SeriesFileCollection implements FileCollection {
     public long getSize() {
         return size;
     }
+
+    @Override
+    public SeriesStatistics getStatistics() {
+        return statistics;
+    }
 }
@@ -0,0 +1,121 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+package uk.ac.ucl.cs.cmic.giftcloud.dicom;
+
+import org.dcm4che2.data.UID;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Running totals of the files in a series, recorded as each file is added so that the size of an upload can be
+ * estimated without reading the file system again
+ */
+public class SeriesStatistics {
+
+    /**
+     * Key used in the transfer syntax histogram for files whose transfer syntax was not recorded in the header
+     */
+    public static final String UNKNOWN_TRANSFER_SYNTAX = "";
+
+    // Zip typically halves uncompressed image data, but makes little difference to data which are already compressed
+    private static final double UNCOMPRESSED_ZIP_RATIO = 0.5;
+
+    private int fileCount = 0;
+    private long totalBytes = 0;
+    private long uncompressedBytes = 0;
+    private final Map<String, Integer> transferSyntaxCounts = new TreeMap<String, Integer>();
+
+    SeriesStatistics() {
+    }
+
+    private SeriesStatistics(final SeriesStatistics other) {
+        fileCount = other.fileCount;
+        totalBytes = other.totalBytes;
+        uncompressedBytes = other.uncompressedBytes;
+        transferSyntaxCounts.putAll(other.transferSyntaxCounts);
+    }
+
+    /**
+     * Records a file added to the series
+     *
+     * @param bytes the size of the file
+     * @param transferSyntaxUid the transfer syntax from the file meta information, or null if there is none
+     */
+    synchronized void addFile(final long bytes, final String transferSyntaxUid) {
+        final String key = transferSyntaxUid == null ? UNKNOWN_TRANSFER_SYNTAX : transferSyntaxUid.trim();
+        final Integer count = transferSyntaxCounts.get(key);
+        transferSyntaxCounts.put(key, count == null ? 1 : count + 1);
+        fileCount++;
+        totalBytes += bytes;
+        if (isUncompressed(key)) {
+            uncompressedBytes += bytes;
+        }
+    }
+
+    /**
+     * @return a copy of the current totals, which will not change as further files are added
+     */
+    synchronized SeriesStatistics copy() {
+        return new SeriesStatistics(this);
+    }
+
+    public synchronized int getFileCount() {
+        return fileCount;
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * @return the total size of the files whose pixel data are not compressed
+     */
+    public synchronized long getUncompressedBytes() {
+        return uncompressedBytes;
+    }
+
+    /**
+     * @return the number of files with each transfer syntax UID
+     */
+    public synchronized Map<String, Integer> getTransferSyntaxHistogram() {
+        return Collections.unmodifiableMap(new TreeMap<String, Integer>(transferSyntaxCounts));
+    }
+
+    /**
+     * @return the approximate size of the series once it has been zipped for upload
+     */
+    public synchronized long getEstimatedZipBytes() {
+        return totalBytes - uncompressedBytes + (long) (uncompressedBytes * UNCOMPRESSED_ZIP_RATIO);
+    }
+
+    /**
+     * @return the approximate fraction of the series size which will be saved by zipping it
+     */
+    public synchronized double getEstimatedCompressionBenefit() {
+        return totalBytes == 0 ? 0 : 1.0 - (double) getEstimatedZipBytes() / totalBytes;
+    }
+
+    /**
+     * @param bytesPerSecond the expected upload rate
+     * @return the approximate time in milliseconds to upload the zipped series
+     */
+    public long getEstimatedUploadMillis(final double bytesPerSecond) {
+        return bytesPerSecond <= 0 ? 0 : (long) (getEstimatedZipBytes() * 1000 / bytesPerSecond);
+    }
+
+    private static boolean isUncompressed(final String transferSyntaxUid) {
+        // Files without file meta information are normally implicit VR little endian
+        return UNKNOWN_TRANSFER_SYNTAX.equals(transferSyntaxUid) || UID.ImplicitVRLittleEndian.equals(transferSyntaxUid) || UID.ExplicitVRLittleEndian.equals(transferSyntaxUid) || UID.ExplicitVRBigEndian.equals(transferSyntaxUid);
+    }
+}
@@ -8,6 +8,9 @@ import org.nrg.dcm.edit.AttributeException;
 import org.nrg.dcm.edit.ScriptEvaluationException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import uk.ac.ucl.cs.cmic.giftcloud.metrics.Counter;
+import uk.ac.ucl.cs.cmic.giftcloud.metrics.LatencyHistogram;
+import uk.ac.ucl.cs.cmic.giftcloud.metrics.MetricsRegistry;
 
 import java.io.File;
 import java.io.FileOutputStream;
@@ -15,6 +18,9 @@ import java.io.IOException;
 import java.util.zip.ZipOutputStream;
 
 public abstract class SeriesZipper {
+    private static final LatencyHistogram zipLatency = MetricsRegistry.getDefault().histogram("upload.zip");
+    private static final Counter zippedFileCount = MetricsRegistry.getDefault().counter("upload.zip.files");
+
     private final Logger logger = LoggerFactory.getLogger(SeriesZipper.class);
 
     protected static String removeCompressionSuffix(final String path) {
@@ -24,6 +30,7 @@ public abstract class SeriesZipper {
     public void buildSeriesZipFile(final File f, final FileCollection seriesFileCollection)
             throws IOException, AttributeException, ScriptEvaluationException {
         logger.debug("creating zip file {}", f);
+        final long startNanos = System.nanoTime();
         IOException ioexception = null;
         final FileOutputStream fos = new FileOutputStream(f);
         try {
@@ -63,6 +70,8 @@ public abstract class SeriesZipper {
                 }
             }
         }
+        zipLatency.recordSince(startNanos);
+        zippedFileCount.add(seriesFileCollection.getFileCount());
         logger.debug("zip file built");
     }
     
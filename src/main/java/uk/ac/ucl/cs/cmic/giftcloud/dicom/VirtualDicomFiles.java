@@ -0,0 +1,64 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+package uk.ac.ucl.cs.cmic.giftcloud.dicom;
+
+import com.tomdoel.mpg2dcm.DicomFileBuilder;
+import org.apache.commons.lang.StringUtils;
+import org.dcm4che2.data.DicomObject;
+import uk.ac.ucl.cs.cmic.giftcloud.util.Optional;
+
+import java.io.File;
+
+/**
+ * Identifies DICOM header files which do not contain their pixel data. The pixel data for each header file are read
+ * from a separate video file when the instance is added to a series zip file, so that large videos are never copied
+ * into a temporary DICOM file.
+ *
+ * <p>The path of the video file is stored in a private element of the header file itself, so the association
+ * survives a restart of the uploader, recovery of the upload spool, or a rename or copy of the header file
+ */
+public final class VirtualDicomFiles {
+
+    private VirtualDicomFiles() {
+    }
+
+    /**
+     * @param headerObject the dataset of a DICOM file, which must have been read at least as far as group 0x0009
+     * @return the video file which provides the pixel data for this DICOM file, or an empty Optional if the DICOM file is complete
+     */
+    public static Optional<File> getVideoFile(final DicomObject headerObject) {
+        if (!DicomFileBuilder.VIDEO_FILE_PRIVATE_CREATOR.equals(headerObject.getString(DicomFileBuilder.VIDEO_FILE_PRIVATE_CREATOR_TAG))) {
+            return Optional.empty();
+        }
+        final String videoPath = headerObject.getString(DicomFileBuilder.VIDEO_FILE_TAG);
+        return StringUtils.isBlank(videoPath) ? Optional.<File>empty() : Optional.of(new File(videoPath));
+    }
+
+    /**
+     * @param headerObject the dataset of a DICOM file, which must have been read at least as far as group 0x0009
+     * @return the number of bytes of pixel data which will be added from the video file, or zero if the DICOM file is complete
+     */
+    public static long getVideoLength(final DicomObject headerObject) {
+        final Optional<File> videoFile = getVideoFile(headerObject);
+        return videoFile.isPresent() ? videoFile.get().length() : 0;
+    }
+
+    /**
+     * Removes the private elements which refer to the video file, so that they are not uploaded with the instance
+     *
+     * @param headerObject the dataset of a DICOM header file
+     */
+    public static void removeVideoFileReference(final DicomObject headerObject) {
+        headerObject.remove(DicomFileBuilder.VIDEO_FILE_TAG);
+        headerObject.remove(DicomFileBuilder.VIDEO_FILE_PRIVATE_CREATOR_TAG);
+    }
+}
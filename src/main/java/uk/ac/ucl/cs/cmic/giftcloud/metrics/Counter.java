@@ -0,0 +1,33 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+package uk.ac.ucl.cs.cmic.giftcloud.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread-safe count of events, which can be updated without allocating any objects
+ */
+public class Counter {
+    private final AtomicLong count = new AtomicLong();
+
+    public void increment() {
+        count.incrementAndGet();
+    }
+
+    public void add(final long amount) {
+        count.addAndGet(amount);
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+}
@@ -0,0 +1,23 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+package uk.ac.ucl.cs.cmic.giftcloud.metrics;
+
+/**
+ * A value which is measured at the time it is reported, such as the length of a queue
+ */
+public interface Gauge {
+
+    /**
+     * @return the current value. This may be called from any thread so should not block
+     */
+    long getValue();
+}
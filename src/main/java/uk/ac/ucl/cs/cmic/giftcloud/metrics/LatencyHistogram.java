@@ -0,0 +1,159 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+package uk.ac.ucl.cs.cmic.giftcloud.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe histogram of latencies, using logarithmically spaced buckets in the same way as HdrHistogram
+ *
+ * <p>Latencies are recorded in microseconds. Each power of two is divided into 8 linear sub-buckets, so any recorded
+ * value is reported to within 12.5%, across the full range of a long. Recording a value only updates atomic counters,
+ * so it is safe to call from any stage of the upload pipeline without allocating objects or taking locks.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong totalMicros = new AtomicLong();
+
+    /**
+     * Records the time since an operation started
+     *
+     * @param startNanos the value of {@link System#nanoTime()} when the operation started
+     */
+    public void recordSince(final long startNanos) {
+        recordNanos(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Records a single latency
+     *
+     * @param nanos the latency in nanoseconds
+     */
+    public void recordNanos(final long nanos) {
+        final long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+        counts.incrementAndGet(getBucketIndex(micros));
+        totalMicros.addAndGet(micros);
+    }
+
+    /**
+     * @return a copy of the current counts. Values recorded concurrently may or may not be included
+     */
+    public Snapshot getSnapshot() {
+        final long[] snapshotCounts = new long[BUCKET_COUNT];
+        for (int index = 0; index < BUCKET_COUNT; index++) {
+            snapshotCounts[index] = counts.get(index);
+        }
+        return new Snapshot(snapshotCounts, totalMicros.get());
+    }
+
+    static int getBucketIndex(final long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int shift = exponent - SUB_BUCKET_BITS;
+        final int subBucket = (int) ((value >>> shift) & (SUB_BUCKET_COUNT - 1));
+        return (shift + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    static long getBucketUpperBound(final int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        final int shift = index / SUB_BUCKET_COUNT - 1;
+        final long lowerBound = ((long) (SUB_BUCKET_COUNT + index % SUB_BUCKET_COUNT)) << shift;
+        return lowerBound + (1L << shift) - 1;
+    }
+
+    /**
+     * An immutable copy of the histogram counts, from which percentiles can be computed
+     */
+    public static class Snapshot {
+        private final long[] counts;
+        private final long totalMicros;
+        private final long count;
+
+        private Snapshot(final long[] counts, final long totalMicros) {
+            this.counts = counts;
+            this.totalMicros = totalMicros;
+            long count = 0;
+            for (final long bucketCount : counts) {
+                count += bucketCount;
+            }
+            this.count = count;
+        }
+
+        /**
+         * @return the number of latencies recorded
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return the mean latency in microseconds, or zero if nothing has been recorded
+         */
+        public long getMeanMicros() {
+            return count == 0 ? 0 : totalMicros / count;
+        }
+
+        /**
+         * @param percentile a value between 0 and 100
+         * @return the upper bound in microseconds of the bucket containing the given percentile, or zero if nothing has been recorded
+         */
+        public long getPercentileMicros(final double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            final long target = Math.max(1, (long) Math.ceil(count * percentile / 100.0));
+            long cumulative = 0;
+            for (int index = 0; index < counts.length; index++) {
+                cumulative += counts[index];
+                if (cumulative >= target) {
+                    return getBucketUpperBound(index);
+                }
+            }
+            return getMaxMicros();
+        }
+
+        /**
+         * @return the upper bound in microseconds of the highest bucket containing a recorded latency, or zero if nothing has been recorded
+         */
+        public long getMaxMicros() {
+            for (int index = counts.length - 1; index >= 0; index--) {
+                if (counts[index] > 0) {
+                    return getBucketUpperBound(index);
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * @param earlier a snapshot of the same histogram taken before this one
+         * @return a snapshot of the latencies which were recorded between the two snapshots
+         */
+        public Snapshot minus(final Snapshot earlier) {
+            final long[] difference = new long[counts.length];
+            for (int index = 0; index < counts.length; index++) {
+                difference[index] = counts[index] - earlier.counts[index];
+            }
+            return new Snapshot(difference, totalMicros - earlier.totalMicros);
+        }
+    }
+}
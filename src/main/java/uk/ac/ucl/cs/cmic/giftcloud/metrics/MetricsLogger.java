@@ -0,0 +1,91 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+package uk.ac.ucl.cs.cmic.giftcloud.metrics;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically writes a snapshot of a {@link MetricsRegistry} to the log
+ *
+ * <p>Each snapshot covers only the interval since the previous snapshot, so the log shows how the throughput and
+ * latency of each stage change over time. Stages with no activity during the interval are omitted.
+ */
+public class MetricsLogger {
+    private final Logger logger = LoggerFactory.getLogger(MetricsLogger.class);
+
+    private final MetricsRegistry registry;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("GIFT-Cloud metrics logger %d").build());
+    private final Map<String, Long> previousCounts = new HashMap<String, Long>();
+    private final Map<String, LatencyHistogram.Snapshot> previousSnapshots = new HashMap<String, LatencyHistogram.Snapshot>();
+
+    public MetricsLogger(final MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Starts logging snapshots at a fixed interval
+     *
+     * @param intervalSeconds the time between snapshots
+     */
+    public void start(final long intervalSeconds) {
+        executor.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    logSnapshot();
+                } catch (Throwable t) {
+                    // A failure must not cancel the scheduled task
+                    logger.warn("Unable to log metrics", t);
+                }
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Logs the changes since the previous snapshot
+     */
+    synchronized void logSnapshot() {
+        for (final Map.Entry<String, Counter> counter : registry.getCounters().entrySet()) {
+            final long count = counter.getValue().getCount();
+            final Long previousCount = previousCounts.put(counter.getKey(), count);
+            final long change = previousCount == null ? count : count - previousCount;
+            if (change != 0) {
+                logger.info("{} +{} (total {})", new Object[]{counter.getKey(), change, count});
+            }
+        }
+
+        for (final Map.Entry<String, Gauge> gauge : registry.getGauges().entrySet()) {
+            logger.info("{} = {}", gauge.getKey(), gauge.getValue().getValue());
+        }
+
+        for (final Map.Entry<String, LatencyHistogram> histogram : registry.getHistograms().entrySet()) {
+            final LatencyHistogram.Snapshot snapshot = histogram.getValue().getSnapshot();
+            final LatencyHistogram.Snapshot previousSnapshot = previousSnapshots.put(histogram.getKey(), snapshot);
+            final LatencyHistogram.Snapshot interval = previousSnapshot == null ? snapshot : snapshot.minus(previousSnapshot);
+            if (interval.getCount() > 0) {
+                logger.info("{} count={} mean={}us p50={}us p90={}us p99={}us max={}us", new Object[]{histogram.getKey(), interval.getCount(), interval.getMeanMicros(), interval.getPercentileMicros(50), interval.getPercentileMicros(90), interval.getPercentileMicros(99), interval.getMaxMicros()});
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+package uk.ac.ucl.cs.cmic.giftcloud.metrics;
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Exports the contents of a {@link MetricsRegistry} through JMX, so that the pipeline can be monitored with tools
+ * such as JConsole or VisualVM
+ *
+ * <p>Each counter and gauge is an attribute with the metric name. Each histogram provides the attributes
+ * "&lt;name&gt;.count", "&lt;name&gt;.meanMicros", "&lt;name&gt;.p50Micros", "&lt;name&gt;.p90Micros",
+ * "&lt;name&gt;.p99Micros" and "&lt;name&gt;.maxMicros". All attributes are read-only longs.
+ */
+public class MetricsMBean implements DynamicMBean {
+
+    public static final String OBJECT_NAME = "uk.ac.ucl.cs.cmic.giftcloud:type=Metrics";
+
+    private static final String COUNT_SUFFIX = ".count";
+    private static final String MEAN_SUFFIX = ".meanMicros";
+    private static final String P50_SUFFIX = ".p50Micros";
+    private static final String P90_SUFFIX = ".p90Micros";
+    private static final String P99_SUFFIX = ".p99Micros";
+    private static final String MAX_SUFFIX = ".maxMicros";
+    private static final String[] HISTOGRAM_SUFFIXES = {COUNT_SUFFIX, MEAN_SUFFIX, P50_SUFFIX, P90_SUFFIX, P99_SUFFIX, MAX_SUFFIX};
+
+    private final MetricsRegistry registry;
+
+    public MetricsMBean(final MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Registers an MBean for the registry with the platform MBean server, replacing any previous registration
+     *
+     * @param registry the metrics to export
+     * @throws JMException if the MBean could not be registered
+     */
+    public static void register(final MetricsRegistry registry) throws JMException {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName objectName = new ObjectName(OBJECT_NAME);
+        if (server.isRegistered(objectName)) {
+            server.unregisterMBean(objectName);
+        }
+        server.registerMBean(new MetricsMBean(registry), objectName);
+    }
+
+    @Override
+    public Object getAttribute(final String attribute) throws AttributeNotFoundException {
+        final Counter counter = registry.getCounters().get(attribute);
+        if (counter != null) {
+            return counter.getCount();
+        }
+        final Gauge gauge = registry.getGauges().get(attribute);
+        if (gauge != null) {
+            return gauge.getValue();
+        }
+        for (final String suffix : HISTOGRAM_SUFFIXES) {
+            if (attribute.endsWith(suffix)) {
+                final LatencyHistogram histogram = registry.getHistograms().get(attribute.substring(0, attribute.length() - suffix.length()));
+                if (histogram != null) {
+                    return getHistogramValue(histogram.getSnapshot(), suffix);
+                }
+            }
+        }
+        throw new AttributeNotFoundException("No metric named " + attribute);
+    }
+
+    @Override
+    public AttributeList getAttributes(final String[] attributes) {
+        final AttributeList list = new AttributeList();
+        for (final String attribute : attributes) {
+            try {
+                list.add(new Attribute(attribute, getAttribute(attribute)));
+            } catch (AttributeNotFoundException e) {
+                // Attributes which cannot be found are omitted from the list, as required by the DynamicMBean interface
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(final Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Metrics are read-only");
+    }
+
+    @Override
+    public AttributeList setAttributes(final AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(final String actionName, final Object[] params, final String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        final List<MBeanAttributeInfo> attributes = new ArrayList<MBeanAttributeInfo>();
+        for (final String name : registry.getCounters().keySet()) {
+            attributes.add(createAttributeInfo(name, "Counter"));
+        }
+        for (final String name : registry.getGauges().keySet()) {
+            attributes.add(createAttributeInfo(name, "Gauge"));
+        }
+        for (final Map.Entry<String, LatencyHistogram> histogram : registry.getHistograms().entrySet()) {
+            for (final String suffix : HISTOGRAM_SUFFIXES) {
+                attributes.add(createAttributeInfo(histogram.getKey() + suffix, "Latency histogram"));
+            }
+        }
+        return new MBeanInfo(getClass().getName(), "GIFT-Cloud uploader pipeline metrics", attributes.toArray(new MBeanAttributeInfo[attributes.size()]), null, null, null);
+    }
+
+    private static MBeanAttributeInfo createAttributeInfo(final String name, final String description) {
+        return new MBeanAttributeInfo(name, Long.class.getName(), description, true, false, false);
+    }
+
+    private static long getHistogramValue(final LatencyHistogram.Snapshot snapshot, final String suffix) {
+        if (suffix.equals(COUNT_SUFFIX)) {
+            return snapshot.getCount();
+        } else if (suffix.equals(MEAN_SUFFIX)) {
+            return snapshot.getMeanMicros();
+        } else if (suffix.equals(P50_SUFFIX)) {
+            return snapshot.getPercentileMicros(50);
+        } else if (suffix.equals(P90_SUFFIX)) {
+            return snapshot.getPercentileMicros(90);
+        } else if (suffix.equals(P99_SUFFIX)) {
+            return snapshot.getPercentileMicros(99);
+        } else {
+            return snapshot.getMaxMicros();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+package uk.ac.ucl.cs.cmic.giftcloud.metrics;
+
+import java.util.Collections;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Holds the named counters, gauges and latency histograms for each stage of the import and upload pipeline
+ *
+ * <p>Metrics are created on first use. A stage will normally look up its metrics once, when its class is loaded, and
+ * then update them directly. Names are dot-separated, starting with the stage, for example "upload.zip".
+ */
+public class MetricsRegistry {
+
+    private static final MetricsRegistry defaultRegistry = new MetricsRegistry();
+
+    private final ConcurrentSkipListMap<String, Counter> counters = new ConcurrentSkipListMap<String, Counter>();
+    private final ConcurrentSkipListMap<String, Gauge> gauges = new ConcurrentSkipListMap<String, Gauge>();
+    private final ConcurrentSkipListMap<String, LatencyHistogram> histograms = new ConcurrentSkipListMap<String, LatencyHistogram>();
+
+    /**
+     * @return the registry used by the uploader
+     */
+    public static MetricsRegistry getDefault() {
+        return defaultRegistry;
+    }
+
+    /**
+     * @param name the name of the counter
+     * @return the existing counter with this name, or a new counter if none exists
+     */
+    public Counter counter(final String name) {
+        final Counter existing = counters.get(name);
+        if (existing != null) {
+            return existing;
+        }
+        final Counter newCounter = new Counter();
+        final Counter previous = counters.putIfAbsent(name, newCounter);
+        return previous == null ? newCounter : previous;
+    }
+
+    /**
+     * @param name the name of the histogram
+     * @return the existing histogram with this name, or a new histogram if none exists
+     */
+    public LatencyHistogram histogram(final String name) {
+        final LatencyHistogram existing = histograms.get(name);
+        if (existing != null) {
+            return existing;
+        }
+        final LatencyHistogram newHistogram = new LatencyHistogram();
+        final LatencyHistogram previous = histograms.putIfAbsent(name, newHistogram);
+        return previous == null ? newHistogram : previous;
+    }
+
+    /**
+     * Adds a gauge, replacing any existing gauge with the same name
+     *
+     * @param name the name of the gauge
+     * @param gauge the gauge
+     */
+    public void registerGauge(final String name, final Gauge gauge) {
+        gauges.put(name, gauge);
+    }
+
+    /**
+     * @return the counters, sorted by name
+     */
+    public SortedMap<String, Counter> getCounters() {
+        return Collections.unmodifiableSortedMap(counters);
+    }
+
+    /**
+     * @return the gauges, sorted by name
+     */
+    public SortedMap<String, Gauge> getGauges() {
+        return Collections.unmodifiableSortedMap(gauges);
+    }
+
+    /**
+     * @return the latency histograms, sorted by name
+     */
+    public SortedMap<String, LatencyHistogram> getHistograms() {
+        return Collections.unmodifiableSortedMap(histograms);
+    }
+}
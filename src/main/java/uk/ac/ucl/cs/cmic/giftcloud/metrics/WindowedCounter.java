@@ -0,0 +1,73 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+package uk.ac.ucl.cs.cmic.giftcloud.metrics;
+
+import java.util.Arrays;
+
+/**
+ * Counts events over recent time windows, for example to report the throughput over the last minute and the last hour
+ *
+ * <p>Counts are held in a ring of fixed-length time buckets, so the count for a window is accurate to within one bucket.
+ */
+public class WindowedCounter {
+    private final long bucketLengthMs;
+    private final long[] counts;
+    private final long[] bucketNumbers;
+
+    /**
+     * @param bucketLengthMs the length of each bucket
+     * @param numberOfBuckets the number of buckets; the longest window which can be reported is bucketLengthMs * numberOfBuckets
+     */
+    public WindowedCounter(final long bucketLengthMs, final int numberOfBuckets) {
+        this.bucketLengthMs = bucketLengthMs;
+        this.counts = new long[numberOfBuckets];
+        this.bucketNumbers = new long[numberOfBuckets];
+        Arrays.fill(bucketNumbers, -1);
+    }
+
+    public void add(final long amount) {
+        add(amount, System.currentTimeMillis());
+    }
+
+    /**
+     * @param windowMs the length of the window, which must not be longer than the total length of the buckets
+     * @return the number of events in the window ending now
+     */
+    public long getCount(final long windowMs) {
+        return getCount(windowMs, System.currentTimeMillis());
+    }
+
+    synchronized void add(final long amount, final long timeMs) {
+        final long bucketNumber = timeMs / bucketLengthMs;
+        final int index = (int) (bucketNumber % counts.length);
+        if (bucketNumbers[index] != bucketNumber) {
+            bucketNumbers[index] = bucketNumber;
+            counts[index] = 0;
+        }
+        counts[index] += amount;
+    }
+
+    synchronized long getCount(final long windowMs, final long timeMs) {
+        if (windowMs > bucketLengthMs * counts.length) {
+            throw new IllegalArgumentException("The window is longer than the time covered by the buckets");
+        }
+        final long currentBucketNumber = timeMs / bucketLengthMs;
+        final long oldestBucketNumber = currentBucketNumber - Math.max(1, windowMs / bucketLengthMs) + 1;
+        long total = 0;
+        for (int index = 0; index < counts.length; index++) {
+            if (bucketNumbers[index] >= oldestBucketNumber && bucketNumbers[index] <= currentBucketNumber) {
+                total += counts[index];
+            }
+        }
+        return total;
+    }
+}
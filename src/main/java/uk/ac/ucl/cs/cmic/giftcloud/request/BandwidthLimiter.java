@@ -0,0 +1,159 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+package uk.ac.ucl.cs.cmic.giftcloud.request;
+
+import java.io.InterruptedIOException;
+import java.util.Calendar;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A token-bucket rate limiter which is shared between all the upload streams
+ *
+ * Each stream must acquire tokens for the bytes it is about to write. The lock is fair, so when several uploads run in
+ * parallel each gets an equal share of the available bandwidth, provided they acquire tokens in similar sized chunks.
+ * The rate is taken from a {@link BandwidthSchedule}, which is re-evaluated every second and may be replaced at any
+ * time, so changes take effect without restarting the uploader.
+ */
+public class BandwidthLimiter {
+
+    private static final long SCHEDULE_CHECK_INTERVAL_MS = 1000;
+
+    private final ReentrantLock lock = new ReentrantLock(true);
+    private final Condition rateChanged = lock.newCondition();
+
+    // Access to these members is protected by the lock
+    private BandwidthSchedule schedule = BandwidthSchedule.unlimited();
+    private String scheduleString = "";
+    private long bytesPerSecond = BandwidthSchedule.UNLIMITED;
+    private long nextScheduleCheckMs = 0;
+    private double availableTokens = 0;
+    private long lastRefillNs = System.nanoTime();
+
+    /**
+     * Replaces the current schedule with one parsed from the given string. Parsing is skipped if the string has not
+     * changed since the last call
+     *
+     * @param newScheduleString the schedule in the form described in {@link BandwidthSchedule}
+     * @throws IllegalArgumentException if the string is not a valid schedule
+     */
+    public void setSchedule(final String newScheduleString) {
+        final String nonNullScheduleString = newScheduleString == null ? "" : newScheduleString;
+        lock.lock();
+        try {
+            if (!nonNullScheduleString.equals(scheduleString)) {
+                setScheduleWhileLocked(BandwidthSchedule.parse(nonNullScheduleString));
+                scheduleString = nonNullScheduleString;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Replaces the current schedule
+     *
+     * @param newSchedule the schedule which will be used to determine the rate
+     */
+    public void setSchedule(final BandwidthSchedule newSchedule) {
+        lock.lock();
+        try {
+            setScheduleWhileLocked(newSchedule);
+            scheduleString = "";
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the current maximum rate in bytes per second, or {@link BandwidthSchedule#UNLIMITED} if there is no limit
+     */
+    public long getBytesPerSecond() {
+        lock.lock();
+        try {
+            updateRateFromSchedule();
+            return bytesPerSecond;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Blocks until the given number of bytes may be written without exceeding the current rate
+     *
+     * @param numBytes the number of bytes the caller is about to write
+     * @throws InterruptedIOException if the thread is interrupted while waiting
+     */
+    public void acquire(final int numBytes) throws InterruptedIOException {
+        lock.lock();
+        try {
+            updateRateFromSchedule();
+            if (bytesPerSecond == BandwidthSchedule.UNLIMITED) {
+                return;
+            }
+            refill();
+
+            // Tokens may go into debt; the caller then waits until the debt has been repaid. Other callers queue on the
+            // fair lock, so the bandwidth is shared between them in turn
+            availableTokens -= numBytes;
+            while (availableTokens < 0 && bytesPerSecond != BandwidthSchedule.UNLIMITED) {
+                final long waitNs = (long) (-availableTokens * TimeUnit.SECONDS.toNanos(1) / bytesPerSecond);
+                rateChanged.awaitNanos(Math.min(waitNs, TimeUnit.MILLISECONDS.toNanos(SCHEDULE_CHECK_INTERVAL_MS)));
+                updateRateFromSchedule();
+                refill();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for upload bandwidth");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void setScheduleWhileLocked(final BandwidthSchedule newSchedule) {
+        schedule = newSchedule;
+        nextScheduleCheckMs = 0;
+        updateRateFromSchedule();
+    }
+
+    private void updateRateFromSchedule() {
+        final long nowMs = System.currentTimeMillis();
+        if (nowMs < nextScheduleCheckMs) {
+            return;
+        }
+        nextScheduleCheckMs = nowMs + SCHEDULE_CHECK_INTERVAL_MS;
+
+        final Calendar now = Calendar.getInstance();
+        now.setTimeInMillis(nowMs);
+        final long newBytesPerSecond = schedule.getBytesPerSecond(now);
+        if (newBytesPerSecond != bytesPerSecond) {
+            refill();
+            bytesPerSecond = newBytesPerSecond;
+            availableTokens = Math.min(availableTokens, bytesPerSecond);
+            if (bytesPerSecond == BandwidthSchedule.UNLIMITED) {
+                availableTokens = 0;
+            }
+            rateChanged.signalAll();
+        }
+    }
+
+    private void refill() {
+        final long nowNs = System.nanoTime();
+        final long elapsedNs = nowNs - lastRefillNs;
+        lastRefillNs = nowNs;
+        if (bytesPerSecond != BandwidthSchedule.UNLIMITED) {
+            // The bucket holds at most one second's worth of tokens, which limits the size of any burst
+            availableTokens = Math.min(bytesPerSecond, availableTokens + ((double) elapsedNs * bytesPerSecond) / TimeUnit.SECONDS.toNanos(1));
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+package uk.ac.ucl.cs.cmic.giftcloud.request;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Describes the maximum upload rate at different times of day
+ *
+ * A schedule is specified as a semicolon-separated list of time windows, each with a rate in kilobytes per second,
+ * e.g. "08:00-18:00=256;18:00-08:00=0". A rate of zero means uploads in that window are not limited. Windows may wrap
+ * past midnight. A schedule consisting of a single number applies that rate at all times. Times which are not covered
+ * by any window are not limited. Where windows overlap, the first matching window is used.
+ */
+public class BandwidthSchedule {
+
+    /**
+     * A rate value indicating that bandwidth should not be limited
+     */
+    public static final long UNLIMITED = 0;
+
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    private final List<Window> windows;
+
+    private BandwidthSchedule(final List<Window> windows) {
+        this.windows = Collections.unmodifiableList(windows);
+    }
+
+    /**
+     * @return a schedule which does not limit bandwidth at any time
+     */
+    public static BandwidthSchedule unlimited() {
+        return new BandwidthSchedule(new ArrayList<Window>());
+    }
+
+    /**
+     * Creates a schedule from its string representation
+     *
+     * @param scheduleString the schedule, such as "08:00-18:00=256;18:00-08:00=0". A blank string means no limit
+     * @return the new schedule
+     * @throws IllegalArgumentException if the string cannot be parsed
+     */
+    public static BandwidthSchedule parse(final String scheduleString) {
+        final List<Window> windows = new ArrayList<Window>();
+        if (StringUtils.isBlank(scheduleString)) {
+            return new BandwidthSchedule(windows);
+        }
+
+        final String trimmedSchedule = scheduleString.trim();
+        if (!trimmedSchedule.contains("=")) {
+            windows.add(new Window(0, MINUTES_PER_DAY, parseRate(trimmedSchedule)));
+            return new BandwidthSchedule(windows);
+        }
+
+        for (final String windowString : trimmedSchedule.split(";")) {
+            if (StringUtils.isBlank(windowString)) {
+                continue;
+            }
+            final String[] windowAndRate = windowString.split("=");
+            if (windowAndRate.length != 2) {
+                throw new IllegalArgumentException("The bandwidth schedule entry " + windowString + " should be of the form HH:mm-HH:mm=rate");
+            }
+            final String[] startAndEnd = windowAndRate[0].split("-");
+            if (startAndEnd.length != 2) {
+                throw new IllegalArgumentException("The bandwidth schedule entry " + windowString + " should be of the form HH:mm-HH:mm=rate");
+            }
+            windows.add(new Window(parseTime(startAndEnd[0]), parseTime(startAndEnd[1]), parseRate(windowAndRate[1])));
+        }
+        return new BandwidthSchedule(windows);
+    }
+
+    /**
+     * Returns the permitted upload rate at the given time
+     *
+     * @param time the time of day to check
+     * @return the maximum rate in bytes per second, or {@link #UNLIMITED} if there is no limit
+     */
+    public long getBytesPerSecond(final Calendar time) {
+        final int minuteOfDay = time.get(Calendar.HOUR_OF_DAY) * 60 + time.get(Calendar.MINUTE);
+        for (final Window window : windows) {
+            if (window.contains(minuteOfDay)) {
+                return window.bytesPerSecond;
+            }
+        }
+        return UNLIMITED;
+    }
+
+    private static int parseTime(final String timeString) {
+        final String[] hoursAndMinutes = timeString.trim().split(":");
+        try {
+            final int hours = Integer.parseInt(hoursAndMinutes[0].trim());
+            final int minutes = hoursAndMinutes.length > 1 ? Integer.parseInt(hoursAndMinutes[1].trim()) : 0;
+            if (hoursAndMinutes.length > 2 || hours < 0 || hours > 24 || minutes < 0 || minutes > 59 || (hours == 24 && minutes > 0)) {
+                throw new IllegalArgumentException("The time " + timeString + " in the bandwidth schedule is not valid");
+            }
+            return hours * 60 + minutes;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("The time " + timeString + " in the bandwidth schedule is not valid");
+        }
+    }
+
+    private static long parseRate(final String rateString) {
+        try {
+            final long kilobytesPerSecond = Long.parseLong(rateString.trim());
+            if (kilobytesPerSecond < 0) {
+                throw new IllegalArgumentException("The rate " + rateString + " in the bandwidth schedule must not be negative");
+            }
+            return kilobytesPerSecond * 1024;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("The rate " + rateString + " in the bandwidth schedule is not a valid number");
+        }
+    }
+
+    private static class Window {
+        private final int startMinute;
+        private final int endMinute;
+        private final long bytesPerSecond;
+
+        Window(final int startMinute, final int endMinute, final long bytesPerSecond) {
+            this.startMinute = startMinute;
+            this.endMinute = endMinute;
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        boolean contains(final int minuteOfDay) {
+            if (startMinute <= endMinute) {
+                return minuteOfDay >= startMinute && minuteOfDay < endMinute;
+            } else {
+                // The window wraps past midnight
+                return minuteOfDay >= startMinute || minuteOfDay < endMinute;
+            }
+        }
+    }
+}
@@ -18,6 +18,9 @@ package uk.ac.ucl.cs.cmic.giftcloud.request;
 
 import uk.ac.ucl.cs.cmic.giftcloud.httpconnection.HttpConnection;
 import uk.ac.ucl.cs.cmic.giftcloud.httpconnection.HttpConnectionBuilder;
+import uk.ac.ucl.cs.cmic.giftcloud.metrics.Counter;
+import uk.ac.ucl.cs.cmic.giftcloud.metrics.LatencyHistogram;
+import uk.ac.ucl.cs.cmic.giftcloud.metrics.MetricsRegistry;
 import uk.ac.ucl.cs.cmic.giftcloud.util.CloseableResource;
 import uk.ac.ucl.cs.cmic.giftcloud.util.GiftCloudReporter;
 
@@ -29,16 +32,22 @@ import java.util.Set;
 
 public class HttpUploadFileRequest extends HttpRequestWithOutput<Set<String>> {
     private static final int BUF_SIZE = 4096;
+    private static final LatencyHistogram uploadLatency = MetricsRegistry.getDefault().histogram("upload.http");
+    private static final Counter uploadedBytes = MetricsRegistry.getDefault().counter("upload.http.bytes");
+
     private final File temporaryFile;
+    private final BandwidthLimiter bandwidthLimiter;
 
     public HttpUploadFileRequest(final HttpConnection.ConnectionType connectionType,
                                  final String url,
                                  final File temporaryFile,
                                  final HttpResponseProcessor responseProcessor,
                                  final HttpProperties httpProperties,
+                                 final BandwidthLimiter bandwidthLimiter,
                                  final GiftCloudReporter reporter) {
         super(connectionType, url, responseProcessor, httpProperties, reporter);
         this.temporaryFile = temporaryFile;
+        this.bandwidthLimiter = bandwidthLimiter;
     }
 
 
@@ -57,7 +66,9 @@ public class HttpUploadFileRequest extends HttpRequestWithOutput<Set<String>> {
             @Override
             public Void run() throws IOException {
                 resource = new FileInputStream(temporaryFile);
-                writeChunk(resource, outputStream);
+                final long startNanos = System.nanoTime();
+                writeChunk(resource, new ThrottledOutputStream(outputStream, bandwidthLimiter));
+                uploadLatency.recordSince(startNanos);
                 return null;
             }
         }.tryWithResource();
@@ -69,6 +80,7 @@ public class HttpUploadFileRequest extends HttpRequestWithOutput<Set<String>> {
 
         while ((bytesRead = fis.read(buf)) > 0) {
             os.write(buf, 0, bytesRead);
+            uploadedBytes.add(bytesRead);
         }
     }
 }
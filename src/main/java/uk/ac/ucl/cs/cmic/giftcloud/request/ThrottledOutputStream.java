@@ -0,0 +1,51 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+package uk.ac.ucl.cs.cmic.giftcloud.request;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An output stream which limits the rate at which data are written, using a shared {@link BandwidthLimiter}
+ */
+class ThrottledOutputStream extends FilterOutputStream {
+
+    private static final int MAX_CHUNK_SIZE = 4096;
+
+    private final BandwidthLimiter bandwidthLimiter;
+
+    ThrottledOutputStream(final OutputStream outputStream, final BandwidthLimiter bandwidthLimiter) {
+        super(outputStream);
+        this.bandwidthLimiter = bandwidthLimiter;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        bandwidthLimiter.acquire(1);
+        out.write(b);
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        // Large writes are split into chunks so that parallel uploads can interleave fairly
+        int offset = off;
+        int remaining = len;
+        while (remaining > 0) {
+            final int chunkSize = Math.min(remaining, MAX_CHUNK_SIZE);
+            bandwidthLimiter.acquire(chunkSize);
+            out.write(b, offset, chunkSize);
+            offset += chunkSize;
+            remaining -= chunkSize;
+        }
+    }
+}
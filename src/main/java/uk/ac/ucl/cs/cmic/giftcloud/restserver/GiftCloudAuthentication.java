@@ -51,6 +51,7 @@ class GiftCloudAuthentication {
     private boolean successfulAuthentication = false;
     private final PasswordAuthenticationWrapper passwordAuthenticationWrapper = new PasswordAuthenticationWrapper();
     private boolean userCancelled = false;
+    private long authenticationAttempt = 0;
 
     /**
      * Creates a new instance of this class bound to the provided HttpConnectionFactory (and thus URL)
@@ -101,6 +102,28 @@ class GiftCloudAuthentication {
         }
     }
 
+    /**
+     * @return a number identifying the most recent authentication attempt. This should be read before making a request,
+     * and passed to {@link #reauthenticate(long)} if the request fails authorisation
+     */
+    synchronized long getAuthenticationAttempt() {
+        return authenticationAttempt;
+    }
+
+    /**
+     * Authenticates again after a request has failed authorisation, unless another thread has already attempted to
+     * authenticate since the request was made. Concurrent requests which fail together therefore result in a single
+     * authentication attempt, and so in at most one series of login dialogs
+     *
+     * @param failedAttempt the value of {@link #getAuthenticationAttempt()} read before the failed request was made
+     * @throws IOException if a communications error occurred, or if the user exceeded the maximum number of incorrect login attempts
+     */
+    synchronized void reauthenticate(final long failedAttempt) throws IOException {
+        if (failedAttempt == authenticationAttempt) {
+            forceAuthentication(false);
+        }
+    }
+
     /**
      * Authenticates with the GIFT-Cloud server, unless authentication has successfully been performed
      *
@@ -108,6 +131,9 @@ class GiftCloudAuthentication {
      */
     synchronized void forceAuthentication(final boolean rapidTimeout) throws IOException {
 
+        // The attempt is counted whether or not it succeeds, so that requests which failed before it are not retried with further logins
+        authenticationAttempt++;
+
         Optional<String> cookieString = Optional.empty();
 
         // First we attempt to log in using the existing cookie
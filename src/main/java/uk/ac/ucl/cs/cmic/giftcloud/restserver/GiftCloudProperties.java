@@ -44,6 +44,14 @@ public interface GiftCloudProperties {
     String propertyName_QueryDebugLevel = "GiftCloud_QueryDebugLevel";
     String propertyName_ShortTimeoutMs = "GiftCloud_QuickAuthenticationTimeout";
     String propertyName_LongTimeoutMs = "GiftCloud_RequestTimeout";
+    String propertyName_UploadBandwidthSchedule = "GiftCloud_UploadBandwidthSchedule";
+    String propertyName_SpoolHighWaterMarkMb = "GiftCloud_SpoolHighWaterMarkMb";
+    String propertyName_SpoolLowWaterMarkMb = "GiftCloud_SpoolLowWaterMarkMb";
+    String propertyName_WatchFolder = "GiftCloud_WatchFolder";
+    String propertyName_WatchFolderPollIntervalMs = "GiftCloud_WatchFolderPollInterval";
+    String propertyName_RetrieveParallelism = "GiftCloud_RetrieveParallelism";
+    String propertyName_MetricsLogIntervalSeconds = "GiftCloud_MetricsLogInterval";
+    String propertyName_StatusServerPort = "GiftCloud_StatusServerPort";
 
 
     Optional<String> getGiftCloudUrl();
@@ -87,6 +95,20 @@ public interface GiftCloudProperties {
 
     Optional<Boolean> getHideWindowOnStartup();
 
+    long getSpoolHighWaterMarkMb();
+
+    long getSpoolLowWaterMarkMb();
+
+    Optional<String> getWatchFolder();
+
+    long getWatchFolderPollIntervalMs();
+
+    int getRetrieveParallelism();
+
+    long getMetricsLogIntervalSeconds();
+
+    int getStatusServerPort();
+
     Optional<String> getPatientListLocalCacheFolder();
 
     void setPatientListExportFolder(final String exportFolder);
@@ -97,6 +119,13 @@ public interface GiftCloudProperties {
 
     int getLongTimeout();
 
+    /**
+     * @return the maximum upload rates for different times of day, in the format described in {@link uk.ac.ucl.cs.cmic.giftcloud.request.BandwidthSchedule}
+     */
+    Optional<String> getUploadBandwidthSchedule();
+
+    void setUploadBandwidthSchedule(final String uploadBandwidthSchedule);
+
     void setPatientListPassword(char[] patientListPassword);
 
     Optional<char[]> getPatientListPassword();
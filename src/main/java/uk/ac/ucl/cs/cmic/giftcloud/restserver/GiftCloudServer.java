@@ -20,6 +20,7 @@ import org.apache.commons.lang.StringUtils;
 import uk.ac.ucl.cs.cmic.giftcloud.uploader.PixelDataAnonymiserFilterCache;
 import uk.ac.ucl.cs.cmic.giftcloud.uploader.ProjectCache;
 import uk.ac.ucl.cs.cmic.giftcloud.util.GiftCloudReporter;
+import uk.ac.ucl.cs.cmic.giftcloud.util.GiftCloudUtils;
 import uk.ac.ucl.cs.cmic.giftcloud.util.Optional;
 
 import java.io.File;
@@ -56,7 +57,9 @@ public class GiftCloudServer {
         }
 
         restClient = restClientFactory.create(giftCloudServerUrlString, giftCloudProperties, userCallback, reporter);
-        projectCache = new ProjectCache(restClient, filters);
+        // Local copies of the series import filters are kept separately for each server
+        final File seriesImportFilterFolder = new File(GiftCloudUtils.createOrGetSeriesImportFilterDirectory(reporter), giftCloudUri.getAuthority() == null ? "default" : giftCloudUri.getAuthority().replaceAll("[^A-Za-z0-9_.-]", "_"));
+        projectCache = new ProjectCache(restClient, filters, new SeriesImportFilterCache(seriesImportFilterFolder, reporter));
     }
 
     public void tryAuthentication() throws IOException {
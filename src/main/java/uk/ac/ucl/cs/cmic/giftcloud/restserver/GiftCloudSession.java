@@ -53,14 +53,16 @@ class GiftCloudSession {
         // This will attempt to connect using the existing cookieWrapper and user credentials.
         // If these do not exist or fail, then the user will be prompted for a user name and password, up to the number of times set in MAX_NUM_LOGIN_ATTEMPTS
         giftCloudAuthentication.tryAuthentication();
+        final long authenticationAttempt = giftCloudAuthentication.getAuthenticationAttempt();
 
         try {
             return request.getResponse(baseUrlString, giftCloudAuthentication.getAuthenticatedConnectionFactory(), false);
 
         } catch (AuthorisationFailureException exception) {
 
-            // In the event of an authorisation failure, give the user another opportunity to enter a username and password (multiple times) to establish a new session
-            giftCloudAuthentication.forceAuthentication(false);
+            // In the event of an authorisation failure, give the user another opportunity to enter a username and password (multiple times) to establish a new session.
+            // If other requests failed at the same time, only the first to get here will re-authenticate; the others will wait for it and then use the new session
+            giftCloudAuthentication.reauthenticate(authenticationAttempt);
 
             // Then try and connect again. We allow any further AuthorisationFailureException to fall through
             return request.getResponse(baseUrlString, giftCloudAuthentication.getAuthenticatedConnectionFactory(), false);
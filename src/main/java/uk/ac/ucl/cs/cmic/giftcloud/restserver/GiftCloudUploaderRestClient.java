@@ -17,9 +17,12 @@
 package uk.ac.ucl.cs.cmic.giftcloud.restserver;
 
 import com.google.common.base.Strings;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.commons.lang.StringUtils;
 import org.json.JSONException;
 import uk.ac.ucl.cs.cmic.giftcloud.httpconnection.HttpConnection;
+import uk.ac.ucl.cs.cmic.giftcloud.metrics.LatencyHistogram;
+import uk.ac.ucl.cs.cmic.giftcloud.metrics.MetricsRegistry;
 import uk.ac.ucl.cs.cmic.giftcloud.request.*;
 import uk.ac.ucl.cs.cmic.giftcloud.util.GiftCloudException;
 import uk.ac.ucl.cs.cmic.giftcloud.util.GiftCloudReporter;
@@ -28,21 +31,40 @@ import uk.ac.ucl.cs.cmic.giftcloud.util.Optional;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.MalformedURLException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class GiftCloudUploaderRestClient implements RestClient {
 
+    private static final int HTTP_NOT_FOUND = 404;
+
+    private static final LatencyHistogram subjectLabelLatency = MetricsRegistry.getDefault().histogram("rest.subjectLabel");
+    private static final LatencyHistogram experimentLabelLatency = MetricsRegistry.getDefault().histogram("rest.experimentLabel");
+    private static final LatencyHistogram scanLabelLatency = MetricsRegistry.getDefault().histogram("rest.scanLabel");
+
+    // Used to issue independent requests concurrently
+    private static final ExecutorService requestExecutor = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("GIFT-Cloud REST request %d").build());
+
     // Access to these members is through a synchronized method to ensure thread safety
     private Optional<String> siteWideAnonScript = Optional.empty();
     private boolean siteWideAnonScriptHasBeenRetrieved = false;
     private final GiftCloudSession giftCloudSession;
+    private final BandwidthLimiter bandwidthLimiter;
+    private final ServerCapabilities serverCapabilities;
     private GiftCloudProperties giftCloudProperties;
     private GiftCloudReporter reporter;
 
 
-    public GiftCloudUploaderRestClient(final String giftCloudServerUrlString, final GiftCloudProperties giftCloudProperties, final ConnectionFactory connectionFactory, final UserCallback userCallback, final GiftCloudReporter reporter) throws MalformedURLException {
+    public GiftCloudUploaderRestClient(final String giftCloudServerUrlString, final GiftCloudProperties giftCloudProperties, final ConnectionFactory connectionFactory, final BandwidthLimiter bandwidthLimiter, final ServerCapabilities serverCapabilities, final UserCallback userCallback, final GiftCloudReporter reporter) throws MalformedURLException {
         this.giftCloudProperties = giftCloudProperties;
+        this.bandwidthLimiter = bandwidthLimiter;
+        this.serverCapabilities = serverCapabilities;
         this.reporter = reporter;
         giftCloudSession = new GiftCloudSession(giftCloudServerUrlString, giftCloudProperties, connectionFactory, userCallback, reporter);
     }
@@ -90,22 +112,58 @@ public class GiftCloudUploaderRestClient implements RestClient {
 
     @Override
     public Optional<GiftCloudLabel.SubjectLabel> getSubjectLabel(final String projectName, final String ppid) throws IOException {
+        if (!serverCapabilities.isSupported(ServerCapabilities.Capability.SUBJECT_PSEUDONYMS)) {
+            return Optional.empty();
+        }
         final String uri = "/REST/projects/" + projectName + "/pseudonyms/" + ppid + "?format=json&columns=DEFAULT";
-        final Optional<String> subjectabelString = getPpidAlias(uri, "label", "ID");
+        final Optional<String> subjectabelString;
+        final long startNanos = System.nanoTime();
+        try {
+            subjectabelString = getPpidAlias(uri, "label", "ID");
+        } catch (GiftCloudHttpException exception) {
+            serverCapabilities.recordFailure(ServerCapabilities.Capability.SUBJECT_PSEUDONYMS, exception);
+            throw exception;
+        } finally {
+            subjectLabelLatency.recordSince(startNanos);
+        }
         return subjectabelString.isPresent() ? Optional.of(GiftCloudLabel.SubjectLabel.getFactory().create(subjectabelString.get())) : Optional.<GiftCloudLabel.SubjectLabel>empty();
     }
 
     @Override
     public Optional<GiftCloudLabel.ExperimentLabel> getExperimentLabel(final String projectName, final GiftCloudLabel.SubjectLabel subjectLabel, final String peid) throws IOException {
+        if (!serverCapabilities.isSupported(ServerCapabilities.Capability.EXPERIMENT_UIDS)) {
+            return Optional.empty();
+        }
         final String uri = "/REST/projects/" + projectName + "/subjects/" + subjectLabel.getStringLabel() + "/experiments/uids/" + peid + "?format=json&columns=DEFAULT";
-        final Optional<String> experimentLabelString = getId(uri, "label");
+        final Optional<String> experimentLabelString;
+        final long startNanos = System.nanoTime();
+        try {
+            experimentLabelString = getId(uri, "label");
+        } catch (GiftCloudHttpException exception) {
+            serverCapabilities.recordFailure(ServerCapabilities.Capability.EXPERIMENT_UIDS, exception);
+            throw exception;
+        } finally {
+            experimentLabelLatency.recordSince(startNanos);
+        }
         return experimentLabelString.isPresent() ? Optional.of(GiftCloudLabel.ExperimentLabel.getFactory().create(experimentLabelString.get())) : Optional.<GiftCloudLabel.ExperimentLabel>empty();
     }
 
     @Override
     public Optional<GiftCloudLabel.ScanLabel> getScanLabel(final String projectName, final GiftCloudLabel.SubjectLabel subjectLabel, final GiftCloudLabel.ExperimentLabel experimentLabel, final String hashedSeriesInstanceUid) throws IOException {
+        if (!serverCapabilities.isSupported(ServerCapabilities.Capability.SCAN_UIDS)) {
+            return Optional.empty();
+        }
         final String uri = "/REST/projects/" + projectName + "/subjects/" + subjectLabel.getStringLabel() + "/experiments/" + experimentLabel.getStringLabel() + "/scans/uids/" + hashedSeriesInstanceUid + "?format=json&columns=DEFAULT";
-        final Optional<String> scanLabelString = getId(uri, "ID");
+        final Optional<String> scanLabelString;
+        final long startNanos = System.nanoTime();
+        try {
+            scanLabelString = getId(uri, "ID");
+        } catch (GiftCloudHttpException exception) {
+            serverCapabilities.recordFailure(ServerCapabilities.Capability.SCAN_UIDS, exception);
+            throw exception;
+        } finally {
+            scanLabelLatency.recordSince(startNanos);
+        }
         return scanLabelString.isPresent() ? Optional.of(GiftCloudLabel.ScanLabel.getFactory().create(scanLabelString.get())) : Optional.<GiftCloudLabel.ScanLabel>empty();
     }
 
@@ -159,25 +217,56 @@ public class GiftCloudUploaderRestClient implements RestClient {
 
     @Override
     public synchronized void createSubjectAliasIfNotExisting(final String projectLabel, final GiftCloudLabel.SubjectLabel subjectLabel, final String hashedPatientId) throws IOException {
-        final Optional<GiftCloudLabel.SubjectLabel> subjectLabelFromServer = getSubjectLabel(projectLabel, hashedPatientId);
-        if (!subjectLabelFromServer.isPresent()) {
-            createSubjectIfNotExisting(projectLabel, subjectLabel);
-            try {
-                createPostResource("/data/archive/projects/" + projectLabel + "/subjects/" + subjectLabel.getStringLabel() + "/pseudonyms/" + hashedPatientId);
-            } catch (AuthorisationFailureException exception) {
-                // This is a special case: the subject was created successfully but the pseudonym creation failed. This probably indicates that project feature "Upload Additional Scans" is not enabled for the Member group of this XNAT project
-                throw new GiftCloudException(GiftCloudUploaderError.NO_UPLOAD_PERMISSIONS);
+        // If the server does not support pseudonyms then the alias cannot be created. This is the same outcome as when the lookup fails with HTTP 400
+        if (!serverCapabilities.isSupported(ServerCapabilities.Capability.SUBJECT_PSEUDONYMS)) {
+            return;
+        }
+
+        // The lookup and the listing needed to create the subject are requested together
+        final Future<Optional<GiftCloudLabel.SubjectLabel>> subjectLabelFromServer = submitRequest(new Callable<Optional<GiftCloudLabel.SubjectLabel>>() {
+            @Override
+            public Optional<GiftCloudLabel.SubjectLabel> call() throws IOException {
+                return getSubjectLabel(projectLabel, hashedPatientId);
+            }
+        });
+        final HierarchyTransaction transaction = new HierarchyTransaction(projectLabel, subjectLabel);
+        try {
+            if (!getRequestResult(subjectLabelFromServer).isPresent()) {
+                transaction.ensureExists();
+                try {
+                    createPostResource("/data/archive/projects/" + projectLabel + "/subjects/" + subjectLabel.getStringLabel() + "/pseudonyms/" + hashedPatientId);
+                } catch (AuthorisationFailureException exception) {
+                    // This is a special case: the subject was created successfully but the pseudonym creation failed. This probably indicates that project feature "Upload Additional Scans" is not enabled for the Member group of this XNAT project
+                    throw new GiftCloudException(GiftCloudUploaderError.NO_UPLOAD_PERMISSIONS);
+                }
             }
+        } finally {
+            transaction.cancel();
         }
     }
 
     @Override
-    public void createExperimentAliasIfNotExisting(final String projectName, final GiftCloudLabel.SubjectLabel subjectLabel, final GiftCloudLabel.ExperimentLabel experimentLabel, final String hashedStudyInstanceUid, final XnatModalityParams xnatModalityParams) throws IOException {
-        final Optional<GiftCloudLabel.ExperimentLabel> experimentLabelFromServer = getExperimentLabel(projectName, subjectLabel, hashedStudyInstanceUid);
-        if (!experimentLabelFromServer.isPresent()) {
-            createSubjectIfNotExisting(projectName, subjectLabel);
-            final String sessionCreateParams = "?xsiType=" + xnatModalityParams.getXnatSessionTag() + "&UID=" + hashedStudyInstanceUid;
-            createExperimentIfNotExisting(projectName, subjectLabel, experimentLabel, sessionCreateParams);
+    public synchronized void createExperimentAliasIfNotExisting(final String projectName, final GiftCloudLabel.SubjectLabel subjectLabel, final GiftCloudLabel.ExperimentLabel experimentLabel, final String hashedStudyInstanceUid, final XnatModalityParams xnatModalityParams) throws IOException {
+        // If the server does not support experiment UIDs then the alias cannot be created. This is the same outcome as when the lookup fails with HTTP 400
+        if (!serverCapabilities.isSupported(ServerCapabilities.Capability.EXPERIMENT_UIDS)) {
+            return;
+        }
+
+        // The lookup and the listings needed to create the hierarchy are requested together
+        final Future<Optional<GiftCloudLabel.ExperimentLabel>> experimentLabelFromServer = submitRequest(new Callable<Optional<GiftCloudLabel.ExperimentLabel>>() {
+            @Override
+            public Optional<GiftCloudLabel.ExperimentLabel> call() throws IOException {
+                return getExperimentLabel(projectName, subjectLabel, hashedStudyInstanceUid);
+            }
+        });
+        final String sessionCreateParams = "?xsiType=" + xnatModalityParams.getXnatSessionTag() + "&UID=" + hashedStudyInstanceUid;
+        final HierarchyTransaction transaction = new HierarchyTransaction(projectName, subjectLabel, experimentLabel, sessionCreateParams);
+        try {
+            if (!getRequestResult(experimentLabelFromServer).isPresent()) {
+                transaction.ensureExists();
+            }
+        } finally {
+            transaction.cancel();
         }
     }
 
@@ -187,14 +276,28 @@ public class GiftCloudUploaderRestClient implements RestClient {
     }
 
     @Override
-    public void createScanAliasIfNotExisting(final String projectName, final GiftCloudLabel.SubjectLabel subjectAlias, final GiftCloudLabel.ExperimentLabel experimentLabel, final GiftCloudLabel.ScanLabel scanLabel, final String hashedSeriesInstanceUid, final XnatModalityParams xnatModalityParams) throws IOException {
-        final Optional<GiftCloudLabel.ScanLabel> scanLabelFromServer = getScanLabel(projectName, subjectAlias, experimentLabel, hashedSeriesInstanceUid);
-        if (!scanLabelFromServer.isPresent()) {
-            createSubjectIfNotExisting(projectName, subjectAlias);
-            final String sessionCreateParams = "?xsiType=" + xnatModalityParams.getXnatSessionTag();
-            createExperimentIfNotExisting(projectName, subjectAlias, experimentLabel, sessionCreateParams);
-            final String scanCreateParams = "?xsiType=" + xnatModalityParams.getXnatScanTag() + "&UID=" + hashedSeriesInstanceUid;
-            createScanIfNotExisting(projectName, subjectAlias, experimentLabel, scanLabel, scanCreateParams);
+    public synchronized void createScanAliasIfNotExisting(final String projectName, final GiftCloudLabel.SubjectLabel subjectAlias, final GiftCloudLabel.ExperimentLabel experimentLabel, final GiftCloudLabel.ScanLabel scanLabel, final String hashedSeriesInstanceUid, final XnatModalityParams xnatModalityParams) throws IOException {
+        // If the server does not support scan UIDs then the alias cannot be created. This is the same outcome as when the lookup fails with HTTP 400
+        if (!serverCapabilities.isSupported(ServerCapabilities.Capability.SCAN_UIDS)) {
+            return;
+        }
+
+        // The lookup and the listings needed to create the hierarchy are requested together
+        final Future<Optional<GiftCloudLabel.ScanLabel>> scanLabelFromServer = submitRequest(new Callable<Optional<GiftCloudLabel.ScanLabel>>() {
+            @Override
+            public Optional<GiftCloudLabel.ScanLabel> call() throws IOException {
+                return getScanLabel(projectName, subjectAlias, experimentLabel, hashedSeriesInstanceUid);
+            }
+        });
+        final String sessionCreateParams = "?xsiType=" + xnatModalityParams.getXnatSessionTag();
+        final String scanCreateParams = "?xsiType=" + xnatModalityParams.getXnatScanTag() + "&UID=" + hashedSeriesInstanceUid;
+        final HierarchyTransaction transaction = new HierarchyTransaction(projectName, subjectAlias, experimentLabel, sessionCreateParams, scanLabel, scanCreateParams);
+        try {
+            if (!getRequestResult(scanLabelFromServer).isPresent()) {
+                transaction.ensureExists();
+            }
+        } finally {
+            transaction.cancel();
         }
     }
 
@@ -213,27 +316,22 @@ public class GiftCloudUploaderRestClient implements RestClient {
 
         dataPostURL = buffer.toString();
 
-        return giftCloudSession.request(new HttpUploadFileRequest(HttpConnection.ConnectionType.POST, dataPostURL, temporaryFile, new HttpSetResponseProcessor(), createHttpProperties(giftCloudProperties), reporter));
+        return giftCloudSession.request(new HttpUploadFileRequest(HttpConnection.ConnectionType.POST, dataPostURL, temporaryFile, new HttpSetResponseProcessor(), createHttpProperties(giftCloudProperties), getUpdatedBandwidthLimiter(), reporter));
     }
 
     private Set<String> appendZipFileToExistingScan(final String projectLabel, final GiftCloudLabel.SubjectLabel subjectLabel, final GiftCloudLabel.ExperimentLabel experimentLabel, final GiftCloudLabel.ScanLabel scanLabel, final XnatModalityParams xnatModalityParams, final File temporaryFile) throws Exception {
-        createSubjectIfNotExisting(projectLabel, subjectLabel);
-
-        {
-            final String sessionCreateParams = "?xsiType=" + xnatModalityParams.getXnatSessionTag();
-            createExperimentIfNotExisting(projectLabel, subjectLabel, experimentLabel, sessionCreateParams);
-        }
-
-        {
-            final String scanCreateParams = "?xsiType=" + xnatModalityParams.getXnatScanTag();
-            createScanIfNotExisting(projectLabel, subjectLabel, experimentLabel, scanLabel, scanCreateParams);
-        }
-
+        final String sessionCreateParams = "?xsiType=" + xnatModalityParams.getXnatSessionTag();
+        final String scanCreateParams = "?xsiType=" + xnatModalityParams.getXnatScanTag();
         final String collectionLabel = xnatModalityParams.getCollectionString();
+        final String scanCollectionCreateParams = "?xsiType=xnat:resourceCatalog" + "&format=" + xnatModalityParams.getFormatString();
 
-        {
-            final String scanCollectionCreateParams = "?xsiType=xnat:resourceCatalog" + "&format=" + xnatModalityParams.getFormatString();
-            createScanCollectionIfNotExisting(projectLabel, subjectLabel, experimentLabel, scanLabel, collectionLabel, scanCollectionCreateParams);
+        synchronized (this) {
+            final HierarchyTransaction transaction = new HierarchyTransaction(projectLabel, subjectLabel, experimentLabel, sessionCreateParams, scanLabel, scanCreateParams, collectionLabel, scanCollectionCreateParams);
+            try {
+                transaction.ensureExists();
+            } finally {
+                transaction.cancel();
+            }
         }
 
         final String uriParams = "?extract=true";
@@ -242,38 +340,6 @@ public class GiftCloudUploaderRestClient implements RestClient {
         return appendFileUsingZipUpload(uri, temporaryFile);
     }
 
-    private synchronized void createSubjectIfNotExisting(final String projectLabel, final GiftCloudLabel.SubjectLabel subjectLabel) throws IOException {
-        Map<String, String> subjects = getListOfSubjects(projectLabel);
-
-        if (!subjects.containsKey(subjectLabel.getStringLabel())) {
-            createResource("/data/archive/projects/" + projectLabel + "/subjects/" + subjectLabel.getStringLabel());
-        }
-    }
-
-    private synchronized void createExperimentIfNotExisting(final String projectLabel, final GiftCloudLabel.SubjectLabel subjectLabel, final GiftCloudLabel.ExperimentLabel experimentLabel, final String params) throws IOException {
-        Map<String, String> sessions = getListOfSessions(projectLabel);
-
-        if (!sessions.containsKey(experimentLabel.getStringLabel())) {
-            createResource("/data/archive/projects/" + projectLabel + "/subjects/" + subjectLabel.getStringLabel() + "/experiments/" + experimentLabel.getStringLabel() + params);
-        }
-    }
-
-    private synchronized void createScanIfNotExisting(final String projectLabel, final GiftCloudLabel.SubjectLabel subjectLabel, final GiftCloudLabel.ExperimentLabel experimentLabel, final GiftCloudLabel.ScanLabel scanLabel, final String params) throws IOException {
-        Map<String,String> scans = getListOfScans(projectLabel, subjectLabel, experimentLabel);
-
-        if (!scans.containsKey(scanLabel.getStringLabel())) {
-            createResource("/data/archive/projects/" + projectLabel + "/subjects/" + subjectLabel + "/experiments/" + experimentLabel + "/scans/" + scanLabel.getStringLabel() + params);
-        }
-    }
-
-    private synchronized void createScanCollectionIfNotExisting(final String projectLabel, final GiftCloudLabel.SubjectLabel subjectLabel, final GiftCloudLabel.ExperimentLabel experimentLabel, final GiftCloudLabel.ScanLabel scanLabel, final String resourceName, final String params) throws IOException {
-        Map<String,String> resources = getListOfResources(projectLabel, subjectLabel, experimentLabel, scanLabel);
-
-        if (!resources.containsKey(resourceName)) {
-            createResource("/data/archive/projects/" + projectLabel + "/subjects/" + subjectLabel.getStringLabel() + "/experiments/" + experimentLabel.getStringLabel() + "/scans/" + scanLabel.getStringLabel() + "/resources/" + resourceName + params);
-        }
-    }
-    
     private Collection<String> getValues(final String path, final String key) throws IOException, JSONException {
         return giftCloudSession.request(new HttpRequestWithoutOutput<Collection<String>>(HttpConnection.ConnectionType.GET, path, new HttpJsonResponseProcessor<Collection<String>>(new JSONValuesExtractor(key)), createHttpProperties(giftCloudProperties), reporter));
     }
@@ -299,7 +365,7 @@ public class GiftCloudUploaderRestClient implements RestClient {
     }
 
     private Set<String> appendFileUsingZipUpload(final String relativeUrl, final File temporaryFile) throws IOException {
-        return giftCloudSession.request(new HttpUploadFileRequest(HttpConnection.ConnectionType.PUT, relativeUrl, temporaryFile, new HttpEmptyResponseProcessor(), createHttpProperties(giftCloudProperties), reporter));
+        return giftCloudSession.request(new HttpUploadFileRequest(HttpConnection.ConnectionType.PUT, relativeUrl, temporaryFile, new HttpEmptyResponseProcessor(), createHttpProperties(giftCloudProperties), getUpdatedBandwidthLimiter(), reporter));
     }
 
     private void createResource(final String relativeUrl) throws IOException {
@@ -310,7 +376,184 @@ public class GiftCloudUploaderRestClient implements RestClient {
         giftCloudSession.request(new HttpRequestWithoutOutput<String>(HttpConnection.ConnectionType.POST, relativeUrl, new HttpStringResponseProcessor(), createHttpProperties(giftCloudProperties), reporter));
     }
 
+    private Map<String, String> getListOfScansIfExisting(final String projectName, final GiftCloudLabel.SubjectLabel subjectName, final GiftCloudLabel.ExperimentLabel experimentLabel) throws IOException {
+        try {
+            return getListOfScans(projectName, subjectName, experimentLabel);
+        } catch (GiftCloudHttpException exception) {
+            // 404 indicates the experiment does not exist yet, so it has no scans
+            if (exception.getResponseCode() == HTTP_NOT_FOUND) {
+                return new HashMap<String, String>();
+            } else {
+                throw exception;
+            }
+        }
+    }
+
+    private Map<String, String> getListOfResourcesIfExisting(final String projectName, final GiftCloudLabel.SubjectLabel subjectName, final GiftCloudLabel.ExperimentLabel experimentLabel, final GiftCloudLabel.ScanLabel scanLabel) throws IOException {
+        try {
+            return getListOfResources(projectName, subjectName, experimentLabel, scanLabel);
+        } catch (GiftCloudHttpException exception) {
+            // 404 indicates the scan does not exist yet, so it has no resources
+            if (exception.getResponseCode() == HTTP_NOT_FOUND) {
+                return new HashMap<String, String>();
+            } else {
+                throw exception;
+            }
+        }
+    }
+
+    private static <T> Future<T> submitRequest(final Callable<T> request) {
+        return requestExecutor.submit(request);
+    }
+
+    private static <T> T getRequestResult(final Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a server request");
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else {
+                throw new IOException(cause);
+            }
+        }
+    }
+
     private HttpProperties createHttpProperties(GiftCloudProperties giftCloudProperties) {
         return new HttpProperties(giftCloudProperties.getUserAgentString(), giftCloudProperties.getShortTimeout(), giftCloudProperties.getLongTimeout());
     }
+
+    /**
+     * Returns the bandwidth limiter, using the schedule which is currently set in the properties. The schedule is read
+     * again before each upload, so that a change made in the settings takes effect from the next upload
+     */
+    BandwidthLimiter getUpdatedBandwidthLimiter() {
+        final Optional<String> schedule = giftCloudProperties.getUploadBandwidthSchedule();
+        try {
+            bandwidthLimiter.setSchedule(schedule.orElse(""));
+        } catch (IllegalArgumentException e) {
+            reporter.silentLogException(e, "The upload bandwidth schedule could not be read and will be ignored: " + e.getLocalizedMessage());
+            bandwidthLimiter.setSchedule(BandwidthSchedule.unlimited());
+        }
+        return bandwidthLimiter;
+    }
+
+    /**
+     * Ensures that a subject, and optionally an experiment, scan and scan resource collection below it, exist on the
+     * server. The listings used to check each level are all requested concurrently when the transaction is created.
+     * Missing levels are then created in order, since each level must exist before the level below it can be created.
+     * Listings of levels below a newly created level are not needed and are ignored.
+     *
+     * The caller should hold the lock on the rest client, to prevent concurrent transactions from creating the same
+     * resources, and should call cancel() when finished.
+     */
+    private class HierarchyTransaction {
+        private final String projectLabel;
+        private final GiftCloudLabel.SubjectLabel subjectLabel;
+        private final GiftCloudLabel.ExperimentLabel experimentLabel;
+        private final String experimentParams;
+        private final GiftCloudLabel.ScanLabel scanLabel;
+        private final String scanParams;
+        private final String collectionLabel;
+        private final String collectionParams;
+
+        private final Future<Map<String, String>> subjects;
+        private final Future<Map<String, String>> experiments;
+        private final Future<Map<String, String>> scans;
+        private final Future<Map<String, String>> collections;
+
+        HierarchyTransaction(final String projectLabel, final GiftCloudLabel.SubjectLabel subjectLabel) {
+            this(projectLabel, subjectLabel, null, null, null, null, null, null);
+        }
+
+        HierarchyTransaction(final String projectLabel, final GiftCloudLabel.SubjectLabel subjectLabel, final GiftCloudLabel.ExperimentLabel experimentLabel, final String experimentParams) {
+            this(projectLabel, subjectLabel, experimentLabel, experimentParams, null, null, null, null);
+        }
+
+        HierarchyTransaction(final String projectLabel, final GiftCloudLabel.SubjectLabel subjectLabel, final GiftCloudLabel.ExperimentLabel experimentLabel, final String experimentParams, final GiftCloudLabel.ScanLabel scanLabel, final String scanParams) {
+            this(projectLabel, subjectLabel, experimentLabel, experimentParams, scanLabel, scanParams, null, null);
+        }
+
+        HierarchyTransaction(final String projectLabel, final GiftCloudLabel.SubjectLabel subjectLabel, final GiftCloudLabel.ExperimentLabel experimentLabel, final String experimentParams, final GiftCloudLabel.ScanLabel scanLabel, final String scanParams, final String collectionLabel, final String collectionParams) {
+            this.projectLabel = projectLabel;
+            this.subjectLabel = subjectLabel;
+            this.experimentLabel = experimentLabel;
+            this.experimentParams = experimentParams;
+            this.scanLabel = scanLabel;
+            this.scanParams = scanParams;
+            this.collectionLabel = collectionLabel;
+            this.collectionParams = collectionParams;
+
+            subjects = submitRequest(new Callable<Map<String, String>>() {
+                @Override
+                public Map<String, String> call() throws IOException {
+                    return getListOfSubjects(projectLabel);
+                }
+            });
+            experiments = experimentLabel == null ? null : submitRequest(new Callable<Map<String, String>>() {
+                @Override
+                public Map<String, String> call() throws IOException {
+                    return getListOfSessions(projectLabel);
+                }
+            });
+            scans = scanLabel == null ? null : submitRequest(new Callable<Map<String, String>>() {
+                @Override
+                public Map<String, String> call() throws IOException {
+                    return getListOfScansIfExisting(projectLabel, subjectLabel, experimentLabel);
+                }
+            });
+            collections = collectionLabel == null ? null : submitRequest(new Callable<Map<String, String>>() {
+                @Override
+                public Map<String, String> call() throws IOException {
+                    return getListOfResourcesIfExisting(projectLabel, subjectLabel, experimentLabel, scanLabel);
+                }
+            });
+        }
+
+        void ensureExists() throws IOException {
+            final String subjectUri = "/data/archive/projects/" + projectLabel + "/subjects/" + subjectLabel.getStringLabel();
+            if (!getRequestResult(subjects).containsKey(subjectLabel.getStringLabel())) {
+                createResource(subjectUri);
+            }
+            if (experimentLabel == null) {
+                return;
+            }
+
+            final String experimentUri = subjectUri + "/experiments/" + experimentLabel.getStringLabel();
+            boolean parentCreated = false;
+            if (!getRequestResult(experiments).containsKey(experimentLabel.getStringLabel())) {
+                createResource(experimentUri + experimentParams);
+                parentCreated = true;
+            }
+            if (scanLabel == null) {
+                return;
+            }
+
+            final String scanUri = experimentUri + "/scans/" + scanLabel.getStringLabel();
+            if (parentCreated || !getRequestResult(scans).containsKey(scanLabel.getStringLabel())) {
+                createResource(scanUri + scanParams);
+                parentCreated = true;
+            }
+            if (collectionLabel == null) {
+                return;
+            }
+
+            if (parentCreated || !getRequestResult(collections).containsKey(collectionLabel)) {
+                createResource(scanUri + "/resources/" + collectionLabel + collectionParams);
+            }
+        }
+
+        void cancel() {
+            for (final Future<Map<String, String>> listing : Arrays.asList(subjects, experiments, scans, collections)) {
+                if (listing != null) {
+                    listing.cancel(true);
+                }
+            }
+        }
+    }
 }
@@ -13,14 +13,30 @@
 package uk.ac.ucl.cs.cmic.giftcloud.restserver;
 
 import uk.ac.ucl.cs.cmic.giftcloud.httpconnection.HttpConnectionFactory;
+import uk.ac.ucl.cs.cmic.giftcloud.request.BandwidthLimiter;
 import uk.ac.ucl.cs.cmic.giftcloud.util.GiftCloudReporter;
 
 import java.net.MalformedURLException;
+import java.util.HashMap;
+import java.util.Map;
 
 public class GiftCloudUploaderRestClientFactory implements RestClientFactory {
 
+    // A single limiter is shared by all rest clients so that the bandwidth limit applies across all uploads
+    private final BandwidthLimiter bandwidthLimiter = new BandwidthLimiter();
+
+    // Capabilities are shared by all rest clients for the same server, so unsupported features are only probed once
+    private final Map<String, ServerCapabilities> serverCapabilities = new HashMap<String, ServerCapabilities>();
+
     @Override
     public RestClient create(final String giftCloudServerUrlString, final GiftCloudProperties giftCloudProperties, final UserCallback userCallback, final GiftCloudReporter reporter) throws MalformedURLException {
-        return new GiftCloudUploaderRestClient(giftCloudServerUrlString, giftCloudProperties, new HttpConnectionFactory(), userCallback, reporter);
+        return new GiftCloudUploaderRestClient(giftCloudServerUrlString, giftCloudProperties, new HttpConnectionFactory(), bandwidthLimiter, getServerCapabilities(giftCloudServerUrlString), userCallback, reporter);
+    }
+
+    private synchronized ServerCapabilities getServerCapabilities(final String giftCloudServerUrlString) {
+        if (!serverCapabilities.containsKey(giftCloudServerUrlString)) {
+            serverCapabilities.put(giftCloudServerUrlString, new ServerCapabilities());
+        }
+        return serverCapabilities.get(giftCloudServerUrlString);
     }
 }
@@ -18,12 +18,11 @@
 
 package uk.ac.ucl.cs.cmic.giftcloud.restserver;
 
-import org.json.JSONArray;
 import uk.ac.ucl.cs.cmic.giftcloud.request.HttpResponseProcessor;
-import uk.ac.ucl.cs.cmic.giftcloud.util.GiftCloudUtils;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 
 class HttpJsonResponseProcessor<T> extends HttpResponseProcessor<T> {
     private final JSONDecoder<T> decoder;
@@ -33,10 +32,8 @@ class HttpJsonResponseProcessor<T> extends HttpResponseProcessor<T> {
     }
 
     protected final T streamFromConnection(final InputStream inputStream) throws IOException {
-        final JSONArray entries = GiftCloudUtils.extractResultFromEntity(GiftCloudUtils.extractJSONEntity(inputStream));
-        for (int i = 0; i < entries.length(); i++) {
-            decoder.decode(entries.getJSONObject(i));
-        }
+        // Entries are decoded as they are read, so large listings are never held in memory as a complete JSON tree
+        new JSONResultSetReader(new InputStreamReader(inputStream)).decode(decoder);
         return decoder.getResult();
     }
 
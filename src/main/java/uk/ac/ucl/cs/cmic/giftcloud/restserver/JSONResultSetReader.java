@@ -0,0 +1,140 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+package uk.ac.ucl.cs.cmic.giftcloud.restserver;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.Reader;
+
+/**
+ * Decodes the ResultSet.Result array of an XNAT listing response one entry at a time
+ *
+ * The response is read token by token, so only a single entry of the Result array is held in memory at once, rather
+ * than the whole response tree. Each entry is passed to a {@link JSONDecoder} as soon as it has been parsed. Values
+ * outside the ResultSet.Result array are parsed and discarded.
+ */
+final class JSONResultSetReader {
+
+    private static final String RESULT_SET_KEY = "ResultSet";
+    private static final String RESULT_KEY = "Result";
+
+    private final JSONTokener tokener;
+
+    JSONResultSetReader(final Reader reader) {
+        this.tokener = new JSONTokener(reader);
+    }
+
+    /**
+     * Reads the response and passes each entry of the ResultSet.Result array to the decoder
+     *
+     * @param decoder the decoder which will receive each entry, in order
+     * @throws JSONException if the response is not valid JSON, does not contain a ResultSet.Result array, or contains an
+     * entry which is not a JSON object
+     */
+    void decode(final JSONDecoder<?> decoder) throws JSONException {
+        if (!findKey(RESULT_SET_KEY)) {
+            throw new JSONException("JSONObject[\"" + RESULT_SET_KEY + "\"] not found.");
+        }
+        if (!findKey(RESULT_KEY)) {
+            throw new JSONException("JSONObject[\"" + RESULT_KEY + "\"] not found.");
+        }
+        decodeArray(decoder);
+    }
+
+    /**
+     * Reads an object up to the value of the given key, skipping any other values
+     *
+     * @return true if the key was found, in which case the tokener is positioned at the start of its value. False if
+     * the end of the object was reached without finding the key
+     */
+    private boolean findKey(final String key) throws JSONException {
+        if (tokener.nextClean() != '{') {
+            throw tokener.syntaxError("A JSONObject text must begin with '{'");
+        }
+        if (tokener.nextClean() == '}') {
+            return false;
+        }
+        tokener.back();
+
+        while (true) {
+            final Object nextKey = tokener.nextValue();
+            if (tokener.nextClean() != ':') {
+                throw tokener.syntaxError("Expected a ':' after a key");
+            }
+            if (key.equals(nextKey.toString())) {
+                return true;
+            }
+
+            // Skip the value of any other key
+            tokener.nextValue();
+
+            switch (tokener.nextClean()) {
+                case ';':
+                case ',':
+                    if (tokener.nextClean() == '}') {
+                        return false;
+                    }
+                    tokener.back();
+                    break;
+                case '}':
+                    return false;
+                default:
+                    throw tokener.syntaxError("Expected a ',' or '}'");
+            }
+        }
+    }
+
+    /**
+     * Reads an array of objects, passing each to the decoder as soon as it has been parsed
+     */
+    private void decodeArray(final JSONDecoder<?> decoder) throws JSONException {
+        if (tokener.nextClean() != '[') {
+            throw tokener.syntaxError("A JSONArray text must start with '['");
+        }
+        if (tokener.nextClean() == ']') {
+            return;
+        }
+        tokener.back();
+
+        int index = 0;
+        while (true) {
+            final Object value;
+            if (tokener.nextClean() == ',') {
+                tokener.back();
+                value = JSONObject.NULL;
+            } else {
+                tokener.back();
+                value = tokener.nextValue();
+            }
+            if (!(value instanceof JSONObject)) {
+                throw new JSONException("JSONArray[" + index + "] is not a JSONObject.");
+            }
+            decoder.decode((JSONObject) value);
+            index++;
+
+            switch (tokener.nextClean()) {
+                case ',':
+                    if (tokener.nextClean() == ']') {
+                        return;
+                    }
+                    tokener.back();
+                    break;
+                case ']':
+                    return;
+                default:
+                    throw tokener.syntaxError("Expected a ',' or ']'");
+            }
+        }
+    }
+}
@@ -10,6 +10,7 @@
  */
 package uk.ac.ucl.cs.cmic.giftcloud.restserver;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.commons.lang.StringUtils;
 import org.nrg.dcm.edit.ScriptFunction;
 import uk.ac.ucl.cs.cmic.giftcloud.dicom.DicomMetaDataAnonymiser;
@@ -25,21 +26,35 @@ import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 public class Project {
 
+	// The filters are retrieved again after this interval, so that changes on the server take effect without a restart
+	private static final long SERIES_IMPORT_FILTER_REFRESH_INTERVAL_MS = 5 * 60 * 1000;
+
+	// Shared by all projects, so that the import path never waits for the server while the filters are refreshed
+	private static final ScheduledExecutorService seriesImportFilterRefresher = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("GIFT-Cloud series import filter refresh %d").build());
+
 	private final ExecutorService executor = Executors.newCachedThreadPool();
 	private final String name;
 	private final Future<Map<String,String>> subjects;
 	private final Future<Map<String,String>> sessions;
 	private final Future<Iterable<org.nrg.dcm.edit.ScriptApplicator>> dicomScriptApplicator;
-	private Optional<SeriesImportFilterApplicatorRetriever> seriesImportFilter = Optional.empty();
+	private volatile Optional<SeriesImportFilterApplicatorRetriever> seriesImportFilter = Optional.empty();
+	private Optional<ScheduledFuture<?>> seriesImportFilterRefresh = Optional.empty();
+	private final SeriesImportFilterCache seriesImportFilterCache;
+	private final GiftCloudReporter reporter;
 	private final DicomMetaDataAnonymiser dicomMetaDataAnonymiser;
 	private final DicomProjectAnonymisationScripts dicomProjectAnonymisationScripts;
 	private final DicomPixelDataAnonymiser pixelDataAnonymiser;
 
-	public Project(final String projectName, final RestClient restClient, PixelDataAnonymiserFilterCache pixelDataAnonymiserFilterCache, GiftCloudProperties properties, GiftCloudReporter reporter) {
+	public Project(final String projectName, final RestClient restClient, PixelDataAnonymiserFilterCache pixelDataAnonymiserFilterCache, SeriesImportFilterCache seriesImportFilterCache, GiftCloudProperties properties, GiftCloudReporter reporter) {
 		this.name = projectName;
+		this.seriesImportFilterCache = seriesImportFilterCache;
+		this.reporter = reporter;
 
 		sessions = executor.submit(new ProjectSessionLister(restClient, projectName));
 		subjects = executor.submit(new ProjectSubjectLister(restClient, projectName));
@@ -55,7 +70,10 @@ public class Project {
 				(ScriptFunction) new IndexedSessionLabelFunction(sessions));
 	}
 
-	public void dispose() {
+	public synchronized void dispose() {
+		if (seriesImportFilterRefresh.isPresent()) {
+			seriesImportFilterRefresh.get().cancel(false);
+		}
 		sessions.cancel(true);
 		subjects.cancel(true);
 		dicomScriptApplicator.cancel(true);
@@ -67,19 +85,41 @@ public class Project {
 	 */
 	public String toString() { return name; }
 
-	public SeriesImportFilterApplicatorRetriever getSeriesImportFilter(GiftCloudServer server) throws IOException {
+	public SeriesImportFilterApplicatorRetriever getSeriesImportFilter(final GiftCloudServer server) throws IOException {
+		// Once the filters have been retrieved they are refreshed in the background, so no lock is taken here
+		final Optional<SeriesImportFilterApplicatorRetriever> currentFilter = seriesImportFilter;
+		if (currentFilter.isPresent()) {
+			return currentFilter.get();
+		}
+		return retrieveSeriesImportFilter(server);
+	}
+
+	private synchronized SeriesImportFilterApplicatorRetriever retrieveSeriesImportFilter(final GiftCloudServer server) throws IOException {
 		if (!seriesImportFilter.isPresent()) {
+			final SeriesImportFilterApplicatorRetriever retriever;
 			try {
 				if (StringUtils.isEmpty(name)) {
 					final Optional<String> emptyProject = Optional.empty();
-					seriesImportFilter = Optional.of(new SeriesImportFilterApplicatorRetriever(server, emptyProject));
+					retriever = new SeriesImportFilterApplicatorRetriever(server, emptyProject, seriesImportFilterCache, reporter);
 				} else {  //
-					seriesImportFilter = Optional.of(new SeriesImportFilterApplicatorRetriever(server, Optional.of(name)));
+					retriever = new SeriesImportFilterApplicatorRetriever(server, Optional.of(name), seriesImportFilterCache, reporter);
 				}
 			} catch (Exception exception) {
-				seriesImportFilter = Optional.empty();
 				throw new IOException("Error encountered retrieving series import filters", exception);
 			}
+
+			seriesImportFilterRefresh = Optional.<ScheduledFuture<?>>of(seriesImportFilterRefresher.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					// If the filters cannot be retrieved, the current filters continue to be used until the next interval
+					try {
+						retriever.refresh(server);
+					} catch (Exception exception) {
+						reporter.silentLogException(exception, "Could not retrieve the series import filters again, so the current filters will be used: " + exception.getLocalizedMessage());
+					}
+				}
+			}, SERIES_IMPORT_FILTER_REFRESH_INTERVAL_MS, SERIES_IMPORT_FILTER_REFRESH_INTERVAL_MS, TimeUnit.MILLISECONDS));
+			seriesImportFilter = Optional.of(retriever);
 		}
 
 		return seriesImportFilter.get();
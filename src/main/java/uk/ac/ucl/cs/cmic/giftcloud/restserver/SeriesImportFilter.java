@@ -0,0 +1,188 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Parts of this software are derived from XNAT
+    http://www.xnat.org
+    Copyright (c) 2014, Washington University School of Medicine
+    All Rights Reserved
+    See license/XNAT_license.txt
+
+=============================================================================*/
+
+package uk.ac.ucl.cs.cmic.giftcloud.restserver;
+
+import org.apache.commons.lang.StringUtils;
+import uk.ac.ucl.cs.cmic.giftcloud.util.Optional;
+
+import java.io.UnsupportedEncodingException;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A compiled XNAT series import filter, which allows or excludes series according to whether their description matches
+ * any of a list of regular expressions
+ *
+ * <p>The expressions are combined into a single alternation, so that each description is tested in one pass rather
+ * than once for each expression. Expressions whose meaning could change when combined (backreferences, quoting which
+ * extends to the end of the expression, and comment mode) are tested separately.
+ *
+ * <p>Instances are immutable and may be shared between threads.
+ */
+class SeriesImportFilter {
+
+    static final String MODE_BLACKLIST = "blacklist";
+    static final String MODE_WHITELIST = "whitelist";
+
+    private static final String DEFAULT_MODE = MODE_BLACKLIST;
+    private static final String DEFAULT_LIST = "";
+
+    private static final Pattern BACKREFERENCE = Pattern.compile("\\\\(?:[0-9]|k<)");
+    private static final Pattern COMMENTS_FLAG = Pattern.compile("\\(\\?[a-zA-Z-]*x");
+
+    private final boolean enabled;
+    private final String mode;
+    private final String list;
+    private final String contentHash;
+    private final Optional<Pattern> combinedPattern;
+    private final List<Pattern> separatePatterns;
+
+    /**
+     * @param optionalContents the filter fields returned by the server, or an empty Optional if no filter is defined
+     * @throws PatternSyntaxException if any of the expressions are not valid
+     */
+    SeriesImportFilter(final Optional<Map<String, String>> optionalContents) {
+        enabled = optionalContents.isPresent();
+        if (enabled && optionalContents.get().containsKey("mode")) {
+            mode = optionalContents.get().get("mode");
+        } else {
+            mode = DEFAULT_MODE;
+        }
+        if (enabled && optionalContents.get().containsKey("list")) {
+            list = optionalContents.get().get("list");
+        } else {
+            list = DEFAULT_LIST;
+        }
+        contentHash = computeContentHash(optionalContents);
+
+        final List<String> combinableFilters = new ArrayList<String>();
+        final List<Pattern> separate = new ArrayList<Pattern>();
+        if (enabled && StringUtils.isNotBlank(list)) {
+            for (final String filter : list.trim().split("\n")) {
+                // Each expression is compiled alone first, so that an invalid expression is reported as before
+                final Pattern pattern = Pattern.compile(filter, Pattern.CASE_INSENSITIVE);
+                if (canCombine(filter)) {
+                    combinableFilters.add(filter);
+                } else {
+                    separate.add(pattern);
+                }
+            }
+        }
+
+        Optional<Pattern> combined = Optional.empty();
+        if (!combinableFilters.isEmpty()) {
+            try {
+                combined = Optional.of(combine(combinableFilters));
+            } catch (PatternSyntaxException e) {
+                // For example, the same named group in two expressions
+                for (final String filter : combinableFilters) {
+                    separate.add(Pattern.compile(filter, Pattern.CASE_INSENSITIVE));
+                }
+            }
+        }
+        combinedPattern = combined;
+        separatePatterns = Collections.unmodifiableList(separate);
+    }
+
+    /**
+     * @param seriesDescription the series description, which may be null
+     * @return true if the series should be imported
+     */
+    boolean allow(final String seriesDescription) {
+        // If this is not enabled, then everything matches.
+        if (!enabled) {
+            return true;
+        }
+
+        final String description = seriesDescription == null ? "" : seriesDescription;
+        boolean matched = combinedPattern.isPresent() && combinedPattern.get().matcher(description).matches();
+        for (int index = 0; !matched && index < separatePatterns.size(); index++) {
+            matched = separatePatterns.get(index).matcher(description).matches();
+        }
+
+        // Keep a matching series if this is a whitelist, and a series which does not match if this is a blacklist
+        return matched ? mode.equals(MODE_WHITELIST) : mode.equals(MODE_BLACKLIST);
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    String getMode() {
+        return mode;
+    }
+
+    String getList() {
+        return list;
+    }
+
+    /**
+     * @return a hash of the filter definition, which is the same for any two filters defined by the same fields
+     */
+    String getContentHash() {
+        return contentHash;
+    }
+
+    /**
+     * @return the number of expressions which could not be combined and are tested one at a time
+     */
+    int getNumberOfSeparatePatterns() {
+        return separatePatterns.size();
+    }
+
+    static String computeContentHash(final Optional<Map<String, String>> optionalContents) {
+        final StringBuilder content = new StringBuilder();
+        if (optionalContents.isPresent()) {
+            // Absent and empty fields are distinguished, since a missing mode means the default mode
+            final Map<String, String> contents = optionalContents.get();
+            content.append("enabled\u0000");
+            content.append(contents.containsKey("mode") ? "mode=" + contents.get("mode") : "").append('\u0000');
+            content.append(contents.containsKey("list") ? "list=" + contents.get("list") : "");
+        }
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(content.toString().getBytes("UTF-8"));
+            return String.format("%064x", new BigInteger(1, digest));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 is not available", e);
+        }
+    }
+
+    private static boolean canCombine(final String filter) {
+        return !filter.contains("\\Q") && !BACKREFERENCE.matcher(filter).find() && !COMMENTS_FLAG.matcher(filter).find();
+    }
+
+    private static Pattern combine(final List<String> filters) {
+        // Inline flags within each non-capturing group apply only to that group
+        final StringBuilder alternation = new StringBuilder();
+        for (final String filter : filters) {
+            if (alternation.length() > 0) {
+                alternation.append('|');
+            }
+            alternation.append("(?:").append(filter).append(')');
+        }
+        return Pattern.compile(alternation.toString(), Pattern.CASE_INSENSITIVE);
+    }
+}
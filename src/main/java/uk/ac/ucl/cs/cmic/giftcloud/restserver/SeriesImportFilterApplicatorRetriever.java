@@ -12,108 +12,110 @@ package uk.ac.ucl.cs.cmic.giftcloud.restserver;
 
 import org.apache.commons.lang.StringUtils;
 import org.json.JSONException;
+import uk.ac.ucl.cs.cmic.giftcloud.util.GiftCloudReporter;
 import uk.ac.ucl.cs.cmic.giftcloud.util.Optional;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * For retrieving XNAT series import filters for a particular project
+ *
+ * <p>The filters can be retrieved again while the retriever is in use. If they have changed on the server, the new
+ * filters replace the old ones atomically, so that each series is checked against either the old or the new site-wide
+ * and project filters together.
  */
 public final class SeriesImportFilterApplicatorRetriever {
 
-    private final SeriesImportFilter _siteWideFilters;
-    private final SeriesImportFilter _projectFilters;
-
-	public SeriesImportFilterApplicatorRetriever(final GiftCloudServer server, final Optional<String> projectName) throws IOException, JSONException {
-        _siteWideFilters = extractSitewideSeriesImportFilters(server);
-        if (projectName.isPresent() && StringUtils.isNotBlank(projectName.get())) {
-            _projectFilters = extractProjectSeriesImportFilters(server, projectName.get());
-        } else {
-            _projectFilters = null;
+    private static final String SITEWIDE_FILTER_NAME = "sitewide";
+    private static final String PROJECT_FILTER_PREFIX = "project_";
+
+    private final Optional<String> projectName;
+    private final SeriesImportFilterCache filterCache;
+    private volatile FilterSet filters;
+
+    /**
+     * Retrieves the filters from the server, or uses the local copies if the server cannot be reached
+     *
+     * @param server the server from which to retrieve the filters
+     * @param projectName the project whose filters are applied in addition to the site-wide filters
+     * @param filterCache compiles the filters and keeps the local copies
+     * @param reporter for logging a failure to retrieve the filters when a local copy is used instead
+     * @throws IOException if the filters could not be retrieved and there are no local copies
+     * @throws JSONException if the filters could not be read and there are no local copies
+     */
+    public SeriesImportFilterApplicatorRetriever(final GiftCloudServer server, final Optional<String> projectName, final SeriesImportFilterCache filterCache, final GiftCloudReporter reporter) throws IOException, JSONException {
+        this.projectName = projectName.isPresent() && StringUtils.isNotBlank(projectName.get()) ? projectName : Optional.<String>empty();
+        this.filterCache = filterCache;
+        try {
+            refresh(server);
+        } catch (IOException e) {
+            if (!loadLocalCopies()) {
+                throw e;
+            }
+            reporter.silentLogException(e, "Could not retrieve the series import filters, so the previously retrieved filters will be used: " + e.getLocalizedMessage());
+        } catch (JSONException e) {
+            if (!loadLocalCopies()) {
+                throw e;
+            }
+            reporter.silentLogException(e, "Could not read the series import filters, so the previously retrieved filters will be used: " + e.getLocalizedMessage());
         }
-	}
+    }
 
     public boolean checkSeries(final String description) {
-        return _siteWideFilters.allow(description) && (_projectFilters == null || _projectFilters.allow(description));
+        // The site-wide and project filters are read together, so that a concurrent refresh cannot mix old and new
+        final FilterSet currentFilters = filters;
+        return currentFilters.siteWideFilter.allow(description) && (!currentFilters.projectFilter.isPresent() || currentFilters.projectFilter.get().allow(description));
     }
 
-    private SeriesImportFilter extractSitewideSeriesImportFilters(final GiftCloudServer server) throws IOException, JSONException {
-        Optional<Map<String, String>> contents = server.getSitewideSeriesImportFilter();
-        if (contents.isPresent()) {
-            return new SeriesImportFilter(contents);
-        } else {
-            return NULL_FILTER;
+    /**
+     * Retrieves the filters from the server again and replaces the current filters if they have changed
+     *
+     * @param server the server from which to retrieve the filters
+     * @return true if the filters have changed
+     * @throws IOException if the filters could not be retrieved, in which case the current filters are kept
+     * @throws JSONException if the filters could not be read, in which case the current filters are kept
+     */
+    public synchronized boolean refresh(final GiftCloudServer server) throws IOException, JSONException {
+        final Optional<Map<String, String>> siteWideContents = server.getSitewideSeriesImportFilter();
+        final Optional<Map<String, String>> projectContents = projectName.isPresent() ? server.getProjectSeriesImportFilter(projectName.get()) : Optional.<Map<String, String>>empty();
+
+        // Filters with unchanged definitions are the same objects, since the cache is keyed by a hash of the definition
+        final SeriesImportFilter siteWideFilter = filterCache.getFilter(siteWideContents);
+        final Optional<SeriesImportFilter> projectFilter = projectName.isPresent() ? Optional.of(filterCache.getFilter(projectContents)) : Optional.<SeriesImportFilter>empty();
+        final FilterSet currentFilters = filters;
+        if (currentFilters != null && currentFilters.siteWideFilter == siteWideFilter && currentFilters.projectFilter.orElse(null) == projectFilter.orElse(null)) {
+            return false;
         }
-    }
 
-    private SeriesImportFilter extractProjectSeriesImportFilters(final GiftCloudServer server, String projectName) throws IOException, JSONException {
-        Optional<Map<String, String>> contents = server.getProjectSeriesImportFilter(projectName);
-        if (contents.isPresent()) {
-            return new SeriesImportFilter(contents);
-        } else {
-            return NULL_FILTER;
+        filters = new FilterSet(siteWideFilter, projectFilter);
+        filterCache.save(SITEWIDE_FILTER_NAME, siteWideContents);
+        if (projectName.isPresent()) {
+            filterCache.save(PROJECT_FILTER_PREFIX + projectName.get(), projectContents);
         }
+        return true;
     }
 
-    static class SeriesImportFilter {
-
-        final private boolean _enabled;
-        final private String _mode;
-        final private List<Pattern> _patterns = new ArrayList<Pattern>();
-
-        final static private String MODE_BLACKLIST = "blacklist";
-        final static private String MODE_WHITELIST = "whitelist";
-
-        final static private String DEFAULT_MODE = MODE_BLACKLIST;
-        final static private String DEFAULT_LIST = "";
-
-        private SeriesImportFilter() {
-            _enabled = false;
-            _mode = DEFAULT_MODE;
+    private boolean loadLocalCopies() {
+        final Optional<SeriesImportFilter> siteWideFilter = filterCache.load(SITEWIDE_FILTER_NAME);
+        final Optional<SeriesImportFilter> projectFilter = projectName.isPresent() ? filterCache.load(PROJECT_FILTER_PREFIX + projectName.get()) : Optional.<SeriesImportFilter>empty();
+        if (!siteWideFilter.isPresent() || (projectName.isPresent() && !projectFilter.isPresent())) {
+            return false;
         }
+        filters = new FilterSet(siteWideFilter.get(), projectFilter);
+        return true;
+    }
 
-        public SeriesImportFilter(final Optional<Map<String, String>> optionalContents) {
-            _enabled = optionalContents.isPresent();
-            if (!_enabled) {
-                _mode = DEFAULT_MODE;
-            } else {
-                final Map<String, String> contents = optionalContents.get();
-                _mode = contents.containsKey("mode") ? contents.get("mode") : DEFAULT_MODE;
-                final String rawFilters = contents.containsKey("list") ? contents.get("list") : DEFAULT_LIST;
-                if (StringUtils.isNotBlank(rawFilters)) {
-                    final String[] filters = rawFilters.trim().split("\n");
-                    for (final String filter : filters) {
-                        _patterns.add(Pattern.compile(filter, Pattern.CASE_INSENSITIVE));
-                    }
-                }
-            }
-        }
-
-        public boolean allow(final String seriesDescription) {
-            // If this is not enabled, then everything matches.
-            if (!_enabled) {
-                return true;
-            }
-
-            // Iterate through the patterns.
-            for (Pattern pattern : _patterns) {
-                Matcher matcher = pattern.matcher(seriesDescription == null ? "" : seriesDescription);
-                // If the description matches this pattern...
-                if (matcher.matches()) {
-                    // Then keep the series if this is a whitelist, don't if not.
-                    return _mode.equals(MODE_WHITELIST);
-                }
-            }
+    /**
+     * The filters which are applied together to each series
+     */
+    private static class FilterSet {
+        private final SeriesImportFilter siteWideFilter;
+        private final Optional<SeriesImportFilter> projectFilter;
 
-            // If the description didn't match any of the patterns, then keep it if this is a blacklist, don't if not.
-            return _mode.equals(MODE_BLACKLIST);
+        FilterSet(final SeriesImportFilter siteWideFilter, final Optional<SeriesImportFilter> projectFilter) {
+            this.siteWideFilter = siteWideFilter;
+            this.projectFilter = projectFilter;
         }
     }
-
-    private static final SeriesImportFilter NULL_FILTER = new SeriesImportFilter();
 }
@@ -0,0 +1,160 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+package uk.ac.ucl.cs.cmic.giftcloud.restserver;
+
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import uk.ac.ucl.cs.cmic.giftcloud.util.GiftCloudReporter;
+import uk.ac.ucl.cs.cmic.giftcloud.util.Optional;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compiles series import filters and keeps a local copy of the most recent filters retrieved from the server
+ *
+ * <p>Compiled filters are cached by a hash of their definition, so that filters which are shared between projects, or
+ * which have not changed since they were last retrieved, are not compiled again. The local copies are used when the
+ * filters cannot be retrieved from the server, for example when the uploader starts while the server is unavailable.
+ */
+public class SeriesImportFilterCache {
+
+    private static final int MAXIMUM_CACHED_FILTERS = 100;
+    private static final String ENCODING = "UTF-8";
+    private static final String FILE_SUFFIX = ".json";
+    private static final String ENABLED_LABEL = "enabled";
+    private static final String MODE_LABEL = "mode";
+    private static final String LIST_LABEL = "list";
+
+    private final File folder;
+    private final GiftCloudReporter reporter;
+    private final Map<String, SeriesImportFilter> filters = new LinkedHashMap<String, SeriesImportFilter>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, SeriesImportFilter> eldest) {
+            return size() > MAXIMUM_CACHED_FILTERS;
+        }
+    };
+
+    /**
+     * @param folder the folder in which local copies of the filters are kept
+     * @param reporter for logging errors when reading or writing the local copies
+     */
+    public SeriesImportFilterCache(final File folder, final GiftCloudReporter reporter) {
+        this.folder = folder;
+        this.reporter = reporter;
+    }
+
+    /**
+     * @param contents the filter fields returned by the server, or an empty Optional if no filter is defined
+     * @return the compiled filter, which is the same object for any filters with the same definition
+     */
+    synchronized SeriesImportFilter getFilter(final Optional<Map<String, String>> contents) {
+        final String contentHash = SeriesImportFilter.computeContentHash(contents);
+        final SeriesImportFilter cachedFilter = filters.get(contentHash);
+        if (cachedFilter != null) {
+            return cachedFilter;
+        }
+        final SeriesImportFilter filter = new SeriesImportFilter(contents);
+        filters.put(contentHash, filter);
+        return filter;
+    }
+
+    /**
+     * Replaces the local copy of a filter definition
+     *
+     * @param name identifies the filter, for example the site-wide filter or the filter for a particular project
+     * @param contents the filter fields returned by the server, or an empty Optional if no filter is defined
+     */
+    @SuppressWarnings("unchecked")
+    void save(final String name, final Optional<Map<String, String>> contents) {
+        final JSONObject mainObj = new JSONObject();
+        mainObj.put(ENABLED_LABEL, contents.isPresent());
+        if (contents.isPresent()) {
+            if (contents.get().containsKey(MODE_LABEL)) {
+                mainObj.put(MODE_LABEL, contents.get().get(MODE_LABEL));
+            }
+            if (contents.get().containsKey(LIST_LABEL)) {
+                mainObj.put(LIST_LABEL, contents.get().get(LIST_LABEL));
+            }
+        }
+
+        // The new copy is written alongside the old one, so that an interrupted write leaves the previous copy intact
+        final File file = getFile(name);
+        final File newFile = new File(file.getPath() + ".new");
+        try {
+            if (!folder.isDirectory() && !folder.mkdirs()) {
+                throw new IOException("Could not create the folder " + folder.getPath());
+            }
+            final Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(newFile), ENCODING));
+            try {
+                mainObj.writeJSONString(writer);
+            } finally {
+                writer.close();
+            }
+            if ((file.exists() && !file.delete()) || !newFile.renameTo(file)) {
+                throw new IOException("Could not replace the series import filter file " + file.getPath());
+            }
+        } catch (IOException e) {
+            reporter.silentLogException(e, "Could not save a local copy of the series import filter " + name + ": " + e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * @param name identifies the filter, for example the site-wide filter or the filter for a particular project
+     * @return the filter compiled from the local copy, or an empty Optional if there is no local copy which can be read
+     */
+    Optional<SeriesImportFilter> load(final String name) {
+        final File file = getFile(name);
+        if (!file.isFile()) {
+            return Optional.empty();
+        }
+        try {
+            final Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), ENCODING));
+            final JSONObject mainObj;
+            try {
+                mainObj = (JSONObject) new JSONParser().parse(reader);
+            } finally {
+                reader.close();
+            }
+            if (!Boolean.TRUE.equals(mainObj.get(ENABLED_LABEL))) {
+                return Optional.of(getFilter(Optional.<Map<String, String>>empty()));
+            }
+            final Map<String, String> contents = new HashMap<String, String>();
+            if (mainObj.containsKey(MODE_LABEL)) {
+                contents.put(MODE_LABEL, (String) mainObj.get(MODE_LABEL));
+            }
+            if (mainObj.containsKey(LIST_LABEL)) {
+                contents.put(LIST_LABEL, (String) mainObj.get(LIST_LABEL));
+            }
+            return Optional.of(getFilter(Optional.of(contents)));
+
+        } catch (Exception e) {
+            reporter.silentLogException(e, "Could not read the local copy of the series import filter " + name + ": " + e.getLocalizedMessage());
+            return Optional.empty();
+        }
+    }
+
+    private File getFile(final String name) {
+        return new File(folder, name.replaceAll("[^A-Za-z0-9_.-]", "_") + FILE_SUFFIX);
+    }
+}
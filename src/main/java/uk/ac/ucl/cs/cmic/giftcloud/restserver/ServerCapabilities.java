@@ -0,0 +1,54 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+package uk.ac.ucl.cs.cmic.giftcloud.restserver;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Records which optional REST features a server supports
+ *
+ * Servers without the GIFT-Cloud pseudonym and UID lookup extensions respond to these requests with HTTP 400 (bad
+ * request). Each feature is assumed to be supported until a request for it fails in this way, after which requests for
+ * that feature can be skipped. Instances are thread-safe.
+ */
+class ServerCapabilities {
+
+    private static final int HTTP_BAD_REQUEST = 400;
+
+    enum Capability {
+        SUBJECT_PSEUDONYMS,
+        EXPERIMENT_UIDS,
+        SCAN_UIDS
+    }
+
+    private final Set<Capability> unsupportedCapabilities = EnumSet.noneOf(Capability.class);
+
+    /**
+     * @return false if a previous request has shown that the server does not support this capability
+     */
+    synchronized boolean isSupported(final Capability capability) {
+        return !unsupportedCapabilities.contains(capability);
+    }
+
+    /**
+     * Records that the capability is unsupported if the exception indicates the server did not recognise the request
+     *
+     * @param capability the capability used by the failed request
+     * @param exception the exception thrown by the failed request
+     */
+    synchronized void recordFailure(final Capability capability, final GiftCloudHttpException exception) {
+        if (exception.getResponseCode() == HTTP_BAD_REQUEST) {
+            unsupportedCapabilities.add(capability);
+        }
+    }
+}
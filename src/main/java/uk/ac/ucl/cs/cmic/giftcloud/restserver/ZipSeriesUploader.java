@@ -18,15 +18,25 @@ package uk.ac.ucl.cs.cmic.giftcloud.restserver;
 
 import com.google.common.collect.ImmutableList;
 import org.dcm4che2.data.Tag;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import uk.ac.ucl.cs.cmic.giftcloud.dicom.FileCollection;
+import uk.ac.ucl.cs.cmic.giftcloud.dicom.SeriesStatistics;
 import uk.ac.ucl.cs.cmic.giftcloud.dicom.SeriesZipper;
 import uk.ac.ucl.cs.cmic.giftcloud.dicom.UploadParameters;
+import uk.ac.ucl.cs.cmic.giftcloud.metrics.Counter;
+import uk.ac.ucl.cs.cmic.giftcloud.metrics.LatencyHistogram;
+import uk.ac.ucl.cs.cmic.giftcloud.metrics.MetricsRegistry;
 
 import java.io.File;
 import java.util.Collections;
 import java.util.Set;
 
 public class ZipSeriesUploader extends CallableUploader {
+    private static final Logger logger = LoggerFactory.getLogger(ZipSeriesUploader.class);
+    private static final LatencyHistogram uploadLatency = MetricsRegistry.getDefault().histogram("upload.http");
+    private static final Counter uploadedBytes = MetricsRegistry.getDefault().counter("upload.http.bytes");
+
     protected final UploadParameters uploadParameters;
     private SeriesZipper seriesZipper;
     protected boolean append;
@@ -54,6 +64,7 @@ public class ZipSeriesUploader extends CallableUploader {
 
     @Override
     public Set<String> call() throws Exception {
+        logEstimate();
         final File temporaryZipFile = seriesZipper.buildSeriesZipFile(fileCollection);
         try {
             return server.uploadZipFile(uploadParameters.getProjectName(), uploadParameters.getSubjectLabel(), uploadParameters.getExperimentLabel(), uploadParameters.getScanLabel(), uploadParameters.getXnatModalityParams(), temporaryZipFile, append);
@@ -61,4 +72,24 @@ public class ZipSeriesUploader extends CallableUploader {
             temporaryZipFile.delete();
         }
     }
+
+    /**
+     * Logs the expected size and duration of the upload, using the statistics recorded when the files were added to
+     * the series and the throughput of previous uploads
+     */
+    private void logEstimate() {
+        final SeriesStatistics statistics = fileCollection.getStatistics();
+        final LatencyHistogram.Snapshot previousUploads = uploadLatency.getSnapshot();
+        final double previousUploadSeconds = previousUploads.getCount() * previousUploads.getMeanMicros() / 1000000.0;
+        final double bytesPerSecond = previousUploadSeconds > 0 ? uploadedBytes.getCount() / previousUploadSeconds : 0;
+
+        final StringBuilder message = new StringBuilder();
+        message.append("Uploading series of ").append(statistics.getFileCount()).append(" files, ");
+        message.append(statistics.getTotalBytes() / 1024).append(" KB, estimated ").append(statistics.getEstimatedZipBytes() / 1024).append(" KB after compression");
+        if (bytesPerSecond > 0) {
+            message.append(", estimated time ").append(statistics.getEstimatedUploadMillis(bytesPerSecond) / 1000).append(" s");
+        }
+        message.append(". Transfer syntaxes: ").append(statistics.getTransferSyntaxHistogram());
+        logger.info(message.toString());
+    }
 }
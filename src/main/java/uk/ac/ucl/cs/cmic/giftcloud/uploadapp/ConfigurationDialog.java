@@ -16,6 +16,7 @@
 package uk.ac.ucl.cs.cmic.giftcloud.uploadapp;
 
 import org.apache.commons.lang.StringUtils;
+import uk.ac.ucl.cs.cmic.giftcloud.request.BandwidthSchedule;
 import uk.ac.ucl.cs.cmic.giftcloud.util.GiftCloudReporter;
 import uk.ac.ucl.cs.cmic.giftcloud.util.GiftCloudUtils;
 import uk.ac.ucl.cs.cmic.giftcloud.util.Optional;
@@ -58,6 +59,7 @@ public class ConfigurationDialog {
     private final JTextField listeningPortField;
     private final JTextField patientListExportFolderField;
     private final JTextField subjectPrefixField;
+    private final JTextField uploadBandwidthScheduleField;
     private final JPasswordField patientListSpreadsheetPasswordField;
     private final JTextField remoteAETitleField;
     private final JTextField remoteAEHostName;
@@ -206,6 +208,19 @@ public class ConfigurationDialog {
                 subjectPrefixField = new AutoFocusTextField(subjectPrefixText.orElse(""));
                 giftCloudServerPanel.add(subjectPrefixField, inputConstraints);
             }
+
+            // Upload bandwidth schedule
+            {
+                labelConstraints.gridy = 7;
+                JLabel uploadBandwidthScheduleLabel = new JLabel(resourceBundle.getString("configPanelUploadBandwidthSchedule"), SwingConstants.RIGHT);
+                uploadBandwidthScheduleLabel.setToolTipText(resourceBundle.getString("configPanelUploadBandwidthScheduleTooltip"));
+                giftCloudServerPanel.add(uploadBandwidthScheduleLabel, labelConstraints);
+
+                inputConstraints.gridy = 7;
+                final Optional<String> uploadBandwidthScheduleText = giftCloudProperties.getUploadBandwidthSchedule();
+                uploadBandwidthScheduleField = new AutoFocusTextField(uploadBandwidthScheduleText.orElse(""));
+                giftCloudServerPanel.add(uploadBandwidthScheduleField, inputConstraints);
+            }
         }
 
         // Local Dicom node configuration
@@ -542,6 +557,14 @@ public class ConfigurationDialog {
             }
         }
 
+        {
+            try {
+                BandwidthSchedule.parse(uploadBandwidthScheduleField.getText());
+            } catch (IllegalArgumentException e) {
+                problems.add(resourceBundle.getString("configPanelUploadBandwidthScheduleError"));
+            }
+        }
+
         {
             final String patientListExportFolder = patientListExportFolderField.getText();
             if (!StringUtils.isBlank(patientListExportFolder)) {
@@ -573,6 +596,7 @@ public class ConfigurationDialog {
         final char[] newPatientListPassword = patientListSpreadsheetPasswordField.getPassword();
         final String newPatientListExportFolder = patientListExportFolderField.getText();
         final String newSubjectPrefix = subjectPrefixField.getText();
+        final String newUploadBandwidthSchedule = uploadBandwidthScheduleField.getText();
         final int newPacsPort = Integer.parseInt(remoteAEPortField.getText());
         final String newPacsAeTitle = remoteAETitleField.getText();
         final String newPacsHostName = remoteAEHostName.getText();
@@ -605,6 +629,7 @@ public class ConfigurationDialog {
         giftCloudProperties.setLastPassword(newGiftCloudPassword);
         giftCloudProperties.setPatientListPassword(newPatientListPassword);
         giftCloudProperties.setSubjectPrefix(newSubjectPrefix);
+        giftCloudProperties.setUploadBandwidthSchedule(newUploadBandwidthSchedule);
         giftCloudProperties.setPacsPort(newPacsPort);
         giftCloudProperties.setPacsAeTitle(newPacsAeTitle);
         giftCloudProperties.setPacsHostName(newPacsHostName);
@@ -13,10 +13,7 @@
 
 package uk.ac.ucl.cs.cmic.giftcloud.uploadapp;
 
-import com.pixelmed.dicom.AttributeList;
-import com.pixelmed.dicom.DicomException;
-import com.pixelmed.dicom.StoredFilePathStrategy;
-import com.pixelmed.dicom.TransferSyntax;
+import com.pixelmed.dicom.*;
 import com.pixelmed.display.event.StatusChangeEvent;
 import com.pixelmed.event.ApplicationEventDispatcher;
 import com.pixelmed.network.*;
@@ -24,10 +21,13 @@ import com.pixelmed.utils.CapabilitiesAvailable;
 import uk.ac.ucl.cs.cmic.giftcloud.uploader.DicomFileImportRecord;
 import uk.ac.ucl.cs.cmic.giftcloud.uploader.GiftCloudUploader;
 import uk.ac.ucl.cs.cmic.giftcloud.uploader.PendingUploadTask;
+import uk.ac.ucl.cs.cmic.giftcloud.uploader.UploadSpool;
 import uk.ac.ucl.cs.cmic.giftcloud.uploader.UploaderStatusModel;
 import uk.ac.ucl.cs.cmic.giftcloud.util.*;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.LinkedList;
 import java.util.List;
@@ -45,13 +45,15 @@ public class DicomListener {
 
     private StorageSOPClassSCPDispatcher storageSOPClassSCPDispatcher;
     private GiftCloudUploader uploader;
+    private UploadSpool uploadSpool;
     private GiftCloudPropertiesFromApplication giftCloudProperties;
     private UploaderStatusModel uploaderStatusModel;
     private GiftCloudReporter reporter;
 
 
-    public DicomListener(final GiftCloudUploader uploader, final GiftCloudPropertiesFromApplication giftCloudProperties, final UploaderStatusModel uploaderStatusModel, final GiftCloudReporter reporter) throws DicomException {
+    public DicomListener(final GiftCloudUploader uploader, final UploadSpool uploadSpool, final GiftCloudPropertiesFromApplication giftCloudProperties, final UploaderStatusModel uploaderStatusModel, final GiftCloudReporter reporter) throws DicomException {
         this.uploader = uploader;
+        this.uploadSpool = uploadSpool;
         this.giftCloudProperties = giftCloudProperties;
         this.uploaderStatusModel = uploaderStatusModel;
         this.reporter = reporter;
@@ -72,7 +74,7 @@ public class DicomListener {
      */
     public void activateStorageSCP() throws IOException {
         uploaderStatusModel.setImportingStatusMessage("Starting up Dicom listener");
-        final File savedImagesFolder = giftCloudProperties.getUploadFolder(reporter);
+        final File savedImagesFolder = uploadSpool.getSpoolFolder();
 
         // Start up DICOM association listener in background for receiving images and responding to echoes ...
         {
@@ -89,6 +91,7 @@ public class DicomListener {
                     new OurPresentationContextSelectionPolicy(),
                     false/*secureTransport*/
             );
+            storageSOPClassSCPDispatcher.setStorageCapacityPolicy(uploader.getSpoolQuotaMonitor());
             storageSOPClassSCPDispatcher.startup();
             uploaderStatusModel.setImportingStatusMessage("Dicom listener started.");
         }
@@ -101,6 +104,13 @@ public class DicomListener {
         }
     }
 
+    /**
+     * @return true if the DICOM listener is currently accepting associations
+     */
+    public boolean isListening() {
+        return storageSOPClassSCPDispatcher != null && storageSOPClassSCPDispatcher.isListening();
+    }
+
     public void shutdownStorageSCP() {
         if (storageSOPClassSCPDispatcher != null) {
             uploaderStatusModel.setImportingStatusMessage("Stopping the DICOM listener");
@@ -129,7 +139,18 @@ public class DicomListener {
             if (dicomFileName != null) {
                 ApplicationEventDispatcher.getApplicationEventDispatcher().processEvent(new StatusChangeEvent("Received "+dicomFileName+" from "+callingAETitle+" in "+transferSyntax));
                 try {
-                    uploader.importFiles(new DicomFileImportRecord(dicomFileName, GiftCloudUtils.getDateAsAString(), PendingUploadTask.DeleteAfterUpload.DELETE_AFTER_UPLOAD, Optional.<AttributeList>empty()));
+                    final Optional<AttributeList> headers = readHeaders(dicomFileName);
+
+                    // Move the file into the spool folder for its series, so that it can be found without a directory listing after a restart
+                    String storedFileName = dicomFileName;
+                    if (headers.isPresent()) {
+                        try {
+                            storedFileName = uploadSpool.addFile(new File(dicomFileName), headers.get()).getPath();
+                        } catch (IOException e) {
+                            reporter.silentLogException(e, "Could not add a received file to the upload spool: " + e.getLocalizedMessage());
+                        }
+                    }
+                    uploader.importFiles(new DicomFileImportRecord(storedFileName, GiftCloudUtils.getDateAsAString(), PendingUploadTask.DeleteAfterUpload.DELETE_AFTER_UPLOAD, headers));
                 } catch (Exception e) {
                     e.printStackTrace(System.err);
                 }
@@ -137,6 +158,23 @@ public class DicomListener {
         }
     }
 
+    private Optional<AttributeList> readHeaders(final String dicomFileName) {
+        try {
+            final DicomInputStream dicomInputStream = new DicomInputStream(new BufferedInputStream(new FileInputStream(dicomFileName)));
+            try {
+                final AttributeList attributeList = new AttributeList();
+                attributeList.read(dicomInputStream, TagFromName.PixelData);
+                return Optional.of(attributeList);
+            } finally {
+                dicomInputStream.close();
+            }
+        } catch (Exception e) {
+            // The file will be parsed again when it is imported
+            reporter.silentLogException(e, "Could not read the headers of a received file: " + e.getLocalizedMessage());
+            return Optional.empty();
+        }
+    }
+
     // we will (grudgingly) accept JPEGBaseline, since we know the JRE can natively decode it without JIIO extensions present,
     // so will work by decompressing during attribute list read for cleaning
 
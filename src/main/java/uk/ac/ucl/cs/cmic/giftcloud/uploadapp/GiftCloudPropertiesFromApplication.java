@@ -20,6 +20,7 @@ import com.pixelmed.network.NetworkDefaultValues;
 import org.apache.commons.lang.StringUtils;
 import uk.ac.ucl.cs.cmic.giftcloud.restserver.GiftCloudProperties;
 import uk.ac.ucl.cs.cmic.giftcloud.uploader.PropertyStore;
+import uk.ac.ucl.cs.cmic.giftcloud.uploader.SpoolQuotaMonitor;
 import uk.ac.ucl.cs.cmic.giftcloud.util.GiftCloudUtils;
 import uk.ac.ucl.cs.cmic.giftcloud.util.LoggingReporter;
 import uk.ac.ucl.cs.cmic.giftcloud.util.Optional;
@@ -161,6 +162,54 @@ public class GiftCloudPropertiesFromApplication implements GiftCloudProperties {
         return getOptionalBoolean(propertyName_HideWindowOnStartup);
     }
 
+    @Override
+    public long getSpoolHighWaterMarkMb() {
+        final long highWaterMarkMb = getLongWithDefault(propertyName_SpoolHighWaterMarkMb, SpoolQuotaMonitor.DEFAULT_HIGH_WATER_MARK_MB);
+        if (highWaterMarkMb <= 0) {
+            reporter.silentWarning("The upload spool high-water mark of " + highWaterMarkMb + " MB is not valid. The default of " + SpoolQuotaMonitor.DEFAULT_HIGH_WATER_MARK_MB + " MB will be used instead.");
+            return SpoolQuotaMonitor.DEFAULT_HIGH_WATER_MARK_MB;
+        }
+        return highWaterMarkMb;
+    }
+
+    @Override
+    public long getSpoolLowWaterMarkMb() {
+        // If only the high-water mark has been set, the low-water mark follows it
+        final long highWaterMarkMb = getSpoolHighWaterMarkMb();
+        final long defaultLowWaterMarkMb = SpoolQuotaMonitor.getDefaultLowWaterMark(highWaterMarkMb);
+        final long lowWaterMarkMb = getLongWithDefault(propertyName_SpoolLowWaterMarkMb, defaultLowWaterMarkMb);
+        if (!SpoolQuotaMonitor.areValidMarks(highWaterMarkMb, lowWaterMarkMb)) {
+            reporter.silentWarning("The upload spool low-water mark of " + lowWaterMarkMb + " MB must be less than the high-water mark of " + highWaterMarkMb + " MB. A low-water mark of " + defaultLowWaterMarkMb + " MB will be used instead.");
+            return defaultLowWaterMarkMb;
+        }
+        return lowWaterMarkMb;
+    }
+
+    @Override
+    public Optional<String> getWatchFolder() {
+        return getOptionalProperty(propertyName_WatchFolder);
+    }
+
+    @Override
+    public long getWatchFolderPollIntervalMs() {
+        return getLongWithDefault(propertyName_WatchFolderPollIntervalMs, 2000);
+    }
+
+    @Override
+    public int getRetrieveParallelism() {
+        return Math.max(1, getIntegerWithDefault(propertyName_RetrieveParallelism, 4));
+    }
+
+    @Override
+    public long getMetricsLogIntervalSeconds() {
+        return getLongWithDefault(propertyName_MetricsLogIntervalSeconds, 300);
+    }
+
+    @Override
+    public int getStatusServerPort() {
+        return getIntegerWithDefault(propertyName_StatusServerPort, -1);
+    }
+
     @Override
     public Optional<String> getPatientListLocalCacheFolder() {
         return getOptionalProperty(propertyName_PatientListLocalCacheDirectory);
@@ -186,6 +235,16 @@ public class GiftCloudPropertiesFromApplication implements GiftCloudProperties {
         return getIntegerWithDefault(propertyName_LongTimeoutMs, 30000);
     }
 
+    @Override
+    public Optional<String> getUploadBandwidthSchedule() {
+        return getOptionalProperty(propertyName_UploadBandwidthSchedule);
+    }
+
+    @Override
+    public void setUploadBandwidthSchedule(final String uploadBandwidthSchedule) {
+        setPropertyString(propertyName_UploadBandwidthSchedule, uploadBandwidthSchedule);
+    }
+
     @Override
     public Optional<char[]> getPatientListPassword() {
         return properties.getPassword(KEYSTORE_PATIENT_LIST_SPREDSHEET_PASSWORD_KEY);
@@ -28,6 +28,8 @@ import java.util.List;
 
 public class GiftCloudUploaderDaemonLauncher implements UserCallback {
 
+    private Optional<StatusServer> statusServer = Optional.empty();
+
 	public GiftCloudUploaderDaemonLauncher(final RestClientFactory restClientFactory, List<File> fileList) {
 	    Optional<GiftCloudLogger> logger = Optional.empty();
         try {
@@ -41,6 +43,13 @@ public class GiftCloudUploaderDaemonLauncher implements UserCallback {
             // Create the GUI-less UploaderController. This will use the UploaderControllerCallback and Reporting objects for any required output or user interaction
             final UploaderController uploaderController = new UploaderController(restClientFactory, applicationConfiguration.getProperties(), this, reporter);
 
+            // The status server is only started if a port has been configured
+            final int statusServerPort = applicationConfiguration.getProperties().getStatusServerPort();
+            if (statusServerPort >= 0) {
+                statusServer = Optional.of(new StatusServer(uploaderController, statusServerPort));
+                statusServer.get().start();
+            }
+
             new Thread(new DaemonStartupWorker(applicationConfiguration, uploaderController, reporter)).start();
         }
         catch (Throwable t) {
@@ -64,6 +73,9 @@ public class GiftCloudUploaderDaemonLauncher implements UserCallback {
     }
 
     public void quit() {
+        if (statusServer.isPresent()) {
+            statusServer.get().stop();
+        }
         System.exit(0);
     }
 }
@@ -41,6 +41,7 @@ public class QueryRetrieveController {
     private final GiftCloudReporterFromApplication reporter;
     private Optional<QueryInformationModel> currentRemoteQueryInformationModel = Optional.empty();
     private Thread activeThread = null;
+    private Optional<QueryWorker> activeQueryWorker = Optional.empty();
     private QueryRetrieveDialogController dialogController;
 
     QueryRetrieveController(final QueryRetrieveDialogController dialogController, final GiftCloudPropertiesFromApplication giftCloudProperties, final UploaderStatusModel uploaderStatusModel, final GiftCloudReporterFromApplication reporter) {
@@ -72,7 +73,7 @@ public class QueryRetrieveController {
         }
 
         if (currentRemoteQueryInformationModel.isPresent()) {
-            Thread activeThread = new Thread(new RetrieveWorker(currentRemoteQuerySelectionList, currentRemoteQueryInformationModel.get(), uploaderStatusModel, reporter));
+            Thread activeThread = new Thread(new RetrieveWorker(currentRemoteQuerySelectionList, currentRemoteQueryInformationModel.get(), giftCloudProperties.getRetrieveParallelism(), uploaderStatusModel, reporter));
             activeThread.start();
         } else {
             throw new GiftCloudException(GiftCloudUploaderError.NO_QUERY_OR_QUERY_FAILED);
@@ -86,6 +87,9 @@ public class QueryRetrieveController {
             throw new GiftCloudException(GiftCloudUploaderError.QUERY_RETRIEVE_STILL_IN_PROGRESS);
         }
 
+        // A new query replaces any query which is still receiving results
+        cancelQuery();
+
         currentRemoteQueryInformationModel = Optional.of(createRemoteQueryInformationModel());
         Optional<QueryRetrieveRemoteView> remoteView = dialogController.getQueryRetrieveRemoteView();
         if (!remoteView.isPresent()) {
@@ -94,10 +98,22 @@ public class QueryRetrieveController {
         remoteView.get().removeAll();
         remoteView.get().validate();
         AttributeList filter = queryParams.build();
-        Thread activeThread = new Thread(new QueryWorker(remoteView.get(), currentRemoteQueryInformationModel.get(), filter, uploaderStatusModel, reporter));
+        final QueryWorker queryWorker = new QueryWorker(remoteView.get(), currentRemoteQueryInformationModel.get(), filter, uploaderStatusModel, reporter);
+        activeQueryWorker = Optional.of(queryWorker);
+        Thread activeThread = new Thread(queryWorker);
         activeThread.start();
     }
 
+    /**
+     * Stops the current query, if there is one
+     */
+    public synchronized void cancelQuery() {
+        if (activeQueryWorker.isPresent()) {
+            activeQueryWorker.get().cancel();
+            activeQueryWorker = Optional.empty();
+        }
+    }
+
     QueryInformationModel createRemoteQueryInformationModel() throws GiftCloudException {
         final String queryAETitle = giftCloudProperties.getListenerAETitle();
         final Optional<String> queryCalledAETitle = giftCloudProperties.getPacsAeTitle();
@@ -143,6 +143,7 @@ public class QueryRetrieveDialog extends JDialog {
 
     private class CloseRetrieveActionListener implements ActionListener {
         public void actionPerformed(ActionEvent event) {
+            controller.cancelQuery();
             setVisible(false);
         }
     }
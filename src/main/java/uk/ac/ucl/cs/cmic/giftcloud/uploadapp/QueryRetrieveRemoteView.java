@@ -21,18 +21,15 @@ package uk.ac.ucl.cs.cmic.giftcloud.uploadapp;
 
 import com.pixelmed.dicom.AttributeList;
 import com.pixelmed.dicom.DicomException;
-import com.pixelmed.network.DicomNetworkException;
 import com.pixelmed.query.QueryInformationModel;
 import com.pixelmed.query.QueryTreeBrowser;
 import com.pixelmed.query.QueryTreeModel;
 import com.pixelmed.query.QueryTreeRecord;
-import uk.ac.ucl.cs.cmic.giftcloud.uploader.GiftCloudUncheckedException;
 
 import javax.swing.*;
 import javax.swing.event.TreeSelectionEvent;
 import javax.swing.event.TreeSelectionListener;
 import java.awt.*;
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -49,17 +46,19 @@ public class QueryRetrieveRemoteView extends JPanel {
         setLayout(new GridLayout(1, 1));
     }
 
-    public void updateQueryPanel(final QueryInformationModel queryInformationModel, final AttributeList filter, final QueryInformationModel currentRemoteQueryInformationModel) throws IOException, DicomException, DicomNetworkException {
-        try {
-            QueryTreeModel treeModel = queryInformationModel.performHierarchicalQuery(filter);
-            new OurQueryTreeBrowser(queryInformationModel, treeModel, this, currentRemoteQueryInformationModel);
-        } catch (GiftCloudUncheckedException e) {
-            throw e.getWrappedException();
-        }
+    /**
+     * Shows an initially empty tree for a query whose results will be added as they arrive
+     *
+     * @return the tree model, whose top level should be populated using {@link QueryTreeModel#performIncrementalQuery}
+     */
+    public QueryTreeModel showIncrementalQuery(final QueryInformationModel queryInformationModel, final AttributeList filter, final QueryInformationModel currentRemoteQueryInformationModel) throws DicomException {
+        final QueryTreeModel treeModel = queryInformationModel.createIncrementalHierarchicalQuery(filter);
+        new OurQueryTreeBrowser(queryInformationModel, treeModel, this, currentRemoteQueryInformationModel);
 
         // TD: unsure if this is required or not... for re-laying out the panel after a query operation has succeeded
         validate();
         callback.pack();
+        return treeModel;
     }
 
     public List<QuerySelection> getCurrentRemoteQuerySelectionList() {
@@ -0,0 +1,151 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+package uk.ac.ucl.cs.cmic.giftcloud.uploadapp;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.json.simple.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.ucl.cs.cmic.giftcloud.uploader.UploaderController;
+import uk.ac.ucl.cs.cmic.giftcloud.util.Optional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A minimal HTTP server which allows monitoring tools to check the state of the headless uploader
+ *
+ * <p>The server only listens on the loopback interface, so it is not reachable from other machines. It provides two
+ * endpoints:
+ * <ul>
+ * <li>/health returns 200 if the upload service is running, and the DICOM listener is running if a listening port has
+ * been set, or 503 otherwise</li>
+ * <li>/status returns a JSON object describing the listener, the upload queues and the recent upload throughput</li>
+ * </ul>
+ */
+public class StatusServer {
+    private final Logger logger = LoggerFactory.getLogger(StatusServer.class);
+
+    private static final int BACKLOG = 10;
+    private static final long MINUTE_MS = 60 * 1000;
+    private static final long[] THROUGHPUT_WINDOW_MINUTES = {1, 5, 15, 60};
+
+    private final UploaderController uploaderController;
+    private final int port;
+    private HttpServer server = null;
+    private ExecutorService executor = null;
+
+    /**
+     * @param uploaderController the controller whose state will be reported
+     * @param port the loopback port on which to listen, or 0 to choose a free port
+     */
+    public StatusServer(final UploaderController uploaderController, final int port) {
+        this.uploaderController = uploaderController;
+        this.port = port;
+    }
+
+    public synchronized void start() throws IOException {
+        if (server != null) {
+            return;
+        }
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getByName(null), port), BACKLOG);
+        server.createContext("/health", new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                final boolean healthy = isHealthy();
+                sendResponse(exchange, healthy ? 200 : 503, "text/plain", healthy ? "OK" : "UNAVAILABLE");
+            }
+        });
+        server.createContext("/status", new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                sendResponse(exchange, 200, "application/json", getStatus().toJSONString());
+            }
+        });
+
+        // A single thread is sufficient because the responses are small and only local clients can connect
+        executor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("GIFT-Cloud status server %d").build());
+        server.setExecutor(executor);
+        server.start();
+        logger.info("Status server listening on " + server.getAddress());
+    }
+
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+            executor = null;
+        }
+    }
+
+    /**
+     * @return the port on which the server is listening, or -1 if it has not been started
+     */
+    public synchronized int getPort() {
+        return server == null ? -1 : server.getAddress().getPort();
+    }
+
+    private boolean isHealthy() {
+        return uploaderController.isUploadServiceRunning() && (!uploaderController.isDicomListenerConfigured() || uploaderController.isDicomListenerRunning());
+    }
+
+    @SuppressWarnings("unchecked")
+    private JSONObject getStatus() {
+        final JSONObject status = new JSONObject();
+        status.put("healthy", isHealthy());
+        status.put("uploadServiceRunning", uploaderController.isUploadServiceRunning());
+        status.put("dicomListenerConfigured", uploaderController.isDicomListenerConfigured());
+        status.put("dicomListenerRunning", uploaderController.isDicomListenerRunning());
+        status.put("pendingUploads", uploaderController.getNumberOfPendingUploads());
+        status.put("failedUploads", uploaderController.getNumberOfFailedUploads());
+
+        final Optional<Long> lastUploadTime = uploaderController.getLastSuccessfulUploadTime();
+        status.put("lastSuccessfulUpload", lastUploadTime.isPresent() ? formatTime(lastUploadTime.get()) : null);
+
+        final JSONObject uploadedFiles = new JSONObject();
+        for (final long windowMinutes : THROUGHPUT_WINDOW_MINUTES) {
+            uploadedFiles.put(windowMinutes + "min", uploaderController.getNumberOfFilesUploaded(windowMinutes * MINUTE_MS));
+        }
+        status.put("uploadedFiles", uploadedFiles);
+        return status;
+    }
+
+    private static String formatTime(final long timeMs) {
+        final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(new Date(timeMs));
+    }
+
+    private void sendResponse(final HttpExchange exchange, final int statusCode, final String contentType, final String body) throws IOException {
+        try {
+            final byte[] bytes = body.getBytes("UTF-8");
+            exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=utf-8");
+            exchange.sendResponseHeaders(statusCode, bytes.length);
+            final OutputStream outputStream = exchange.getResponseBody();
+            outputStream.write(bytes);
+            outputStream.close();
+        } finally {
+            exchange.close();
+        }
+    }
+}
@@ -200,6 +200,13 @@ public class UploaderGuiController {
         }
     }
 
+    /**
+     * Stops the current Dicom query, if there is one
+     */
+    public void cancelQuery() {
+        queryRetrieveController.cancelQuery();
+    }
+
     /**
      * Imports a list of files into the uploading service
      * @param fileList
@@ -92,7 +92,7 @@ public abstract class BackgroundService<T_taskType, T_resultType> extends Status
         // Therefore we must check both for the interrupted flag and for the exception in order to correctly process an interruption.
         while (!serviceThread.isInterrupted() && continueProcessing()) {
             try {
-                final BackgroundServiceTaskWrapper<T_taskType, T_resultType> backgroundServiceResult = backgroundServicePendingList.take();
+                final BackgroundServiceTaskWrapper<T_taskType, T_resultType> backgroundServiceResult = backgroundServicePendingList.takeNextTask();
                 try {
                     processItem(backgroundServiceResult.getResult());
                     notifySuccess(backgroundServiceResult);
@@ -142,6 +142,10 @@ public abstract class BackgroundService<T_taskType, T_resultType> extends Status
         return backgroundServiceFailureList.getFailures();
     }
 
+    public final int getNumberOfFailures() {
+        return backgroundServiceFailureList.getNumberOfFailures();
+    }
+
     /**
      * Waits for the thread to complete, up to the specified timeout limit.
      * @return true if the thread has completed or was never started
@@ -28,17 +28,24 @@ public class BackgroundServiceFailureList<T_taskType> {
      * @param task the task which failed
      * @param errorRecord the cumulative error history from attempting to run the tasks
      */
-    public final void addFailure(final T_taskType task, final BackgroundServiceErrorRecord errorRecord) {
+    public final synchronized void addFailure(final T_taskType task, final BackgroundServiceErrorRecord errorRecord) {
         uploadFailures.add(new FailureRecord(task, errorRecord));
     }
 
     /**
      * gets all the failed tasks
      *
-     * @return a list of failed tasks
+     * @return a copy of the list of failed tasks, which will not change if further failures are added
      */
-    public final List<FailureRecord> getFailures() {
-        return uploadFailures;
+    public final synchronized List<FailureRecord> getFailures() {
+        return new ArrayList<FailureRecord>(uploadFailures);
+    }
+
+    /**
+     * @return the number of failed tasks
+     */
+    public final synchronized int getNumberOfFailures() {
+        return uploadFailures.size();
     }
 
     /**
@@ -46,7 +53,7 @@ public class BackgroundServiceFailureList<T_taskType> {
      *
      * @return true if there are any failed tasks
      */
-    protected final boolean isEmpty() {
+    protected final synchronized boolean isEmpty() {
         return uploadFailures.isEmpty();
     }
 
@@ -11,6 +11,8 @@
 
 package uk.ac.ucl.cs.cmic.giftcloud.uploader;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Base class for managing a list of tasks to be processed by a (@link BackgroundService)
  *
@@ -19,12 +21,15 @@ package uk.ac.ucl.cs.cmic.giftcloud.uploader;
  */
 public abstract class BackgroundServiceTaskList<T_taskType, T_resultType> {
 
+    private final AtomicInteger numberOfPendingTasks = new AtomicInteger();
+
     /**
      * Add a new task to the list (i.e. a task that has not previously failed)
      *
      * @param task the task to be processed
      */
     public final void addNewTask(final T_taskType task) {
+        numberOfPendingTasks.incrementAndGet();
         add(task, createErrorRecord());
     }
 
@@ -37,9 +42,29 @@ public abstract class BackgroundServiceTaskList<T_taskType, T_resultType> {
      *                    from the (@BackgroundServiceTaskWrapper) obtained from (@link take())
      */
     public final void retryTask(final T_taskType task, final BackgroundServiceErrorRecord errorRecord) {
+        numberOfPendingTasks.incrementAndGet();
         add(task, errorRecord);
     }
 
+    /**
+     * Returns a task from the list to be processed, updating the count of pending tasks
+     *
+     * @return a wrapper containing the original task to be processed, the result of the processing, and the error history
+     * @throws InterruptedException if interrupted while waiting for a task
+     */
+    final BackgroundServiceTaskWrapper<T_taskType, T_resultType> takeNextTask() throws InterruptedException {
+        final BackgroundServiceTaskWrapper<T_taskType, T_resultType> taskWrapper = take();
+        numberOfPendingTasks.decrementAndGet();
+        return taskWrapper;
+    }
+
+    /**
+     * @return the number of tasks which have been added and not yet taken for processing by the {@link BackgroundService}
+     */
+    public final int getNumberOfPendingTasks() {
+        return numberOfPendingTasks.get();
+    }
+
     /**
      * Returns a task from the list to be processed
      *
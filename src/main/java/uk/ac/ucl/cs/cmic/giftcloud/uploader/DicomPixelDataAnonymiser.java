@@ -20,11 +20,15 @@ import com.pixelmed.display.SourceImage;
 import com.pixelmed.utils.CapabilitiesAvailable;
 import org.apache.commons.lang3.StringUtils;
 import uk.ac.ucl.cs.cmic.giftcloud.dicom.RedactedFileWrapper;
+import uk.ac.ucl.cs.cmic.giftcloud.metrics.Counter;
+import uk.ac.ucl.cs.cmic.giftcloud.metrics.LatencyHistogram;
+import uk.ac.ucl.cs.cmic.giftcloud.metrics.MetricsRegistry;
 import uk.ac.ucl.cs.cmic.giftcloud.restserver.GiftCloudProperties;
 import uk.ac.ucl.cs.cmic.giftcloud.util.GiftCloudReporter;
 import uk.ac.ucl.cs.cmic.giftcloud.util.OneWayHash;
 import uk.ac.ucl.cs.cmic.giftcloud.util.Optional;
 
+import java.awt.Shape;
 import java.io.File;
 import java.io.IOException;
 import java.util.Vector;
@@ -34,6 +38,8 @@ import java.util.Vector;
  * Removes burnt-in patient identifiable data from images
  */
 public class DicomPixelDataAnonymiser {
+    private static final LatencyHistogram redactionLatency = MetricsRegistry.getDefault().histogram("anonymise.pixelData");
+    private static final Counter redactedFileCount = MetricsRegistry.getDefault().counter("anonymise.pixelData.redactedFiles");
 
     private boolean burnInOverlays = false;
     private boolean useZeroBlackoutValue = false;
@@ -66,6 +72,15 @@ public class DicomPixelDataAnonymiser {
      * @throws IOException if there was an error parsing or anonymising the file
      */
     public RedactedFileWrapper createRedactedFile(final File file, boolean dataAlreadyAnonymised) throws IOException, DicomException {
+        final long startNanos = System.nanoTime();
+        try {
+            return redactIfRequired(file, dataAlreadyAnonymised);
+        } finally {
+            redactionLatency.recordSince(startNanos);
+        }
+    }
+
+    private RedactedFileWrapper redactIfRequired(final File file, boolean dataAlreadyAnonymised) throws IOException, DicomException {
         RedactedFileWrapper.FileRedactionStatus redactionStatus;
         Optional<File> redactedFile;
         AttributeList attributeList = readAttributeList(file, false);
@@ -74,9 +89,10 @@ public class DicomPixelDataAnonymiser {
         }
 
         if (!dataAlreadyAnonymised && anonymisationIsRequired(attributeList)) {
-            final Optional<PixelDataAnonymiseFilter> filter = getFilter(attributeList);
+            final Optional<PixelDataAnonymiseFilter> filter = filters.getFilter(attributeList);
             if (filter.isPresent()) {
                 redactionStatus = RedactedFileWrapper.FileRedactionStatus.REDACTED;
+                redactedFileCount.increment();
                 redactedFile = Optional.of(anonymisePixelData(file, filter.get(), attributeList.get(TagFromName.SOPInstanceUID).getStringValues()[0]));
             } else {
                 redactionStatus = RedactedFileWrapper.FileRedactionStatus.NO_APPROPRIATE_FILTER_FOUND;
@@ -99,7 +115,7 @@ public class DicomPixelDataAnonymiser {
         try {
             DicomPixelDataAnonymiser.anonymisePixelDataUsingFilter(inputFile, outputFile, filter.getRedactedShapesAsShapeVector(), burnInOverlays, usePixelPaddingBlackoutValue, useZeroBlackoutValue, aeTitle);
         } catch (DicomException exception) {
-            throw new IOException(exception.getCause());
+            throw new IOException(exception.getLocalizedMessage(), exception);
         }
         return outputFile;
     }
@@ -124,20 +140,7 @@ public class DicomPixelDataAnonymiser {
         return false;
     }
 
-    private Optional<PixelDataAnonymiseFilter> getFilter(AttributeList attributeList) {
-        for (final PixelDataAnonymiseFilter filter : filters.getFilters()) {
-            try {
-                if (filter.matches(attributeList)) {
-                    return Optional.of(filter);
-                }
-            } catch (DicomException e) {
-                reporter.silentLogException(e, "Problem when comparing filter tag values");
-            }
-        }
-        return Optional.empty();
-    }
-
-    private static void anonymisePixelDataUsingFilter(File inputFile, File outputFile, Vector shapes, boolean burnInOverlays, boolean usePixelPaddingBlackoutValue, boolean useZeroBlackoutValue, String ourAETitle) throws IOException, DicomException {
+    private static void anonymisePixelDataUsingFilter(File inputFile, File outputFile, Vector<Shape> shapes, boolean burnInOverlays, boolean usePixelPaddingBlackoutValue, boolean useZeroBlackoutValue, String ourAETitle) throws IOException, DicomException {
         final AttributeList headers = readHeaders(inputFile);
         if (headers == null) {
             throw new IOException("Could not read image");
@@ -152,24 +155,26 @@ public class DicomPixelDataAnonymiser {
 
         AttributeList finalAttributeList = null;
 
+        if ((shapes == null || shapes.isEmpty()) && !burnInOverlays) {
+            // A filter without shapes is treated as broken, so that the image is not uploaded unredacted
+            throw new DicomException("No redaction shapes specified");
+        }
+
         if ((shapes != null && shapes.size() > 0) || burnInOverlays) {
             String transferSyntaxUID = Attribute.getSingleStringValueOrEmptyString(headers, TagFromName.TransferSyntaxUID);
 
             if (transferSyntaxUID.equals(TransferSyntax.JPEGBaseline) && !burnInOverlays && CapabilitiesAvailable.haveJPEGBaselineSelectiveBlockRedaction()) {
-                // For a JPEG file we black out the image blocks
-
-                outputTransferSyntaxUID = TransferSyntax.JPEGBaseline;
-
-                // Perform a blackout of the JPEG blocks - this writes out to a temporary file
-                File redactedJPEGFile = File.createTempFile("BlackoutJpegFile", ".dcm");
-                try {
-                    ImageEditUtilities.blackoutJPEGBlocks(inputFile, redactedJPEGFile, shapes);
-                } catch (Exception e) {
-                    throw new DicomException("JPEG blackout failed: " + e.getLocalizedMessage());
-                }
-
-                // Now read in the new attributes in from the temporary file
-                finalAttributeList = readAttributeList(redactedJPEGFile, false);
+                // For a JPEG file we black out the image blocks, streaming the redacted frames directly to the output file
+                updateRedactedHeaders(headers, burnInOverlays, TransferSyntax.JPEGBaseline, ourAETitle);
+                JpegBlockRedactor.redact(inputFile, outputFile, headers, shapes);
+                return;
+
+            } else if (InPlacePixelDataRedactor.isSupported(headers, burnInOverlays)) {
+                // For uncompressed files we can write the blackout value directly into a copy of the file, without decoding the image
+                final int blackoutValue = InPlacePixelDataRedactor.getBlackoutValue(headers, usePixelPaddingBlackoutValue, useZeroBlackoutValue);
+                updateRedactedHeaders(headers, burnInOverlays, TransferSyntax.ExplicitVRLittleEndian, ourAETitle);
+                InPlacePixelDataRedactor.redact(inputFile, outputFile, headers, shapes, blackoutValue);
+                return;
 
             } else {
                 // For other files we black out the image data
@@ -193,22 +198,26 @@ public class DicomPixelDataAnonymiser {
             }
         }
 
-        addDeidentificationMethod(burnInOverlays, finalAttributeList);
+        updateRedactedHeaders(finalAttributeList, burnInOverlays, outputTransferSyntaxUID, ourAETitle);
+
+        // Write out the new file
+        finalAttributeList.write(outputFile, outputTransferSyntaxUID, true/*useMeta*/, true/*useBufferedStream*/);
+    }
+
+    private static void updateRedactedHeaders(final AttributeList attributeList, final boolean burnInOverlays, final String outputTransferSyntaxUID, final String ourAETitle) throws DicomException {
+        addDeidentificationMethod(burnInOverlays, attributeList);
 
         // Set BurnedInAnnotation attribute to NO
-        finalAttributeList.remove(TagFromName.BurnedInAnnotation);
+        attributeList.remove(TagFromName.BurnedInAnnotation);
         Attribute a = new CodeStringAttribute(TagFromName.BurnedInAnnotation);
         a.addValue("NO");
-        finalAttributeList.put(a);
+        attributeList.put(a);
 
         // Update header attributes
-        finalAttributeList.removeGroupLengthAttributes();
-        finalAttributeList.removeMetaInformationHeaderAttributes();
-        finalAttributeList.remove(TagFromName.DataSetTrailingPadding);
-        FileMetaInformation.addFileMetaInformation(finalAttributeList, outputTransferSyntaxUID, ourAETitle);
-
-        // Write out the new file
-        finalAttributeList.write(outputFile, outputTransferSyntaxUID, true/*useMeta*/, true/*useBufferedStream*/);
+        attributeList.removeGroupLengthAttributes();
+        attributeList.removeMetaInformationHeaderAttributes();
+        attributeList.remove(TagFromName.DataSetTrailingPadding);
+        FileMetaInformation.addFileMetaInformation(attributeList, outputTransferSyntaxUID, ourAETitle);
     }
 
     private static AttributeList readAttributeList(File currentFile, boolean decompressPixelData) throws IOException, DicomException {
@@ -21,6 +21,9 @@ package uk.ac.ucl.cs.cmic.giftcloud.uploader;
 
 import com.pixelmed.dicom.DicomException;
 import uk.ac.ucl.cs.cmic.giftcloud.dicom.FileCollection;
+import uk.ac.ucl.cs.cmic.giftcloud.metrics.Gauge;
+import uk.ac.ucl.cs.cmic.giftcloud.metrics.MetricsRegistry;
+import uk.ac.ucl.cs.cmic.giftcloud.metrics.WindowedCounter;
 import uk.ac.ucl.cs.cmic.giftcloud.restserver.*;
 import uk.ac.ucl.cs.cmic.giftcloud.uploadapp.ProjectListModel;
 import uk.ac.ucl.cs.cmic.giftcloud.util.GiftCloudReporter;
@@ -35,6 +38,8 @@ import java.util.concurrent.CancellationException;
 
 public class GiftCloudUploader implements BackgroundUploader.BackgroundUploadOutcomeCallback {
     private final WaitingForUploadDatabase uploadDatabase;
+    private final SpoolQuotaMonitor spoolQuotaMonitor;
+    private final UploadSpool uploadSpool;
     private final GiftCloudProperties giftCloudProperties;
     private final PendingUploadTaskList pendingUploadList;
     private final GiftCloudReporter reporter;
@@ -44,12 +49,20 @@ public class GiftCloudUploader implements BackgroundUploader.BackgroundUploadOut
     private final AutoUploader autoUploader;
     private final BackgroundUploader backgroundUploader;
     private final PixelDataAnonymiserFilterCache pixelDataAnonymiserFilterCache;
+    private final BackgroundCompletionServiceTaskList<CallableWithParameter<Set<String>, FileCollection>, FileCollection> uploadTaskList;
+
+    // Uploaded files are counted in one-minute buckets over the last day
+    private final WindowedCounter uploadedFileCounter = new WindowedCounter(60 * 1000, 24 * 60);
+    private volatile long lastSuccessfulUploadTimeMs = 0;
 
     private final int DELAY_BETWEEN_UPDATES = 500;
+    private static final long BYTES_PER_MB = 1024 * 1024;
 
     public GiftCloudUploader(final RestClientFactory restClientFactory, final GiftCloudProperties giftCloudProperties, final UploaderStatusModel uploaderStatusModel, final UserCallback userCallback, final GiftCloudReporter reporter) {
-        this.uploadDatabase =  new WaitingForUploadDatabase(DELAY_BETWEEN_UPDATES);
         this.giftCloudProperties = giftCloudProperties;
+        spoolQuotaMonitor = new SpoolQuotaMonitor(giftCloudProperties.getSpoolHighWaterMarkMb() * BYTES_PER_MB, giftCloudProperties.getSpoolLowWaterMarkMb() * BYTES_PER_MB, reporter);
+        uploadSpool = new UploadSpool(giftCloudProperties.getUploadFolder(reporter), reporter);
+        this.uploadDatabase =  new WaitingForUploadDatabase(DELAY_BETWEEN_UPDATES, spoolQuotaMonitor, uploadSpool);
         this.reporter = reporter;
         pixelDataAnonymiserFilterCache = new PixelDataAnonymiserFilterCache(giftCloudProperties, reporter);
         projectListModel = new ProjectListModel(giftCloudProperties);
@@ -57,10 +70,13 @@ public class GiftCloudUploader implements BackgroundUploader.BackgroundUploadOut
         pendingUploadList = new PendingUploadTaskList(reporter);
 
         final int numThreads = 1;
-        backgroundUploader = new BackgroundUploader(new BackgroundCompletionServiceTaskList<CallableWithParameter<Set<String>, FileCollection>, FileCollection>(numThreads), this, uploaderStatusModel, reporter);
+        uploadTaskList = new BackgroundCompletionServiceTaskList<CallableWithParameter<Set<String>, FileCollection>, FileCollection>(numThreads);
+        backgroundUploader = new BackgroundUploader(uploadTaskList, this, uploaderStatusModel, reporter);
         autoUploader = new AutoUploader(serverFactory, backgroundUploader, giftCloudProperties, userCallback, reporter);
         backgroundAddToUploaderService = new BackgroundAddToUploaderService(pendingUploadList, autoUploader, uploaderStatusModel, reporter);
 
+        registerGauges(MetricsRegistry.getDefault(), pendingUploadList.getList(), uploadTaskList);
+
         // Add a shutdown hook for graceful exit
         Runtime.getRuntime().addShutdownHook(new Thread() {
             public void run() {
@@ -71,6 +87,20 @@ public class GiftCloudUploader implements BackgroundUploader.BackgroundUploadOut
         backgroundUploader.start();
     }
 
+    /**
+     * @return the monitor tracking the bytes waiting for upload, which is used to limit the rate at which files are received
+     */
+    public SpoolQuotaMonitor getSpoolQuotaMonitor() {
+        return spoolQuotaMonitor;
+    }
+
+    /**
+     * @return the folder in which received files are stored until they have been uploaded
+     */
+    public UploadSpool getUploadSpool() {
+        return uploadSpool;
+    }
+
     public void setUploadServiceRunningState(final boolean start) {
         if (start) {
             backgroundAddToUploaderService.start();
@@ -79,6 +109,40 @@ public class GiftCloudUploader implements BackgroundUploader.BackgroundUploadOut
         }
     }
 
+    public boolean isUploadServiceRunning() {
+        return backgroundAddToUploaderService.isRunning();
+    }
+
+    /**
+     * @return the number of upload tasks which are waiting to be processed or uploaded
+     */
+    public int getNumberOfPendingUploads() {
+        return pendingUploadList.getList().getNumberOfPendingTasks() + uploadTaskList.getNumberOfPendingTasks();
+    }
+
+    /**
+     * @return the number of upload tasks which have failed and will not be retried
+     */
+    public int getNumberOfFailedUploads() {
+        return backgroundAddToUploaderService.getNumberOfFailures() + backgroundUploader.getNumberOfFailures();
+    }
+
+    /**
+     * @return the time in milliseconds since the epoch when the last upload completed successfully, or an empty Optional if nothing has been uploaded
+     */
+    public Optional<Long> getLastSuccessfulUploadTime() {
+        final long lastUploadTime = lastSuccessfulUploadTimeMs;
+        return lastUploadTime > 0 ? Optional.of(lastUploadTime) : Optional.<Long>empty();
+    }
+
+    /**
+     * @param windowMs the length of the time window, up to one day
+     * @return the number of files uploaded within the window
+     */
+    public long getNumberOfFilesUploaded(final long windowMs) {
+        return uploadedFileCounter.getCount(windowMs);
+    }
+
     public BackgroundAddToUploaderService getBackgroundAddToUploaderService() {
         return backgroundAddToUploaderService;
     }
@@ -143,6 +207,8 @@ public class GiftCloudUploader implements BackgroundUploader.BackgroundUploadOut
         for (final File file : fileCollection.getFiles()) {
             uploadDatabase.removeAndDeleteCopies(file.getPath());
         }
+        uploadedFileCounter.add(fileCollection.getFileCount());
+        lastSuccessfulUploadTimeMs = System.currentTimeMillis();
     }
 
     @Override
@@ -157,6 +223,49 @@ public class GiftCloudUploader implements BackgroundUploader.BackgroundUploadOut
         autoUploader.exportPatientList();
     }
 
+    /**
+     * Reports the depth of each stage of the upload queue, and the size and backpressure state of the spool
+     */
+    private void registerGauges(final MetricsRegistry metricsRegistry, final BackgroundServiceTaskList<?, ?> pendingTaskList, final BackgroundServiceTaskList<?, ?> uploadTaskList) {
+        metricsRegistry.registerGauge("queue.pending", new Gauge() {
+            @Override
+            public long getValue() {
+                return pendingTaskList.getNumberOfPendingTasks();
+            }
+        });
+        metricsRegistry.registerGauge("queue.upload", new Gauge() {
+            @Override
+            public long getValue() {
+                return uploadTaskList.getNumberOfPendingTasks();
+            }
+        });
+        metricsRegistry.registerGauge("spool.pendingBytes", new Gauge() {
+            @Override
+            public long getValue() {
+                return spoolQuotaMonitor.getPendingBytes();
+            }
+        });
+        metricsRegistry.registerGauge("spool.highWaterMarkBytes", new Gauge() {
+            @Override
+            public long getValue() {
+                return spoolQuotaMonitor.getHighWaterMark();
+            }
+        });
+        metricsRegistry.registerGauge("spool.lowWaterMarkBytes", new Gauge() {
+            @Override
+            public long getValue() {
+                return spoolQuotaMonitor.getLowWaterMark();
+            }
+        });
+        // 1 while received data sets are being refused, otherwise 0
+        metricsRegistry.registerGauge("spool.refusing", new Gauge() {
+            @Override
+            public long getValue() {
+                return spoolQuotaMonitor.isRefusing() ? 1 : 0;
+            }
+        });
+    }
+
     private void cleanup(final long maxWaitTimeMs) {
         backgroundAddToUploaderService.stop();
         backgroundAddToUploaderService.waitForThreadCompletion(maxWaitTimeMs);
@@ -0,0 +1,376 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Some parts of this software were derived from DicomCleaner,
+    Copyright (c) 2001-2014, David A. Clunie DBA Pixelmed Publishing. All rights reserved.
+
+  Author: Tom Doel
+=============================================================================*/
+
+package uk.ac.ucl.cs.cmic.giftcloud.uploader;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.pixelmed.dicom.*;
+
+import java.awt.*;
+import java.awt.geom.RectangularShape;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Redacts rectangular regions of uncompressed pixel data without decoding the image
+ *
+ * The header is rewritten, the pixel data are copied directly from the source file to the output file, and the blackout
+ * value is then written over each row of each redacted region using positional writes to the output file. Frames are
+ * redacted in parallel. This avoids loading the pixel data into the heap, which matters for large multi-frame images
+ * such as ultrasound cine loops. The output file is not memory-mapped, since a mapping keeps the file locked on Windows
+ * until it is garbage collected, which would prevent the file from being deleted after it has been uploaded.
+ *
+ * Only little endian, uncompressed, 8 or 16 bit greyscale or RGB images are supported; other images should be redacted
+ * using {@link com.pixelmed.display.ImageEditUtilities}
+ */
+class InPlacePixelDataRedactor {
+
+    private static final ExecutorService frameExecutor = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors()), new ThreadFactoryBuilder().setDaemon(true).setNameFormat("GIFT-Cloud redaction %d").build());
+
+    /**
+     * Determines whether an image can be redacted using this class
+     *
+     * @param headers the attributes of the image, excluding the pixel data
+     * @param burnInOverlays true if overlays are to be burnt in, which is not supported
+     * @return true if the image can be redacted by {@link #redact}
+     */
+    static boolean isSupported(final AttributeList headers, final boolean burnInOverlays) {
+        if (burnInOverlays) {
+            return false;
+        }
+
+        final String transferSyntaxUID = Attribute.getSingleStringValueOrEmptyString(headers, TagFromName.TransferSyntaxUID);
+        if (!transferSyntaxUID.equals(TransferSyntax.ExplicitVRLittleEndian) && !transferSyntaxUID.equals(TransferSyntax.ImplicitVRLittleEndian)) {
+            return false;
+        }
+
+        final int bitsAllocated = Attribute.getSingleIntegerValueOrDefault(headers, TagFromName.BitsAllocated, 0);
+        if (bitsAllocated != 8 && bitsAllocated != 16) {
+            return false;
+        }
+
+        final int rows = Attribute.getSingleIntegerValueOrDefault(headers, TagFromName.Rows, 0);
+        final int columns = Attribute.getSingleIntegerValueOrDefault(headers, TagFromName.Columns, 0);
+        if (rows <= 0 || columns <= 0) {
+            return false;
+        }
+
+        final int samplesPerPixel = Attribute.getSingleIntegerValueOrDefault(headers, TagFromName.SamplesPerPixel, 1);
+        final String photometricInterpretation = Attribute.getSingleStringValueOrDefault(headers, TagFromName.PhotometricInterpretation, "MONOCHROME2");
+        if (samplesPerPixel == 1) {
+            return photometricInterpretation.equals("MONOCHROME1") || photometricInterpretation.equals("MONOCHROME2");
+        } else if (samplesPerPixel == 3) {
+            return photometricInterpretation.equals("RGB");
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Computes the value used to replace redacted samples, using the same rules as
+     * {@link com.pixelmed.display.ImageEditUtilities#blackout}
+     *
+     * @param headers the attributes of the image
+     * @param usePixelPaddingBlackoutValue true if the pixel padding value should be used, if one is specified
+     * @param useZeroBlackoutValue true if zero should always be used
+     * @return the blackout value, which should be truncated to the sample size
+     */
+    static int getBlackoutValue(final AttributeList headers, final boolean usePixelPaddingBlackoutValue, final boolean useZeroBlackoutValue) {
+        if (useZeroBlackoutValue) {
+            return 0;
+        }
+
+        final Attribute pixelPaddingValue = headers.get(TagFromName.PixelPaddingValue);
+        if (usePixelPaddingBlackoutValue && pixelPaddingValue != null) {
+            return pixelPaddingValue.getSingleIntegerValueOrDefault(0);
+        }
+
+        final int bitsAllocated = Attribute.getSingleIntegerValueOrDefault(headers, TagFromName.BitsAllocated, 0);
+        final int bitsStored = Attribute.getSingleIntegerValueOrDefault(headers, TagFromName.BitsStored, bitsAllocated);
+        final int mask = (1 << bitsStored) - 1;
+        final boolean signed = Attribute.getSingleIntegerValueOrDefault(headers, TagFromName.PixelRepresentation, 0) == 1;
+        final boolean inverted = Attribute.getSingleStringValueOrEmptyString(headers, TagFromName.PhotometricInterpretation).equals("MONOCHROME1");
+        if (inverted) {
+            // Largest value
+            return signed ? (mask >> 1) : mask;
+        } else {
+            // Smallest value
+            return signed ? ((mask >> 1) + 1) : 0;
+        }
+    }
+
+    /**
+     * Writes a copy of the input file with the given regions blacked out in every frame
+     *
+     * @param inputFile the file to redact, which must be supported according to {@link #isSupported}
+     * @param outputFile the file to write, which will use the Explicit VR Little Endian transfer syntax
+     * @param outputHeaders the attributes (excluding the pixel data) to write to the output file, including the meta information header
+     * @param shapes the regions to black out, in image-relative coordinates. Only rectangular shapes are supported
+     * @param blackoutValue the value to write into redacted samples
+     * @throws IOException if the files could not be read or written
+     * @throws DicomException if the input file could not be parsed
+     */
+    static void redact(final File inputFile, final File outputFile, final AttributeList outputHeaders, final Vector<Shape> shapes, final int blackoutValue) throws IOException, DicomException {
+        final PixelDataLocation inputPixelData = locatePixelData(inputFile);
+
+        final int rows = Attribute.getSingleIntegerValueOrDefault(outputHeaders, TagFromName.Rows, 0);
+        final int columns = Attribute.getSingleIntegerValueOrDefault(outputHeaders, TagFromName.Columns, 0);
+        final int numberOfFrames = Attribute.getSingleIntegerValueOrDefault(outputHeaders, TagFromName.NumberOfFrames, 1);
+        final int samplesPerPixel = Attribute.getSingleIntegerValueOrDefault(outputHeaders, TagFromName.SamplesPerPixel, 1);
+        final int planarConfiguration = Attribute.getSingleIntegerValueOrDefault(outputHeaders, TagFromName.PlanarConfiguration, 0);
+        final int bytesPerSample = Attribute.getSingleIntegerValueOrDefault(outputHeaders, TagFromName.BitsAllocated, 0) / 8;
+        final FrameLayout layout = new FrameLayout(rows, columns, samplesPerPixel, planarConfiguration, bytesPerSample);
+
+        if ((long) layout.frameLengthInBytes * numberOfFrames > inputPixelData.length) {
+            throw new DicomException("The pixel data are shorter than expected from the image dimensions");
+        }
+
+        final long outputPixelDataOffset = copyWithNewHeader(inputFile, inputPixelData, outputFile, outputHeaders, bytesPerSample);
+
+        final List<Rectangle> rectangles = getClippedRectangles(shapes, rows, columns);
+        if (rectangles.isEmpty()) {
+            return;
+        }
+
+        final byte[] blackoutRow = createBlackoutRow(layout, columns, blackoutValue);
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(outputFile, "rw");
+        try {
+            final FileChannel channel = randomAccessFile.getChannel();
+            final List<Future<Void>> frameTasks = new ArrayList<Future<Void>>();
+            for (int frame = 0; frame < numberOfFrames; frame++) {
+                final long frameOffset = outputPixelDataOffset + (long) frame * layout.frameLengthInBytes;
+                frameTasks.add(frameExecutor.submit(new FrameRedactionTask(channel, frameOffset, layout, rectangles, blackoutRow)));
+            }
+            waitForTasks(frameTasks);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Creates the bytes for a full row of redacted samples, from which the span for each redacted region is written.
+     * Every sample in a redacted pixel takes the blackout value, so for colour-by-pixel images the span covers all the
+     * samples of each pixel, and for colour-by-plane images there is one span for each plane
+     */
+    private static byte[] createBlackoutRow(final FrameLayout layout, final int columns, final int blackoutValue) {
+        final byte[] row = new byte[columns * layout.pixelStrideInBytes];
+        for (int offset = 0; offset < row.length; offset += layout.bytesPerSample) {
+            row[offset] = (byte) blackoutValue;
+            if (layout.bytesPerSample > 1) {
+                // Little endian
+                row[offset + 1] = (byte) (blackoutValue >> 8);
+            }
+        }
+        return row;
+    }
+
+    private static void waitForTasks(final List<Future<Void>> tasks) throws IOException {
+        IOException firstException = null;
+        for (final Future<Void> task : tasks) {
+            try {
+                task.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while redacting pixel data");
+            } catch (ExecutionException e) {
+                if (firstException == null) {
+                    firstException = e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+                }
+            }
+        }
+        if (firstException != null) {
+            throw firstException;
+        }
+    }
+
+    /**
+     * Writes the output headers followed by a byte-for-byte copy of the input pixel data
+     *
+     * @return the offset of the pixel data values in the output file
+     */
+    private static long copyWithNewHeader(final File inputFile, final PixelDataLocation inputPixelData, final File outputFile, final AttributeList outputHeaders, final int bytesPerSample) throws IOException, DicomException {
+        final FileOutputStream fileOutputStream = new FileOutputStream(outputFile);
+        try {
+            final DicomOutputStream dicomOutputStream = new DicomOutputStream(new BufferedOutputStream(fileOutputStream), TransferSyntax.ExplicitVRLittleEndian, TransferSyntax.ExplicitVRLittleEndian);
+            outputHeaders.write(dicomOutputStream, true);
+
+            // Write the PixelData element header in Explicit VR Little Endian form
+            dicomOutputStream.writeUnsigned16(TagFromName.PixelData.getGroup());
+            dicomOutputStream.writeUnsigned16(TagFromName.PixelData.getElement());
+            dicomOutputStream.write(bytesPerSample > 1 ? ValueRepresentation.OW : ValueRepresentation.OB);
+            dicomOutputStream.writeUnsigned16(0);
+            dicomOutputStream.writeUnsigned32(inputPixelData.length);
+            dicomOutputStream.flush();
+
+            final FileChannel outputChannel = fileOutputStream.getChannel();
+            final long outputPixelDataOffset = outputChannel.position();
+
+            final FileInputStream fileInputStream = new FileInputStream(inputFile);
+            try {
+                final FileChannel inputChannel = fileInputStream.getChannel();
+                long position = inputPixelData.offset;
+                long remaining = inputPixelData.length;
+                while (remaining > 0) {
+                    final long transferred = inputChannel.transferTo(position, remaining, outputChannel);
+                    if (transferred <= 0) {
+                        throw new EOFException("Unexpected end of pixel data in " + inputFile.getName());
+                    }
+                    position += transferred;
+                    remaining -= transferred;
+                }
+            } finally {
+                fileInputStream.close();
+            }
+            return outputPixelDataOffset;
+        } finally {
+            fileOutputStream.close();
+        }
+    }
+
+    /**
+     * Finds the offset and length of the pixel data values in a file
+     */
+    private static PixelDataLocation locatePixelData(final File file) throws IOException, DicomException {
+        final DicomInputStream dicomInputStream = new DicomInputStream(file);
+        try {
+            final AttributeList attributeList = new AttributeList();
+
+            // The returned offset is just past the PixelData tag. This is a file offset since deflated files are not supported
+            long offset = attributeList.read(dicomInputStream, TagFromName.PixelData);
+
+            final long length;
+            if (dicomInputStream.getTransferSyntaxInUse().isExplicitVR()) {
+                final byte[] vr = new byte[2];
+                dicomInputStream.readInsistently(vr, 0, 2);
+                dicomInputStream.readUnsigned16();
+                length = dicomInputStream.readUnsigned32();
+                offset += 8;
+            } else {
+                length = dicomInputStream.readUnsigned32();
+                offset += 4;
+            }
+            if (length == 0xffffffffL) {
+                throw new DicomException("Encapsulated pixel data are not supported");
+            }
+            return new PixelDataLocation(offset, length);
+        } finally {
+            dicomInputStream.close();
+        }
+    }
+
+    private static List<Rectangle> getClippedRectangles(final Vector<Shape> shapes, final int rows, final int columns) {
+        final List<Rectangle> rectangles = new ArrayList<Rectangle>();
+        if (shapes == null) {
+            return rectangles;
+        }
+        final Rectangle imageBounds = new Rectangle(0, 0, columns, rows);
+        for (final Shape shape : shapes) {
+            if (shape instanceof RectangularShape) {
+                // Use the same truncation as ImageEditUtilities.blackout()
+                final RectangularShape rectangularShape = (RectangularShape) shape;
+                final int startX = (int) rectangularShape.getX();
+                final int startY = (int) rectangularShape.getY();
+                final int stopX = (int) (startX + rectangularShape.getWidth());
+                final int stopY = (int) (startY + rectangularShape.getHeight());
+                final Rectangle clipped = new Rectangle(startX, startY, stopX - startX, stopY - startY).intersection(imageBounds);
+                if (!clipped.isEmpty()) {
+                    rectangles.add(clipped);
+                }
+            }
+        }
+        return rectangles;
+    }
+
+    private static class PixelDataLocation {
+        private final long offset;
+        private final long length;
+
+        PixelDataLocation(final long offset, final long length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Describes how samples are arranged within a single frame
+     */
+    private static class FrameLayout {
+        private final int numberOfPlanes;
+        private final int bytesPerSample;
+        private final int pixelStrideInBytes;
+        private final int rowStrideInBytes;
+        private final int planeStrideInBytes;
+        private final int frameLengthInBytes;
+
+        FrameLayout(final int rows, final int columns, final int samplesPerPixel, final int planarConfiguration, final int bytesPerSample) {
+            this.bytesPerSample = bytesPerSample;
+            final boolean colourByPlane = samplesPerPixel > 1 && planarConfiguration == 1;
+            numberOfPlanes = colourByPlane ? samplesPerPixel : 1;
+            pixelStrideInBytes = (colourByPlane ? 1 : samplesPerPixel) * bytesPerSample;
+            rowStrideInBytes = columns * pixelStrideInBytes;
+            planeStrideInBytes = colourByPlane ? rows * columns * bytesPerSample : 0;
+            frameLengthInBytes = rows * columns * samplesPerPixel * bytesPerSample;
+        }
+    }
+
+    /**
+     * Writes the blackout value into the redacted regions of a single frame of the output file
+     *
+     * Positional writes do not change the channel's position, so frames can be written concurrently through one channel
+     */
+    private static class FrameRedactionTask implements Callable<Void> {
+        private final FileChannel channel;
+        private final long frameOffset;
+        private final FrameLayout layout;
+        private final List<Rectangle> rectangles;
+        private final byte[] blackoutRow;
+
+        FrameRedactionTask(final FileChannel channel, final long frameOffset, final FrameLayout layout, final List<Rectangle> rectangles, final byte[] blackoutRow) {
+            this.channel = channel;
+            this.frameOffset = frameOffset;
+            this.layout = layout;
+            this.rectangles = rectangles;
+            this.blackoutRow = blackoutRow;
+        }
+
+        @Override
+        public Void call() throws IOException {
+            // The row is shared between tasks but only read, so each task wraps it in its own buffer
+            final ByteBuffer span = ByteBuffer.wrap(blackoutRow);
+            for (final Rectangle rectangle : rectangles) {
+                final int spanLength = rectangle.width * layout.pixelStrideInBytes;
+                for (int y = rectangle.y; y < rectangle.y + rectangle.height; y++) {
+                    for (int plane = 0; plane < layout.numberOfPlanes; plane++) {
+                        long position = frameOffset + (long) plane * layout.planeStrideInBytes + (long) y * layout.rowStrideInBytes + (long) rectangle.x * layout.pixelStrideInBytes;
+                        span.clear();
+                        span.limit(spanLength);
+                        while (span.hasRemaining()) {
+                            position += channel.write(span, position);
+                        }
+                    }
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,336 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Some parts of this software were derived from DicomCleaner,
+    Copyright (c) 2001-2014, David A. Clunie DBA Pixelmed Publishing. All rights reserved.
+
+  Author: Tom Doel
+=============================================================================*/
+
+package uk.ac.ucl.cs.cmic.giftcloud.uploader;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.pixelmed.dicom.*;
+
+import java.awt.Shape;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.LinkedList;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Redacts JPEG Baseline images by blacking out the affected JPEG blocks, without decompressing the image
+ *
+ * The encapsulated pixel data are streamed from the input file one frame at a time. The basic offset table is used to
+ * determine which fragments make up each frame; if the table is empty, each fragment starting with a JPEG start of
+ * image marker is taken to start a new frame. Frames are redacted in parallel using
+ * {@code com.pixelmed.codec.jpeg.Parse} and written in order directly to the output file, with one fragment per frame
+ * and a basic offset table describing the redacted frames. Only a bounded number of frames are held in memory at once.
+ *
+ * This replaces {@link com.pixelmed.display.ImageEditUtilities#blackoutJPEGBlocks}, which reads all frames into memory,
+ * redacts them one at a time and writes a temporary file which then has to be read back in.
+ */
+class JpegBlockRedactor {
+
+    private static final int ITEM_GROUP = 0xfffe;
+    private static final int ITEM_ELEMENT = 0xe000;
+    private static final int SEQUENCE_DELIMITATION_ELEMENT = 0xe0dd;
+    private static final long UNDEFINED_LENGTH = 0xffffffffL;
+
+    private static final int numberOfThreads = Math.max(1, Runtime.getRuntime().availableProcessors());
+    private static final int maxFramesInProgress = 2 * numberOfThreads;
+    private static final ExecutorService frameExecutor = Executors.newFixedThreadPool(numberOfThreads, new ThreadFactoryBuilder().setDaemon(true).setNameFormat("GIFT-Cloud JPEG redaction %d").build());
+
+    /**
+     * Writes a copy of the input file with the JPEG blocks covering the given regions blacked out in every frame
+     *
+     * @param inputFile the JPEG Baseline file to redact
+     * @param outputFile the file to write, which will use the JPEG Baseline transfer syntax
+     * @param outputHeaders the attributes (excluding the pixel data) to write to the output file, including the meta information header
+     * @param shapes the regions to black out, in image-relative coordinates
+     * @throws IOException if the files could not be read or written
+     * @throws DicomException if there are no shapes, or if the input file could not be parsed or a frame could not be redacted
+     */
+    static void redact(final File inputFile, final File outputFile, final AttributeList outputHeaders, final Vector<Shape> shapes) throws IOException, DicomException {
+        // As in ImageEditUtilities.blackoutJPEGBlocks(), a filter without shapes is an error rather than a request to
+        // copy the frames unchanged, so that a broken template cannot result in an unredacted image being uploaded
+        if (shapes == null || shapes.isEmpty()) {
+            throw new DicomException("No redaction shapes specified");
+        }
+
+        final int numberOfFrames = Attribute.getSingleIntegerValueOrDefault(outputHeaders, TagFromName.NumberOfFrames, 1);
+        final long basicOffsetTablePosition;
+        final long[] outputFrameOffsets;
+
+        final DicomInputStream dicomInputStream = new DicomInputStream(new BufferedInputStream(new FileInputStream(inputFile)));
+        try {
+            final FragmentReader fragmentReader = new FragmentReader(dicomInputStream, numberOfFrames);
+
+            final FileOutputStream fileOutputStream = new FileOutputStream(outputFile);
+            try {
+                final DicomOutputStream dicomOutputStream = new DicomOutputStream(new BufferedOutputStream(fileOutputStream), TransferSyntax.ExplicitVRLittleEndian, TransferSyntax.JPEGBaseline);
+                outputHeaders.write(dicomOutputStream, true);
+
+                // Write the encapsulated PixelData element header, with space reserved for the basic offset table
+                dicomOutputStream.writeUnsigned16(TagFromName.PixelData.getGroup());
+                dicomOutputStream.writeUnsigned16(TagFromName.PixelData.getElement());
+                dicomOutputStream.write(ValueRepresentation.OB);
+                dicomOutputStream.writeUnsigned16(0);
+                dicomOutputStream.writeUnsigned32(UNDEFINED_LENGTH);
+                writeItemHeader(dicomOutputStream, ITEM_ELEMENT, 4L * numberOfFrames);
+                dicomOutputStream.flush();
+                basicOffsetTablePosition = fileOutputStream.getChannel().position();
+                for (int frame = 0; frame < numberOfFrames; frame++) {
+                    dicomOutputStream.writeUnsigned32(0);
+                }
+
+                outputFrameOffsets = writeRedactedFrames(fragmentReader, dicomOutputStream, shapes, numberOfFrames);
+
+                writeItemHeader(dicomOutputStream, SEQUENCE_DELIMITATION_ELEMENT, 0);
+                dicomOutputStream.flush();
+            } finally {
+                fileOutputStream.close();
+            }
+        } finally {
+            dicomInputStream.close();
+        }
+
+        writeBasicOffsetTable(outputFile, basicOffsetTablePosition, outputFrameOffsets);
+    }
+
+    /**
+     * Redacts frames in parallel as they are read, and writes them to the output stream in order
+     *
+     * @return the offset of each frame's item relative to the first item following the basic offset table
+     */
+    private static long[] writeRedactedFrames(final FragmentReader fragmentReader, final DicomOutputStream dicomOutputStream, final Vector<Shape> shapes, final int numberOfFrames) throws IOException, DicomException {
+        final long[] outputFrameOffsets = new long[numberOfFrames];
+        final LinkedList<Future<byte[]>> framesInProgress = new LinkedList<Future<byte[]>>();
+        int framesWritten = 0;
+        long outputOffset = 0;
+        try {
+            for (int frame = 0; frame < numberOfFrames; frame++) {
+                final byte[] inputFrame = fragmentReader.readFrame(frame);
+                framesInProgress.add(frameExecutor.submit(new FrameRedactionTask(inputFrame, shapes)));
+
+                while (framesInProgress.size() >= maxFramesInProgress || (frame == numberOfFrames - 1 && !framesInProgress.isEmpty())) {
+                    final byte[] redactedFrame = waitForFrame(framesInProgress.removeFirst());
+                    outputFrameOffsets[framesWritten] = outputOffset;
+                    outputOffset += writeFragment(dicomOutputStream, redactedFrame);
+                    framesWritten++;
+                }
+            }
+        } finally {
+            for (final Future<byte[]> frameInProgress : framesInProgress) {
+                frameInProgress.cancel(true);
+            }
+        }
+        if (!fragmentReader.isAtEndOfFragments()) {
+            throw new DicomException("The encapsulated pixel data contain more frames than expected");
+        }
+        return outputFrameOffsets;
+    }
+
+    private static byte[] waitForFrame(final Future<byte[]> frame) throws IOException, DicomException {
+        try {
+            return frame.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while redacting JPEG blocks");
+        } catch (ExecutionException e) {
+            throw new DicomException("JPEG blackout failed: " + e.getCause().getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Writes a single item containing the frame, padded to an even length
+     *
+     * @return the number of bytes written, including the item header
+     */
+    private static long writeFragment(final DicomOutputStream dicomOutputStream, final byte[] frame) throws IOException {
+        final long paddedLength = frame.length + (frame.length % 2);
+        writeItemHeader(dicomOutputStream, ITEM_ELEMENT, paddedLength);
+        dicomOutputStream.write(frame);
+        if (paddedLength != frame.length) {
+            dicomOutputStream.write(0);
+        }
+        return 8 + paddedLength;
+    }
+
+    private static void writeItemHeader(final DicomOutputStream dicomOutputStream, final int element, final long length) throws IOException {
+        dicomOutputStream.writeUnsigned16(ITEM_GROUP);
+        dicomOutputStream.writeUnsigned16(element);
+        dicomOutputStream.writeUnsigned32(length);
+    }
+
+    /**
+     * Fills in the basic offset table space which was reserved in the output file
+     */
+    private static void writeBasicOffsetTable(final File outputFile, final long basicOffsetTablePosition, final long[] frameOffsets) throws IOException {
+        final ByteBuffer table = ByteBuffer.allocate(4 * frameOffsets.length).order(ByteOrder.LITTLE_ENDIAN);
+        for (final long frameOffset : frameOffsets) {
+            if (frameOffset > UNDEFINED_LENGTH) {
+                throw new IOException("The redacted pixel data are too large for a basic offset table");
+            }
+            table.putInt((int) frameOffset);
+        }
+        table.flip();
+
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(outputFile, "rw");
+        try {
+            final FileChannel channel = randomAccessFile.getChannel();
+            long position = basicOffsetTablePosition;
+            while (table.hasRemaining()) {
+                position += channel.write(table, position);
+            }
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Reads the encapsulated pixel data of a file sequentially, returning the bytes of one frame at a time
+     */
+    private static class FragmentReader {
+        private final DicomInputStream dicomInputStream;
+        private final int numberOfFrames;
+        private final long[] frameOffsets;
+
+        // Offset of the next unread item, relative to the first item following the basic offset table
+        private long itemOffset = 0;
+        private byte[] nextFragment;
+        private long nextFragmentOffset;
+
+        FragmentReader(final DicomInputStream dicomInputStream, final int numberOfFrames) throws IOException, DicomException {
+            this.dicomInputStream = dicomInputStream;
+            this.numberOfFrames = numberOfFrames;
+
+            final AttributeList attributeList = new AttributeList();
+            attributeList.read(dicomInputStream, TagFromName.PixelData);
+            final TransferSyntax transferSyntax = dicomInputStream.getTransferSyntaxInUse();
+            if (transferSyntax == null || !transferSyntax.getUID().equals(TransferSyntax.JPEGBaseline)) {
+                throw new DicomException("Only JPEG Baseline pixel data are supported");
+            }
+
+            // Skip over the VR and check the pixel data are encapsulated
+            final byte[] vr = new byte[2];
+            dicomInputStream.readInsistently(vr, 0, 2);
+            dicomInputStream.readUnsigned16();
+            if (dicomInputStream.readUnsigned32() != UNDEFINED_LENGTH) {
+                throw new DicomException("The pixel data are not encapsulated");
+            }
+
+            final byte[] basicOffsetTable = readItem();
+            if (basicOffsetTable == null) {
+                throw new DicomException("The encapsulated pixel data have no basic offset table");
+            }
+            frameOffsets = parseBasicOffsetTable(basicOffsetTable, numberOfFrames);
+
+            itemOffset = 0;
+            readNextFragment();
+        }
+
+        /**
+         * Returns the concatenated fragments of the given frame. Frames must be read in order
+         */
+        byte[] readFrame(final int frame) throws IOException, DicomException {
+            if (nextFragment == null) {
+                throw new DicomException("The encapsulated pixel data contain fewer frames than expected");
+            }
+            final ByteArrayOutputStream frameBytes = new ByteArrayOutputStream(nextFragment.length);
+            do {
+                frameBytes.write(nextFragment);
+                readNextFragment();
+            } while (nextFragment != null && !isStartOfFrame(frame + 1));
+            return frameBytes.toByteArray();
+        }
+
+        boolean isAtEndOfFragments() {
+            return nextFragment == null;
+        }
+
+        private boolean isStartOfFrame(final int frame) {
+            if (frameOffsets != null) {
+                // Any fragments beyond the last offset belong to the last frame
+                return frame < numberOfFrames && nextFragmentOffset >= frameOffsets[frame];
+            }
+
+            // Without a basic offset table, each frame starts with a JPEG start of image marker
+            return nextFragment.length >= 2 && (nextFragment[0] & 0xff) == 0xff && (nextFragment[1] & 0xff) == 0xd8;
+        }
+
+        private void readNextFragment() throws IOException, DicomException {
+            nextFragmentOffset = itemOffset;
+            nextFragment = readItem();
+        }
+
+        /**
+         * Reads the next item, returning null at the sequence delimiter
+         */
+        private byte[] readItem() throws IOException, DicomException {
+            final int group = dicomInputStream.readUnsigned16();
+            final int element = dicomInputStream.readUnsigned16();
+            final long length = dicomInputStream.readUnsigned32();
+            if (group == ITEM_GROUP && element == SEQUENCE_DELIMITATION_ELEMENT) {
+                return null;
+            }
+            if (group != ITEM_GROUP || element != ITEM_ELEMENT || length == UNDEFINED_LENGTH || length > Integer.MAX_VALUE) {
+                throw new DicomException("Invalid item in encapsulated pixel data");
+            }
+            final byte[] value = new byte[(int) length];
+            dicomInputStream.readInsistently(value, 0, value.length);
+            itemOffset += 8 + length;
+            return value;
+        }
+
+        /**
+         * Returns the frame offsets from the basic offset table, or null if the table is empty
+         */
+        private static long[] parseBasicOffsetTable(final byte[] basicOffsetTable, final int numberOfFrames) throws DicomException {
+            if (basicOffsetTable.length == 0) {
+                return null;
+            }
+            if (basicOffsetTable.length != 4 * numberOfFrames) {
+                throw new DicomException("The basic offset table does not match the number of frames");
+            }
+            final ByteBuffer buffer = ByteBuffer.wrap(basicOffsetTable).order(ByteOrder.LITTLE_ENDIAN);
+            final long[] offsets = new long[numberOfFrames];
+            for (int frame = 0; frame < numberOfFrames; frame++) {
+                offsets[frame] = buffer.getInt() & UNDEFINED_LENGTH;
+            }
+            return offsets;
+        }
+    }
+
+    /**
+     * Blacks out the JPEG blocks of a single frame
+     */
+    private static class FrameRedactionTask implements Callable<byte[]> {
+        private final byte[] inputFrame;
+        private final Vector<Shape> shapes;
+
+        FrameRedactionTask(final byte[] inputFrame, final Vector<Shape> shapes) {
+            this.inputFrame = inputFrame;
+            this.shapes = shapes;
+        }
+
+        @Override
+        public byte[] call() throws Exception {
+            final ByteArrayOutputStream outputFrame = new ByteArrayOutputStream(inputFrame.length);
+            com.pixelmed.codec.jpeg.Parse.parse(new ByteArrayInputStream(inputFrame), outputFrame, shapes);
+            return outputFrame.toByteArray();
+        }
+    }
+}
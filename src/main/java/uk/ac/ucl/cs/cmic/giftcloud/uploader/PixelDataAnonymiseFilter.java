@@ -16,7 +16,6 @@ package uk.ac.ucl.cs.cmic.giftcloud.uploader;
 
 import com.pixelmed.dicom.Attribute;
 import com.pixelmed.dicom.AttributeList;
-import com.pixelmed.dicom.AttributeTag;
 import com.pixelmed.dicom.DicomException;
 
 import java.awt.*;
@@ -57,12 +56,8 @@ public class PixelDataAnonymiseFilter {
 
     public boolean matches(final AttributeList attributeList) throws DicomException {
         for (final PixelDataAnonymiseFilterRequiredTag requiredTag : requiredTags) {
-            final AttributeTag attributeTag = new AttributeTag(requiredTag.getDicomGroup(), requiredTag.getDicomElement());
-            if (!attributeList.containsKey(attributeTag)) {
-                return false;
-            }
-            final Attribute attribute = attributeList.get(attributeTag);
-            if (!requiredTag.matches(attribute)) {
+            final Attribute attribute = attributeList.get(requiredTag.getAttributeTag());
+            if (attribute == null || !requiredTag.matches(attribute)) {
                 return false;
             }
         }
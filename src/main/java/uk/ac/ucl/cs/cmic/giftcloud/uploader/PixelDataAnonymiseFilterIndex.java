@@ -0,0 +1,205 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+package uk.ac.ucl.cs.cmic.giftcloud.uploader;
+
+import com.pixelmed.dicom.Attribute;
+import com.pixelmed.dicom.AttributeList;
+import com.pixelmed.dicom.AttributeTag;
+import com.pixelmed.dicom.DicomException;
+import com.pixelmed.dicom.TagFromName;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * An index over a list of pixel data anonymisation filters, used to quickly find the filters which could match an image
+ *
+ * The index is keyed on a small set of discriminating tags. For each of these tags it records which filters require
+ * each value, and which filters do not depend on the tag at all. The candidates for an image are the filters which are
+ * consistent with the image on every discriminating tag. Candidates are returned in the original filter order and must
+ * still be checked using {@link PixelDataAnonymiseFilter#matches(AttributeList)}, since filters may require other tags
+ *
+ * The index also records every tag required by any of the filters, which determines the series signature used to cache
+ * filter decisions
+ */
+class PixelDataAnonymiseFilterIndex {
+
+    static final AttributeTag[] DISCRIMINATING_TAGS = {
+            TagFromName.SOPClassUID,
+            TagFromName.Manufacturer,
+            TagFromName.ManufacturerModelName,
+            TagFromName.Rows,
+            TagFromName.Columns
+    };
+
+    private final List<PixelDataAnonymiseFilter> filters;
+    private final List<TagIndex> tagIndices = new ArrayList<TagIndex>();
+    private final List<AttributeTag> signatureTags;
+
+    /**
+     * Builds the index
+     *
+     * @param filters the filters to index, in the order in which they should be tested
+     */
+    PixelDataAnonymiseFilterIndex(final List<PixelDataAnonymiseFilter> filters) {
+        this.filters = new ArrayList<PixelDataAnonymiseFilter>(filters);
+        for (final AttributeTag tag : DISCRIMINATING_TAGS) {
+            tagIndices.add(new TagIndex(tag, this.filters));
+        }
+
+        final Set<AttributeTag> requiredTags = new TreeSet<AttributeTag>();
+        for (final PixelDataAnonymiseFilter filter : this.filters) {
+            for (final PixelDataAnonymiseFilterRequiredTag requiredTag : filter.getRequiredTags()) {
+                requiredTags.add(requiredTag.getAttributeTag());
+            }
+        }
+        signatureTags = new ArrayList<AttributeTag>(requiredTags);
+    }
+
+    /**
+     * Returns the filters which may match the image, in the order in which they should be tested
+     *
+     * @param attributeList the attributes of the image
+     * @return filters which are consistent with the image for every discriminating tag
+     */
+    List<PixelDataAnonymiseFilter> getCandidates(final AttributeList attributeList) {
+        final BitSet candidates = new BitSet(filters.size());
+        candidates.set(0, filters.size());
+        for (final TagIndex tagIndex : tagIndices) {
+            tagIndex.restrictCandidates(attributeList, candidates);
+            if (candidates.isEmpty()) {
+                break;
+            }
+        }
+
+        final List<PixelDataAnonymiseFilter> candidateFilters = new ArrayList<PixelDataAnonymiseFilter>();
+        for (int filterIndex = candidates.nextSetBit(0); filterIndex >= 0; filterIndex = candidates.nextSetBit(filterIndex + 1)) {
+            candidateFilters.add(filters.get(filterIndex));
+        }
+        return candidateFilters;
+    }
+
+    /**
+     * Returns a string describing the image's values for every tag required by any of the indexed filters. Images with
+     * the same signature in the same series will have the same filter decision, since no filter can distinguish them
+     *
+     * @param attributeList the attributes of the image
+     * @return a string which combines the series UID with the values of the required tags
+     */
+    String getSeriesSignature(final AttributeList attributeList) {
+        final StringBuilder signature = new StringBuilder();
+        signature.append(Attribute.getSingleStringValueOrEmptyString(attributeList, TagFromName.SeriesInstanceUID));
+        for (final AttributeTag tag : signatureTags) {
+            // Missing and empty attributes are distinguished, and each value is prefixed by its length so that values
+            // containing the separator cannot produce the same signature as other values
+            signature.append('|');
+            if (attributeList.get(tag) != null) {
+                final String values = Attribute.getDelimitedStringValuesOrEmptyString(attributeList, tag);
+                signature.append(values.length()).append(':').append(values);
+            }
+        }
+        return signature.toString();
+    }
+
+    private static String getStringKey(final String value) {
+        return "S:" + value;
+    }
+
+    private static String getIntegerKey(final int value) {
+        return "I:" + value;
+    }
+
+    /**
+     * Records which filters are consistent with each value of a single tag
+     */
+    private static class TagIndex {
+        private final AttributeTag tag;
+        private final Map<String, BitSet> filtersRequiringValue = new HashMap<String, BitSet>();
+        private final BitSet filtersIgnoringTag = new BitSet();
+
+        TagIndex(final AttributeTag tag, final List<PixelDataAnonymiseFilter> filters) {
+            this.tag = tag;
+            int filterIndex = 0;
+            for (final PixelDataAnonymiseFilter filter : filters) {
+                boolean filterUsesTag = false;
+                for (final PixelDataAnonymiseFilterRequiredTag requiredTag : filter.getRequiredTags()) {
+                    if (requiredTag.getDicomGroup() == tag.getGroup() && requiredTag.getDicomElement() == tag.getElement()) {
+                        if (requiredTag instanceof IntFilterTag) {
+                            addFilterForValue(getIntegerKey(((IntFilterTag) requiredTag).getValue()), filterIndex);
+                            filterUsesTag = true;
+                        } else if (requiredTag instanceof StringFilterTag) {
+                            addFilterForValue(getStringKey(((StringFilterTag) requiredTag).getValue()), filterIndex);
+                            filterUsesTag = true;
+                        }
+                        // Other tag types are not indexed and will be checked when the filter is matched
+                    }
+                }
+                if (!filterUsesTag) {
+                    filtersIgnoringTag.set(filterIndex);
+                }
+                filterIndex++;
+            }
+        }
+
+        void restrictCandidates(final AttributeList attributeList, final BitSet candidates) {
+            if (filtersRequiringValue.isEmpty()) {
+                return;
+            }
+
+            final BitSet consistentFilters = (BitSet) filtersIgnoringTag.clone();
+            final Attribute attribute = attributeList.get(tag);
+            if (attribute != null) {
+                // These keys correspond to the tests in StringFilterTag.matches() and IntFilterTag.matches()
+                try {
+                    final String[] stringValues = attribute.getStringValues();
+                    if (stringValues != null && stringValues.length == 1) {
+                        addFiltersForValue(getStringKey(stringValues[0]), consistentFilters);
+                    }
+                } catch (DicomException e) {
+                    // The attribute has no string representation so cannot match a string filter
+                }
+                try {
+                    final int[] integerValues = attribute.getIntegerValues();
+                    if (integerValues != null && integerValues.length == 1) {
+                        addFiltersForValue(getIntegerKey(integerValues[0]), consistentFilters);
+                    }
+                } catch (DicomException e) {
+                    // The attribute has no integer representation so cannot match an integer filter
+                } catch (NumberFormatException e) {
+                    // The attribute has no integer representation so cannot match an integer filter
+                }
+            }
+            candidates.and(consistentFilters);
+        }
+
+        private void addFilterForValue(final String key, final int filterIndex) {
+            BitSet filtersForValue = filtersRequiringValue.get(key);
+            if (filtersForValue == null) {
+                filtersForValue = new BitSet();
+                filtersRequiringValue.put(key, filtersForValue);
+            }
+            filtersForValue.set(filterIndex);
+        }
+
+        private void addFiltersForValue(final String key, final BitSet consistentFilters) {
+            final BitSet filtersForValue = filtersRequiringValue.get(key);
+            if (filtersForValue != null) {
+                consistentFilters.or(filtersForValue);
+            }
+        }
+    }
+}
@@ -13,6 +13,7 @@ package uk.ac.ucl.cs.cmic.giftcloud.uploader;
 
 import com.google.common.base.Objects;
 import com.pixelmed.dicom.Attribute;
+import com.pixelmed.dicom.AttributeTag;
 import com.pixelmed.dicom.DicomException;
 
 /**
@@ -24,12 +25,14 @@ public abstract class PixelDataAnonymiseFilterRequiredTag<T> {
     private final int dicomElement;
     private final T value;
     private final String valueType;
+    private final AttributeTag attributeTag;
 
     public PixelDataAnonymiseFilterRequiredTag(final String valueType, final int dicomGroup, final int dicomElement, final T value) {
         this.valueType = valueType;
         this.dicomGroup = dicomGroup;
         this.dicomElement = dicomElement;
         this.value = value;
+        this.attributeTag = new AttributeTag(dicomGroup, dicomElement);
     }
 
     public int getDicomGroup() {
@@ -40,6 +43,13 @@ public abstract class PixelDataAnonymiseFilterRequiredTag<T> {
         return dicomElement;
     }
 
+    /**
+     * @return the tag to which this filter applies
+     */
+    public AttributeTag getAttributeTag() {
+        return attributeTag;
+    }
+
     public T getValue() {
         return value;
     }
@@ -13,17 +13,22 @@
 
 package uk.ac.ucl.cs.cmic.giftcloud.uploader;
 
+import com.pixelmed.dicom.AttributeList;
+import com.pixelmed.dicom.DicomException;
 import org.apache.commons.io.filefilter.WildcardFileFilter;
 import org.springframework.core.io.Resource;
 import uk.ac.ucl.cs.cmic.giftcloud.restserver.GiftCloudProperties;
 import uk.ac.ucl.cs.cmic.giftcloud.util.GiftCloudReporter;
 import uk.ac.ucl.cs.cmic.giftcloud.util.GiftCloudUtils;
+import uk.ac.ucl.cs.cmic.giftcloud.util.Optional;
 
 import java.io.File;
 import java.io.FileFilter;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 
 /**
@@ -31,7 +36,16 @@ import java.util.List;
  */
 public class PixelDataAnonymiserFilterCache {
 
+    private static final int MAX_CACHED_SERIES_DECISIONS = 1000;
+
     private List<PixelDataAnonymiseFilter> filters;
+    private PixelDataAnonymiseFilterIndex filterIndex;
+    private final Map<String, Optional<PixelDataAnonymiseFilter>> seriesDecisions = new LinkedHashMap<String, Optional<PixelDataAnonymiseFilter>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, Optional<PixelDataAnonymiseFilter>> eldest) {
+            return size() > MAX_CACHED_SERIES_DECISIONS;
+        }
+    };
     private GiftCloudReporter reporter;
     private GiftCloudProperties properties;
 
@@ -55,11 +69,46 @@ public class PixelDataAnonymiserFilterCache {
         return filters;
     }
 
+    /**
+     * Finds the first filter which matches the given image. The decision is cached for each series and combination of
+     * values of the tags required by the filters, so subsequent images from the same series with the same values do not
+     * need to be compared against the filters
+     *
+     * @param attributeList the attributes of the image
+     * @return the first matching filter, or an empty Optional if no filter matches
+     */
+    public synchronized Optional<PixelDataAnonymiseFilter> getFilter(final AttributeList attributeList) {
+        final String seriesSignature = filterIndex.getSeriesSignature(attributeList);
+        final Optional<PixelDataAnonymiseFilter> cachedDecision = seriesDecisions.get(seriesSignature);
+        if (cachedDecision != null) {
+            return cachedDecision;
+        }
+
+        final Optional<PixelDataAnonymiseFilter> decision = findFilter(attributeList);
+        seriesDecisions.put(seriesSignature, decision);
+        return decision;
+    }
+
     /**
      * Reads filters from disk
      */
     public synchronized void reloadFilters() {
         this.filters = readFilters(properties, reporter);
+        this.filterIndex = new PixelDataAnonymiseFilterIndex(filters);
+        seriesDecisions.clear();
+    }
+
+    private Optional<PixelDataAnonymiseFilter> findFilter(final AttributeList attributeList) {
+        for (final PixelDataAnonymiseFilter filter : filterIndex.getCandidates(attributeList)) {
+            try {
+                if (filter.matches(attributeList)) {
+                    return Optional.of(filter);
+                }
+            } catch (DicomException e) {
+                reporter.silentLogException(e, "Problem when comparing filter tag values");
+            }
+        }
+        return Optional.empty();
     }
 
     private List<PixelDataAnonymiseFilter> readFilters(final GiftCloudProperties giftCloudProperties, final GiftCloudReporter reporter) {
@@ -14,6 +14,7 @@ package uk.ac.ucl.cs.cmic.giftcloud.uploader;
 import uk.ac.ucl.cs.cmic.giftcloud.restserver.GiftCloudProperties;
 import uk.ac.ucl.cs.cmic.giftcloud.restserver.Project;
 import uk.ac.ucl.cs.cmic.giftcloud.restserver.RestClient;
+import uk.ac.ucl.cs.cmic.giftcloud.restserver.SeriesImportFilterCache;
 import uk.ac.ucl.cs.cmic.giftcloud.util.GiftCloudReporter;
 
 import java.util.HashMap;
@@ -23,15 +24,17 @@ public class ProjectCache {
     private Map<String, Project> projectMap = new HashMap<String, Project>();
     private RestClient restClient;
     private PixelDataAnonymiserFilterCache pixelDataAnonymiserFilterCache;
+    private SeriesImportFilterCache seriesImportFilterCache;
 
-    public ProjectCache(final RestClient restClient, PixelDataAnonymiserFilterCache pixelDataAnonymiserFilterCache) {
+    public ProjectCache(final RestClient restClient, PixelDataAnonymiserFilterCache pixelDataAnonymiserFilterCache, SeriesImportFilterCache seriesImportFilterCache) {
         this.restClient = restClient;
         this.pixelDataAnonymiserFilterCache = pixelDataAnonymiserFilterCache;
+        this.seriesImportFilterCache = seriesImportFilterCache;
     }
 
     public Project getProject(final String projectName, GiftCloudProperties properties, GiftCloudReporter reporter) {
         if (!projectMap.containsKey(projectName)) {
-            projectMap.put(projectName, new Project(projectName, restClient, pixelDataAnonymiserFilterCache, properties, reporter));
+            projectMap.put(projectName, new Project(projectName, restClient, pixelDataAnonymiserFilterCache, seriesImportFilterCache, properties, reporter));
         }
         return projectMap.get(projectName);
     }
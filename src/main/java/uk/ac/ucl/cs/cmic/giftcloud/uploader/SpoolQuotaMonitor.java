@@ -0,0 +1,148 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+package uk.ac.ucl.cs.cmic.giftcloud.uploader;
+
+import com.pixelmed.network.StorageCapacityPolicy;
+import uk.ac.ucl.cs.cmic.giftcloud.util.LoggingReporter;
+
+/**
+ * Tracks the number of bytes in the upload spool which are waiting for upload, and applies backpressure to the DICOM
+ * listener when this becomes too large
+ *
+ * <p>Below the low-water mark, files are received without delay. Between the low and high-water marks, new associations
+ * are delayed by an amount which increases as the high-water mark is approached. Once the high-water mark is reached,
+ * received data sets are refused with an out of resources status until the pending bytes have fallen below the
+ * low-water mark again.
+ *
+ * <p>Only files which will be deleted after upload are counted, since files imported by reference do not take up space
+ * in the spool. This class is thread-safe.
+ */
+public class SpoolQuotaMonitor implements StorageCapacityPolicy {
+
+    static final long MAXIMUM_ASSOCIATION_DELAY_MS = 2000;
+
+    public static final long DEFAULT_HIGH_WATER_MARK_MB = 20480;
+    public static final long DEFAULT_LOW_WATER_MARK_MB = 16384;
+    private static final long BYTES_PER_MB = 1024L * 1024L;
+
+    private final long highWaterMark;
+    private final long lowWaterMark;
+    private final LoggingReporter reporter;
+    private long pendingBytes = 0;
+    private boolean refusing = false;
+
+    /**
+     * @param highWaterMark the number of pending bytes at which received data sets will be refused
+     * @param lowWaterMark the number of pending bytes below which received data sets will be accepted again, and above
+     *                     which new associations will be delayed
+     * @param reporter for logging changes of state, and invalid marks
+     */
+    public SpoolQuotaMonitor(final long highWaterMark, final long lowWaterMark, final LoggingReporter reporter) {
+        this.reporter = reporter;
+        if (areValidMarks(highWaterMark, lowWaterMark)) {
+            this.highWaterMark = highWaterMark;
+            this.lowWaterMark = lowWaterMark;
+        } else {
+            this.highWaterMark = DEFAULT_HIGH_WATER_MARK_MB * BYTES_PER_MB;
+            this.lowWaterMark = DEFAULT_LOW_WATER_MARK_MB * BYTES_PER_MB;
+            reporter.silentWarning("The upload spool high-water mark of " + highWaterMark + " bytes must be greater than the low-water mark of " + lowWaterMark + " bytes. The default marks will be used instead.");
+        }
+    }
+
+    /**
+     * @return true if the marks can be used together: the low-water mark is not negative, and is below the high-water mark
+     */
+    public static boolean areValidMarks(final long highWaterMark, final long lowWaterMark) {
+        return lowWaterMark >= 0 && highWaterMark > lowWaterMark;
+    }
+
+    /**
+     * @return a low-water mark in the same proportion to the given high-water mark as the default marks
+     */
+    public static long getDefaultLowWaterMark(final long highWaterMark) {
+        return highWaterMark * DEFAULT_LOW_WATER_MARK_MB / DEFAULT_HIGH_WATER_MARK_MB;
+    }
+
+    /**
+     * Records that a file has been added to the spool
+     *
+     * @param numberOfBytes the size of the file
+     */
+    public synchronized void addPendingBytes(final long numberOfBytes) {
+        pendingBytes += numberOfBytes;
+        updateState();
+    }
+
+    /**
+     * Records that a file has been removed from the spool
+     *
+     * @param numberOfBytes the size of the file when it was added
+     */
+    public synchronized void removePendingBytes(final long numberOfBytes) {
+        pendingBytes = Math.max(0, pendingBytes - numberOfBytes);
+        updateState();
+    }
+
+    @Override
+    public synchronized long getAssociationAcceptanceDelay() {
+        if (refusing) {
+            return MAXIMUM_ASSOCIATION_DELAY_MS;
+        }
+        if (pendingBytes <= lowWaterMark) {
+            return 0;
+        }
+        return MAXIMUM_ASSOCIATION_DELAY_MS * (pendingBytes - lowWaterMark) / (highWaterMark - lowWaterMark);
+    }
+
+    @Override
+    public synchronized boolean canStoreReceivedObjects() {
+        return !refusing;
+    }
+
+    /**
+     * @return the number of bytes in the spool waiting for upload
+     */
+    public synchronized long getPendingBytes() {
+        return pendingBytes;
+    }
+
+    /**
+     * @return the number of pending bytes at which received data sets will be refused
+     */
+    public long getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    /**
+     * @return the number of pending bytes below which received data sets will be accepted again
+     */
+    public long getLowWaterMark() {
+        return lowWaterMark;
+    }
+
+    /**
+     * @return true if received data sets are currently being refused
+     */
+    public synchronized boolean isRefusing() {
+        return refusing;
+    }
+
+    private void updateState() {
+        if (!refusing && pendingBytes >= highWaterMark) {
+            refusing = true;
+            reporter.silentWarning("The upload spool has reached its limit of " + highWaterMark + " bytes. Received files will be refused until uploading has caught up.");
+        } else if (refusing && pendingBytes < lowWaterMark) {
+            refusing = false;
+            reporter.silentWarning("The upload spool has fallen below " + lowWaterMark + " bytes. Received files will be accepted again.");
+        }
+    }
+}
@@ -12,35 +12,31 @@
 
 package uk.ac.ucl.cs.cmic.giftcloud.uploader;
 
+import uk.ac.ucl.cs.cmic.giftcloud.util.FileIdentityResolver;
 import uk.ac.ucl.cs.cmic.giftcloud.util.Optional;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+/**
+ * A map from files to values, in which different paths to the same file refer to the same entry. Lookups do not
+ * require a lock
+ */
 public class UniqueFileMap<V> {
-    private final Map<String, V> fileMap = new HashMap<String, V>();
+    private final ConcurrentMap<String, V> fileMap = new ConcurrentHashMap<String, V>();
+    private final FileIdentityResolver fileIdentityResolver = FileIdentityResolver.getDefault();
 
-    public synchronized void put(final String fileName, final V value) throws IOException {
-        final File file = new File(fileName);
-        final String canonicalPath = file.getCanonicalPath();
-        fileMap.put(canonicalPath, value);
+    public void put(final String fileName, final V value) throws IOException {
+        fileMap.put(fileIdentityResolver.getKey(new File(fileName)), value);
     }
 
-    public synchronized void safeRemove(final File file) throws IOException {
-        final String canonicalPath = file.getCanonicalPath();
-        if (fileMap.containsKey(canonicalPath)) {
-            fileMap.remove(canonicalPath);
-        }
+    public void safeRemove(final File file) throws IOException {
+        fileMap.remove(fileIdentityResolver.getKey(file));
     }
 
-    public synchronized Optional<V> get(final File file) throws IOException {
-        final String canonicalPath = file.getCanonicalPath();
-        if (fileMap.containsKey(canonicalPath)) {
-            return Optional.of(fileMap.get(canonicalPath));
-        } else {
-            return Optional.empty();
-        }
+    public Optional<V> get(final File file) throws IOException {
+        return Optional.ofNullable(fileMap.get(fileIdentityResolver.getKey(file)));
     }
 }
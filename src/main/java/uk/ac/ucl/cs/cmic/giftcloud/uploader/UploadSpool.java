@@ -0,0 +1,346 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+package uk.ac.ucl.cs.cmic.giftcloud.uploader;
+
+import com.pixelmed.dicom.Attribute;
+import com.pixelmed.dicom.AttributeList;
+import com.pixelmed.dicom.DicomException;
+import com.pixelmed.dicom.TagFromName;
+import com.pixelmed.utils.CopyStream;
+import com.pixelmed.utils.FileUtilities;
+import org.apache.commons.lang.StringUtils;
+import uk.ac.ucl.cs.cmic.giftcloud.util.LoggingReporter;
+import uk.ac.ucl.cs.cmic.giftcloud.util.OneWayHash;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * The folder in which received files are stored until they have been uploaded
+ *
+ * <p>Files are sharded into subfolders by study and series, so that no single folder contains a very large number of
+ * files. An index file records the series of each stored file, so that after a restart the files waiting for upload can
+ * be grouped into series without listing the folders or parsing the files. The folder names, file names and index
+ * entries use one-way hashes of the UIDs, so that the spool does not reveal the original UIDs. Folders which are left
+ * empty after their files have been uploaded are deleted.
+ *
+ * <p>Entries are appended to the index as files are added. Entries for files which no longer exist, because they have
+ * been uploaded and deleted, are removed when the spool is recovered. An incomplete final line, from a crash during a
+ * write, is ignored. When the spool is recovered the series folders are also listed, and any file which is missing from
+ * the index, because the index was lost or damaged, is parsed to find its series and added back to the index.
+ *
+ * <p>This class is thread-safe.
+ */
+public class UploadSpool {
+
+    static final String INDEX_FILE_NAME = "spool.index";
+    private static final String UNKNOWN_UID_FOLDER_NAME = "Unknown";
+    private static final int NUMBER_OF_SHARDS = 256;
+    private static final String SEPARATOR = "\t";
+    private static final String ENCODING = "UTF-8";
+
+    private final File spoolFolder;
+    private final File indexFile;
+    private final LoggingReporter reporter;
+    private final Set<String> filesAddedThisSession = new HashSet<String>();
+    private Writer indexWriter = null;
+
+    /**
+     * @param spoolFolder the root folder of the spool
+     * @param reporter for logging errors
+     */
+    public UploadSpool(final File spoolFolder, final LoggingReporter reporter) {
+        this.spoolFolder = spoolFolder;
+        this.indexFile = new File(spoolFolder, INDEX_FILE_NAME);
+        this.reporter = reporter;
+    }
+
+    /**
+     * @return the root folder of the spool
+     */
+    public File getSpoolFolder() {
+        return spoolFolder;
+    }
+
+    /**
+     * Moves a file into the folder for its series and records it in the index
+     *
+     * @param file the file to add, which should already be in the same file system as the spool
+     * @param headers the DICOM headers of the file, which must include the study and series instance UIDs
+     * @return the new location of the file
+     * @throws IOException if the file could not be moved or the index could not be written
+     */
+    public synchronized File addFile(final File file, final AttributeList headers) throws IOException {
+        final String studyUid = Attribute.getSingleStringValueOrEmptyString(headers, TagFromName.StudyInstanceUID);
+        final String seriesUid = Attribute.getSingleStringValueOrEmptyString(headers, TagFromName.SeriesInstanceUID);
+        final String sopInstanceUid = Attribute.getSingleStringValueOrEmptyString(headers, TagFromName.SOPInstanceUID);
+
+        final File seriesFolder = makeSeriesFolder(studyUid, seriesUid);
+        if (!seriesFolder.isDirectory() && !seriesFolder.mkdirs() && !seriesFolder.isDirectory()) {
+            throw new IOException("Could not create the spool folder " + seriesFolder.getPath());
+        }
+
+        final File storedFile = new File(seriesFolder, StringUtils.isNotBlank(sopInstanceUid) ? OneWayHash.hashUid(sopInstanceUid) : FileUtilities.makeTemporaryFileName());
+        if (!file.renameTo(storedFile)) {
+            CopyStream.copy(file, storedFile);
+            if (!file.delete()) {
+                reporter.silentWarning("Could not delete the file " + file.getPath() + " after copying it to the spool");
+            }
+        }
+
+        final String relativePath = getRelativePath(storedFile);
+        appendToIndex(makeSeriesKey(seriesUid), relativePath);
+        filesAddedThisSession.add(relativePath);
+        return storedFile;
+    }
+
+    /**
+     * Returns the indexed files which are still waiting for upload, grouped by series, and removes entries for files
+     * which no longer exist from the index. Files in the series folders which are missing from the index are added to
+     * it. Files added since this object was created are not included, as they will already have been imported.
+     *
+     * @return a list of file groups. Files with the same series instance UID are grouped together; files without a
+     * series instance UID are each in their own group
+     * @throws IOException if the index could not be read or rewritten
+     */
+    public synchronized List<List<File>> recoverIndexedSeries() throws IOException {
+        final Map<String, List<String>> seriesMap = new LinkedHashMap<String, List<String>>();
+        final List<String> filesWithoutSeries = new ArrayList<String>();
+        try {
+            readIndex(seriesMap, filesWithoutSeries);
+        } catch (IOException e) {
+            reporter.silentLogException(e, "Could not read the spool index. The spool folders will be scanned instead: " + e.getLocalizedMessage());
+        }
+        addFilesMissingFromIndex(seriesMap, filesWithoutSeries);
+
+        closeIndexWriter();
+        final File newIndexFile = new File(spoolFolder, INDEX_FILE_NAME + ".new");
+        final Writer newIndexWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(newIndexFile), ENCODING));
+        final List<List<File>> recoveredSeries = new ArrayList<List<File>>();
+        try {
+            for (final Map.Entry<String, List<String>> series : seriesMap.entrySet()) {
+                final List<File> recoveredFiles = new ArrayList<File>();
+                for (final String relativePath : series.getValue()) {
+                    final File file = new File(spoolFolder, relativePath);
+                    if (file.isFile()) {
+                        writeIndexLine(newIndexWriter, series.getKey(), relativePath);
+                        if (!filesAddedThisSession.contains(relativePath)) {
+                            recoveredFiles.add(file);
+                        }
+                    }
+                }
+                if (!recoveredFiles.isEmpty()) {
+                    recoveredSeries.add(recoveredFiles);
+                }
+            }
+            for (final String relativePath : filesWithoutSeries) {
+                final File file = new File(spoolFolder, relativePath);
+                if (file.isFile()) {
+                    writeIndexLine(newIndexWriter, "", relativePath);
+                    if (!filesAddedThisSession.contains(relativePath)) {
+                        recoveredSeries.add(Collections.singletonList(file));
+                    }
+                }
+            }
+        } finally {
+            newIndexWriter.close();
+        }
+
+        if (indexFile.exists() && !indexFile.delete()) {
+            throw new IOException("Could not replace the spool index " + indexFile.getPath());
+        }
+        if (!newIndexFile.renameTo(indexFile)) {
+            throw new IOException("Could not replace the spool index " + indexFile.getPath());
+        }
+        return recoveredSeries;
+    }
+
+    /**
+     * @return files in the root of the spool folder, which have not been moved into a series folder and indexed
+     */
+    public List<File> getUnindexedFiles() {
+        final List<File> unindexedFiles = new ArrayList<File>();
+        final File[] files = spoolFolder.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                if (file.isFile() && !file.getName().startsWith(INDEX_FILE_NAME)) {
+                    unindexedFiles.add(file);
+                }
+            }
+        }
+        return unindexedFiles;
+    }
+
+    /**
+     * Deletes the folders containing a file which has been removed from the spool, if they are now empty. The spool
+     * folder itself is never deleted, and files outside the spool are ignored.
+     *
+     * @param removedFile a file which has been deleted after upload
+     */
+    public synchronized void removeEmptyFolders(final File removedFile) {
+        final String rootPath = spoolFolder.getAbsolutePath();
+        File folder = removedFile.getAbsoluteFile().getParentFile();
+        while (folder != null && folder.getPath().startsWith(rootPath + File.separator)) {
+            final String[] contents = folder.list();
+            if (contents == null || contents.length > 0 || !folder.delete()) {
+                return;
+            }
+            folder = folder.getParentFile();
+        }
+    }
+
+    File makeSeriesFolder(final String studyUid, final String seriesUid) {
+        final String shard = String.format("%02x", (studyUid.hashCode() & 0x7fffffff) % NUMBER_OF_SHARDS);
+        final File studyFolder = new File(new File(spoolFolder, shard), makeFolderName(studyUid));
+        return new File(studyFolder, makeFolderName(seriesUid));
+    }
+
+    private static String makeFolderName(final String uid) {
+        return StringUtils.isNotBlank(uid) ? OneWayHash.hashUid(uid) : UNKNOWN_UID_FOLDER_NAME;
+    }
+
+    /**
+     * @return the key by which a series is grouped in the index, which is the hash of the series instance UID, or an
+     * empty string if there is no series instance UID
+     */
+    static String makeSeriesKey(final String seriesUid) {
+        return StringUtils.isNotBlank(seriesUid) ? OneWayHash.hashUid(seriesUid) : "";
+    }
+
+    private String getRelativePath(final File file) throws IOException {
+        final String rootPath = spoolFolder.getAbsolutePath();
+        final String filePath = file.getAbsolutePath();
+        if (!filePath.startsWith(rootPath + File.separator)) {
+            throw new IOException("The file " + filePath + " is not in the spool folder");
+        }
+        return filePath.substring(rootPath.length() + 1).replace(File.separatorChar, '/');
+    }
+
+    private void readIndex(final Map<String, List<String>> seriesMap, final List<String> filesWithoutSeries) throws IOException {
+        if (!indexFile.exists()) {
+            return;
+        }
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(indexFile), ENCODING));
+        try {
+            final Set<String> relativePaths = new HashSet<String>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final int separatorIndex = line.indexOf(SEPARATOR);
+                if (separatorIndex < 0 || separatorIndex == line.length() - 1) {
+                    // Ignore lines which were not completely written
+                    continue;
+                }
+                final String seriesKey = line.substring(0, separatorIndex);
+                final String relativePath = line.substring(separatorIndex + 1);
+                if (!relativePaths.add(relativePath)) {
+                    continue;
+                }
+                if (seriesKey.isEmpty()) {
+                    filesWithoutSeries.add(relativePath);
+                } else {
+                    // An index written by an earlier version contains the series instance UIDs themselves. These are
+                    // hashed, so the rewritten index no longer contains them
+                    addToSeries(seriesMap, seriesKey.indexOf('.') >= 0 ? makeSeriesKey(seriesKey) : seriesKey, relativePath);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private void addFilesMissingFromIndex(final Map<String, List<String>> seriesMap, final List<String> filesWithoutSeries) throws IOException {
+        final Set<String> indexedPaths = new HashSet<String>(filesWithoutSeries);
+        for (final List<String> relativePaths : seriesMap.values()) {
+            indexedPaths.addAll(relativePaths);
+        }
+
+        final List<File> filesInSeriesFolders = new ArrayList<File>();
+        final File[] shardFolders = spoolFolder.listFiles();
+        if (shardFolders != null) {
+            Arrays.sort(shardFolders);
+            for (final File shardFolder : shardFolders) {
+                if (shardFolder.isDirectory() && shardFolder.getName().matches("[0-9a-f]{2}")) {
+                    listFilesRecursively(shardFolder, filesInSeriesFolders);
+                }
+            }
+        }
+
+        for (final File file : filesInSeriesFolders) {
+            final String relativePath = getRelativePath(file);
+            if (!indexedPaths.contains(relativePath)) {
+                final String seriesUid = readSeriesUid(file);
+                if (StringUtils.isBlank(seriesUid)) {
+                    filesWithoutSeries.add(relativePath);
+                } else {
+                    addToSeries(seriesMap, makeSeriesKey(seriesUid), relativePath);
+                }
+            }
+        }
+    }
+
+    private static void addToSeries(final Map<String, List<String>> seriesMap, final String seriesKey, final String relativePath) {
+        if (!seriesMap.containsKey(seriesKey)) {
+            seriesMap.put(seriesKey, new ArrayList<String>());
+        }
+        seriesMap.get(seriesKey).add(relativePath);
+    }
+
+    private static void listFilesRecursively(final File folder, final List<File> filesFound) {
+        final File[] files = folder.listFiles();
+        if (files != null) {
+            Arrays.sort(files);
+            for (final File file : files) {
+                if (file.isDirectory()) {
+                    listFilesRecursively(file, filesFound);
+                } else if (file.isFile()) {
+                    filesFound.add(file);
+                }
+            }
+        }
+    }
+
+    private String readSeriesUid(final File file) {
+        try {
+            final AttributeList headers = new AttributeList();
+            headers.read(file, TagFromName.PixelData);
+            return Attribute.getSingleStringValueOrEmptyString(headers, TagFromName.SeriesInstanceUID);
+        } catch (IOException e) {
+            reporter.silentLogException(e, "Could not read the series of the spool file " + file.getPath() + ": " + e.getLocalizedMessage());
+        } catch (DicomException e) {
+            reporter.silentLogException(e, "Could not read the series of the spool file " + file.getPath() + ": " + e.getLocalizedMessage());
+        }
+        return "";
+    }
+
+    private void appendToIndex(final String seriesKey, final String relativePath) throws IOException {
+        if (indexWriter == null) {
+            indexWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(indexFile, true), ENCODING));
+        }
+        writeIndexLine(indexWriter, seriesKey, relativePath);
+        indexWriter.flush();
+    }
+
+    private static void writeIndexLine(final Writer writer, final String seriesKey, final String relativePath) throws IOException {
+        writer.write(seriesKey + SEPARATOR + relativePath + "\n");
+    }
+
+    private void closeIndexWriter() {
+        if (indexWriter != null) {
+            try {
+                indexWriter.close();
+            } catch (IOException e) {
+                reporter.silentLogException(e, "Error when closing the spool index");
+            }
+            indexWriter = null;
+        }
+    }
+}
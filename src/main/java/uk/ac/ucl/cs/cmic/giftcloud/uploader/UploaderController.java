@@ -12,6 +12,9 @@
 package uk.ac.ucl.cs.cmic.giftcloud.uploader;
 
 import com.pixelmed.dicom.DicomException;
+import uk.ac.ucl.cs.cmic.giftcloud.metrics.MetricsLogger;
+import uk.ac.ucl.cs.cmic.giftcloud.metrics.MetricsMBean;
+import uk.ac.ucl.cs.cmic.giftcloud.metrics.MetricsRegistry;
 import uk.ac.ucl.cs.cmic.giftcloud.restserver.UserCallback;
 import uk.ac.ucl.cs.cmic.giftcloud.util.Progress;
 import uk.ac.ucl.cs.cmic.giftcloud.restserver.RestClientFactory;
@@ -20,26 +23,55 @@ import uk.ac.ucl.cs.cmic.giftcloud.uploadapp.GiftCloudPropertiesFromApplication;
 import uk.ac.ucl.cs.cmic.giftcloud.uploadapp.MenuController;
 import uk.ac.ucl.cs.cmic.giftcloud.uploadapp.ProjectListModel;
 import uk.ac.ucl.cs.cmic.giftcloud.util.GiftCloudReporter;
+import uk.ac.ucl.cs.cmic.giftcloud.util.GiftCloudUtils;
+import uk.ac.ucl.cs.cmic.giftcloud.util.LoggingReporter;
+import uk.ac.ucl.cs.cmic.giftcloud.util.Optional;
 import uk.ac.ucl.cs.cmic.giftcloud.workers.ImportWorker;
+import uk.ac.ucl.cs.cmic.giftcloud.workers.SpoolRecoveryWorker;
 
+import javax.management.JMException;
 import javax.swing.table.TableModel;
 import java.io.File;
 import java.io.IOException;
-import java.util.Arrays;
 import java.util.List;
 
 public class UploaderController {
     private final GiftCloudUploader giftCloudUploader;
     private final DicomListener dicomListener;
+    private final UploadSpool uploadSpool;
+    private WatchFolderImporter watchFolderImporter = null;
     private final GiftCloudPropertiesFromApplication giftCloudProperties;
     private final GiftCloudReporter reporter;
     private final UploaderStatusModel uploaderStatusModel = new UploaderStatusModel();
 
+    private static final String WATCH_FOLDER_STATE_FILE_NAME = "WatchFolderState.txt";
+    private static final long WATCH_FOLDER_SETTLE_TIME_MS = 5000;
+    private static final long WATCH_FOLDER_FULL_SCAN_INTERVAL_MS = 10 * 60 * 1000;
+
     public UploaderController(final RestClientFactory restClientFactory, final GiftCloudPropertiesFromApplication giftCloudProperties, final UserCallback userCallback, final GiftCloudReporter reporter) throws DicomException {
         this.giftCloudProperties = giftCloudProperties;
         this.reporter = reporter;
         giftCloudUploader = new GiftCloudUploader(restClientFactory, giftCloudProperties, uploaderStatusModel, userCallback, reporter);
-        dicomListener = new DicomListener(giftCloudUploader, giftCloudProperties, uploaderStatusModel, reporter);
+        uploadSpool = giftCloudUploader.getUploadSpool();
+        dicomListener = new DicomListener(giftCloudUploader, uploadSpool, giftCloudProperties, uploaderStatusModel, reporter);
+        startMetricsExport();
+    }
+
+    /**
+     * Makes the pipeline metrics available through JMX, and logs them periodically if a log interval has been set
+     */
+    private void startMetricsExport() {
+        final MetricsRegistry metricsRegistry = MetricsRegistry.getDefault();
+        try {
+            MetricsMBean.register(metricsRegistry);
+        } catch (JMException e) {
+            reporter.silentLogException(e, "Unable to register the metrics MBean");
+        }
+
+        final long metricsLogIntervalSeconds = giftCloudProperties.getMetricsLogIntervalSeconds();
+        if (metricsLogIntervalSeconds > 0) {
+            new MetricsLogger(metricsRegistry).start(metricsLogIntervalSeconds);
+        }
     }
 
     public void startUploading() {
@@ -80,6 +112,37 @@ public class UploaderController {
         dicomListener.shutdownStorageSCPAndWait(giftCloudProperties.getShutdownTimeoutMs());
     }
 
+    public boolean isDicomListenerRunning() {
+        return dicomListener.isListening();
+    }
+
+    /**
+     * @return true if a listening port has been set, so that the DICOM listener is expected to be running
+     */
+    public boolean isDicomListenerConfigured() {
+        return giftCloudProperties.getListeningPort() >= 0;
+    }
+
+    public boolean isUploadServiceRunning() {
+        return giftCloudUploader.isUploadServiceRunning();
+    }
+
+    public int getNumberOfPendingUploads() {
+        return giftCloudUploader.getNumberOfPendingUploads();
+    }
+
+    public int getNumberOfFailedUploads() {
+        return giftCloudUploader.getNumberOfFailedUploads();
+    }
+
+    public Optional<Long> getLastSuccessfulUploadTime() {
+        return giftCloudUploader.getLastSuccessfulUploadTime();
+    }
+
+    public long getNumberOfFilesUploaded(final long windowMs) {
+        return giftCloudUploader.getNumberOfFilesUploaded(windowMs);
+    }
+
     public UploaderStatusModel getUploaderStatusModel() {
         return uploaderStatusModel;
     }
@@ -92,8 +155,33 @@ public class UploaderController {
         return giftCloudUploader.getTableModel();
     }
 
+    /**
+     * Starts importing new files from the watch folder, if one has been set
+     */
+    public synchronized void startWatchFolder() {
+        final Optional<String> watchFolder = giftCloudProperties.getWatchFolder();
+        if (watchFolder.isPresent() && watchFolderImporter == null) {
+            final MasterFileImporter masterFileImporter = new MasterFileImporter(giftCloudProperties.acceptAnyTransferSyntax(), giftCloudUploader, true, reporter);
+            final File stateFile = new File(GiftCloudUtils.createOrGetGiftCloudFolder(Optional.<LoggingReporter>of(reporter)), WATCH_FOLDER_STATE_FILE_NAME);
+            final long pollIntervalMs = giftCloudProperties.getWatchFolderPollIntervalMs();
+            watchFolderImporter = new WatchFolderImporter(new File(watchFolder.get()), stateFile, pollIntervalMs, WATCH_FOLDER_SETTLE_TIME_MS, WATCH_FOLDER_FULL_SCAN_INTERVAL_MS, new WatchFolderImporter.FileBatchImporter() {
+                @Override
+                public void importFiles(final List<File> files) throws Exception {
+                    masterFileImporter.importFiles(files, null);
+                }
+            }, reporter);
+            watchFolderImporter.start();
+        }
+    }
+
+    public synchronized void stopWatchFolder() {
+        if (watchFolderImporter != null) {
+            watchFolderImporter.stop();
+            watchFolderImporter = null;
+        }
+    }
+
     public void importPendingFiles() {
-        final File pendingUploadFolder = giftCloudProperties.getUploadFolder(reporter);
-        runImport(Arrays.asList(pendingUploadFolder), false, reporter);
+        new Thread(new SpoolRecoveryWorker(uploadSpool, giftCloudProperties.acceptAnyTransferSyntax(), giftCloudUploader, uploaderStatusModel, reporter)).start();
     }
 }
@@ -29,9 +29,13 @@ class WaitingForUploadDatabase extends Observable {
     private final List<DatabaseItem> databaseItems = new ArrayList<DatabaseItem>();
     private final UploadStatusTableModelAggregator tableModelUpdater;
     private final ConsecutiveThreadExecutor consecutiveThreadExecutor = new ConsecutiveThreadExecutor();
+    private final SpoolQuotaMonitor spoolQuotaMonitor;
+    private final UploadSpool uploadSpool;
 
-    WaitingForUploadDatabase(final int delayBetweenUpdates) {
+    WaitingForUploadDatabase(final int delayBetweenUpdates, final SpoolQuotaMonitor spoolQuotaMonitor, final UploadSpool uploadSpool) {
         tableModelUpdater = new UploadStatusTableModelAggregator(delayBetweenUpdates);
+        this.spoolQuotaMonitor = spoolQuotaMonitor;
+        this.uploadSpool = uploadSpool;
     }
 
     /**
@@ -49,6 +53,7 @@ class WaitingForUploadDatabase extends Observable {
                 for (final String fileName : fileImportRecord.getFilenames()) {
                     final DatabaseItem databaseItem = new DatabaseItem(fileName, groupId, fileImportRecord.getDeleteAfterUpload());
                     databaseItems.add(databaseItem);
+                    spoolQuotaMonitor.addPendingBytes(databaseItem.getSpoolBytes());
                     fileUids.add(databaseItem.getUuid());
                 }
 
@@ -86,6 +91,7 @@ class WaitingForUploadDatabase extends Observable {
                     // the duplicate entries will be in the pending queue or might even be in the process of uploading,
                     // so deleting would cause unpredictable behaviour.
                     databaseItems.remove(itemToRemove);
+                    spoolQuotaMonitor.removePendingBytes(itemToRemove.getSpoolBytes());
 
                     // Only delete the file if all references are gone. There will only be multiple references to the
                     // same file if a duplicate file is added before the original has finished uploading. We will allow
@@ -99,6 +105,9 @@ class WaitingForUploadDatabase extends Observable {
                             if (file.exists()) {
                                 file.delete();
                             }
+
+                            // Remove the study and series folders once all their files have been uploaded
+                            uploadSpool.removeEmptyFolders(file);
                         }
                     }
 
@@ -121,11 +130,19 @@ class WaitingForUploadDatabase extends Observable {
         private String groupId;
         private final PendingUploadTask.DeleteAfterUpload deleteAfterUpload;
         private final String uuid = UUID.randomUUID().toString();
+        private final long spoolBytes;
 
         DatabaseItem(final String fileName, String groupId, final PendingUploadTask.DeleteAfterUpload deleteAfterUpload) {
             this.fileName = fileName;
             this.groupId = groupId;
             this.deleteAfterUpload = deleteAfterUpload;
+
+            // Only files which will be deleted after upload are occupying space in the spool
+            spoolBytes = deleteAfterUpload == PendingUploadTask.DeleteAfterUpload.DELETE_AFTER_UPLOAD ? new File(fileName).length() : 0;
+        }
+
+        public long getSpoolBytes() {
+            return spoolBytes;
         }
 
         public String getUuid() {
@@ -0,0 +1,340 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+package uk.ac.ucl.cs.cmic.giftcloud.uploader;
+
+import uk.ac.ucl.cs.cmic.giftcloud.util.LoggingReporter;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Watches a folder and imports files which are new or have changed since they were last imported
+ *
+ * <p>The folder is polled at a fixed interval. To avoid listing every folder on each poll, only folders whose
+ * modification time has changed are listed, since adding, removing or renaming a file changes the modification time of
+ * its folder. Files which are modified in place do not change their folder, so these are found by a full scan at a
+ * longer interval.
+ *
+ * <p>A new or changed file is only imported once its size and modification time have not changed for a settling
+ * period, so that files which are still being written are not imported. The size and modification time of each
+ * imported file are appended to a state file, so that files are not imported again after a restart.
+ */
+public class WatchFolderImporter {
+
+    /**
+     * Receives the files which are ready to import
+     */
+    public interface FileBatchImporter {
+        void importFiles(final List<File> files) throws Exception;
+    }
+
+    private static final String SEPARATOR = "\t";
+    private static final String ENCODING = "UTF-8";
+
+    // Folder modification times may have a resolution of up to two seconds, so a folder modified more recently than
+    // this may be modified again without its modification time changing
+    private static final long FOLDER_TIME_RESOLUTION_MS = 2000;
+
+    private final File watchFolder;
+    private final File stateFile;
+    private final long pollIntervalMs;
+    private final long settleTimeMs;
+    private final long fullScanIntervalMs;
+    private final FileBatchImporter importer;
+    private final LoggingReporter reporter;
+
+    // Access to these members is synchronized on this object
+    private final Map<File, Long> folderModificationTimes = new HashMap<File, Long>();
+    private final Map<String, FileState> importedFiles = new HashMap<String, FileState>();
+    private final Map<String, PendingFile> pendingFiles = new LinkedHashMap<String, PendingFile>();
+    private long lastFullScanTime = -1;
+    private boolean stateLoaded = false;
+    private Writer stateWriter = null;
+
+    private Thread pollingThread = null;
+    private volatile boolean running = false;
+
+    /**
+     * @param watchFolder the folder to watch, including subfolders
+     * @param stateFile the file which records the files which have been imported
+     * @param pollIntervalMs the time between polls
+     * @param settleTimeMs the time for which a file must be unchanged before it is imported
+     * @param fullScanIntervalMs the time between full scans, which find files modified in place
+     * @param importer receives the files which are ready to import
+     * @param reporter for logging errors
+     */
+    public WatchFolderImporter(final File watchFolder, final File stateFile, final long pollIntervalMs, final long settleTimeMs, final long fullScanIntervalMs, final FileBatchImporter importer, final LoggingReporter reporter) {
+        this.watchFolder = watchFolder;
+        this.stateFile = stateFile;
+        this.pollIntervalMs = pollIntervalMs;
+        this.settleTimeMs = settleTimeMs;
+        this.fullScanIntervalMs = fullScanIntervalMs;
+        this.importer = importer;
+        this.reporter = reporter;
+    }
+
+    /**
+     * Starts polling the folder on a background thread
+     */
+    public synchronized void start() {
+        if (pollingThread == null) {
+            running = true;
+            pollingThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    while (running) {
+                        try {
+                            poll(System.currentTimeMillis());
+                        } catch (Throwable t) {
+                            reporter.silentLogException(t, "Error when checking the watch folder " + watchFolder.getPath());
+                        }
+                        try {
+                            Thread.sleep(pollIntervalMs);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                }
+            }, "GIFT-Cloud watch folder");
+            pollingThread.setDaemon(true);
+            pollingThread.start();
+        }
+    }
+
+    /**
+     * Stops polling the folder
+     */
+    public synchronized void stop() {
+        running = false;
+        if (pollingThread != null) {
+            pollingThread.interrupt();
+            pollingThread = null;
+        }
+    }
+
+    /**
+     * Checks the watch folder for changes and imports files which have finished changing
+     *
+     * @param now the current time
+     * @throws IOException if the state file could not be read or written
+     */
+    void poll(final long now) throws IOException {
+        final List<File> readyFiles;
+        synchronized (this) {
+            if (!stateLoaded) {
+                loadState();
+                stateLoaded = true;
+            }
+
+            // Files which have already been found are checked directly, without listing their folders
+            for (final PendingFile pendingFile : pendingFiles.values()) {
+                pendingFile.update(now);
+            }
+
+            final boolean fullScan = lastFullScanTime < 0 || now - lastFullScanTime >= fullScanIntervalMs;
+            if (fullScan) {
+                lastFullScanTime = now;
+                final Set<String> existingFiles = new HashSet<String>();
+                scanFolder(watchFolder, now, true, existingFiles);
+                importedFiles.keySet().retainAll(existingFiles);
+            } else {
+                for (final File folder : new ArrayList<File>(folderModificationTimes.keySet())) {
+                    if (!folderModificationTimes.containsKey(folder)) {
+                        continue;
+                    }
+                    if (!folder.isDirectory()) {
+                        removeFolder(folder);
+                    } else if (folder.lastModified() != folderModificationTimes.get(folder)) {
+                        scanFolder(folder, now, false, null);
+                    }
+                }
+            }
+
+            readyFiles = new ArrayList<File>();
+            for (final Iterator<PendingFile> iterator = pendingFiles.values().iterator(); iterator.hasNext(); ) {
+                final PendingFile pendingFile = iterator.next();
+                if (!pendingFile.exists()) {
+                    iterator.remove();
+                } else if (pendingFile.isSettled(now, settleTimeMs)) {
+                    readyFiles.add(pendingFile.getFile());
+                }
+            }
+        }
+
+        if (!readyFiles.isEmpty()) {
+            try {
+                importer.importFiles(readyFiles);
+            } catch (Exception e) {
+                // The files remain pending and will be imported on the next poll
+                reporter.silentLogException(e, "Error when importing files from the watch folder " + watchFolder.getPath());
+                return;
+            }
+            synchronized (this) {
+                for (final File file : readyFiles) {
+                    final PendingFile pendingFile = pendingFiles.remove(file.getPath());
+                    final FileState state = pendingFile.getState();
+                    importedFiles.put(file.getPath(), state);
+                    appendState(file.getPath(), state);
+                }
+                stateWriter.flush();
+            }
+        }
+    }
+
+    private void scanFolder(final File folder, final long now, final boolean recursive, final Set<String> existingFiles) {
+        // The modification time is read before listing, so that changes made during the listing will be found next time.
+        // If the folder has only just been modified, it is listed again on the next poll in case of further changes
+        // within the resolution of the modification time
+        final long modified = folder.lastModified();
+        folderModificationTimes.put(folder, now - modified < FOLDER_TIME_RESOLUTION_MS ? -1 : modified);
+
+        final File[] children = folder.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (final File child : children) {
+            if (child.getName().startsWith(".")) {
+                continue;
+            }
+            if (child.isDirectory()) {
+                if (recursive || !folderModificationTimes.containsKey(child)) {
+                    scanFolder(child, now, true, existingFiles);
+                }
+            } else if (child.isFile()) {
+                final String path = child.getPath();
+                if (existingFiles != null) {
+                    existingFiles.add(path);
+                }
+                if (!pendingFiles.containsKey(path)) {
+                    final FileState state = new FileState(child.length(), child.lastModified());
+                    if (!state.equals(importedFiles.get(path))) {
+                        pendingFiles.put(path, new PendingFile(child, state, now));
+                    }
+                }
+            }
+        }
+    }
+
+    private void removeFolder(final File folder) {
+        final String prefix = folder.getPath() + File.separator;
+        for (final Iterator<File> iterator = folderModificationTimes.keySet().iterator(); iterator.hasNext(); ) {
+            final File knownFolder = iterator.next();
+            if (knownFolder.equals(folder) || knownFolder.getPath().startsWith(prefix)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private void loadState() throws IOException {
+        if (stateFile.exists()) {
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(stateFile), ENCODING));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    final String[] fields = line.split(SEPARATOR, 3);
+                    if (fields.length == 3) {
+                        try {
+                            importedFiles.put(fields[2], new FileState(Long.parseLong(fields[0]), Long.parseLong(fields[1])));
+                        } catch (NumberFormatException e) {
+                            // Ignore lines which were not completely written
+                        }
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        }
+
+        // Rewrite the state so that it contains only the latest entry for each file
+        final File newStateFile = new File(stateFile.getPath() + ".new");
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(newStateFile), ENCODING));
+        try {
+            for (final Map.Entry<String, FileState> entry : importedFiles.entrySet()) {
+                writeState(writer, entry.getKey(), entry.getValue());
+            }
+        } finally {
+            writer.close();
+        }
+        if ((stateFile.exists() && !stateFile.delete()) || !newStateFile.renameTo(stateFile)) {
+            throw new IOException("Could not replace the watch folder state file " + stateFile.getPath());
+        }
+        stateWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(stateFile, true), ENCODING));
+    }
+
+    private void appendState(final String path, final FileState state) throws IOException {
+        writeState(stateWriter, path, state);
+    }
+
+    private static void writeState(final Writer writer, final String path, final FileState state) throws IOException {
+        writer.write(state.length + SEPARATOR + state.lastModified + SEPARATOR + path + "\n");
+    }
+
+    private static class FileState {
+        private final long length;
+        private final long lastModified;
+
+        FileState(final long length, final long lastModified) {
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (!(other instanceof FileState)) {
+                return false;
+            }
+            final FileState otherState = (FileState) other;
+            return length == otherState.length && lastModified == otherState.lastModified;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (length ^ lastModified);
+        }
+    }
+
+    private static class PendingFile {
+        private final File file;
+        private FileState state;
+        private long lastChangeTime;
+
+        PendingFile(final File file, final FileState state, final long now) {
+            this.file = file;
+            this.state = state;
+            this.lastChangeTime = now;
+        }
+
+        void update(final long now) {
+            final FileState newState = new FileState(file.length(), file.lastModified());
+            if (!newState.equals(state)) {
+                state = newState;
+                lastChangeTime = now;
+            }
+        }
+
+        boolean exists() {
+            return file.isFile();
+        }
+
+        boolean isSettled(final long now, final long settleTimeMs) {
+            return now - lastChangeTime >= settleTimeMs;
+        }
+
+        File getFile() {
+            return file;
+        }
+
+        FileState getState() {
+            return state;
+        }
+    }
+}
@@ -58,9 +58,10 @@ public class XmlFileImporter {
 
     private boolean importXmlFile(Progress progress, File nextXmlFile) {
         try {
-            // For each XML file we will attempt to convert it into a DICOM file in a temporary directory. If this succeeds then we import that temporary directory
+            // For each XML file we will attempt to create DICOM header files in a temporary directory. If this succeeds then we import that temporary directory.
+            // The videos are not copied; each header file records its video file, from which the pixel data are written when the series is zipped for upload
             final File dicomOutputPath = Files.createTempDir();
-            EndoscopicXmlToDicomConverter.convert(nextXmlFile, dicomOutputPath.getCanonicalPath());
+            EndoscopicXmlToDicomConverter.convertToHeaders(nextXmlFile, dicomOutputPath.getCanonicalPath());
             return mediaImporter.importDicomFileOrPath(dicomOutputPath, progress);
         } catch (Throwable t) {
             reporter.silentLogException(t, "Ignoring XML file " + nextXmlFile.toString() + " as an error occurred during import. This might not be an endoscopy file.");
@@ -0,0 +1,122 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+package uk.ac.ucl.cs.cmic.giftcloud.util;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Provides a key which identifies a file, so that the same file referred to through different paths (relative paths,
+ * paths containing "..", or paths through symbolic links to directories) is recognised as the same file
+ *
+ * <p>Canonicalising a path resolves every component of the path, which is slow on network drives, so the canonical
+ * path of each directory is cached and the file name is appended to it. A symbolic link to an individual file is
+ * therefore identified by its own location rather than that of its target. Directories which are renamed or relinked
+ * while their paths are cached will continue to give the old key until the cache is cleared.
+ *
+ * <p>When a directory is first cached, its file system is checked for case sensitivity. Keys for files in directories on
+ * case-insensitive file systems (normally on Windows and Mac OS X) are converted to lower case, so that paths which
+ * differ only in case give the same key.
+ */
+public class FileIdentityResolver {
+    private static final int MAXIMUM_CACHED_DIRECTORIES = 10000;
+    private static final FileIdentityResolver defaultResolver = new FileIdentityResolver();
+
+    private final ConcurrentMap<String, CanonicalDirectory> canonicalDirectories = new ConcurrentHashMap<String, CanonicalDirectory>();
+
+    /**
+     * @return the resolver shared by the application
+     */
+    public static FileIdentityResolver getDefault() {
+        return defaultResolver;
+    }
+
+    /**
+     * @param file the file to identify, which does not need to exist
+     * @return a key which is the same for every path to this file
+     * @throws IOException if the canonical path of the file's directory cannot be determined
+     */
+    public String getKey(final File file) throws IOException {
+        final File absoluteFile = file.getAbsoluteFile();
+        final String name = absoluteFile.getName();
+        final File parent = absoluteFile.getParentFile();
+
+        // Names which refer to a directory relative to the parent cannot simply be appended
+        if (parent == null || name.length() == 0 || name.equals(".") || name.equals("..")) {
+            return absoluteFile.getCanonicalPath();
+        }
+        final CanonicalDirectory directory = getCanonicalDirectory(parent);
+        final String key = new File(directory.path, name).getPath();
+        return directory.caseInsensitive ? key.toLowerCase(Locale.ENGLISH) : key;
+    }
+
+    /**
+     * Removes all the cached directory paths
+     */
+    public void clear() {
+        canonicalDirectories.clear();
+    }
+
+    private CanonicalDirectory getCanonicalDirectory(final File directory) throws IOException {
+        final String path = directory.getPath();
+        final CanonicalDirectory cached = canonicalDirectories.get(path);
+        if (cached != null) {
+            return cached;
+        }
+
+        // Two threads may canonicalise the same directory at once, but they will obtain the same result
+        final File canonicalFile = directory.getCanonicalFile();
+        final CanonicalDirectory canonicalDirectory = new CanonicalDirectory(canonicalFile.getPath(), isCaseInsensitive(canonicalFile));
+        if (canonicalDirectories.size() >= MAXIMUM_CACHED_DIRECTORIES) {
+            canonicalDirectories.clear();
+        }
+        canonicalDirectories.put(path, canonicalDirectory);
+        return canonicalDirectory;
+    }
+
+    /**
+     * Determines whether the file system holding a directory is case-insensitive, by looking for the directory (or its
+     * nearest existing ancestor whose name contains letters) under the same name with the case of each letter changed
+     */
+    static boolean isCaseInsensitive(final File canonicalDirectory) {
+        for (File component = canonicalDirectory; component != null && component.getParentFile() != null; component = component.getParentFile()) {
+            final String name = component.getName();
+            final String otherCaseName = StringUtils.swapCase(name);
+            if (!otherCaseName.equals(name) && component.exists()) {
+                if (!new File(component.getParentFile(), otherCaseName).exists()) {
+                    return false;
+                }
+
+                // On a case-sensitive file system, a directory with the other case name is a different directory
+                final String[] siblings = component.getParentFile().list();
+                return siblings != null && !Arrays.asList(siblings).contains(otherCaseName);
+            }
+        }
+        return File.separatorChar == '\\';
+    }
+
+    private static class CanonicalDirectory {
+        private final String path;
+        private final boolean caseInsensitive;
+
+        CanonicalDirectory(final String path, final boolean caseInsensitive) {
+            this.path = path;
+            this.caseInsensitive = caseInsensitive;
+        }
+    }
+}
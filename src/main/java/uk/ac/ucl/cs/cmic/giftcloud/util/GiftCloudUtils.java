@@ -41,6 +41,7 @@ public class GiftCloudUtils {
     final static String GIFT_CLOUD_APPLICATION_DATA_FOLDER_NAME = "GiftCloudUploader";
     final static String GIFT_CLOUD_UPLOAD_CACHE_FOLDER_NAME = "WaitingForUpload";
     final static String GIFT_CLOUD_REDACTION_TEMPLATES_FOLDER_NAME = "RedactionTemplates";
+    final static String GIFT_CLOUD_SERIES_IMPORT_FILTERS_FOLDER_NAME = "SeriesImportFilters";
 
     private GiftCloudUtils() {
     }
@@ -125,6 +126,26 @@ public class GiftCloudUtils {
         }
     }
 
+    /**
+     * Returns the folder for storing local copies of the series import filters retrieved from the server, creating the folder if it does not already exist.
+     * Will attempt to create a folder in the user directory, but if this is not permitted, will create a folder in the system temporary directory
+     *
+     * @param reporter for logging warnings
+     * @return File object referencing the existing or newly created folder
+     */
+    public static File createOrGetSeriesImportFilterDirectory(final LoggingReporter reporter) {
+
+        final File appFolder = createOrGetGiftCloudFolder(Optional.of(reporter));
+
+        final File seriesImportFilterFolder = new File(appFolder, GIFT_CLOUD_SERIES_IMPORT_FILTERS_FOLDER_NAME);
+
+        if (createDirectoryIfNotExisting(seriesImportFilterFolder)) {
+            return seriesImportFilterFolder;
+        } else {
+            throw new RuntimeException("Unable to create a series import filter folder at " + seriesImportFilterFolder.getAbsolutePath());
+        }
+    }
+
     /**
      * Returns a list of resources matching the specified pattern
      *
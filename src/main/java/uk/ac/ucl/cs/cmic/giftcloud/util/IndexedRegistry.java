@@ -0,0 +1,262 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+package uk.ac.ucl.cs.cmic.giftcloud.util;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A sorted {@link Registry} which finds items by index, and the index of an item, in O(log n) time
+ *
+ * <p>The items are held in an immutable balanced tree in which each node records the size of its subtree. Adding an
+ * item copies only the path from the root to the new node and then publishes the new root, so reads never take a
+ * lock and always see a consistent snapshot. Iterators and the collection returned by {@link #getAll()} reflect the
+ * items present when they were created, and are not affected by later additions.
+ *
+ * <p>As with a {@link java.util.TreeMap}, two items are the same if the comparator considers them equal.
+ *
+ * @param <T> the type of the registered items
+ */
+public final class IndexedRegistry<T> implements Registry<T> {
+    private final Comparator<? super T> comparator;
+    private final Object writeLock = new Object();
+    private volatile Node<T> root = null;
+
+    /**
+     * Creates a registry sorted by the natural ordering of the items, which must implement Comparable
+     */
+    public IndexedRegistry() {
+        this(new Comparator<T>() {
+            @SuppressWarnings("unchecked")
+            @Override
+            public int compare(final T o1, final T o2) {
+                return ((Comparable<? super T>) o1).compareTo(o2);
+            }
+        });
+    }
+
+    /**
+     * @param comparator defines the order of the items, and which items are the same
+     */
+    public IndexedRegistry(final Comparator<? super T> comparator) {
+        this.comparator = comparator;
+    }
+
+    /**
+     * Returns the registered item which is the same as the template, registering the template if there is none
+     */
+    public T get(final T template) {
+        final Node<T> existing = find(root, template);
+        if (existing != null) {
+            return existing.value;
+        }
+
+        synchronized (writeLock) {
+            // Another thread may have registered the item since the lock-free search
+            final Node<T> current = root;
+            final Node<T> added = find(current, template);
+            if (added != null) {
+                return added.value;
+            }
+            root = insert(current, template);
+            return template;
+        }
+    }
+
+    /**
+     * @param index the position of the item in the sort order
+     * @return the item at this position
+     * @throws IndexOutOfBoundsException if there is no item at this position
+     */
+    public T get(final int index) {
+        Node<T> node = root;
+        if (index < 0 || index >= size(node)) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size(node));
+        }
+        int remaining = index;
+        while (true) {
+            final int leftSize = size(node.left);
+            if (remaining < leftSize) {
+                node = node.left;
+            } else if (remaining == leftSize) {
+                return node.value;
+            } else {
+                remaining -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    /**
+     * @param o the item to find
+     * @return the position of the item in the sort order, or -1 if it has not been registered
+     */
+    public int getIndex(final T o) {
+        Node<T> node = root;
+        int index = 0;
+        while (node != null) {
+            final int comparison = comparator.compare(o, node.value);
+            if (comparison < 0) {
+                node = node.left;
+            } else if (comparison == 0) {
+                return index + size(node.left);
+            } else {
+                index += size(node.left) + 1;
+                node = node.right;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return an unmodifiable snapshot of the registered items, in sort order
+     */
+    public Collection<T> getAll() {
+        final Node<T> snapshot = root;
+        return new AbstractCollection<T>() {
+            @Override
+            public Iterator<T> iterator() {
+                return new SnapshotIterator<T>(snapshot);
+            }
+
+            @Override
+            public int size() {
+                return IndexedRegistry.size(snapshot);
+            }
+        };
+    }
+
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    public Iterator<T> iterator() {
+        return new SnapshotIterator<T>(root);
+    }
+
+    public int size() {
+        return size(root);
+    }
+
+    private Node<T> find(Node<T> node, final T template) {
+        while (node != null) {
+            final int comparison = comparator.compare(template, node.value);
+            if (comparison == 0) {
+                return node;
+            }
+            node = comparison < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+    /**
+     * Returns a new tree containing the item, which must not already be in the tree. Only the nodes on the path to
+     * the new item are copied; the rest of the tree is shared with the previous version
+     */
+    private Node<T> insert(final Node<T> node, final T value) {
+        if (node == null) {
+            return new Node<T>(value, null, null);
+        }
+        if (comparator.compare(value, node.value) < 0) {
+            return balance(node.value, insert(node.left, value), node.right);
+        } else {
+            return balance(node.value, node.left, insert(node.right, value));
+        }
+    }
+
+    /**
+     * Creates a node from its parts, performing the AVL rotations which keep the heights of the subtrees within one
+     */
+    private static <T> Node<T> balance(final T value, final Node<T> left, final Node<T> right) {
+        final int leftHeight = height(left);
+        final int rightHeight = height(right);
+        if (leftHeight > rightHeight + 1) {
+            if (height(left.left) >= height(left.right)) {
+                return new Node<T>(left.value, left.left, new Node<T>(value, left.right, right));
+            } else {
+                return new Node<T>(left.right.value, new Node<T>(left.value, left.left, left.right.left), new Node<T>(value, left.right.right, right));
+            }
+        } else if (rightHeight > leftHeight + 1) {
+            if (height(right.right) >= height(right.left)) {
+                return new Node<T>(right.value, new Node<T>(value, left, right.left), right.right);
+            } else {
+                return new Node<T>(right.left.value, new Node<T>(value, left, right.left.left), new Node<T>(right.value, right.left.right, right.right));
+            }
+        }
+        return new Node<T>(value, left, right);
+    }
+
+    private static int height(final Node<?> node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static int size(final Node<?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static final class Node<T> {
+        private final T value;
+        private final Node<T> left;
+        private final Node<T> right;
+        private final int height;
+        private final int size;
+
+        private Node(final T value, final Node<T> left, final Node<T> right) {
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            this.height = 1 + Math.max(height(left), height(right));
+            this.size = 1 + size(left) + size(right);
+        }
+    }
+
+    /**
+     * An in-order traversal of one version of the tree
+     */
+    private static final class SnapshotIterator<T> implements Iterator<T> {
+        private final List<Node<T>> stack;
+
+        private SnapshotIterator(final Node<T> root) {
+            stack = new ArrayList<Node<T>>(height(root));
+            pushLeft(root);
+        }
+
+        public boolean hasNext() {
+            return !stack.isEmpty();
+        }
+
+        public T next() {
+            if (stack.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            final Node<T> node = stack.remove(stack.size() - 1);
+            pushLeft(node.right);
+            return node.value;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        private void pushLeft(Node<T> node) {
+            while (node != null) {
+                stack.add(node);
+                node = node.left;
+            }
+        }
+    }
+}
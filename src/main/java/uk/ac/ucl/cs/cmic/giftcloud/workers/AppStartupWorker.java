@@ -29,6 +29,7 @@ import uk.ac.ucl.cs.cmic.giftcloud.util.Optional;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Future;
 
 /**
  * A worker for checking the app properties, alerting the user to potential issues, and starting the Dicom listener and uploading services. These should be carried out in the correct order to avoid multiple failures being presented to the user
@@ -56,13 +57,31 @@ public class AppStartupWorker implements Runnable {
     }
 
     public void run() {
-        Optional<Throwable> dicomNodeFailureException = Optional.empty();
+        final StartupExecutor startupExecutor = new StartupExecutor();
         try {
-            uploaderController.startDicomListener();
-        } catch (Throwable e) {
-            dicomNodeFailureException = Optional.of(e);
-            reporter.silentLogException(e, appConfiguration.getResourceBundle().getString("dicomNodeFailureMessageWithDetails") + e.getLocalizedMessage());
+            runSteps(startupExecutor);
+        } finally {
+            startupExecutor.shutdown();
         }
+    }
+
+    private void runSteps(final StartupExecutor startupExecutor) {
+        // The DICOM dictionary, DICOM listener and watch folder do not depend on each other, so they are started in parallel
+        startupExecutor.submitDictionaryLoad();
+        final Future<Optional<Throwable>> dicomListenerStartup = startupExecutor.submit(new StartupExecutor.Step() {
+            @Override
+            public void run() throws Exception {
+                uploaderController.startDicomListener();
+            }
+        });
+
+        // Start importing files added to the watch folder
+        final Future<Optional<Throwable>> watchFolderStartup = startupExecutor.submit(new StartupExecutor.Step() {
+            @Override
+            public void run() {
+                uploaderController.startWatchFolder();
+            }
+        });
 
         // Add any leftover files from the last session to the upload queue
         try {
@@ -80,6 +99,17 @@ public class AppStartupWorker implements Runnable {
             reporter.silentLogException(e, "Error when importing specified files");
         }
 
+        final Optional<Throwable> dicomNodeFailureException = StartupExecutor.waitFor(dicomListenerStartup);
+        if (dicomNodeFailureException.isPresent()) {
+            final Throwable e = dicomNodeFailureException.get();
+            reporter.silentLogException(e, appConfiguration.getResourceBundle().getString("dicomNodeFailureMessageWithDetails") + e.getLocalizedMessage());
+        }
+
+        final Optional<Throwable> watchFolderFailureException = StartupExecutor.waitFor(watchFolderStartup);
+        if (watchFolderFailureException.isPresent()) {
+            reporter.silentLogException(watchFolderFailureException.get(), "Error when starting the watch folder");
+        }
+
         try {
             // We check whether the main properties have been set. If not, we warn the user and bring up the configuration dialog. We suppress the Dicom node start failure in this case, as we assume the lack of properties is responsible
             final Optional<String> propertiesNotConfigured = checkProperties();
@@ -24,6 +24,8 @@ import uk.ac.ucl.cs.cmic.giftcloud.uploader.UploaderController;
 import uk.ac.ucl.cs.cmic.giftcloud.util.GiftCloudReporter;
 import uk.ac.ucl.cs.cmic.giftcloud.util.Optional;
 
+import java.util.concurrent.Future;
+
 /**
  * A worker for starting the Dicom listener and uploading services in a non-interactive (daemon) context
  */
@@ -44,26 +46,52 @@ public class DaemonStartupWorker implements Runnable {
     }
 
     public void run() {
-        Optional<Throwable> dicomNodeFailureException = Optional.empty();
+        final StartupExecutor startupExecutor = new StartupExecutor();
         try {
-            uploaderController.startDicomListener();
-        } catch (Throwable e) {
-            reporter.silentLogException(e, appConfiguration.getResourceBundle().getString("dicomNodeFailureMessageWithDetails") + e.getLocalizedMessage());
-        }
+            // The DICOM dictionary, DICOM listener and watch folder do not depend on each other, so they are started in parallel
+            startupExecutor.submitDictionaryLoad();
+            final Future<Optional<Throwable>> dicomListenerStartup = startupExecutor.submit(new StartupExecutor.Step() {
+                @Override
+                public void run() throws Exception {
+                    uploaderController.startDicomListener();
+                }
+            });
 
-        // Add any leftover files from the last session to the upload queue
-        try {
-            uploaderController.importPendingFiles();
-        } catch (Throwable e) {
-            System.out.println("Error when importing: " + e.getLocalizedMessage());
-            reporter.silentLogException(e, "Error when importing pending files");
-        }
+            // Start importing files added to the watch folder
+            final Future<Optional<Throwable>> watchFolderStartup = startupExecutor.submit(new StartupExecutor.Step() {
+                @Override
+                public void run() {
+                    uploaderController.startWatchFolder();
+                }
+            });
 
-        try {
-            // Initiate the process that moves files from the uploading queue to the uploading process
-            uploaderController.startUploading();
-        } catch (Throwable e) {
-            reporter.reportErrorToUser("Could not start the upload service. Please check the settings and start the service from the menu.", e);
+            // Add any leftover files from the last session to the upload queue
+            try {
+                uploaderController.importPendingFiles();
+            } catch (Throwable e) {
+                System.out.println("Error when importing: " + e.getLocalizedMessage());
+                reporter.silentLogException(e, "Error when importing pending files");
+            }
+
+            try {
+                // Initiate the process that moves files from the uploading queue to the uploading process
+                uploaderController.startUploading();
+            } catch (Throwable e) {
+                reporter.reportErrorToUser("Could not start the upload service. Please check the settings and start the service from the menu.", e);
+            }
+
+            final Optional<Throwable> dicomNodeFailureException = StartupExecutor.waitFor(dicomListenerStartup);
+            if (dicomNodeFailureException.isPresent()) {
+                final Throwable e = dicomNodeFailureException.get();
+                reporter.silentLogException(e, appConfiguration.getResourceBundle().getString("dicomNodeFailureMessageWithDetails") + e.getLocalizedMessage());
+            }
+
+            final Optional<Throwable> watchFolderFailureException = StartupExecutor.waitFor(watchFolderStartup);
+            if (watchFolderFailureException.isPresent()) {
+                reporter.silentLogException(watchFolderFailureException.get(), "Error when starting the watch folder");
+            }
+        } finally {
+            startupExecutor.shutdown();
         }
     }
 }
@@ -19,19 +19,39 @@
 
 package uk.ac.ucl.cs.cmic.giftcloud.workers;
 
-import com.pixelmed.dicom.AttributeList;
+import com.pixelmed.dicom.*;
+import com.pixelmed.query.IncrementalQueryListener;
 import com.pixelmed.query.QueryInformationModel;
+import com.pixelmed.query.QueryTreeModel;
+import com.pixelmed.query.QueryTreeRecord;
 import uk.ac.ucl.cs.cmic.giftcloud.uploadapp.GiftCloudReporterFromApplication;
 import uk.ac.ucl.cs.cmic.giftcloud.uploadapp.QueryRetrieveRemoteView;
 import uk.ac.ucl.cs.cmic.giftcloud.uploader.UploaderStatusModel;
 import uk.ac.ucl.cs.cmic.giftcloud.util.GiftCloudException;
+import uk.ac.ucl.cs.cmic.giftcloud.util.GiftCloudUtils;
 
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+/**
+ * Performs a query and adds the results to the query tree as they arrive
+ *
+ * <p>Broad queries are split into pages by study date, and the query stops once a maximum number of results have been
+ * shown, so that a very broad query does not use excessive memory. Cancelling the query sends a C-CANCEL to the PACS.
+ */
 public class QueryWorker implements Runnable {
+    static final int MAXIMUM_RESULTS = 10000;
+
+    private static final int RESULTS_PER_UPDATE = 50;
+    private static final long UPDATE_INTERVAL_MS = 250;
+
     private QueryRetrieveRemoteView queryRetrieveRemoteView;
     private QueryInformationModel currentRemoteQueryInformationModel;
     AttributeList filter;
     private UploaderStatusModel uploaderStatusModel;
     private GiftCloudReporterFromApplication reporter;
+    private volatile boolean cancelled = false;
 
     public QueryWorker(final QueryRetrieveRemoteView queryRetrieveRemoteView, final QueryInformationModel currentRemoteQueryInformationModel, AttributeList filter, final UploaderStatusModel uploaderStatusModel, final GiftCloudReporterFromApplication reporter) {
         this.queryRetrieveRemoteView = queryRetrieveRemoteView;
@@ -41,14 +61,49 @@ public class QueryWorker implements Runnable {
         this.reporter = reporter;
     }
 
+    /**
+     * Stops the query, sending a C-CANCEL if a response is still being received
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
     public void run() {
         reporter.setWaitCursor();
         String calledAET = currentRemoteQueryInformationModel.getCalledAETitle();
         reporter.updateStatusText("Performing query on " + calledAET + " (" + calledAET + ")");
         try {
-            queryRetrieveRemoteView.updateQueryPanel(currentRemoteQueryInformationModel, filter, currentRemoteQueryInformationModel);
-            reporter.updateStatusText("Query to " + calledAET + " complete");
-            uploaderStatusModel.setUploadingStatusMessage("Query to " + calledAET + " complete");
+            final QueryTreeModel treeModel = queryRetrieveRemoteView.showIncrementalQuery(currentRemoteQueryInformationModel, filter, currentRemoteQueryInformationModel);
+            final TreeUpdater treeUpdater = new TreeUpdater(treeModel, calledAET);
+
+            if (StudyDatePager.isBroadQuery(filter)) {
+                final StudyDatePager pager = new StudyDatePager(Calendar.getInstance());
+                while (!pager.isFinished() && !treeUpdater.isCancelled()) {
+                    final int resultsBeforePage = treeUpdater.getNumberOfResults();
+                    final String dateRange = pager.getNextDateRange();
+                    if (StudyDatePager.EMPTY_DATE.equals(dateRange)) {
+                        queryStudiesWithoutDate(treeModel, treeUpdater);
+                    } else {
+                        treeModel.performIncrementalQuery(makePageFilter(filter, dateRange), treeUpdater);
+                    }
+                    treeUpdater.flush();
+                    pager.recordResults(treeUpdater.getNumberOfResults() - resultsBeforePage);
+                }
+            } else {
+                treeModel.performIncrementalQuery(filter, treeUpdater);
+                treeUpdater.flush();
+            }
+
+            final String message;
+            if (treeUpdater.getNumberOfResults() >= MAXIMUM_RESULTS) {
+                message = "Query to " + calledAET + " stopped after " + MAXIMUM_RESULTS + " results. Please refine the query.";
+            } else if (cancelled || reporter.isCancelled()) {
+                message = "Query to " + calledAET + " cancelled";
+            } else {
+                message = "Query to " + calledAET + " complete";
+            }
+            reporter.updateStatusText(message);
+            uploaderStatusModel.setUploadingStatusMessage(message);
         } catch (GiftCloudException e) {
             uploaderStatusModel.setUploadingStatusMessage(e.getPithyMessage());
             reporter.reportErrorToUser("The PACS query failed. Please ensure the PACS settings are correct and that the PACS is running.", e);
@@ -58,5 +113,81 @@ public class QueryWorker implements Runnable {
         }
         reporter.restoreCursor();
     }
-}
 
+    private void queryStudiesWithoutDate(final QueryTreeModel treeModel, final TreeUpdater treeUpdater) {
+        // A PACS which does not support empty value matching may return dated studies, which have already been shown
+        treeUpdater.setOnlyStudiesWithoutDate(true);
+        try {
+            treeModel.performIncrementalQuery(makePageFilter(filter, StudyDatePager.EMPTY_DATE), treeUpdater);
+        } catch (Exception e) {
+            // The dated studies have already been shown, so this is not reported as a failure of the query
+            reporter.silentLogException(e, "The query for studies without a study date failed, perhaps because the PACS does not support empty value matching");
+        } finally {
+            treeUpdater.setOnlyStudiesWithoutDate(false);
+        }
+    }
+
+    private static AttributeList makePageFilter(final AttributeList filter, final String studyDateRange) throws DicomException {
+        final AttributeList pageFilter = new AttributeList();
+        pageFilter.putAll(filter);
+        { AttributeTag t = TagFromName.StudyDate; Attribute a = new DateAttribute(t); a.addValue(studyDateRange); pageFilter.put(t,a); }
+        return pageFilter;
+    }
+
+    /**
+     * Receives the query results and adds them to the tree on the EDT in batches
+     */
+    private class TreeUpdater implements IncrementalQueryListener {
+        private final QueryTreeModel treeModel;
+        private final String calledAET;
+        private List<QueryTreeRecord> pendingRecords = new ArrayList<QueryTreeRecord>();
+        private long lastUpdateTime = System.currentTimeMillis();
+        private int numberOfResults = 0;
+        private boolean onlyStudiesWithoutDate = false;
+
+        TreeUpdater(final QueryTreeModel treeModel, final String calledAET) {
+            this.treeModel = treeModel;
+            this.calledAET = calledAET;
+        }
+
+        @Override
+        public void recordReceived(final QueryTreeRecord record) {
+            if (onlyStudiesWithoutDate && Attribute.getSingleStringValueOrEmptyString(record.getAllAttributesReturnedInIdentifier(), TagFromName.StudyDate).length() > 0) {
+                return;
+            }
+            pendingRecords.add(record);
+            numberOfResults++;
+            if (pendingRecords.size() >= RESULTS_PER_UPDATE || System.currentTimeMillis() - lastUpdateTime >= UPDATE_INTERVAL_MS) {
+                flush();
+            }
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled || reporter.isCancelled() || numberOfResults >= MAXIMUM_RESULTS;
+        }
+
+        int getNumberOfResults() {
+            return numberOfResults;
+        }
+
+        void setOnlyStudiesWithoutDate(final boolean onlyStudiesWithoutDate) {
+            this.onlyStudiesWithoutDate = onlyStudiesWithoutDate;
+        }
+
+        void flush() {
+            lastUpdateTime = System.currentTimeMillis();
+            if (!pendingRecords.isEmpty()) {
+                final List<QueryTreeRecord> records = pendingRecords;
+                pendingRecords = new ArrayList<QueryTreeRecord>();
+                GiftCloudUtils.runLaterOnEdt(new Runnable() {
+                    @Override
+                    public void run() {
+                        treeModel.insertRecords(records);
+                    }
+                });
+                reporter.updateStatusText("Query to " + calledAET + ": " + numberOfResults + " results so far");
+            }
+        }
+    }
+}
@@ -0,0 +1,291 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+package uk.ac.ucl.cs.cmic.giftcloud.workers;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.pixelmed.dicom.AttributeList;
+import com.pixelmed.network.MoveProgressListener;
+import uk.ac.ucl.cs.cmic.giftcloud.util.LoggingReporter;
+import uk.ac.ucl.cs.cmic.giftcloud.util.Progress;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Retrieves a number of items from a PACS using C-MOVE, with a bounded number of moves running in parallel
+ *
+ * <p>Each move runs on its own association. The sub-operation counts in the C-MOVE responses are combined to report the
+ * overall progress. A move which fails is split into smaller moves where possible (for example, a study into its
+ * series), so that the parts which failed can be retried individually; otherwise the move is retried as a whole. If the
+ * C-MOVE responses listed the instances which failed, only the parts containing those instances need to be retried. Each
+ * part is attempted at most a fixed number of times.
+ */
+public class RetrieveScheduler {
+
+    /**
+     * Performs a single C-MOVE. This will be called concurrently from multiple threads
+     */
+    public interface Mover {
+        void move(final AttributeList identifier, final String retrieveAE, final MoveProgressListener progressListener) throws Exception;
+    }
+
+    /**
+     * Something to be retrieved by a single C-MOVE
+     */
+    public interface RetrieveItem {
+
+        /**
+         * @return the move identifier, including the query/retrieve level
+         */
+        AttributeList getIdentifier();
+
+        /**
+         * @return the AE title to retrieve from
+         */
+        String getRetrieveAE();
+
+        /**
+         * @return a description for the status bar and log
+         */
+        String getDescription();
+
+        /**
+         * Returns the items which together make up this item, so that these can be retrieved separately. This is only
+         * called from the thread which called {@link RetrieveScheduler#retrieve}, so it may perform a query on a shared
+         * association
+         *
+         * @param failedInstanceUids the SOP instance UIDs which the C-MOVE responses reported as failed. If this is
+         * empty, which instances failed is not known
+         * @return the smaller items which need to be retrieved again, or an empty list if this item cannot be split
+         */
+        List<RetrieveItem> split(final Set<String> failedInstanceUids);
+    }
+
+    private static final int MOVE_PENDING = 0xFF00;
+
+    private final Mover mover;
+    private final int maxParallelMoves;
+    private final int maxAttempts;
+    private final long retryDelayMs;
+    private final Progress progress;
+    private final LoggingReporter reporter;
+
+    // The moves whose sub-operation counts contribute to the overall progress. Synchronized on this object
+    private final Set<ScheduledMove> countedMoves = new LinkedHashSet<ScheduledMove>();
+
+    /**
+     * @param mover performs each C-MOVE
+     * @param maxParallelMoves the maximum number of moves which may run at the same time
+     * @param maxAttempts the maximum number of times each item will be attempted
+     * @param retryDelayMs the time to wait before retrying a failed item, multiplied by the number of failed attempts
+     * @param progress for reporting the progress and checking for cancellation
+     * @param reporter for logging failures
+     */
+    public RetrieveScheduler(final Mover mover, final int maxParallelMoves, final int maxAttempts, final long retryDelayMs, final Progress progress, final LoggingReporter reporter) {
+        if (maxParallelMoves < 1 || maxAttempts < 1) {
+            throw new IllegalArgumentException("The number of parallel moves and attempts must be at least one");
+        }
+        this.mover = mover;
+        this.maxParallelMoves = maxParallelMoves;
+        this.maxAttempts = maxAttempts;
+        this.retryDelayMs = retryDelayMs;
+        this.progress = progress;
+        this.reporter = reporter;
+    }
+
+    /**
+     * Retrieves the items, returning when all the moves have completed or failed, or the operation has been cancelled
+     *
+     * @param items the items to retrieve
+     * @return the items which could not be retrieved
+     * @throws InterruptedException if the thread was interrupted while waiting for the moves to complete
+     */
+    public List<RetrieveItem> retrieve(final List<RetrieveItem> items) throws InterruptedException {
+        final List<RetrieveItem> failedItems = new ArrayList<RetrieveItem>();
+        final ExecutorService executor = Executors.newFixedThreadPool(maxParallelMoves, new ThreadFactoryBuilder().setDaemon(true).setNameFormat("GIFT-Cloud retrieve %d").build());
+        final CompletionService<ScheduledMove> completionService = new ExecutorCompletionService<ScheduledMove>(executor);
+        synchronized (this) {
+            countedMoves.clear();
+        }
+
+        try {
+            int outstandingMoves = 0;
+            for (final RetrieveItem item : items) {
+                submit(completionService, new ScheduledMove(item, 0, 0));
+                outstandingMoves++;
+            }
+
+            while (outstandingMoves > 0) {
+                final ScheduledMove move = completionService.take().get();
+                outstandingMoves--;
+
+                if (move.isSuccessful() || progress.isCancelled()) {
+                    continue;
+                }
+
+                if (move.getAttempts() >= maxAttempts) {
+                    reporter.silentError("Giving up retrieving " + move.getItem().getDescription() + " after " + move.getAttempts() + " attempts");
+                    failedItems.add(move.getItem());
+                    continue;
+                }
+
+                // The retry will report its own sub-operation counts
+                synchronized (this) {
+                    countedMoves.remove(move);
+                }
+
+                // Where possible, split a failed move so that only the parts which fail again are retried
+                final long delay = retryDelayMs * move.getAttempts();
+                final List<RetrieveItem> parts = move.getItem().split(move.getFailedInstanceUids());
+                if (parts.isEmpty()) {
+                    submit(completionService, new ScheduledMove(move.getItem(), move.getAttempts(), delay));
+                    outstandingMoves++;
+                } else {
+                    for (final RetrieveItem part : parts) {
+                        submit(completionService, new ScheduledMove(part, move.getAttempts(), delay));
+                        outstandingMoves++;
+                    }
+                }
+            }
+        } catch (ExecutionException e) {
+            // ScheduledMove catches all exceptions from the mover, so this should not happen
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return failedItems;
+    }
+
+    /**
+     * @return the number of sub-operations which have completed, including those with warnings
+     */
+    public synchronized int getCompletedSuboperations() {
+        int total = 0;
+        for (final ScheduledMove move : countedMoves) {
+            total += move.getCompleted();
+        }
+        return total;
+    }
+
+    /**
+     * @return the number of sub-operations which have not yet completed
+     */
+    public synchronized int getRemainingSuboperations() {
+        int total = 0;
+        for (final ScheduledMove move : countedMoves) {
+            total += move.getRemaining();
+        }
+        return total;
+    }
+
+    private void submit(final CompletionService<ScheduledMove> completionService, final ScheduledMove move) {
+        synchronized (this) {
+            countedMoves.add(move);
+        }
+        completionService.submit(move);
+    }
+
+    private void reportProgress() {
+        final int completed;
+        final int remaining;
+        synchronized (this) {
+            completed = getCompletedSuboperations();
+            remaining = getRemainingSuboperations();
+        }
+        progress.updateProgressBar(completed, completed + remaining);
+    }
+
+    /**
+     * One attempt at moving an item, which also records the latest sub-operation counts for that attempt
+     */
+    private class ScheduledMove implements Callable<ScheduledMove>, MoveProgressListener {
+        private final RetrieveItem item;
+        private final int previousAttempts;
+        private final long delayMs;
+        private volatile int completed = 0;
+        private volatile int remaining = 0;
+        private volatile boolean successful = false;
+        private final Set<String> failedInstanceUids = Collections.synchronizedSet(new HashSet<String>());
+
+        ScheduledMove(final RetrieveItem item, final int previousAttempts, final long delayMs) {
+            this.item = item;
+            this.previousAttempts = previousAttempts;
+            this.delayMs = delayMs;
+        }
+
+        @Override
+        public ScheduledMove call() throws Exception {
+            if (progress.isCancelled()) {
+                return this;
+            }
+            if (delayMs > 0) {
+                Thread.sleep(delayMs);
+            }
+            progress.updateStatusText("Retrieving " + item.getDescription() + " from " + item.getRetrieveAE());
+            try {
+                mover.move(item.getIdentifier(), item.getRetrieveAE(), this);
+                successful = true;
+            } catch (Exception e) {
+                reporter.silentLogException(e, "Retrieve of " + item.getDescription() + " failed on attempt " + getAttempts());
+            }
+
+            // The move has finished, so nothing can remain even if the final response omitted the count
+            remaining = 0;
+            reportProgress();
+            return this;
+        }
+
+        @Override
+        public void moveResponseReceived(final int status, final int remaining, final int completed, final int failed, final int warning) {
+            if (remaining >= 0) {
+                this.remaining = remaining;
+            } else if (status != MOVE_PENDING) {
+                this.remaining = 0;
+            }
+            if (completed >= 0 || warning >= 0) {
+                this.completed = Math.max(completed, 0) + Math.max(warning, 0);
+            }
+            reportProgress();
+        }
+
+        @Override
+        public void failedSOPInstancesReceived(final String[] failedSOPInstanceUIDs) {
+            failedInstanceUids.addAll(Arrays.asList(failedSOPInstanceUIDs));
+        }
+
+        RetrieveItem getItem() {
+            return item;
+        }
+
+        Set<String> getFailedInstanceUids() {
+            synchronized (failedInstanceUids) {
+                return new HashSet<String>(failedInstanceUids);
+            }
+        }
+
+        int getAttempts() {
+            return previousAttempts + 1;
+        }
+
+        boolean isSuccessful() {
+            return successful;
+        }
+
+        int getCompleted() {
+            return completed;
+        }
+
+        int getRemaining() {
+            return remaining;
+        }
+    }
+}
@@ -22,23 +22,31 @@ package uk.ac.ucl.cs.cmic.giftcloud.workers;
 import com.pixelmed.dicom.*;
 import com.pixelmed.display.event.StatusChangeEvent;
 import com.pixelmed.event.ApplicationEventDispatcher;
+import com.pixelmed.network.MoveProgressListener;
 import com.pixelmed.query.QueryInformationModel;
 import com.pixelmed.query.QueryTreeRecord;
 import uk.ac.ucl.cs.cmic.giftcloud.uploadapp.GiftCloudReporterFromApplication;
 import uk.ac.ucl.cs.cmic.giftcloud.uploadapp.QuerySelection;
 import uk.ac.ucl.cs.cmic.giftcloud.uploader.UploaderStatusModel;
 
+import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.Set;
 
 public class RetrieveWorker implements Runnable {
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long RETRY_DELAY_MS = 5000;
+
     private QueryInformationModel currentRemoteQueryInformationModel;
     private UploaderStatusModel uploaderStatusModel;
     private GiftCloudReporterFromApplication reporter;
     private List<QuerySelection> currentRemoteQuerySelectionList;
+    private final int maxParallelMoves;
 
-    public RetrieveWorker(final List<QuerySelection> currentRemoteQuerySelectionList, final QueryInformationModel currentRemoteQueryInformationModel, final UploaderStatusModel uploaderStatusModel, final GiftCloudReporterFromApplication reporter) {
+    public RetrieveWorker(final List<QuerySelection> currentRemoteQuerySelectionList, final QueryInformationModel currentRemoteQueryInformationModel, final int maxParallelMoves, final UploaderStatusModel uploaderStatusModel, final GiftCloudReporterFromApplication reporter) {
         this.currentRemoteQueryInformationModel = currentRemoteQueryInformationModel;
+        this.maxParallelMoves = maxParallelMoves;
         this.uploaderStatusModel = uploaderStatusModel;
         this.reporter = reporter;
         this.currentRemoteQuerySelectionList = currentRemoteQuerySelectionList;
@@ -47,64 +55,148 @@ public class RetrieveWorker implements Runnable {
     public void run() {
         reporter.setWaitCursor();
 
-        final List<QuerySelection> queryList = currentRemoteQuerySelectionList;
-        for (QuerySelection currentQuerySelection : queryList) {
-            retrieve(currentQuerySelection);
+        final List<RetrieveScheduler.RetrieveItem> items = new ArrayList<RetrieveScheduler.RetrieveItem>();
+        for (QuerySelection currentQuerySelection : currentRemoteQuerySelectionList) {
+            addRetrieveItems(currentQuerySelection, items);
+        }
+
+        final RetrieveScheduler scheduler = new RetrieveScheduler(new RetrieveScheduler.Mover() {
+            @Override
+            public void move(final AttributeList identifier, final String retrieveAE, final MoveProgressListener progressListener) throws Exception {
+                currentRemoteQueryInformationModel.performHierarchicalMoveFromOnNewAssociation(identifier, retrieveAE, progressListener);
+            }
+        }, maxParallelMoves, MAX_ATTEMPTS, RETRY_DELAY_MS, reporter, reporter);
+
+        if (!items.isEmpty()) {
+            uploaderStatusModel.setImportingStatusMessage("Retrieving files...");
+            reporter.startProgressBar();
+            try {
+                final List<RetrieveScheduler.RetrieveItem> failedItems = scheduler.retrieve(items);
+                if (failedItems.isEmpty()) {
+                    uploaderStatusModel.setImportingStatusMessage("Files have been retrieved and added to the upload queue.");
+                } else {
+                    uploaderStatusModel.setImportingStatusMessage("Some files could not be retrieved. Please ensure the PACS settings are correct");
+                }
+            } catch (InterruptedException e) {
+                reporter.silentLogException(e, "Retrieve operation was interrupted");
+            } catch (Throwable t) {
+                uploaderStatusModel.setImportingStatusMessage("The files could not be retrieved. Please ensure the PACS settings are correct");
+                reporter.silentLogException(t, "Retrieve operation failed");
+            }
+            reporter.endProgressBar();
         }
+        ApplicationEventDispatcher.getApplicationEventDispatcher().processEvent(new StatusChangeEvent("Done sending retrieval request"));
 
         reporter.restoreCursor();
     }
 
-    private void retrieve(final QuerySelection currentQuerySelection) {
+    private void addRetrieveItems(final QuerySelection currentQuerySelection, final List<RetrieveScheduler.RetrieveItem> items) {
         if (currentQuerySelection.getCurrentRemoteQuerySelectionLevel() == null) {	// they have selected the root of the tree
             QueryTreeRecord parent = currentQuerySelection.getCurrentRemoteQuerySelectionQueryTreeRecord();
             if (parent != null) {
-                reporter.updateStatusText("Retrieving everything from " + currentQuerySelection.getCurrentRemoteQuerySelectionRetrieveAE());
-                Enumeration children = parent.children();
-                if (children != null) {
-                    int nChildren = parent.getChildCount();
-                    reporter.startProgressBar(nChildren);
-                    int doneCount = 0;
-                    while (children.hasMoreElements()) {
-                        QueryTreeRecord r = (QueryTreeRecord)(children.nextElement());
-                        if (r != null) {
-                            QuerySelection currentRemoteQuerySelection = new QuerySelection(r, currentRemoteQueryInformationModel);
-                            reporter.updateStatusText("Retrieving " + currentRemoteQuerySelection.getCurrentRemoteQuerySelectionLevel() + " " + currentRemoteQuerySelection.getCurrentRemoteQuerySelectionUniqueKey().getSingleStringValueOrEmptyString() + " from " + currentQuerySelection.getCurrentRemoteQuerySelectionRetrieveAE());
-                            performRetrieve(currentRemoteQuerySelection.getCurrentRemoteQuerySelectionUniqueKeys(), currentRemoteQuerySelection.getCurrentRemoteQuerySelectionLevel(), currentQuerySelection.getCurrentRemoteQuerySelectionRetrieveAE());
-                            reporter.updateProgressBar(++doneCount);
-                        }
-                    }
-                    reporter.endProgressBar();
+                for (final QuerySelection child : getChildSelections(parent)) {
+                    addRetrieveItems(child, items);
+                }
+            }
+        } else if ("PATIENT".equals(currentQuerySelection.getCurrentRemoteQuerySelectionLevel())) {
+            // Patients may have many studies, so these are retrieved as separate moves which can run in parallel
+            final List<QuerySelection> studies = getChildSelections(currentQuerySelection.getCurrentRemoteQuerySelectionQueryTreeRecord());
+            if (studies.isEmpty()) {
+                items.add(new QuerySelectionRetrieveItem(currentQuerySelection));
+            } else {
+                for (final QuerySelection study : studies) {
+                    addRetrieveItems(study, items);
                 }
-                ApplicationEventDispatcher.getApplicationEventDispatcher().processEvent(new StatusChangeEvent("Done sending retrieval request"));
             }
+        } else if (currentQuerySelection.getCurrentRemoteQuerySelectionUniqueKeys() != null) {
+            items.add(new QuerySelectionRetrieveItem(currentQuerySelection));
         }
-        else {
-//            reporter.updateProgress("Retrieving "+currentQuerySelection.getCurrentRemoteQuerySelectionLevel()+" "+currentQuerySelection.getCurrentRemoteQuerySelectionUniqueKey().getSingleStringValueOrEmptyString()+" from "+localName);
-//                reporter.sendLn("Request retrieval of "+currentQuerySelection.getCurrentRemoteQuerySelectionLevel()+" "+currentQuerySelection.getCurrentRemoteQuerySelectionUniqueKey().getSingleStringValueOrEmptyString()+" from "+localName+" ("+currentQuerySelection.getCurrentRemoteQuerySelectionRetrieveAE()+")");
-            reporter.startProgressBar(1);
-            performRetrieve(currentQuerySelection.getCurrentRemoteQuerySelectionUniqueKeys(), currentQuerySelection.getCurrentRemoteQuerySelectionLevel(), currentQuerySelection.getCurrentRemoteQuerySelectionRetrieveAE());
+        // else do nothing, since no unique key to specify what to retrieve
+    }
 
-            reporter.updateStatusText("Done sending retrieval request");
-            reporter.endProgressBar();
+    private List<QuerySelection> getChildSelections(final QueryTreeRecord parent) {
+        final List<QuerySelection> childSelections = new ArrayList<QuerySelection>();
+        if (parent != null) {
+            final Enumeration children = parent.children();
+            if (children != null) {
+                while (children.hasMoreElements()) {
+                    QueryTreeRecord r = (QueryTreeRecord)(children.nextElement());
+                    if (r != null) {
+                        childSelections.add(new QuerySelection(r, currentRemoteQueryInformationModel));
+                    }
+                }
+            }
         }
+        return childSelections;
     }
 
+    /**
+     * Retrieves a study, series or image selected in the query tree. A failed study is split into its series. If the
+     * C-MOVE responses listed the failed instances, only the series containing them are retried
+     */
+    private class QuerySelectionRetrieveItem implements RetrieveScheduler.RetrieveItem {
+        private final QuerySelection querySelection;
 
-    private void performRetrieve(AttributeList uniqueKeys,String selectionLevel,String retrieveAE) {
-        try {
-            uploaderStatusModel.setImportingStatusMessage("Retrieving files...");
+        QuerySelectionRetrieveItem(final QuerySelection querySelection) {
+            this.querySelection = querySelection;
+        }
+
+        @Override
+        public AttributeList getIdentifier() {
             AttributeList identifier = new AttributeList();
-            if (uniqueKeys != null) {
-                identifier.putAll(uniqueKeys);
-                { AttributeTag t = TagFromName.QueryRetrieveLevel; Attribute a = new CodeStringAttribute(t); a.addValue(selectionLevel); identifier.put(t,a); }
-                currentRemoteQueryInformationModel.performHierarchicalMoveFrom(identifier,retrieveAE);
-                uploaderStatusModel.setImportingStatusMessage("Files have been retrieved and added to the upload queue.");
+            identifier.putAll(querySelection.getCurrentRemoteQuerySelectionUniqueKeys());
+            try {
+                { AttributeTag t = TagFromName.QueryRetrieveLevel; Attribute a = new CodeStringAttribute(t); a.addValue(querySelection.getCurrentRemoteQuerySelectionLevel()); identifier.put(t,a); }
+            } catch (DicomException e) {
+                throw new IllegalArgumentException(e);
+            }
+            return identifier;
+        }
+
+        @Override
+        public String getRetrieveAE() {
+            return querySelection.getCurrentRemoteQuerySelectionRetrieveAE();
+        }
+
+        @Override
+        public String getDescription() {
+            final Attribute uniqueKey = querySelection.getCurrentRemoteQuerySelectionUniqueKey();
+            return querySelection.getCurrentRemoteQuerySelectionLevel() + " " + (uniqueKey == null ? "" : uniqueKey.getSingleStringValueOrEmptyString());
+        }
+
+        @Override
+        public List<RetrieveScheduler.RetrieveItem> split(final Set<String> failedInstanceUids) {
+            final List<RetrieveScheduler.RetrieveItem> parts = new ArrayList<RetrieveScheduler.RetrieveItem>();
+            final List<RetrieveScheduler.RetrieveItem> partsWithFailures = new ArrayList<RetrieveScheduler.RetrieveItem>();
+            final String level = querySelection.getCurrentRemoteQuerySelectionLevel();
+            if ("PATIENT".equals(level) || "STUDY".equals(level)) {
+                for (final QuerySelection child : getChildSelections(querySelection.getCurrentRemoteQuerySelectionQueryTreeRecord())) {
+                    if (child.getCurrentRemoteQuerySelectionUniqueKeys() != null && child.getCurrentRemoteQuerySelectionLevel() != null) {
+                        final QuerySelectionRetrieveItem part = new QuerySelectionRetrieveItem(child);
+                        parts.add(part);
+                        if ("SERIES".equals(child.getCurrentRemoteQuerySelectionLevel()) && !failedInstanceUids.isEmpty() && containsAnyInstance(child.getCurrentRemoteQuerySelectionQueryTreeRecord(), failedInstanceUids)) {
+                            partsWithFailures.add(part);
+                        }
+                    }
+                }
+            }
+
+            // If the failed instances could not be found in any series, every series is retried
+            return partsWithFailures.isEmpty() ? parts : partsWithFailures;
+        }
+
+        private boolean containsAnyInstance(final QueryTreeRecord series, final Set<String> instanceUids) {
+            // This queries the instances of the series if they have not already been queried
+            final Enumeration instances = series.children();
+            if (instances != null) {
+                while (instances.hasMoreElements()) {
+                    final QueryTreeRecord instance = (QueryTreeRecord) instances.nextElement();
+                    if (instance != null && instance.getUniqueKey() != null && instanceUids.contains(instance.getUniqueKey().getSingleStringValueOrEmptyString())) {
+                        return true;
+                    }
+                }
             }
-            // else do nothing, since no unique key to specify what to retrieve
-        } catch (Exception e) {
-            uploaderStatusModel.setImportingStatusMessage("The files could not be retrieved. Please ensure the PACS settings are correct");
-            reporter.silentLogException(e, "Retrieve operation failed");
+            return false;
         }
     }
 }
@@ -0,0 +1,74 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+package uk.ac.ucl.cs.cmic.giftcloud.workers;
+
+import com.pixelmed.dicom.AttributeList;
+import uk.ac.ucl.cs.cmic.giftcloud.uploader.*;
+import uk.ac.ucl.cs.cmic.giftcloud.util.GiftCloudReporter;
+import uk.ac.ucl.cs.cmic.giftcloud.util.GiftCloudUtils;
+import uk.ac.ucl.cs.cmic.giftcloud.util.Optional;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Adds files left in the upload spool from a previous session to the upload queue
+ *
+ * Indexed files are imported a series at a time using the spool index, so only the first file of each series is
+ * parsed. Any files in the root of the spool which have not been indexed are imported in the usual way.
+ */
+public class SpoolRecoveryWorker implements Runnable {
+    private final UploadSpool uploadSpool;
+    private final GiftCloudUploader giftCloudUploader;
+    private final UploaderStatusModel uploaderStatusModel;
+    private final GiftCloudReporter reporter;
+    private final MasterFileImporter masterFileImporter;
+
+    public SpoolRecoveryWorker(final UploadSpool uploadSpool, final boolean acceptAnyTransferSyntax, final GiftCloudUploader giftCloudUploader, final UploaderStatusModel uploaderStatusModel, final GiftCloudReporter reporter) {
+        this.uploadSpool = uploadSpool;
+        this.giftCloudUploader = giftCloudUploader;
+        this.uploaderStatusModel = uploaderStatusModel;
+        this.reporter = reporter;
+        masterFileImporter = new MasterFileImporter(acceptAnyTransferSyntax, giftCloudUploader, false, reporter);
+    }
+
+    public void run() {
+        uploaderStatusModel.setImportingStatusMessage("Importing files...");
+        reporter.startProgressBar();
+
+        try {
+            boolean anyFiles = false;
+            for (final List<File> series : uploadSpool.recoverIndexedSeries()) {
+                final List<String> fileNames = new ArrayList<String>();
+                for (final File file : series) {
+                    fileNames.add(file.getPath());
+                }
+                giftCloudUploader.importFiles(new DicomFileImportRecord(fileNames, GiftCloudUtils.getDateAsAString(), PendingUploadTask.DeleteAfterUpload.DELETE_AFTER_UPLOAD, Optional.<AttributeList>empty()));
+                anyFiles = true;
+            }
+
+            final List<File> unindexedFiles = uploadSpool.getUnindexedFiles();
+            if (!unindexedFiles.isEmpty()) {
+                anyFiles = masterFileImporter.importFiles(unindexedFiles, reporter) || anyFiles;
+            }
+
+            final String statusMessage = anyFiles ? "Files have been imported and added to the upload queue." : "Waiting to receive files.";
+            uploaderStatusModel.setImportingStatusMessage(statusMessage);
+        } catch (Exception e) {
+            uploaderStatusModel.setImportingStatusMessage("Failure when importing files" , e);
+            reporter.silentLogException(e, "Failure when importing files");
+        }
+
+        reporter.endProgressBar();
+    }
+}
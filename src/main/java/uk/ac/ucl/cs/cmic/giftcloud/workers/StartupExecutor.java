@@ -0,0 +1,94 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+package uk.ac.ucl.cs.cmic.giftcloud.workers;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.pixelmed.dicom.AttributeList;
+import uk.ac.ucl.cs.cmic.giftcloud.util.Optional;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs independent startup steps in parallel, so that the slowest step rather than the sum of all the steps
+ * determines how long it takes before the uploader can receive and upload files
+ */
+class StartupExecutor {
+
+    /**
+     * A step which may fail
+     */
+    interface Step {
+        void run() throws Exception;
+    }
+
+    private final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("GIFT-Cloud startup %d").build());
+
+    /**
+     * Starts a step
+     *
+     * @param step the step to run
+     * @return a future giving the exception thrown by the step, or an empty Optional if it succeeded
+     */
+    Future<Optional<Throwable>> submit(final Step step) {
+        return executor.submit(new Callable<Optional<Throwable>>() {
+            @Override
+            public Optional<Throwable> call() {
+                try {
+                    step.run();
+                    return Optional.empty();
+                } catch (Throwable t) {
+                    return Optional.of(t);
+                }
+            }
+        });
+    }
+
+    /**
+     * Starts loading the DICOM dictionary, which would otherwise be loaded when the first file is received or imported
+     */
+    void submitDictionaryLoad() {
+        submit(new Step() {
+            @Override
+            public void run() {
+                AttributeList.getDictionary();
+            }
+        });
+    }
+
+    /**
+     * Waits for a step to complete
+     *
+     * @param result the future returned when the step was submitted
+     * @return the exception thrown by the step, or an empty Optional if it succeeded
+     */
+    static Optional<Throwable> waitFor(final Future<Optional<Throwable>> result) {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Optional.<Throwable>of(e);
+        } catch (ExecutionException e) {
+            return Optional.of(e.getCause());
+        }
+    }
+
+    /**
+     * Allows the threads to exit once the submitted steps have completed
+     */
+    void shutdown() {
+        executor.shutdown();
+    }
+}
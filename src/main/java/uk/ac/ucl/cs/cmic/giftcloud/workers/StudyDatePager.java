@@ -0,0 +1,138 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+package uk.ac.ucl.cs.cmic.giftcloud.workers;
+
+import com.pixelmed.dicom.Attribute;
+import com.pixelmed.dicom.AttributeList;
+import com.pixelmed.dicom.AttributeTag;
+import com.pixelmed.dicom.TagFromName;
+import org.apache.commons.lang.StringUtils;
+
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+
+/**
+ * Splits a broad study query into a sequence of study date ranges, working backwards from the present day
+ *
+ * <p>The size of each range is adjusted according to the number of results from the previous range, aiming for a
+ * roughly constant number of results in each page. The first range is open-ended so that it includes studies with
+ * future dates, and the last range is open-ended so that it includes everything before the earliest date. Studies with
+ * no study date do not match any of the ranges, so a final page requests only studies with an empty study date, using
+ * empty value matching. Not all PACS support empty value matching, so the results of this page should be checked.
+ */
+class StudyDatePager {
+
+    static final int TARGET_RESULTS_PER_PAGE = 500;
+
+    // The value which requests only studies whose study date is empty or missing
+    static final String EMPTY_DATE = "\"\"";
+
+    private static final int INITIAL_WINDOW_DAYS = 30;
+    private static final int MAXIMUM_WINDOW_DAYS = 366 * 20;
+    private static final int EARLIEST_YEAR = 1900;
+
+    // The query keys which, if they have a value other than a wildcard, make a query narrow enough not to need paging
+    private static final AttributeTag[] SELECTIVE_KEYS = {TagFromName.PatientName, TagFromName.PatientID, TagFromName.AccessionNumber, TagFromName.StudyDate, TagFromName.StudyInstanceUID};
+
+    private final Calendar earliestDate;
+    private Calendar nextEndDate;
+    private int windowDays = INITIAL_WINDOW_DAYS;
+    private boolean firstPage = true;
+    private boolean datesFinished = false;
+    private boolean finished = false;
+
+    /**
+     * @param today the date from which the pages work backwards
+     */
+    StudyDatePager(final Calendar today) {
+        this.earliestDate = Calendar.getInstance();
+        this.earliestDate.clear();
+        this.earliestDate.set(EARLIEST_YEAR, Calendar.JANUARY, 1);
+        this.nextEndDate = (Calendar) today.clone();
+    }
+
+    /**
+     * Determines whether a query should be split into pages
+     *
+     * @param filter the query filter
+     * @return true if the filter does not contain any keys which would limit the number of matching studies
+     */
+    static boolean isBroadQuery(final AttributeList filter) {
+        for (final AttributeTag tag : SELECTIVE_KEYS) {
+            final String value = Attribute.getSingleStringValueOrEmptyString(filter, tag);
+            if (StringUtils.isNotBlank(StringUtils.remove(StringUtils.remove(value, '*'), '?'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if all the date ranges have been returned
+     */
+    boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Returns the next study date range to query, working backwards in time. After the earliest range,
+     * {@link #EMPTY_DATE} is returned for the studies without a study date
+     *
+     * @return a DICOM date range, or {@link #EMPTY_DATE}
+     */
+    String getNextDateRange() {
+        if (finished) {
+            throw new IllegalStateException("There are no more date ranges");
+        }
+        if (datesFinished) {
+            finished = true;
+            return EMPTY_DATE;
+        }
+        final Calendar endDate = nextEndDate;
+        final Calendar startDate = (Calendar) endDate.clone();
+        startDate.add(Calendar.DAY_OF_MONTH, 1 - windowDays);
+
+        nextEndDate = (Calendar) startDate.clone();
+        nextEndDate.add(Calendar.DAY_OF_MONTH, -1);
+
+        final boolean firstPage = this.firstPage;
+        this.firstPage = false;
+
+        if (!startDate.after(earliestDate)) {
+            if (firstPage) {
+                // A query without a date range already includes studies without a study date
+                finished = true;
+                return "";
+            }
+            datesFinished = true;
+            return "-" + format(endDate);
+        }
+        return format(startDate) + "-" + (firstPage ? "" : format(endDate));
+    }
+
+    /**
+     * Adjusts the size of the next date range according to the number of results in the last one
+     *
+     * @param numberOfResults the number of results returned for the last date range
+     */
+    void recordResults(final int numberOfResults) {
+        if (numberOfResults > TARGET_RESULTS_PER_PAGE) {
+            windowDays = Math.max(1, windowDays / 2);
+        } else if (numberOfResults < TARGET_RESULTS_PER_PAGE / 2) {
+            windowDays = Math.min(MAXIMUM_WINDOW_DAYS, windowDays * 2);
+        }
+    }
+
+    private static String format(final Calendar date) {
+        return new SimpleDateFormat("yyyyMMdd").format(date.getTime());
+    }
+}
@@ -0,0 +1,105 @@
+package com.niftijio;
+
+import java.io.File;
+import java.nio.FloatBuffer;
+
+/**
+ * Compares the time and heap taken to read a FLOAT32 volume and sum its voxels with {@link NiftiVolume} and with
+ * {@link MappedNiftiVolume}, for uncompressed and compressed files. This is not run as part of the test suite; run
+ * the main method directly, optionally giving the x, y and z sizes of the volume as arguments
+ */
+public class MappedNiftiVolumeBenchmark {
+
+    private static final int REPETITIONS = 5;
+
+    public static void main(final String[] args) throws Exception {
+        final int nx = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+        final int ny = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+        final int nz = args.length > 2 ? Integer.parseInt(args[2]) : 150;
+
+        final File folder = File.createTempFile("niftibenchmark", "");
+        if (!folder.delete() || !folder.mkdir()) {
+            throw new IllegalStateException("Could not create " + folder.getPath());
+        }
+        try {
+            for (final String name : new String[] {"volume.nii", "volume.nii.gz"}) {
+                final String filename = new File(folder, name).getPath();
+                writeVolume(filename, nx, ny, nz);
+                report(name + " (" + nx + "x" + ny + "x" + nz + ")", filename);
+            }
+        } finally {
+            for (final File file : folder.listFiles()) {
+                file.delete();
+            }
+            folder.delete();
+        }
+    }
+
+    private static void report(final String name, final String filename) throws Exception {
+        long existingNanos = 0;
+        long mappedNanos = 0;
+        long existingHeap = 0;
+        long mappedHeap = 0;
+        for (int i = 0; i < REPETITIONS + 1; i++) {
+            final long heapBefore = usedHeap();
+            long start = System.nanoTime();
+            final NiftiVolume existing = NiftiVolume.read(filename);
+            final double existingSum = sum(existing);
+            final long existingElapsed = System.nanoTime() - start;
+            final long existingUsed = usedHeap() - heapBefore;
+
+            start = System.nanoTime();
+            final MappedNiftiVolume mapped = MappedNiftiVolume.read(filename);
+            final double mappedSum = sum(mapped.getFloatBuffer());
+            final long mappedElapsed = System.nanoTime() - start;
+
+            if (existingSum != mappedSum) {
+                throw new IllegalStateException("The readers give different voxels");
+            }
+
+            // The first repetition warms up both readers
+            if (i > 0) {
+                existingNanos += existingElapsed;
+                mappedNanos += mappedElapsed;
+                existingHeap += existingUsed;
+                mappedHeap += usedHeap() - heapBefore - existingUsed;
+            }
+        }
+        System.out.println(String.format("%s: NiftiVolume %d ms and %d MB, MappedNiftiVolume %d ms and %d MB of heap", name,
+                existingNanos / REPETITIONS / 1000000, existingHeap / REPETITIONS / (1024 * 1024),
+                mappedNanos / REPETITIONS / 1000000, Math.max(0, mappedHeap / REPETITIONS / (1024 * 1024))));
+    }
+
+    private static double sum(final NiftiVolume volume) {
+        double sum = 0;
+        for (int d = 0; d < volume.data.dimension(); d++)
+            for (int k = 0; k < volume.data.sizeZ(); k++)
+                for (int j = 0; j < volume.data.sizeY(); j++)
+                    for (int i = 0; i < volume.data.sizeX(); i++)
+                        sum += volume.data.get(i, j, k, d);
+        return sum;
+    }
+
+    private static double sum(final FloatBuffer voxels) {
+        double sum = 0;
+        while (voxels.hasRemaining()) {
+            sum += voxels.get();
+        }
+        return sum;
+    }
+
+    private static void writeVolume(final String filename, final int nx, final int ny, final int nz) throws Exception {
+        final NiftiVolume volume = new NiftiVolume(nx, ny, nz, 1);
+        for (int k = 0; k < nz; k++)
+            for (int j = 0; j < ny; j++)
+                for (int i = 0; i < nx; i++)
+                    volume.data.set(i, j, k, 0, (i * 31 + j * 17 + k * 7) % 1000 - 200.5);
+        volume.write(filename);
+    }
+
+    private static long usedHeap() {
+        System.gc();
+        final Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
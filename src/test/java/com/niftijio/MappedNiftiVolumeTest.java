@@ -0,0 +1,90 @@
+package com.niftijio;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+public class MappedNiftiVolumeTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testScaledInt16MatchesExistingReader() throws Exception {
+        for (final String name : new String[] {"int16.nii", "int16.nii.gz"}) {
+            final String filename = writeVolume(name, NiftiHeader.NIFTI_TYPE_INT16, 2.0f, -10.0f);
+            final NiftiVolume expected = NiftiVolume.read(filename);
+            final MappedNiftiVolume volume = MappedNiftiVolume.read(filename);
+
+            Assert.assertEquals(7, volume.sizeX());
+            Assert.assertEquals(5, volume.sizeY());
+            Assert.assertEquals(3, volume.sizeZ());
+            Assert.assertEquals(2, volume.dimension());
+            for (int d = 0; d < 2; d++)
+                for (int k = 0; k < 3; k++)
+                    for (int j = 0; j < 5; j++)
+                        for (int i = 0; i < 7; i++)
+                            Assert.assertEquals(expected.data.get(i, j, k, d), volume.get(i, j, k, d), 0);
+
+            // The typed view is not scaled
+            final ShortBuffer voxels = volume.getShortBuffer();
+            Assert.assertEquals(7 * 5 * 3 * 2, voxels.remaining());
+            Assert.assertEquals((short) ((volume.get(6, 4, 2, 1) + 10) / 2), voxels.get(voxels.limit() - 1));
+        }
+    }
+
+    @Test
+    public void testFloat32View() throws Exception {
+        final MappedNiftiVolume volume = MappedNiftiVolume.read(writeVolume("float.nii", NiftiHeader.NIFTI_TYPE_FLOAT32, 0, 0));
+        final FloatBuffer voxels = volume.getFloatBuffer();
+        Assert.assertEquals(value(1, 2, 0, 0), voxels.get(2 * 7 + 1), 0);
+        Assert.assertEquals(value(3, 1, 2, 1), voxels.get(((1 * 3 + 2) * 5 + 1) * 7 + 3), 0);
+
+        // Views are independent of each other
+        voxels.position(10);
+        Assert.assertEquals(0, volume.getFloatBuffer().position());
+    }
+
+    @Test
+    public void testUnsignedValuesUseTheFullRange() throws Exception {
+        final NiftiVolume source = new NiftiVolume(2, 1, 1, 1);
+        source.header.setDatatype(NiftiHeader.NIFTI_TYPE_UINT16);
+        source.data.set(0, 0, 0, 0, 1);
+        source.data.set(1, 0, 0, 0, -1);
+        final String filename = new File(temporaryFolder.getRoot(), "uint16.nii").getPath();
+        source.write(filename);
+
+        final MappedNiftiVolume volume = MappedNiftiVolume.read(filename);
+        Assert.assertEquals(1, volume.get(0, 0, 0, 0), 0);
+        Assert.assertEquals(65535, volume.get(1, 0, 0, 0), 0);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testViewOfTheWrongTypeIsRejected() throws Exception {
+        MappedNiftiVolume.read(writeVolume("int16.nii", NiftiHeader.NIFTI_TYPE_INT16, 0, 0)).getFloatBuffer();
+    }
+
+    private String writeVolume(final String name, final short datatype, final float slope, final float intercept) throws Exception {
+        final NiftiVolume volume = new NiftiVolume(7, 5, 3, 2);
+        volume.header.setDatatype(datatype);
+        volume.header.scl_slope = slope;
+        volume.header.scl_inter = intercept;
+        for (int d = 0; d < 2; d++)
+            for (int k = 0; k < 3; k++)
+                for (int j = 0; j < 5; j++)
+                    for (int i = 0; i < 7; i++)
+                        volume.data.set(i, j, k, d, value(i, j, k, d));
+        final String filename = new File(temporaryFolder.getRoot(), name).getPath();
+        volume.write(filename);
+        return filename;
+    }
+
+    private static float value(final int i, final int j, final int k, final int d) {
+        return 2 * (i - 3 * j + 11 * k - 50 * d);
+    }
+}
@@ -0,0 +1,72 @@
+/* Copyright (c) 2001-2014, David A. Clunie DBA Pixelmed Publishing. All rights reserved. */
+
+package com.pixelmed.dicom;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Iterator;
+
+/**
+ * <p>Checks that the precompiled dictionary image on the classpath matches the generated dictionary code. If this
+ * fails after the dictionary has been regenerated, rewrite the image using {@link DicomDictionaryImage#main(String[])}.</p>
+ *
+ * @author	tdoel
+ */
+public class DicomDictionaryImageTest {
+
+	@Test
+	public void testPrecompiledImageMatchesGeneratedDictionary() {
+		Assert.assertNotNull("The precompiled dictionary image is missing",DicomDictionary.class.getResourceAsStream("DicomDictionary.bin"));
+		assertSameEntries(DicomDictionaryImage.createGeneratedDictionary(),new DicomDictionary());
+	}
+
+	@Test
+	public void testWriteAndRead() throws Exception {
+		DicomDictionary generated = DicomDictionaryImage.createGeneratedDictionary();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		DicomDictionaryImage.create(generated).write(out);
+		DicomDictionaryImage image = DicomDictionaryImage.read(new ByteArrayInputStream(out.toByteArray()));
+
+		int count = 0;
+		for (Iterator i = generated.getTagIterator(); i.hasNext();) {
+			AttributeTag tag = (AttributeTag)i.next();
+			int index = image.indexOf(tag);
+			Assert.assertTrue(index >= 0);
+			Assert.assertEquals(generated.getNameFromTag(tag),image.getName(index));
+			++count;
+		}
+		Assert.assertEquals(count,image.size());
+		Assert.assertEquals(-1,image.indexOf(new AttributeTag(0x0009,0x0010)));
+	}
+
+	@Test
+	public void testRepeatingGroupAndUnknownTags() {
+		DicomDictionary dictionary = new DicomDictionary();
+		Assert.assertArrayEquals(ValueRepresentation.OX,dictionary.getValueRepresentationFromTag(new AttributeTag(0x6002,0x3000)));
+		Assert.assertNull(dictionary.getValueRepresentationFromTag(new AttributeTag(0x0009,0x1001)));
+		Assert.assertNull(dictionary.getNameFromTag(new AttributeTag(0x0009,0x1001)));
+		Assert.assertNull(dictionary.getTagFromName("NotAnAttributeName"));
+		Assert.assertEquals(TagFromName.PatientName,dictionary.getTagFromName("PatientName"));
+	}
+
+	private static void assertSameEntries(DicomDictionary expected,DicomDictionary actual) {
+		Iterator e = expected.getTagIterator();
+		Iterator a = actual.getTagIterator();
+		while (e.hasNext()) {
+			Assert.assertTrue(a.hasNext());
+			AttributeTag tag = (AttributeTag)e.next();
+			Assert.assertEquals(tag,a.next());
+			Assert.assertArrayEquals(tag.toString(),expected.getValueRepresentationFromTag(tag),actual.getValueRepresentationFromTag(tag));
+			Assert.assertSame(tag.toString(),expected.getInformationEntityFromTag(tag),actual.getInformationEntityFromTag(tag));
+			String name = expected.getNameFromTag(tag);
+			Assert.assertEquals(tag.toString(),name,actual.getNameFromTag(tag));
+			if (name != null) {
+				Assert.assertEquals(name,expected.getTagFromName(name),actual.getTagFromName(name));
+			}
+		}
+		Assert.assertFalse(a.hasNext());
+	}
+}
@@ -0,0 +1,75 @@
+/* Copyright (c) 2001-2014, David A. Clunie DBA Pixelmed Publishing. All rights reserved. */
+
+package com.pixelmed.dicom;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+
+/**
+ * <p>Measures the time taken to create the dictionary in a newly started JVM, which is part of the delay before a
+ * restarted uploader can receive its first study, from the precompiled image and from the generated code.</p>
+ *
+ * <p>This is not run as part of the test suite; run the main method directly, optionally giving the number of JVMs
+ * to start for each case as the first argument.</p>
+ *
+ * @author	tdoel
+ */
+public class DicomDictionaryStartupBenchmark {
+
+	private static final String CHILD_ARGUMENT = "-child";
+
+	public static void main(String arg[]) throws Exception {
+		if (arg.length == 2 && arg[0].equals(CHILD_ARGUMENT)) {
+			measureInThisJvm(arg[1].equals("image"));
+			return;
+		}
+		int repetitions = arg.length > 0 ? Integer.parseInt(arg[0]) : 5;
+		report("Precompiled image",true,repetitions);
+		report("Generated code",false,repetitions);
+	}
+
+	private static void report(String name,boolean useImage,int repetitions) throws Exception {
+		long totalMicros = 0;
+		long minimumMicros = Long.MAX_VALUE;
+		for (int i=0; i<repetitions; ++i) {
+			long micros = runChildJvm(useImage);
+			totalMicros += micros;
+			minimumMicros = Math.min(minimumMicros,micros);
+		}
+		System.out.println(name+": mean "+totalMicros/repetitions/1000+" ms, best "+minimumMicros/1000+" ms to create the dictionary and look up every tag in a new JVM");
+	}
+
+	private static long runChildJvm(boolean useImage) throws Exception {
+		String java = System.getProperty("java.home")+File.separator+"bin"+File.separator+"java";
+		Process process = new ProcessBuilder(java,"-cp",System.getProperty("java.class.path"),DicomDictionaryStartupBenchmark.class.getName(),CHILD_ARGUMENT,useImage ? "image" : "generated").redirectErrorStream(true).start();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(),"UTF-8"));
+		String line;
+		String lastLine = null;
+		while ((line = reader.readLine()) != null) {
+			lastLine = line;
+		}
+		if (process.waitFor() != 0 || lastLine == null) {
+			throw new IllegalStateException("The benchmark JVM failed: "+lastLine);
+		}
+		return Long.parseLong(lastLine.trim());
+	}
+
+	private static void measureInThisJvm(boolean useImage) {
+		long start = System.nanoTime();
+		DicomDictionary dictionary = useImage ? new DicomDictionary() : DicomDictionaryImage.createGeneratedDictionary();
+		int found = 0;
+		for (int group=0; group<=0x0040; group+=2) {
+			for (int element=0; element<=0x1000; ++element) {
+				if (dictionary.getValueRepresentationFromTag(new AttributeTag(group,element)) != null) {
+					++found;
+				}
+			}
+		}
+		long micros = (System.nanoTime()-start)/1000;
+		if (found == 0) {
+			throw new IllegalStateException("No tags were found");
+		}
+		System.out.println(micros);
+	}
+}
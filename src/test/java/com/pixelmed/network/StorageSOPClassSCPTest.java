@@ -0,0 +1,148 @@
+/* Copyright (c) 2001-2014, David A. Clunie DBA Pixelmed Publishing. All rights reserved. */
+
+package com.pixelmed.network;
+
+import com.pixelmed.dicom.*;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Checks that a data set which is only partly received before the association fails does not leave a file behind.</p>
+ *
+ * @author	tdoel
+ */
+public class StorageSOPClassSCPTest {
+
+	private static final String CALLED_AE_TITLE = "LISTENER";
+	private static final String CALLING_AE_TITLE = "SENDER";
+	private static final long TIMEOUT_MS = 10000;
+	private static final long POLL_INTERVAL_MS = 10;
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private File savedImagesFolder;
+	private final AtomicInteger numberReceived = new AtomicInteger();
+	private StorageSOPClassSCPDispatcher dispatcher;
+	private int port;
+
+	@Before
+	public void setUp() throws Exception {
+		savedImagesFolder = temporaryFolder.newFolder("received");
+		port = findFreePort();
+		ReceivedObjectHandler handler = new ReceivedObjectHandler() {
+			public void sendReceivedObjectIndication(String fileName,String transferSyntax,String callingAETitle) {
+				if (fileName != null) {
+					numberReceived.incrementAndGet();
+				}
+			}
+		};
+		dispatcher = new StorageSOPClassSCPDispatcher(port,CALLED_AE_TITLE,savedImagesFolder,StoredFilePathStrategy.BYSOPINSTANCEUIDINSINGLEFOLDER,handler,null,false);
+		dispatcher.startup();
+		while (!dispatcher.isListening()) {
+			Thread.sleep(POLL_INTERVAL_MS);
+		}
+	}
+
+	@After
+	public void tearDown() {
+		dispatcher.shutdownAndWait(TIMEOUT_MS);
+	}
+
+	@Test
+	public void testAbortedAssociationLeavesNoFile() throws Exception {
+		AttributeList list = createImage();
+		byte[] dataSet = writeDataSet(list);
+		String sopClassUid = Attribute.getSingleStringValueOrEmptyString(list,TagFromName.SOPClassUID);
+		String sopInstanceUid = Attribute.getSingleStringValueOrEmptyString(list,TagFromName.SOPInstanceUID);
+
+		LinkedList presentationContexts = new LinkedList();
+		presentationContexts.add(new PresentationContext((byte)1,sopClassUid,TransferSyntax.ExplicitVRLittleEndian));
+		Association association = AssociationFactory.createNewAssociation("localhost",port,CALLED_AE_TITLE,CALLING_AE_TITLE,presentationContexts,null,false,0);
+		byte presentationContextId = association.getSuitablePresentationContextID(sopClassUid);
+
+		// Send the command and half of the data set, then drop the association before the last fragment
+		association.send(presentationContextId,new CStoreRequestCommandMessage(sopClassUid,sopInstanceUid).getBytes(),null);
+		OutputStream out = association.getAssociationOutputStream(presentationContextId);
+		out.write(dataSet,0,dataSet.length/2);
+		out.flush();
+		waitForTemporaryFile();
+		association.abort();
+
+		long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+		while (savedImagesFolder.list().length > 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(POLL_INTERVAL_MS);
+		}
+
+		Assert.assertEquals("The partly received file should have been deleted",0,savedImagesFolder.list().length);
+		Assert.assertEquals("The partly received data set should not have been passed on",0,numberReceived.get());
+	}
+
+	private static AttributeList createImage() throws DicomException {
+		AttributeList list = new AttributeList();
+		addValue(list,new UniqueIdentifierAttribute(TagFromName.SOPClassUID),SOPClass.SecondaryCaptureImageStorage);
+		addValue(list,new UniqueIdentifierAttribute(TagFromName.SOPInstanceUID),"1.2.826.0.1.3680043.2.1125.1.1");
+		addValue(list,new UniqueIdentifierAttribute(TagFromName.StudyInstanceUID),"1.2.826.0.1.3680043.2.1125.1.2");
+		addValue(list,new UniqueIdentifierAttribute(TagFromName.SeriesInstanceUID),"1.2.826.0.1.3680043.2.1125.1.3");
+		addValue(list,new CodeStringAttribute(TagFromName.PhotometricInterpretation),"MONOCHROME2");
+		addValue(list,new UnsignedShortAttribute(TagFromName.Rows),256);
+		addValue(list,new UnsignedShortAttribute(TagFromName.Columns),256);
+		addValue(list,new UnsignedShortAttribute(TagFromName.SamplesPerPixel),1);
+		addValue(list,new UnsignedShortAttribute(TagFromName.BitsAllocated),16);
+		addValue(list,new UnsignedShortAttribute(TagFromName.BitsStored),12);
+		addValue(list,new UnsignedShortAttribute(TagFromName.HighBit),11);
+		addValue(list,new UnsignedShortAttribute(TagFromName.PixelRepresentation),0);
+		Attribute pixelData = new OtherWordAttribute(TagFromName.PixelData);
+		pixelData.setValues(new short[256*256]);
+		list.put(pixelData);
+		return list;
+	}
+
+	private static void addValue(AttributeList list,Attribute attribute,String value) throws DicomException {
+		attribute.addValue(value);
+		list.put(attribute);
+	}
+
+	private static void addValue(AttributeList list,Attribute attribute,int value) throws DicomException {
+		attribute.addValue(value);
+		list.put(attribute);
+	}
+
+	private static byte[] writeDataSet(AttributeList list) throws IOException, DicomException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DicomOutputStream out = new DicomOutputStream(bytes,null,TransferSyntax.ExplicitVRLittleEndian);
+		list.write(out);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	private void waitForTemporaryFile() throws InterruptedException {
+		long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+		while (savedImagesFolder.list().length == 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(POLL_INTERVAL_MS);
+		}
+		Assert.assertTrue("The listener should have started to receive the data set",savedImagesFolder.list().length > 0);
+	}
+
+	private static int findFreePort() throws IOException {
+		ServerSocket socket = new ServerSocket(0);
+		try {
+			return socket.getLocalPort();
+		}
+		finally {
+			socket.close();
+		}
+	}
+}
@@ -0,0 +1,193 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+
+package uk.ac.ucl.cs.cmic.giftcloud.dicom;
+
+import com.tomdoel.mpg2dcm.DicomFileBuilder;
+import org.dcm4che2.data.BasicDicomObject;
+import org.dcm4che2.data.DicomObject;
+import org.dcm4che2.data.Tag;
+import org.dcm4che2.data.UID;
+import org.dcm4che2.data.VR;
+import org.dcm4che2.io.DicomInputStream;
+import org.dcm4che2.io.DicomOutputStream;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import uk.ac.ucl.cs.cmic.giftcloud.uploader.DicomPixelDataAnonymiser;
+import uk.ac.ucl.cs.cmic.giftcloud.util.Optional;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Mockito.*;
+
+public class DicomSeriesZipperTest {
+
+    private static final String ORIGINAL_PATIENT_NAME = "Smith^John";
+    private static final String ANONYMISED_PATIENT_NAME = "Anonymous";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private DicomMetaDataAnonymiser metaDataAnonymiser;
+    private DicomPixelDataAnonymiser pixelDataAnonymiser;
+
+    @Before
+    public void setUp() throws Exception {
+        metaDataAnonymiser = mock(DicomMetaDataAnonymiser.class);
+        when(metaDataAnonymiser.anonymisationIsRequired(any(DicomObject.class))).thenCallRealMethod();
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(final InvocationOnMock invocation) {
+                final DicomObject dicomObject = (DicomObject) invocation.getArguments()[2];
+                dicomObject.putString(Tag.PatientName, VR.PN, ANONYMISED_PATIENT_NAME);
+                dicomObject.putString(Tag.PatientIdentityRemoved, VR.CS, "YES");
+                return null;
+            }
+        }).when(metaDataAnonymiser).anonymiseMetaData(any(File.class), any(UploadParameters.class), any(DicomObject.class));
+
+        pixelDataAnonymiser = mock(DicomPixelDataAnonymiser.class);
+        when(pixelDataAnonymiser.createRedactedFile(any(File.class), anyBoolean())).thenAnswer(new Answer<RedactedFileWrapper>() {
+            @Override
+            public RedactedFileWrapper answer(final InvocationOnMock invocation) {
+                final File file = (File) invocation.getArguments()[0];
+                return new RedactedFileWrapper(file, Optional.<File>empty(), RedactedFileWrapper.FileRedactionStatus.REDACTION_NOT_REQUIRED);
+            }
+        });
+    }
+
+    @Test
+    public void testFileClaimingIdentityRemovedIsAnonymisedUnlessDataIsAlreadyAnonymised() throws Exception {
+        final File dicomFile = createDicomFile("identity-removed.dcm", true);
+
+        final DicomObject zipped = zipAndRead(dicomFile, false);
+
+        verify(metaDataAnonymiser).anonymiseMetaData(any(File.class), any(UploadParameters.class), any(DicomObject.class));
+        Assert.assertEquals(ANONYMISED_PATIENT_NAME, zipped.getString(Tag.PatientName));
+    }
+
+    @Test
+    public void testAlreadyAnonymisedFileIsCopiedUnchanged() throws Exception {
+        final File dicomFile = createDicomFile("identity-removed.dcm", true);
+
+        final DicomObject zipped = zipAndRead(dicomFile, true);
+
+        verify(metaDataAnonymiser, never()).anonymiseMetaData(any(File.class), any(UploadParameters.class), any(DicomObject.class));
+        Assert.assertEquals(ORIGINAL_PATIENT_NAME, zipped.getString(Tag.PatientName));
+    }
+
+    @Test
+    public void testFileWithoutIdentityRemovedIsAnonymisedEvenIfDataIsAlreadyAnonymised() throws Exception {
+        final File dicomFile = createDicomFile("identity-present.dcm", false);
+
+        final DicomObject zipped = zipAndRead(dicomFile, true);
+
+        // The anonymisation scripts set PatientIdentityRemoved, which must not cause the original bytes to be copied
+        verify(metaDataAnonymiser).anonymiseMetaData(any(File.class), any(UploadParameters.class), any(DicomObject.class));
+        Assert.assertEquals(ANONYMISED_PATIENT_NAME, zipped.getString(Tag.PatientName));
+    }
+
+    @Test
+    public void testHeaderFileIsZippedWithVideoPixelData() throws Exception {
+        final File videoFile = temporaryFolder.newFile("video.mpg");
+        final FileOutputStream videoOutputStream = new FileOutputStream(videoFile);
+        try {
+            videoOutputStream.write(new byte[]{0, 0, 1, (byte) 0xBA, 1, 2, 3, 4});
+        } finally {
+            videoOutputStream.close();
+        }
+        final File headerFile = createHeaderFile("header.dcm", videoFile);
+
+        // A header file is never copied raw, because the video file reference must be removed
+        final DicomObject zipped = zipAndRead(headerFile, true);
+
+        Assert.assertTrue(zipped.contains(Tag.PixelData));
+        Assert.assertFalse(zipped.contains(DicomFileBuilder.VIDEO_FILE_TAG));
+        Assert.assertFalse(zipped.contains(DicomFileBuilder.VIDEO_FILE_PRIVATE_CREATOR_TAG));
+    }
+
+    @Test(expected = IOException.class)
+    public void testHeaderFileWithMissingVideoFails() throws Exception {
+        final File headerFile = createHeaderFile("header.dcm", new File(temporaryFolder.getRoot(), "missing.mpg"));
+
+        zipAndRead(headerFile, true);
+    }
+
+    private DicomObject zipAndRead(final File dicomFile, final boolean dataAlreadyAnonymised) throws Exception {
+        final DicomSeriesZipper zipper = new DicomSeriesZipper(dataAlreadyAnonymised, metaDataAnonymiser, pixelDataAnonymiser, mock(UploadParameters.class));
+        final File zip = temporaryFolder.newFile("series.zip");
+        final ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(zip));
+        try {
+            zipper.processNextFile(dicomFile, zos);
+        } finally {
+            zos.close();
+        }
+
+        final ZipFile zipFile = new ZipFile(zip);
+        try {
+            final DicomInputStream dis = new DicomInputStream(zipFile.getInputStream(zipFile.getEntry(dicomFile.getName())));
+            try {
+                return dis.readDicomObject();
+            } finally {
+                dis.close();
+            }
+        } finally {
+            zipFile.close();
+        }
+    }
+
+    private File createDicomFile(final String name, final boolean identityRemoved) throws IOException {
+        final DicomObject dicomObject = createDicomObject(identityRemoved);
+        dicomObject.initFileMetaInformation(UID.ExplicitVRLittleEndian);
+        return writeDicomFile(name, dicomObject);
+    }
+
+    private File createHeaderFile(final String name, final File videoFile) throws IOException {
+        final DicomObject dicomObject = createDicomObject(true);
+        dicomObject.putString(DicomFileBuilder.VIDEO_FILE_PRIVATE_CREATOR_TAG, VR.LO, DicomFileBuilder.VIDEO_FILE_PRIVATE_CREATOR);
+        dicomObject.putString(DicomFileBuilder.VIDEO_FILE_TAG, VR.UT, videoFile.getAbsolutePath());
+        dicomObject.initFileMetaInformation(UID.MPEG2);
+        return writeDicomFile(name, dicomObject);
+    }
+
+    private static DicomObject createDicomObject(final boolean identityRemoved) {
+        final DicomObject dicomObject = new BasicDicomObject();
+        dicomObject.putString(Tag.SOPClassUID, VR.UI, UID.SecondaryCaptureImageStorage);
+        dicomObject.putString(Tag.SOPInstanceUID, VR.UI, "1.2.826.0.1.3680043.2.1125.1");
+        dicomObject.putString(Tag.PatientName, VR.PN, ORIGINAL_PATIENT_NAME);
+        if (identityRemoved) {
+            dicomObject.putString(Tag.PatientIdentityRemoved, VR.CS, "YES");
+        }
+        return dicomObject;
+    }
+
+    private File writeDicomFile(final String name, final DicomObject dicomObject) throws IOException {
+        final File file = temporaryFolder.newFile(name);
+        final DicomOutputStream dos = new DicomOutputStream(file);
+        try {
+            dos.writeDicomFile(dicomObject);
+        } finally {
+            dos.close();
+        }
+        return file;
+    }
+}
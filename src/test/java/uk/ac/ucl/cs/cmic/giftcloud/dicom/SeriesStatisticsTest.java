@@ -0,0 +1,159 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+
+package uk.ac.ucl.cs.cmic.giftcloud.dicom;
+
+import com.tomdoel.mpg2dcm.DicomFileBuilder;
+import org.apache.commons.io.FileUtils;
+import org.dcm4che2.data.BasicDicomObject;
+import org.dcm4che2.data.DicomObject;
+import org.dcm4che2.data.Tag;
+import org.dcm4che2.data.UID;
+import org.dcm4che2.data.VR;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+public class SeriesStatisticsTest {
+
+    private static final double TOLERANCE = 1e-9;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testEstimatesForUncompressedFiles() {
+        final SeriesStatistics statistics = new SeriesStatistics();
+        statistics.addFile(1000, UID.ExplicitVRLittleEndian);
+        statistics.addFile(3000, UID.ImplicitVRLittleEndian);
+
+        Assert.assertEquals(2, statistics.getFileCount());
+        Assert.assertEquals(4000, statistics.getTotalBytes());
+        Assert.assertEquals(4000, statistics.getUncompressedBytes());
+        Assert.assertEquals(2000, statistics.getEstimatedZipBytes());
+        Assert.assertEquals(0.5, statistics.getEstimatedCompressionBenefit(), TOLERANCE);
+        Assert.assertEquals(4000, statistics.getEstimatedUploadMillis(500));
+    }
+
+    @Test
+    public void testEstimatesForMixedFiles() {
+        final SeriesStatistics statistics = new SeriesStatistics();
+        statistics.addFile(2000, UID.JPEGBaseline1);
+        statistics.addFile(2000, UID.ExplicitVRLittleEndian);
+
+        // Only the uncompressed half benefits from zipping
+        Assert.assertEquals(2000, statistics.getUncompressedBytes());
+        Assert.assertEquals(3000, statistics.getEstimatedZipBytes());
+        Assert.assertEquals(0.25, statistics.getEstimatedCompressionBenefit(), TOLERANCE);
+    }
+
+    @Test
+    public void testEstimatesForEmptySeries() {
+        final SeriesStatistics statistics = new SeriesStatistics();
+        Assert.assertEquals(0, statistics.getEstimatedZipBytes());
+        Assert.assertEquals(0, statistics.getEstimatedCompressionBenefit(), TOLERANCE);
+
+        statistics.addFile(1000, UID.ExplicitVRLittleEndian);
+        Assert.assertEquals(0, statistics.getEstimatedUploadMillis(0));
+    }
+
+    @Test
+    public void testTransferSyntaxHistogram() {
+        final SeriesStatistics statistics = new SeriesStatistics();
+        statistics.addFile(100, UID.ExplicitVRLittleEndian);
+        statistics.addFile(100, UID.ExplicitVRLittleEndian + " ");
+        statistics.addFile(100, UID.JPEGBaseline1);
+        statistics.addFile(100, null);
+
+        final Map<String, Integer> histogram = statistics.getTransferSyntaxHistogram();
+        Assert.assertEquals(3, histogram.size());
+        Assert.assertEquals(2, (int) histogram.get(UID.ExplicitVRLittleEndian));
+        Assert.assertEquals(1, (int) histogram.get(UID.JPEGBaseline1));
+        Assert.assertEquals(1, (int) histogram.get(SeriesStatistics.UNKNOWN_TRANSFER_SYNTAX));
+
+        // Files without a transfer syntax are assumed to be uncompressed
+        Assert.assertEquals(300, statistics.getUncompressedBytes());
+
+        try {
+            histogram.put(UID.RLELossless, 1);
+            Assert.fail("The histogram should not be modifiable");
+        } catch (UnsupportedOperationException e) {
+        }
+    }
+
+    @Test
+    public void testDuplicateFilesAreCountedOnce() throws Exception {
+        final Series series = createSeries();
+        final File file1 = createFile("file1", 1000);
+        final File file2 = createFile("file2", 500);
+
+        series.addFile(file1, createHeader(UID.ExplicitVRLittleEndian));
+        series.addFile(file2, createHeader(UID.JPEGBaseline1));
+        series.addFile(file1, createHeader(UID.ExplicitVRLittleEndian));
+
+        Assert.assertEquals(2, series.getFileCount());
+        Assert.assertEquals(1500, series.getSize());
+        final SeriesStatistics statistics = series.getStatistics();
+        Assert.assertEquals(2, statistics.getFileCount());
+        Assert.assertEquals(1, (int) statistics.getTransferSyntaxHistogram().get(UID.ExplicitVRLittleEndian));
+    }
+
+    @Test
+    public void testCopyIsNotChangedByLaterFiles() throws Exception {
+        final Series series = createSeries();
+        series.addFile(createFile("file1", 1000), createHeader(UID.ExplicitVRLittleEndian));
+
+        final SeriesStatistics snapshot = series.getStatistics();
+        series.addFile(createFile("file2", 2000), createHeader(UID.JPEGBaseline1));
+
+        Assert.assertEquals(1, snapshot.getFileCount());
+        Assert.assertEquals(1000, snapshot.getTotalBytes());
+        Assert.assertEquals(1, snapshot.getTransferSyntaxHistogram().size());
+        Assert.assertEquals(2, series.getStatistics().getFileCount());
+        Assert.assertEquals(3000, series.getStatistics().getTotalBytes());
+    }
+
+    @Test
+    public void testVideoIsIncludedInSizeOfHeaderFile() throws Exception {
+        final Series series = createSeries();
+        final File videoFile = createFile("video.mpg", 50000);
+        final DicomObject header = createHeader(UID.MPEG2);
+        header.putString(DicomFileBuilder.VIDEO_FILE_PRIVATE_CREATOR_TAG, VR.LO, DicomFileBuilder.VIDEO_FILE_PRIVATE_CREATOR);
+        header.putString(DicomFileBuilder.VIDEO_FILE_TAG, VR.UT, videoFile.getAbsolutePath());
+
+        series.addFile(createFile("header", 1000), header);
+
+        Assert.assertEquals(51000, series.getSize());
+        Assert.assertEquals(0, series.getStatistics().getUncompressedBytes());
+    }
+
+    private static Series createSeries() {
+        return new Series("1.2.3.4", 1, "MR", "Test series", UID.MRImageStorage);
+    }
+
+    private static DicomObject createHeader(final String transferSyntaxUid) {
+        final DicomObject header = new BasicDicomObject();
+        header.putString(Tag.TransferSyntaxUID, VR.UI, transferSyntaxUid);
+        return header;
+    }
+
+    private File createFile(final String name, final int size) throws IOException {
+        final File file = temporaryFolder.newFile(name);
+        FileUtils.writeByteArrayToFile(file, new byte[size]);
+        return file;
+    }
+}
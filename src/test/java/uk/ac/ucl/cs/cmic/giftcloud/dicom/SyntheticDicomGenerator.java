@@ -0,0 +1,475 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+
+package uk.ac.ucl.cs.cmic.giftcloud.dicom;
+
+import com.pixelmed.dicom.Attribute;
+import com.pixelmed.dicom.AttributeList;
+import com.pixelmed.dicom.CodeStringAttribute;
+import com.pixelmed.dicom.DateAttribute;
+import com.pixelmed.dicom.DicomException;
+import com.pixelmed.dicom.DicomOutputStream;
+import com.pixelmed.dicom.FileMetaInformation;
+import com.pixelmed.dicom.IntegerStringAttribute;
+import com.pixelmed.dicom.LongStringAttribute;
+import com.pixelmed.dicom.OtherByteAttribute;
+import com.pixelmed.dicom.OtherByteAttributeMultipleCompressedFrames;
+import com.pixelmed.dicom.OtherWordAttribute;
+import com.pixelmed.dicom.PersonNameAttribute;
+import com.pixelmed.dicom.SOPClass;
+import com.pixelmed.dicom.ShortStringAttribute;
+import com.pixelmed.dicom.SignedShortAttribute;
+import com.pixelmed.dicom.TagFromName;
+import com.pixelmed.dicom.TimeAttribute;
+import com.pixelmed.dicom.TransferSyntax;
+import com.pixelmed.dicom.UniqueIdentifierAttribute;
+import com.pixelmed.dicom.UnsignedShortAttribute;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Writes reproducible synthetic DICOM studies for performance testing of the listener, anonymiser and zipper
+ *
+ * <p>All identifiers and pixel values are derived from the seed, so two generators with the same seed and settings
+ * write identical files. The patient details are invented, so the files contain no patient information. Images are
+ * monochrome, with a smooth pattern and a little noise so that compressed sizes are realistic.
+ *
+ * <p>The pixel data can be written uncompressed, JPEG baseline compressed (which requires 8 bits allocated) or RLE
+ * compressed. Optionally, blocks resembling burnt-in text are painted into the top of each frame and the image is
+ * marked as containing burnt-in annotation, and a graphics overlay plane can be added.
+ */
+public class SyntheticDicomGenerator {
+
+    private static final String SOURCE_AE_TITLE = "GIFTCLOUD";
+    private static final int RLE_HEADER_LENGTH = 64;
+    private static final int MAXIMUM_RLE_RUN = 128;
+
+    private final Random random;
+
+    private String modality = "MR";
+    private int rows = 256;
+    private int columns = 256;
+    private int frames = 1;
+    private int bitsAllocated = 16;
+    private String transferSyntaxUid = TransferSyntax.ExplicitVRLittleEndian;
+    private boolean burntInAnnotation = false;
+    private boolean overlay = false;
+    private int seriesPerStudy = 1;
+    private int imagesPerSeries = 1;
+
+    /**
+     * @param seed determines all the identifiers and pixel values written by this generator
+     */
+    public SyntheticDicomGenerator(final long seed) {
+        random = new Random(seed);
+    }
+
+    public void setModality(final String modality) {
+        this.modality = modality;
+    }
+
+    public void setRows(final int rows) {
+        this.rows = rows;
+    }
+
+    public void setColumns(final int columns) {
+        this.columns = columns;
+    }
+
+    /**
+     * @param frames the number of frames in each image. A multiframe storage class is used if this is more than one
+     */
+    public void setFrames(final int frames) {
+        this.frames = frames;
+    }
+
+    /**
+     * @param bitsAllocated 8 or 16. Images with 16 bits allocated have 12 bits stored
+     */
+    public void setBitsAllocated(final int bitsAllocated) {
+        if (bitsAllocated != 8 && bitsAllocated != 16) {
+            throw new IllegalArgumentException("Bits allocated must be 8 or 16");
+        }
+        this.bitsAllocated = bitsAllocated;
+    }
+
+    /**
+     * @param transferSyntaxUid implicit or explicit VR little endian, JPEG baseline or RLE lossless
+     */
+    public void setTransferSyntax(final String transferSyntaxUid) {
+        if (!transferSyntaxUid.equals(TransferSyntax.ImplicitVRLittleEndian) && !transferSyntaxUid.equals(TransferSyntax.ExplicitVRLittleEndian) && !transferSyntaxUid.equals(TransferSyntax.JPEGBaseline) && !transferSyntaxUid.equals(TransferSyntax.RLE)) {
+            throw new IllegalArgumentException("Synthetic images cannot be written with transfer syntax " + transferSyntaxUid);
+        }
+        this.transferSyntaxUid = transferSyntaxUid;
+    }
+
+    /**
+     * @param burntInAnnotation true if blocks resembling text should be painted into the pixel data
+     */
+    public void setBurntInAnnotation(final boolean burntInAnnotation) {
+        this.burntInAnnotation = burntInAnnotation;
+    }
+
+    /**
+     * @param overlay true if a graphics overlay plane should be added to each image
+     */
+    public void setOverlay(final boolean overlay) {
+        this.overlay = overlay;
+    }
+
+    public void setSeriesPerStudy(final int seriesPerStudy) {
+        this.seriesPerStudy = seriesPerStudy;
+    }
+
+    public void setImagesPerSeries(final int imagesPerSeries) {
+        this.imagesPerSeries = imagesPerSeries;
+    }
+
+    /**
+     * @return the region of each frame which contains the burnt-in annotation, if it is enabled
+     */
+    public Rectangle getAnnotationRegion() {
+        return new Rectangle(columns / 16, rows / 32, columns / 2, Math.max(rows / 16, 1));
+    }
+
+    /**
+     * Writes a new study for a new patient, with one subfolder for each series
+     *
+     * @param folder the folder in which to create the study folder
+     * @return the files which were written
+     */
+    public List<File> writeStudy(final File folder) throws IOException, DicomException {
+        if (transferSyntaxUid.equals(TransferSyntax.JPEGBaseline) && bitsAllocated != 8) {
+            throw new IllegalStateException("JPEG baseline images must have 8 bits allocated");
+        }
+
+        final String patientId = String.format("SYN%08d", random.nextInt(100000000));
+        final String studyUid = createUid();
+        final File studyFolder = new File(folder, patientId);
+        final List<File> files = new ArrayList<File>();
+        for (int seriesNumber = 1; seriesNumber <= seriesPerStudy; seriesNumber++) {
+            final String seriesUid = createUid();
+            final File seriesFolder = new File(studyFolder, String.format("SERIES%03d", seriesNumber));
+            if (!seriesFolder.isDirectory() && !seriesFolder.mkdirs()) {
+                throw new IOException("Could not create the folder " + seriesFolder);
+            }
+            for (int instanceNumber = 1; instanceNumber <= imagesPerSeries; instanceNumber++) {
+                final File file = new File(seriesFolder, String.format("IMG%05d.dcm", instanceNumber));
+                write(createImage(patientId, studyUid, seriesUid, seriesNumber, instanceNumber), file);
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Writes a number of studies, each for a different patient
+     *
+     * @param folder the folder in which to create the study folders
+     * @param numberOfStudies the number of studies to write
+     * @return the files which were written
+     */
+    public List<File> writeStudies(final File folder, final int numberOfStudies) throws IOException, DicomException {
+        final List<File> files = new ArrayList<File>();
+        for (int studyNumber = 0; studyNumber < numberOfStudies; studyNumber++) {
+            files.addAll(writeStudy(folder));
+        }
+        return files;
+    }
+
+    private void write(final AttributeList list, final File file) throws IOException, DicomException {
+        final DicomOutputStream outputStream = new DicomOutputStream(new BufferedOutputStream(new FileOutputStream(file)), TransferSyntax.ExplicitVRLittleEndian, transferSyntaxUid);
+        try {
+            list.write(outputStream, true);
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    private AttributeList createImage(final String patientId, final String studyUid, final String seriesUid, final int seriesNumber, final int instanceNumber) throws DicomException, IOException {
+        final AttributeList list = new AttributeList();
+        addValue(list, new UniqueIdentifierAttribute(TagFromName.SOPClassUID), getSopClassUid());
+        addValue(list, new UniqueIdentifierAttribute(TagFromName.SOPInstanceUID), createUid());
+        addValue(list, new UniqueIdentifierAttribute(TagFromName.StudyInstanceUID), studyUid);
+        addValue(list, new UniqueIdentifierAttribute(TagFromName.SeriesInstanceUID), seriesUid);
+        addValue(list, new PersonNameAttribute(TagFromName.PatientName), "Synthetic^" + patientId);
+        addValue(list, new LongStringAttribute(TagFromName.PatientID), patientId);
+        addValue(list, new DateAttribute(TagFromName.PatientBirthDate), "19700101");
+        addValue(list, new CodeStringAttribute(TagFromName.PatientSex), "O");
+        addValue(list, new DateAttribute(TagFromName.StudyDate), "20150101");
+        addValue(list, new TimeAttribute(TagFromName.StudyTime), "120000");
+        addValue(list, new ShortStringAttribute(TagFromName.AccessionNumber), patientId);
+        addValue(list, new ShortStringAttribute(TagFromName.StudyID), "1");
+        addValue(list, new CodeStringAttribute(TagFromName.Modality), modality);
+        addValue(list, new IntegerStringAttribute(TagFromName.SeriesNumber), seriesNumber);
+        addValue(list, new IntegerStringAttribute(TagFromName.InstanceNumber), instanceNumber);
+        addValue(list, new CodeStringAttribute(TagFromName.PhotometricInterpretation), "MONOCHROME2");
+        addValue(list, new UnsignedShortAttribute(TagFromName.Rows), rows);
+        addValue(list, new UnsignedShortAttribute(TagFromName.Columns), columns);
+        addValue(list, new UnsignedShortAttribute(TagFromName.SamplesPerPixel), 1);
+        addValue(list, new UnsignedShortAttribute(TagFromName.BitsAllocated), bitsAllocated);
+        addValue(list, new UnsignedShortAttribute(TagFromName.BitsStored), getBitsStored());
+        addValue(list, new UnsignedShortAttribute(TagFromName.HighBit), getBitsStored() - 1);
+        addValue(list, new UnsignedShortAttribute(TagFromName.PixelRepresentation), 0);
+        addValue(list, new CodeStringAttribute(TagFromName.BurnedInAnnotation), burntInAnnotation ? "YES" : "NO");
+        if (frames > 1) {
+            addValue(list, new IntegerStringAttribute(TagFromName.NumberOfFrames), frames);
+        }
+        if (overlay) {
+            addOverlay(list);
+        }
+
+        final int[][] framePixels = new int[frames][];
+        for (int frame = 0; frame < frames; frame++) {
+            framePixels[frame] = createFrame(instanceNumber + frame);
+        }
+
+        if (transferSyntaxUid.equals(TransferSyntax.JPEGBaseline)) {
+            addValue(list, new CodeStringAttribute(TagFromName.LossyImageCompression), "01");
+            addValue(list, new CodeStringAttribute(TagFromName.LossyImageCompressionMethod), "ISO_10918_1");
+            final byte[][] compressedFrames = new byte[frames][];
+            for (int frame = 0; frame < frames; frame++) {
+                compressedFrames[frame] = encodeJpeg(framePixels[frame]);
+            }
+            list.put(new OtherByteAttributeMultipleCompressedFrames(TagFromName.PixelData, compressedFrames));
+
+        } else if (transferSyntaxUid.equals(TransferSyntax.RLE)) {
+            final byte[][] compressedFrames = new byte[frames][];
+            for (int frame = 0; frame < frames; frame++) {
+                compressedFrames[frame] = encodeRle(framePixels[frame], rows, columns, bitsAllocated);
+            }
+            list.put(new OtherByteAttributeMultipleCompressedFrames(TagFromName.PixelData, compressedFrames));
+
+        } else if (bitsAllocated == 8) {
+            // Odd length values are padded to an even length
+            final byte[] pixels = new byte[(rows * columns * frames + 1) & ~1];
+            for (int frame = 0; frame < frames; frame++) {
+                for (int index = 0; index < rows * columns; index++) {
+                    pixels[frame * rows * columns + index] = (byte) framePixels[frame][index];
+                }
+            }
+            final Attribute pixelData = new OtherByteAttribute(TagFromName.PixelData);
+            pixelData.setValues(pixels);
+            list.put(pixelData);
+
+        } else {
+            final short[] pixels = new short[rows * columns * frames];
+            for (int frame = 0; frame < frames; frame++) {
+                for (int index = 0; index < rows * columns; index++) {
+                    pixels[frame * rows * columns + index] = (short) framePixels[frame][index];
+                }
+            }
+            final Attribute pixelData = new OtherWordAttribute(TagFromName.PixelData);
+            pixelData.setValues(pixels);
+            list.put(pixelData);
+        }
+
+        FileMetaInformation.addFileMetaInformation(list, transferSyntaxUid, SOURCE_AE_TITLE);
+        return list;
+    }
+
+    private String getSopClassUid() {
+        if (modality.equals("US")) {
+            return frames > 1 ? SOPClass.UltrasoundMultiframeImageStorage : SOPClass.UltrasoundImageStorage;
+        } else if (frames > 1) {
+            return bitsAllocated == 8 ? SOPClass.MultiframeGrayscaleByteSecondaryCaptureImageStorage : SOPClass.MultiframeGrayscaleWordSecondaryCaptureImageStorage;
+        } else if (modality.equals("MR")) {
+            return SOPClass.MRImageStorage;
+        } else if (modality.equals("CT")) {
+            return SOPClass.CTImageStorage;
+        } else {
+            return SOPClass.SecondaryCaptureImageStorage;
+        }
+    }
+
+    private int getBitsStored() {
+        return bitsAllocated == 8 ? 8 : 12;
+    }
+
+    /**
+     * @return a smooth pattern which changes between frames, with noise in the lowest bits
+     */
+    private int[] createFrame(final int frameIndex) {
+        final int maximumValue = (1 << getBitsStored()) - 1;
+        final int[] pixels = new int[rows * columns];
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                final double x = (column - columns / 2.0) / columns;
+                final double y = (row - rows / 2.0) / rows;
+                final double pattern = 0.5 + 0.4 * Math.cos(20 * Math.sqrt(x * x + y * y) - frameIndex * 0.3);
+                pixels[row * columns + column] = Math.min(maximumValue, (int) (pattern * maximumValue) + random.nextInt(4));
+            }
+        }
+
+        if (burntInAnnotation) {
+            // Character-sized blocks separated by gaps, in the manner of a line of text
+            final Rectangle region = getAnnotationRegion();
+            final int characterWidth = Math.max(region.height / 2, 1);
+            for (int row = region.y; row < region.y + region.height; row++) {
+                for (int column = region.x; column < region.x + region.width; column++) {
+                    if ((column - region.x) % (characterWidth + characterWidth / 2) < characterWidth) {
+                        pixels[row * columns + column] = maximumValue;
+                    }
+                }
+            }
+        }
+        return pixels;
+    }
+
+    /**
+     * Adds an overlay plane in group 6000 containing a rectangular outline around the centre of the image
+     */
+    private void addOverlay(final AttributeList list) throws DicomException {
+        addValue(list, new UnsignedShortAttribute(TagFromName.OverlayRows), rows);
+        addValue(list, new UnsignedShortAttribute(TagFromName.OverlayColumns), columns);
+        addValue(list, new CodeStringAttribute(TagFromName.OverlayType), "G");
+        final Attribute origin = new SignedShortAttribute(TagFromName.OverlayOrigin);
+        origin.addValue(1);
+        origin.addValue(1);
+        list.put(origin);
+        addValue(list, new UnsignedShortAttribute(TagFromName.OverlayBitsAllocated), 1);
+        addValue(list, new UnsignedShortAttribute(TagFromName.OverlayBitPosition), 0);
+
+        // Overlay bits are packed from the least significant bit of each word
+        final short[] words = new short[(rows * columns + 15) / 16];
+        for (int row = rows / 4; row < 3 * rows / 4; row++) {
+            for (int column = columns / 4; column < 3 * columns / 4; column++) {
+                if (row == rows / 4 || row == 3 * rows / 4 - 1 || column == columns / 4 || column == 3 * columns / 4 - 1) {
+                    final int index = row * columns + column;
+                    words[index / 16] |= (short) (1 << (index % 16));
+                }
+            }
+        }
+        final Attribute overlayData = new OtherWordAttribute(TagFromName.OverlayData);
+        overlayData.setValues(words);
+        list.put(overlayData);
+    }
+
+    private byte[] encodeJpeg(final int[] pixels) throws IOException {
+        final BufferedImage image = new BufferedImage(columns, rows, BufferedImage.TYPE_BYTE_GRAY);
+        image.getRaster().setPixels(0, 0, columns, rows, pixels);
+        final Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+        if (!writers.hasNext()) {
+            throw new IOException("No JPEG writer is available");
+        }
+        final ImageWriter writer = writers.next();
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ImageOutputStream imageOutputStream = ImageIO.createImageOutputStream(bytes);
+        try {
+            writer.setOutput(imageOutputStream);
+            writer.write(image);
+        } finally {
+            imageOutputStream.close();
+            writer.dispose();
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Compresses a frame as described in DICOM PS3.5 Annex G. Each byte of the pixel values forms a segment, most
+     * significant byte first, and each row of each segment is PackBits encoded separately
+     *
+     * @param pixels the pixel values of the frame
+     * @param rows the number of rows in the frame
+     * @param columns the number of columns in the frame
+     * @param bitsAllocated 8 or 16
+     * @return the RLE header followed by the segments
+     */
+    static byte[] encodeRle(final int[] pixels, final int rows, final int columns, final int bitsAllocated) {
+        final int numberOfSegments = bitsAllocated / 8;
+        final ByteArrayOutputStream segments = new ByteArrayOutputStream();
+        final int[] offsets = new int[numberOfSegments];
+        final byte[] row = new byte[columns];
+        for (int segment = 0; segment < numberOfSegments; segment++) {
+            offsets[segment] = RLE_HEADER_LENGTH + segments.size();
+            final int shift = 8 * (numberOfSegments - 1 - segment);
+            for (int rowIndex = 0; rowIndex < rows; rowIndex++) {
+                for (int column = 0; column < columns; column++) {
+                    row[column] = (byte) (pixels[rowIndex * columns + column] >> shift);
+                }
+                packBits(row, segments);
+            }
+            if (segments.size() % 2 != 0) {
+                segments.write(0);
+            }
+        }
+
+        final ByteArrayOutputStream frame = new ByteArrayOutputStream(RLE_HEADER_LENGTH + segments.size());
+        writeUnsigned32(frame, numberOfSegments);
+        for (int headerIndex = 0; headerIndex < 15; headerIndex++) {
+            writeUnsigned32(frame, headerIndex < numberOfSegments ? offsets[headerIndex] : 0);
+        }
+        final byte[] segmentBytes = segments.toByteArray();
+        frame.write(segmentBytes, 0, segmentBytes.length);
+        return frame.toByteArray();
+    }
+
+    private static void packBits(final byte[] row, final ByteArrayOutputStream output) {
+        int index = 0;
+        while (index < row.length) {
+            int runLength = 1;
+            while (index + runLength < row.length && runLength < MAXIMUM_RLE_RUN && row[index + runLength] == row[index]) {
+                runLength++;
+            }
+            if (runLength > 1) {
+                output.write(1 - runLength);
+                output.write(row[index]);
+                index += runLength;
+            } else {
+                final int literalStart = index;
+                while (index < row.length && index - literalStart < MAXIMUM_RLE_RUN && (index + 1 >= row.length || row[index] != row[index + 1])) {
+                    index++;
+                }
+                output.write(index - literalStart - 1);
+                output.write(row, literalStart, index - literalStart);
+            }
+        }
+    }
+
+    private static void writeUnsigned32(final ByteArrayOutputStream output, final int value) {
+        output.write(value);
+        output.write(value >> 8);
+        output.write(value >> 16);
+        output.write(value >> 24);
+    }
+
+    /**
+     * @return a UID in the 2.25 root described in DICOM PS3.5 Annex B.2, derived from the seeded random numbers
+     */
+    private String createUid() {
+        return "2.25." + new BigInteger(128, random);
+    }
+
+    private static void addValue(final AttributeList list, final Attribute attribute, final String value) throws DicomException {
+        attribute.addValue(value);
+        list.put(attribute);
+    }
+
+    private static void addValue(final AttributeList list, final Attribute attribute, final int value) throws DicomException {
+        attribute.addValue(value);
+        list.put(attribute);
+    }
+}
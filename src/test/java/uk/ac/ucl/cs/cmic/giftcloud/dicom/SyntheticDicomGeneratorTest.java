@@ -0,0 +1,180 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+
+package uk.ac.ucl.cs.cmic.giftcloud.dicom;
+
+import com.pixelmed.dicom.Attribute;
+import com.pixelmed.dicom.AttributeList;
+import com.pixelmed.dicom.TagFromName;
+import com.pixelmed.dicom.TransferSyntax;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class SyntheticDicomGeneratorTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testStudyCanBeReadBack() throws Exception {
+        final SyntheticDicomGenerator generator = new SyntheticDicomGenerator(1);
+        generator.setModality("CT");
+        generator.setRows(64);
+        generator.setColumns(48);
+        generator.setSeriesPerStudy(2);
+        generator.setImagesPerSeries(3);
+        generator.setOverlay(true);
+        final List<File> files = generator.writeStudy(temporaryFolder.getRoot());
+        Assert.assertEquals(6, files.size());
+
+        final Set<String> seriesUids = new HashSet<String>();
+        final Set<String> studyUids = new HashSet<String>();
+        for (final File file : files) {
+            final AttributeList list = read(file);
+            seriesUids.add(Attribute.getSingleStringValueOrEmptyString(list, TagFromName.SeriesInstanceUID));
+            studyUids.add(Attribute.getSingleStringValueOrEmptyString(list, TagFromName.StudyInstanceUID));
+            Assert.assertEquals("CT", Attribute.getSingleStringValueOrEmptyString(list, TagFromName.Modality));
+            Assert.assertEquals(TransferSyntax.ExplicitVRLittleEndian, Attribute.getSingleStringValueOrEmptyString(list, TagFromName.TransferSyntaxUID));
+            Assert.assertEquals(64 * 48, list.get(TagFromName.PixelData).getShortValues().length);
+            Assert.assertEquals(64 * 48 / 16, list.get(TagFromName.OverlayData).getShortValues().length);
+        }
+        Assert.assertEquals(2, seriesUids.size());
+        Assert.assertEquals(1, studyUids.size());
+    }
+
+    @Test
+    public void testSameSeedGivesSameFiles() throws Exception {
+        final File first = writeUsRle(temporaryFolder.newFolder("first"), 7).get(0);
+        final File second = writeUsRle(temporaryFolder.newFolder("second"), 7).get(0);
+        final File other = writeUsRle(temporaryFolder.newFolder("other"), 8).get(0);
+        Assert.assertArrayEquals(readBytes(first), readBytes(second));
+        Assert.assertFalse(Arrays.equals(readBytes(first), readBytes(other)));
+    }
+
+    @Test
+    public void testRleFramesDecodeToAnnotatedPixels() throws Exception {
+        final File file = writeUsRle(temporaryFolder.getRoot(), 3).get(0);
+        final AttributeList list = read(file);
+        Assert.assertEquals(TransferSyntax.RLE, Attribute.getSingleStringValueOrEmptyString(list, TagFromName.TransferSyntaxUID));
+        Assert.assertEquals("YES", Attribute.getSingleStringValueOrEmptyString(list, TagFromName.BurnedInAnnotation));
+
+        // Pixelmed decompresses the frames as it reads them. The first column of the annotation region in the second
+        // frame is painted at the maximum value for 8 bits
+        final byte[] pixels = list.get(TagFromName.PixelData).getByteValues();
+        Assert.assertEquals(2 * 40 * 30, pixels.length);
+        Assert.assertEquals((byte) 255, pixels[40 * 30 + (40 / 32) * 30 + 30 / 16]);
+    }
+
+    @Test
+    public void testRleEncodingOfSixteenBitPixels() throws Exception {
+        final int[] pixels = new int[300 * 2];
+        for (int index = 0; index < pixels.length; index++) {
+            pixels[index] = index < 200 ? 0x0abc : (index * 37) & 0xfff;
+        }
+        final byte[] encoded = SyntheticDicomGenerator.encodeRle(pixels, 2, 300, 16);
+        Assert.assertArrayEquals(pixels, decodeRle(encoded, pixels.length));
+        Assert.assertEquals(0, encoded.length % 2);
+    }
+
+    @Test
+    public void testJpegBaselineFrames() throws Exception {
+        final SyntheticDicomGenerator generator = new SyntheticDicomGenerator(5);
+        generator.setModality("US");
+        generator.setRows(32);
+        generator.setColumns(40);
+        generator.setBitsAllocated(8);
+        generator.setTransferSyntax(TransferSyntax.JPEGBaseline);
+        final AttributeList list = read(generator.writeStudy(temporaryFolder.getRoot()).get(0));
+        Assert.assertEquals("01", Attribute.getSingleStringValueOrEmptyString(list, TagFromName.LossyImageCompression));
+        Assert.assertEquals(TransferSyntax.JPEGBaseline, Attribute.getSingleStringValueOrEmptyString(list, TagFromName.TransferSyntaxUID));
+        Assert.assertEquals(32 * 40, list.get(TagFromName.PixelData).getByteValues().length);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testJpegBaselineRequiresEightBits() throws Exception {
+        final SyntheticDicomGenerator generator = new SyntheticDicomGenerator(5);
+        generator.setTransferSyntax(TransferSyntax.JPEGBaseline);
+        generator.writeStudy(temporaryFolder.getRoot());
+    }
+
+    private static List<File> writeUsRle(final File folder, final long seed) throws Exception {
+        final SyntheticDicomGenerator generator = new SyntheticDicomGenerator(seed);
+        generator.setModality("US");
+        generator.setRows(40);
+        generator.setColumns(30);
+        generator.setFrames(2);
+        generator.setBitsAllocated(8);
+        generator.setTransferSyntax(TransferSyntax.RLE);
+        generator.setBurntInAnnotation(true);
+        return generator.writeStudy(folder);
+    }
+
+    private static AttributeList read(final File file) throws Exception {
+        final AttributeList list = new AttributeList();
+        list.read(file);
+        return list;
+    }
+
+    private static byte[] readBytes(final File file) throws IOException {
+        final byte[] bytes = new byte[(int) file.length()];
+        final InputStream inputStream = new FileInputStream(file);
+        try {
+            int offset = 0;
+            while (offset < bytes.length) {
+                offset += inputStream.read(bytes, offset, bytes.length - offset);
+            }
+        } finally {
+            inputStream.close();
+        }
+        return bytes;
+    }
+
+    private static int[] decodeRle(final byte[] frame, final int numberOfPixels) {
+        final int numberOfSegments = readUnsigned32(frame, 0);
+        final int[] pixels = new int[numberOfPixels];
+        for (int segment = 0; segment < numberOfSegments; segment++) {
+            int position = readUnsigned32(frame, 4 + 4 * segment);
+            int pixelIndex = 0;
+            while (pixelIndex < numberOfPixels) {
+                final int header = frame[position++];
+                if (header >= 0) {
+                    for (int count = 0; count <= header; count++) {
+                        pixels[pixelIndex] = (pixels[pixelIndex] << 8) | (frame[position++] & 0xff);
+                        pixelIndex++;
+                    }
+                } else if (header != -128) {
+                    final int value = frame[position++] & 0xff;
+                    for (int count = 0; count < 1 - header; count++) {
+                        pixels[pixelIndex] = (pixels[pixelIndex] << 8) | value;
+                        pixelIndex++;
+                    }
+                }
+            }
+        }
+        return pixels;
+    }
+
+    private static int readUnsigned32(final byte[] bytes, final int offset) {
+        return (bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8 | (bytes[offset + 2] & 0xff) << 16 | (bytes[offset + 3] & 0xff) << 24;
+    }
+}
@@ -0,0 +1,73 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+
+package uk.ac.ucl.cs.cmic.giftcloud.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBucketsAreContiguousAndWithinPrecision() {
+        long previousUpperBound = -1;
+        for (long value = 0; value < 100000; value++) {
+            final int index = LatencyHistogram.getBucketIndex(value);
+            final long upperBound = LatencyHistogram.getBucketUpperBound(index);
+            Assert.assertTrue(upperBound >= value);
+            Assert.assertTrue(upperBound - value <= value / 8);
+            Assert.assertTrue(upperBound >= previousUpperBound);
+            previousUpperBound = upperBound;
+        }
+        Assert.assertEquals(Long.MAX_VALUE, LatencyHistogram.getBucketUpperBound(LatencyHistogram.getBucketIndex(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void testPercentiles() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int millis = 1; millis <= 100; millis++) {
+            histogram.recordNanos(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+
+        final LatencyHistogram.Snapshot snapshot = histogram.getSnapshot();
+        Assert.assertEquals(100, snapshot.getCount());
+        Assert.assertEquals(50500, snapshot.getMeanMicros());
+        assertWithinPrecision(50000, snapshot.getPercentileMicros(50));
+        assertWithinPrecision(99000, snapshot.getPercentileMicros(99));
+        assertWithinPrecision(100000, snapshot.getMaxMicros());
+    }
+
+    @Test
+    public void testSnapshotDifference() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordNanos(TimeUnit.SECONDS.toNanos(10));
+        final LatencyHistogram.Snapshot first = histogram.getSnapshot();
+
+        histogram.recordNanos(TimeUnit.MILLISECONDS.toNanos(2));
+        histogram.recordNanos(TimeUnit.MILLISECONDS.toNanos(2));
+        final LatencyHistogram.Snapshot interval = histogram.getSnapshot().minus(first);
+
+        Assert.assertEquals(2, interval.getCount());
+        Assert.assertEquals(2000, interval.getMeanMicros());
+        assertWithinPrecision(2000, interval.getMaxMicros());
+
+        final LatencyHistogram.Snapshot empty = new LatencyHistogram().getSnapshot();
+        Assert.assertEquals(0, empty.getCount());
+        Assert.assertEquals(0, empty.getPercentileMicros(99));
+    }
+
+    private static void assertWithinPrecision(final long expected, final long actual) {
+        Assert.assertTrue("Expected " + expected + " but was " + actual, actual >= expected && actual <= expected + expected / 8);
+    }
+}
@@ -0,0 +1,60 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+
+package uk.ac.ucl.cs.cmic.giftcloud.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.management.AttributeNotFoundException;
+import javax.management.MBeanAttributeInfo;
+import java.util.HashSet;
+import java.util.Set;
+
+public class MetricsMBeanTest {
+
+    @Test
+    public void testAttributes() throws Exception {
+        final MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("upload.files").add(3);
+        registry.registerGauge("queue.upload", new Gauge() {
+            @Override
+            public long getValue() {
+                return 7;
+            }
+        });
+        registry.histogram("upload.zip").recordNanos(5000000);
+
+        // The same metric is returned for the same name
+        Assert.assertSame(registry.counter("upload.files"), registry.counter("upload.files"));
+
+        final MetricsMBean mBean = new MetricsMBean(registry);
+        Assert.assertEquals(3L, mBean.getAttribute("upload.files"));
+        Assert.assertEquals(7L, mBean.getAttribute("queue.upload"));
+        Assert.assertEquals(1L, mBean.getAttribute("upload.zip.count"));
+        Assert.assertEquals(5000L, mBean.getAttribute("upload.zip.meanMicros"));
+
+        final Set<String> names = new HashSet<String>();
+        for (final MBeanAttributeInfo attributeInfo : mBean.getMBeanInfo().getAttributes()) {
+            names.add(attributeInfo.getName());
+        }
+        Assert.assertTrue(names.contains("upload.files"));
+        Assert.assertTrue(names.contains("queue.upload"));
+        Assert.assertTrue(names.contains("upload.zip.p99Micros"));
+
+        try {
+            mBean.getAttribute("upload.unknown");
+            Assert.fail();
+        } catch (AttributeNotFoundException e) {
+        }
+    }
+}
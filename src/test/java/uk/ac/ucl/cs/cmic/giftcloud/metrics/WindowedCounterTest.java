@@ -0,0 +1,44 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+
+package uk.ac.ucl.cs.cmic.giftcloud.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class WindowedCounterTest {
+
+    @Test
+    public void testWindows() {
+        final WindowedCounter counter = new WindowedCounter(1000, 60);
+        final long start = 1000000;
+
+        counter.add(5, start);
+        counter.add(2, start + 10000);
+        counter.add(1, start + 30000);
+
+        Assert.assertEquals(1, counter.getCount(1000, start + 30000));
+        Assert.assertEquals(3, counter.getCount(30000, start + 30000));
+        Assert.assertEquals(8, counter.getCount(60000, start + 30000));
+
+        // Old buckets fall out of the window and are reused
+        Assert.assertEquals(3, counter.getCount(60000, start + 65000));
+        counter.add(4, start + 70000);
+        Assert.assertEquals(5, counter.getCount(60000, start + 70000));
+        Assert.assertEquals(0, counter.getCount(60000, start + 200000));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWindowTooLong() {
+        new WindowedCounter(1000, 60).getCount(120000);
+    }
+}
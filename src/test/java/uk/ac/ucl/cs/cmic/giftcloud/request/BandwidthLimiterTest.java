@@ -0,0 +1,142 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+
+package uk.ac.ucl.cs.cmic.giftcloud.request;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.Calendar;
+
+public class BandwidthLimiterTest {
+
+    @Test
+    public void testDefaultIsUnlimited() throws Exception {
+        final BandwidthLimiter limiter = new BandwidthLimiter();
+        Assert.assertEquals(BandwidthSchedule.UNLIMITED, limiter.getBytesPerSecond());
+
+        // Acquiring any number of bytes does not block
+        final long start = System.nanoTime();
+        limiter.acquire(100 * 1024 * 1024);
+        Assert.assertTrue(System.nanoTime() - start < 100000000L);
+    }
+
+    @Test
+    public void testScheduleParsing() {
+        final BandwidthLimiter limiter = new BandwidthLimiter();
+        limiter.setSchedule("128");
+        Assert.assertEquals(128 * 1024, limiter.getBytesPerSecond());
+        limiter.setSchedule("");
+        Assert.assertEquals(BandwidthSchedule.UNLIMITED, limiter.getBytesPerSecond());
+        limiter.setSchedule((String) null);
+        Assert.assertEquals(BandwidthSchedule.UNLIMITED, limiter.getBytesPerSecond());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidScheduleIsRejected() {
+        new BandwidthLimiter().setSchedule("08:00-18:00=fast");
+    }
+
+    @Test
+    public void testInvalidScheduleLeavesPreviousRate() {
+        final BandwidthLimiter limiter = new BandwidthLimiter();
+        limiter.setSchedule("64");
+        try {
+            limiter.setSchedule("25:00-26:00=1");
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        Assert.assertEquals(64 * 1024, limiter.getBytesPerSecond());
+    }
+
+    @Test
+    public void testWindowContainingCurrentTimeIsSelected() {
+        // The windows are built around the current hour, so the window before and the window after this hour are used
+        // for the other rates. Each window is two hours wide so the test does not depend on the current minute
+        final int hour = Calendar.getInstance().get(Calendar.HOUR_OF_DAY);
+        final String currentWindow = time(hour - 1) + "-" + time(hour + 1);
+        final String laterWindow = time(hour + 1) + "-" + time(hour + 3);
+        final String earlierWindow = time(hour - 3) + "-" + time(hour - 1);
+
+        final BandwidthLimiter limiter = new BandwidthLimiter();
+        limiter.setSchedule(earlierWindow + "=10;" + currentWindow + "=20;" + laterWindow + "=30");
+        Assert.assertEquals(20 * 1024, limiter.getBytesPerSecond());
+
+        // Times not covered by any window are not limited
+        limiter.setSchedule(earlierWindow + "=10;" + laterWindow + "=30");
+        Assert.assertEquals(BandwidthSchedule.UNLIMITED, limiter.getBytesPerSecond());
+
+        // A schedule object replaces a schedule string
+        limiter.setSchedule(BandwidthSchedule.parse(currentWindow + "=40"));
+        Assert.assertEquals(40 * 1024, limiter.getBytesPerSecond());
+    }
+
+    @Test
+    public void testThrottledWriteRate() throws Exception {
+        final int bytesPerSecond = 256 * 1024;
+        final BandwidthLimiter limiter = new BandwidthLimiter();
+        limiter.setSchedule("256");
+
+        // The bucket holds at most one second of tokens, so writing three seconds' worth of data should take between two
+        // and three seconds, plus some allowance for scheduling
+        final byte[] data = new byte[3 * bytesPerSecond];
+        final ByteArrayOutputStream destination = new ByteArrayOutputStream();
+        final OutputStream outputStream = new ThrottledOutputStream(destination, limiter);
+        final long start = System.nanoTime();
+        outputStream.write(data);
+        outputStream.close();
+        final double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+        Assert.assertEquals(data.length, destination.size());
+        Assert.assertTrue("Elapsed " + elapsedSeconds, elapsedSeconds >= 1.9);
+        Assert.assertTrue("Elapsed " + elapsedSeconds, elapsedSeconds <= 3.5);
+    }
+
+    @Test
+    public void testParallelWritesShareTheRate() throws Exception {
+        final int bytesPerSecond = 256 * 1024;
+        final BandwidthLimiter limiter = new BandwidthLimiter();
+        limiter.setSchedule("256");
+
+        // Two streams each writing 1.5 seconds' worth must together take at least as long as one stream writing it all
+        final Thread[] threads = new Thread[2];
+        for (int index = 0; index < threads.length; index++) {
+            threads[index] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        new ThrottledOutputStream(new ByteArrayOutputStream(), limiter).write(new byte[3 * bytesPerSecond / 2]);
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+        }
+        final long start = System.nanoTime();
+        for (final Thread thread : threads) {
+            thread.start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        final double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        Assert.assertTrue("Elapsed " + elapsedSeconds, elapsedSeconds >= 1.9);
+        Assert.assertTrue("Elapsed " + elapsedSeconds, elapsedSeconds <= 3.5);
+    }
+
+    private static String time(final int hour) {
+        return String.format("%02d:00", (hour + 24) % 24);
+    }
+}
@@ -0,0 +1,87 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+
+package uk.ac.ucl.cs.cmic.giftcloud.request;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Calendar;
+
+public class BandwidthScheduleTest {
+
+    @Test
+    public void testBlankScheduleIsUnlimited() {
+        Assert.assertEquals(BandwidthSchedule.UNLIMITED, BandwidthSchedule.parse("").getBytesPerSecond(time(12, 0)));
+        Assert.assertEquals(BandwidthSchedule.UNLIMITED, BandwidthSchedule.parse(null).getBytesPerSecond(time(12, 0)));
+        Assert.assertEquals(BandwidthSchedule.UNLIMITED, BandwidthSchedule.unlimited().getBytesPerSecond(time(12, 0)));
+    }
+
+    @Test
+    public void testSingleRate() {
+        final BandwidthSchedule schedule = BandwidthSchedule.parse("100");
+        Assert.assertEquals(100 * 1024, schedule.getBytesPerSecond(time(0, 0)));
+        Assert.assertEquals(100 * 1024, schedule.getBytesPerSecond(time(23, 59)));
+    }
+
+    @Test
+    public void testWindows() {
+        final BandwidthSchedule schedule = BandwidthSchedule.parse("08:00-18:00=256;18:00-08:00=0");
+        Assert.assertEquals(256 * 1024, schedule.getBytesPerSecond(time(8, 0)));
+        Assert.assertEquals(256 * 1024, schedule.getBytesPerSecond(time(17, 59)));
+        Assert.assertEquals(BandwidthSchedule.UNLIMITED, schedule.getBytesPerSecond(time(18, 0)));
+        Assert.assertEquals(BandwidthSchedule.UNLIMITED, schedule.getBytesPerSecond(time(3, 0)));
+        Assert.assertEquals(BandwidthSchedule.UNLIMITED, schedule.getBytesPerSecond(time(7, 59)));
+    }
+
+    @Test
+    public void testWindowWrappingMidnight() {
+        final BandwidthSchedule schedule = BandwidthSchedule.parse("22:00-06:00=10");
+        Assert.assertEquals(10 * 1024, schedule.getBytesPerSecond(time(23, 0)));
+        Assert.assertEquals(10 * 1024, schedule.getBytesPerSecond(time(5, 59)));
+        Assert.assertEquals(BandwidthSchedule.UNLIMITED, schedule.getBytesPerSecond(time(6, 0)));
+        Assert.assertEquals(BandwidthSchedule.UNLIMITED, schedule.getBytesPerSecond(time(21, 59)));
+    }
+
+    @Test
+    public void testFirstMatchingWindowIsUsed() {
+        final BandwidthSchedule schedule = BandwidthSchedule.parse("09:00-10:00=5; 00:00-24:00=50");
+        Assert.assertEquals(5 * 1024, schedule.getBytesPerSecond(time(9, 30)));
+        Assert.assertEquals(50 * 1024, schedule.getBytesPerSecond(time(10, 30)));
+    }
+
+    @Test
+    public void testInvalidSchedules() {
+        assertInvalid("abc");
+        assertInvalid("-5");
+        assertInvalid("08:00=5");
+        assertInvalid("08:00-25:00=5");
+        assertInvalid("08:00-09:60=5");
+        assertInvalid("08:00-09:00=x");
+        assertInvalid("08:00-09:00=5=6");
+    }
+
+    private static void assertInvalid(final String scheduleString) {
+        try {
+            BandwidthSchedule.parse(scheduleString);
+            Assert.fail("Expected schedule " + scheduleString + " to be rejected");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    private static Calendar time(final int hours, final int minutes) {
+        final Calendar calendar = Calendar.getInstance();
+        calendar.set(Calendar.HOUR_OF_DAY, hours);
+        calendar.set(Calendar.MINUTE, minutes);
+        return calendar;
+    }
+}
@@ -16,6 +16,8 @@ import junit.framework.Assert;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import uk.ac.ucl.cs.cmic.giftcloud.httpconnection.HttpConnectionBuilder;
 import uk.ac.ucl.cs.cmic.giftcloud.httpconnection.HttpConnectionFactory;
 import uk.ac.ucl.cs.cmic.giftcloud.httpconnection.HttpConnectionWrapper;
@@ -25,9 +27,12 @@ import uk.ac.ucl.cs.cmic.giftcloud.uploadapp.GiftCloudReporterFromApplication;
 import uk.ac.ucl.cs.cmic.giftcloud.util.Optional;
 
 import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.net.PasswordAuthentication;
 import java.nio.charset.Charset;
-import java.util.concurrent.CancellationException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
 
 import static java.net.HttpURLConnection.HTTP_OK;
 import static java.net.HttpURLConnection.HTTP_UNAUTHORIZED;
@@ -278,6 +283,74 @@ public class GiftCloudAuthenticationTest {
         verify(userCallback, times(2)).getPasswordAuthentication("Please enter your GIFT-Cloud login details.");
     }
 
+    @Test
+    public void testConcurrentReauthentication() throws Exception {
+
+        // Requests which fail authorisation at the same time should only cause the user to be asked to log in once
+
+        final String urlString = "http://UrlOne";
+        final String cookieString = "CookieOne";
+        final Optional<String> emptyOptional = Optional.empty();
+        final Optional<char[]> emptyOptionalArray = Optional.empty();
+        final int numberOfThreads = 4;
+
+        final HttpConnectionWrapper connectionWrapper = mock(HttpConnectionWrapper.class);
+        when(connectionWrapper.getResponseCode()).thenReturn(HTTP_OK);
+        when(connectionWrapper.getInputStream()).thenAnswer(new Answer<InputStream>() {
+            @Override
+            public InputStream answer(final InvocationOnMock invocation) {
+                return new ByteArrayInputStream(cookieString.getBytes(UTF_8));
+            }
+        });
+
+        final HttpConnectionFactory connectionFactory = mock(HttpConnectionFactory.class);
+        when(connectionFactory.createConnection(anyString(), any(HttpConnectionBuilder.class))).thenReturn(connectionWrapper);
+
+        final GiftCloudProperties giftCloudProperties = mock(GiftCloudProperties.class);
+        when(giftCloudProperties.getUserAgentString()).thenReturn("TestUserAgent");
+        when(giftCloudProperties.getSessionCookie()).thenReturn(emptyOptional);
+        when(giftCloudProperties.getLastUserName()).thenReturn(emptyOptional);
+        when(giftCloudProperties.getLastPassword()).thenReturn(emptyOptionalArray);
+
+        final UserCallback userCallback = mock(UserCallback.class);
+        doReturn(new PasswordAuthentication("UserName", "Password".toCharArray())).when(userCallback).getPasswordAuthentication(PasswordAuthenticationWrapper.FIRST_LOGIN_MESSAGE);
+
+        final GiftCloudReporterFromApplication reporter = mock(GiftCloudReporterFromApplication.class);
+        final GiftCloudAuthentication authentication = new GiftCloudAuthentication(urlString, connectionFactory, userCallback, giftCloudProperties, reporter);
+
+        // All the requests were made with the same session, and then failed
+        final long failedAttempt = authentication.getAuthenticationAttempt();
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+        try {
+            final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (int thread = 0; thread < numberOfThreads; thread++) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        startLatch.await();
+                        authentication.reauthenticate(failedAttempt);
+                        return null;
+                    }
+                }));
+            }
+            startLatch.countDown();
+            for (final Future<Void> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        verify(userCallback, times(1)).getPasswordAuthentication(PasswordAuthenticationWrapper.FIRST_LOGIN_MESSAGE);
+        Assert.assertEquals(failedAttempt + 1, authentication.getAuthenticationAttempt());
+
+        // A request which fails with the new session causes another authentication attempt, which can use the new cookie
+        authentication.reauthenticate(authentication.getAuthenticationAttempt());
+        Assert.assertEquals(failedAttempt + 2, authentication.getAuthenticationAttempt());
+        verify(userCallback, times(1)).getPasswordAuthentication(PasswordAuthenticationWrapper.FIRST_LOGIN_MESSAGE);
+    }
+
     @Test
     public void testGetAuthenticatedConnectionFactory() throws Exception {
 
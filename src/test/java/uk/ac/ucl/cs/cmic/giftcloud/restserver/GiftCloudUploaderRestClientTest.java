@@ -0,0 +1,49 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+
+package uk.ac.ucl.cs.cmic.giftcloud.restserver;
+
+import org.junit.Assert;
+import org.junit.Test;
+import uk.ac.ucl.cs.cmic.giftcloud.request.BandwidthLimiter;
+import uk.ac.ucl.cs.cmic.giftcloud.request.BandwidthSchedule;
+import uk.ac.ucl.cs.cmic.giftcloud.request.ConnectionFactory;
+import uk.ac.ucl.cs.cmic.giftcloud.uploadapp.GiftCloudPropertiesFromApplication;
+import uk.ac.ucl.cs.cmic.giftcloud.uploader.InMemoryPropertyStore;
+import uk.ac.ucl.cs.cmic.giftcloud.util.GiftCloudReporter;
+
+import java.util.ResourceBundle;
+
+import static org.mockito.Mockito.mock;
+
+public class GiftCloudUploaderRestClientTest {
+
+    @Test
+    public void testChangedBandwidthScheduleIsUsedForTheNextUpload() throws Exception {
+        final GiftCloudReporter reporter = mock(GiftCloudReporter.class);
+        final GiftCloudProperties properties = new GiftCloudPropertiesFromApplication(new InMemoryPropertyStore(), ResourceBundle.getBundle("uk.ac.ucl.cs.cmic.giftcloud.GiftCloudUploader"), reporter);
+        final GiftCloudUploaderRestClient restClient = new GiftCloudUploaderRestClient("http://localhost", properties, mock(ConnectionFactory.class), new BandwidthLimiter(), mock(ServerCapabilities.class), mock(UserCallback.class), reporter);
+
+        Assert.assertEquals(BandwidthSchedule.UNLIMITED, restClient.getUpdatedBandwidthLimiter().getBytesPerSecond());
+
+        // The schedule is changed as the settings dialog would change it, while the client is in use
+        properties.setUploadBandwidthSchedule("128");
+        Assert.assertEquals(128 * 1024, restClient.getUpdatedBandwidthLimiter().getBytesPerSecond());
+
+        properties.setUploadBandwidthSchedule("256");
+        Assert.assertEquals(256 * 1024, restClient.getUpdatedBandwidthLimiter().getBytesPerSecond());
+
+        // An invalid schedule is ignored rather than preventing uploads
+        properties.setUploadBandwidthSchedule("not a schedule");
+        Assert.assertEquals(BandwidthSchedule.UNLIMITED, restClient.getUpdatedBandwidthLimiter().getBytesPerSecond());
+    }
+}
@@ -0,0 +1,78 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+
+package uk.ac.ucl.cs.cmic.giftcloud.restserver;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+
+/**
+ * Compares streaming and tree-based decoding of a large synthetic XNAT listing. This is not run as part of the test
+ * suite; run the main method directly, optionally giving the number of entries as the first argument
+ */
+public class JSONResultSetReaderBenchmark {
+
+    private static final int REPETITIONS = 10;
+
+    public static void main(final String[] args) throws Exception {
+        final int numberOfEntries = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+        final byte[] listing = JSONResultSetReaderTest.createListing(numberOfEntries).getBytes("UTF-8");
+        System.out.println("Listing of " + numberOfEntries + " entries, " + listing.length / 1024 + " KB");
+
+        // Warm up both decoders before timing them
+        for (int i = 0; i < 3; i++) {
+            decodeTree(listing);
+            decodeStreaming(listing);
+        }
+
+        report("Tree", listing, false);
+        report("Streaming", listing, true);
+    }
+
+    private static void report(final String name, final byte[] listing, final boolean streaming) throws Exception {
+        final Runtime runtime = Runtime.getRuntime();
+        long totalNanos = 0;
+        long peakHeapGrowth = 0;
+        for (int i = 0; i < REPETITIONS; i++) {
+            System.gc();
+            final long usedBefore = runtime.totalMemory() - runtime.freeMemory();
+            final long start = System.nanoTime();
+            final int size = streaming ? decodeStreaming(listing) : decodeTree(listing);
+            totalNanos += System.nanoTime() - start;
+            peakHeapGrowth = Math.max(peakHeapGrowth, runtime.totalMemory() - runtime.freeMemory() - usedBefore);
+            if (size == 0) {
+                throw new IllegalStateException("Nothing was decoded");
+            }
+        }
+        System.out.println(name + ": " + totalNanos / REPETITIONS / 1000000 + " ms per listing, up to " + peakHeapGrowth / (1024 * 1024) + " MB heap growth during decoding");
+    }
+
+    private static int decodeTree(final byte[] listing) throws Exception {
+        final JSONAliasesExtractor extractor = new JSONAliasesExtractor("label", "ID");
+        final JSONObject entity = new JSONObject(new JSONTokener(new InputStreamReader(new ByteArrayInputStream(listing), "UTF-8")));
+        final JSONArray entries = entity.getJSONObject("ResultSet").getJSONArray("Result");
+        for (int i = 0; i < entries.length(); i++) {
+            extractor.decode(entries.getJSONObject(i));
+        }
+        return extractor.getResult().size();
+    }
+
+    private static int decodeStreaming(final byte[] listing) throws Exception {
+        final JSONAliasesExtractor extractor = new JSONAliasesExtractor("label", "ID");
+        new JSONResultSetReader(new InputStreamReader(new ByteArrayInputStream(listing), "UTF-8")).decode(extractor);
+        return extractor.getResult().size();
+    }
+}
@@ -0,0 +1,97 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+
+package uk.ac.ucl.cs.cmic.giftcloud.restserver;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.Collection;
+import java.util.Map;
+
+public class JSONResultSetReaderTest {
+
+    @Test
+    public void testMatchesTreeDecoding() throws Exception {
+        final String listing = createListing(1000);
+
+        final JSONAliasesExtractor streamedAliases = new JSONAliasesExtractor("label", "ID");
+        new JSONResultSetReader(new StringReader(listing)).decode(streamedAliases);
+
+        final JSONAliasesExtractor treeAliases = new JSONAliasesExtractor("label", "ID");
+        final JSONArray entries = new JSONObject(listing).getJSONObject("ResultSet").getJSONArray("Result");
+        for (int i = 0; i < entries.length(); i++) {
+            treeAliases.decode(entries.getJSONObject(i));
+        }
+
+        Assert.assertEquals(1000, streamedAliases.getResult().size());
+        Assert.assertEquals(treeAliases.getResult(), streamedAliases.getResult());
+    }
+
+    @Test
+    public void testKeysInAnyOrder() throws Exception {
+        final String listing = "{\"other\": {\"Result\": [{\"ID\": \"wrong\"}]}, \"ResultSet\": {\"totalRecords\": \"2\", \"Columns\": [1, 2], \"Result\": [{\"ID\": \"a\"}, {\"ID\": \"b\", \"nested\": {\"x\": [1]}}], \"title\": \"t\"}, \"after\": 1}";
+        final JSONValuesExtractor extractor = new JSONValuesExtractor("ID");
+        new JSONResultSetReader(new StringReader(listing)).decode(extractor);
+        final Collection<String> result = extractor.getResult();
+        Assert.assertEquals(2, result.size());
+        Assert.assertTrue(result.contains("a"));
+        Assert.assertTrue(result.contains("b"));
+    }
+
+    @Test
+    public void testEmptyResult() throws Exception {
+        final JSONAliasesExtractor extractor = new JSONAliasesExtractor("label", "ID");
+        new JSONResultSetReader(new StringReader("{\"ResultSet\":{\"Result\":[]}}")).decode(extractor);
+        final Map<String, String> result = extractor.getResult();
+        Assert.assertTrue(result.isEmpty());
+    }
+
+    @Test(expected = JSONException.class)
+    public void testMissingResultSet() throws Exception {
+        new JSONResultSetReader(new StringReader("{\"Other\":{\"Result\":[]}}")).decode(new JSONValuesExtractor("ID"));
+    }
+
+    @Test(expected = JSONException.class)
+    public void testMissingResult() throws Exception {
+        new JSONResultSetReader(new StringReader("{\"ResultSet\":{}}")).decode(new JSONValuesExtractor("ID"));
+    }
+
+    @Test(expected = JSONException.class)
+    public void testEntryWhichIsNotAnObject() throws Exception {
+        new JSONResultSetReader(new StringReader("{\"ResultSet\":{\"Result\":[{\"ID\":\"a\"}, \"b\"]}}")).decode(new JSONValuesExtractor("ID"));
+    }
+
+    @Test(expected = JSONException.class)
+    public void testTruncatedListing() throws Exception {
+        new JSONResultSetReader(new StringReader("{\"ResultSet\":{\"Result\":[{\"ID\":\"a\"}, {\"ID\":")).decode(new JSONValuesExtractor("ID"));
+    }
+
+    static String createListing(final int numberOfEntries) {
+        final StringBuilder listing = new StringBuilder();
+        listing.append("{\"ResultSet\":{\"totalRecords\":\"").append(numberOfEntries).append("\",\"Result\":[");
+        for (int i = 0; i < numberOfEntries; i++) {
+            if (i > 0) {
+                listing.append(',');
+            }
+            listing.append("{\"project\":\"PROJECT\",\"insert_user\":\"user\",\"ID\":\"XNAT_S").append(i);
+            listing.append("\",\"label\":\"Subject").append(i);
+            listing.append("\",\"insert_date\":\"2015-01-01 12:00:00.0\",\"URI\":\"/data/subjects/XNAT_S").append(i).append("\"}");
+        }
+        listing.append("]}}");
+        return listing.toString();
+    }
+}
@@ -0,0 +1,91 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+
+package uk.ac.ucl.cs.cmic.giftcloud.restserver;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.ac.ucl.cs.cmic.giftcloud.util.GiftCloudReporter;
+import uk.ac.ucl.cs.cmic.giftcloud.util.Optional;
+
+import java.io.IOException;
+import java.util.Map;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class SeriesImportFilterApplicatorRetrieverTest {
+
+    private static final String PROJECT = "ProjectOne";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testRefreshReplacesChangedFilters() throws Exception {
+        final GiftCloudServer server = mock(GiftCloudServer.class);
+        when(server.getSitewideSeriesImportFilter()).thenReturn(SeriesImportFilterTest.createContents(SeriesImportFilter.MODE_BLACKLIST, ".*localizer.*"));
+        when(server.getProjectSeriesImportFilter(PROJECT)).thenReturn(SeriesImportFilterTest.createContents(SeriesImportFilter.MODE_BLACKLIST, "scout"));
+        final SeriesImportFilterCache cache = new SeriesImportFilterCache(temporaryFolder.getRoot(), mock(GiftCloudReporter.class));
+        final SeriesImportFilterApplicatorRetriever retriever = new SeriesImportFilterApplicatorRetriever(server, Optional.of(PROJECT), cache, mock(GiftCloudReporter.class));
+        Assert.assertFalse(retriever.checkSeries("Localizer"));
+        Assert.assertFalse(retriever.checkSeries("Scout"));
+        Assert.assertTrue(retriever.checkSeries("Dose"));
+
+        Assert.assertFalse(retriever.refresh(server));
+
+        when(server.getProjectSeriesImportFilter(PROJECT)).thenReturn(SeriesImportFilterTest.createContents(SeriesImportFilter.MODE_BLACKLIST, "dose"));
+        Assert.assertTrue(retriever.refresh(server));
+        Assert.assertFalse(retriever.checkSeries("Localizer"));
+        Assert.assertTrue(retriever.checkSeries("Scout"));
+        Assert.assertFalse(retriever.checkSeries("Dose"));
+    }
+
+    @Test
+    public void testFailedRefreshKeepsCurrentFilters() throws Exception {
+        final GiftCloudServer server = mock(GiftCloudServer.class);
+        when(server.getSitewideSeriesImportFilter()).thenReturn(SeriesImportFilterTest.createContents(SeriesImportFilter.MODE_BLACKLIST, "scout"));
+        final SeriesImportFilterCache cache = new SeriesImportFilterCache(temporaryFolder.getRoot(), mock(GiftCloudReporter.class));
+        final SeriesImportFilterApplicatorRetriever retriever = new SeriesImportFilterApplicatorRetriever(server, Optional.<String>empty(), cache, mock(GiftCloudReporter.class));
+
+        when(server.getSitewideSeriesImportFilter()).thenThrow(new IOException("Server unavailable"));
+        try {
+            retriever.refresh(server);
+            Assert.fail();
+        } catch (IOException e) {
+        }
+        Assert.assertFalse(retriever.checkSeries("Scout"));
+    }
+
+    @Test
+    public void testLocalCopiesAreUsedWhenServerIsUnavailable() throws Exception {
+        final GiftCloudServer server = mock(GiftCloudServer.class);
+        when(server.getSitewideSeriesImportFilter()).thenReturn(Optional.<Map<String, String>>empty());
+        when(server.getProjectSeriesImportFilter(PROJECT)).thenReturn(SeriesImportFilterTest.createContents(SeriesImportFilter.MODE_WHITELIST, "t1.*"));
+        new SeriesImportFilterApplicatorRetriever(server, Optional.of(PROJECT), new SeriesImportFilterCache(temporaryFolder.getRoot(), mock(GiftCloudReporter.class)), mock(GiftCloudReporter.class));
+
+        final GiftCloudServer unavailableServer = mock(GiftCloudServer.class);
+        when(unavailableServer.getSitewideSeriesImportFilter()).thenThrow(new IOException("Server unavailable"));
+        final SeriesImportFilterApplicatorRetriever retriever = new SeriesImportFilterApplicatorRetriever(unavailableServer, Optional.of(PROJECT), new SeriesImportFilterCache(temporaryFolder.getRoot(), mock(GiftCloudReporter.class)), mock(GiftCloudReporter.class));
+        Assert.assertTrue(retriever.checkSeries("T1_MPRAGE"));
+        Assert.assertFalse(retriever.checkSeries("Scout"));
+
+        // Without local copies for the project, the failure is reported
+        try {
+            new SeriesImportFilterApplicatorRetriever(unavailableServer, Optional.of("OtherProject"), new SeriesImportFilterCache(temporaryFolder.getRoot(), mock(GiftCloudReporter.class)), mock(GiftCloudReporter.class));
+            Assert.fail();
+        } catch (IOException e) {
+        }
+    }
+}
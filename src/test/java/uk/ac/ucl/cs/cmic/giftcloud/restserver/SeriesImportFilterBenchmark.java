@@ -0,0 +1,120 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+
+package uk.ac.ucl.cs.cmic.giftcloud.restserver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Compares testing series descriptions against each filter expression in turn with testing them against the combined
+ * expression used by {@link SeriesImportFilter}. This is not run as part of the test suite; run the main method
+ * directly, optionally giving the number of additional site-specific expressions as the first argument
+ */
+public class SeriesImportFilterBenchmark {
+
+    private static final int REPETITIONS = 10;
+    private static final int DESCRIPTIONS_PER_REPETITION = 50000;
+
+    private static final String[] DESCRIPTIONS = {
+            "3-plane Localizer", "AAScout", "t1_mprage_sag_p2_iso", "t2_tse_tra", "t2_flair_tra_fs", "ep2d_diff_mddw_30",
+            "ep2d_diff_mddw_30_ADC", "ep2d_diff_mddw_30_FA", "ep2d_diff_mddw_30_TRACEW", "ep2d_bold_rest", "MoCoSeries",
+            "gre_field_mapping", "PhoenixZIPReport", "Dose Report", "Screen Save", "SWI_Images", "Mag_Images", "Pha_Images",
+            "T1 MPR COR", "AX T2 FRFSE", "Sag CUBE FLAIR", "ASSET Calibration", "Patient Protocol", "Exam Summary", "",
+            "Head 5.0 H30s", "Thorax 1.0 B70f", "Topogram 0.6 T20s", "KEY_IMAGES", "US Abdomen", null
+    };
+
+    public static void main(final String[] args) throws Exception {
+        final int numberOfSiteExpressions = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+
+        report("Typical list (" + SeriesImportFilterTest.TYPICAL_FILTER_LIST.split("\n").length + " expressions)", SeriesImportFilterTest.TYPICAL_FILTER_LIST);
+
+        // Long lists are generated by sites which exclude research protocols individually
+        final StringBuilder longList = new StringBuilder(SeriesImportFilterTest.TYPICAL_FILTER_LIST);
+        for (int index = 0; index < numberOfSiteExpressions; index++) {
+            longList.append(String.format("\n.*study%03d_(?:pilot|qa)_.*", index));
+        }
+        report("Long list (" + longList.toString().split("\n").length + " expressions)", longList.toString());
+    }
+
+    private static void report(final String name, final String list) {
+        final List<Pattern> separatePatterns = new ArrayList<Pattern>();
+        for (final String filter : list.trim().split("\n")) {
+            separatePatterns.add(Pattern.compile(filter, Pattern.CASE_INSENSITIVE));
+        }
+        final SeriesImportFilter combinedFilter = new SeriesImportFilter(SeriesImportFilterTest.createContents(SeriesImportFilter.MODE_BLACKLIST, list));
+
+        // Both approaches must give the same decisions
+        for (final String description : DESCRIPTIONS) {
+            if (allowSeparately(separatePatterns, description) != combinedFilter.allow(description)) {
+                throw new IllegalStateException("The combined filter gives a different decision for " + description);
+            }
+        }
+
+        // Warm up both approaches before timing them
+        for (int i = 0; i < 3; i++) {
+            timeSeparate(separatePatterns);
+            timeCombined(combinedFilter);
+        }
+
+        long separateNanos = 0;
+        long combinedNanos = 0;
+        for (int i = 0; i < REPETITIONS; i++) {
+            separateNanos += timeSeparate(separatePatterns);
+            combinedNanos += timeCombined(combinedFilter);
+        }
+        System.out.println(String.format("%s: separate %.0f ns, combined %.0f ns per description", name, (double) separateNanos / REPETITIONS / DESCRIPTIONS_PER_REPETITION, (double) combinedNanos / REPETITIONS / DESCRIPTIONS_PER_REPETITION));
+    }
+
+    private static long timeSeparate(final List<Pattern> patterns) {
+        int allowed = 0;
+        final long start = System.nanoTime();
+        for (int index = 0; index < DESCRIPTIONS_PER_REPETITION; index++) {
+            if (allowSeparately(patterns, DESCRIPTIONS[index % DESCRIPTIONS.length])) {
+                allowed++;
+            }
+        }
+        final long elapsed = System.nanoTime() - start;
+        if (allowed == 0) {
+            throw new IllegalStateException("Nothing was allowed");
+        }
+        return elapsed;
+    }
+
+    private static long timeCombined(final SeriesImportFilter filter) {
+        int allowed = 0;
+        final long start = System.nanoTime();
+        for (int index = 0; index < DESCRIPTIONS_PER_REPETITION; index++) {
+            if (filter.allow(DESCRIPTIONS[index % DESCRIPTIONS.length])) {
+                allowed++;
+            }
+        }
+        final long elapsed = System.nanoTime() - start;
+        if (allowed == 0) {
+            throw new IllegalStateException("Nothing was allowed");
+        }
+        return elapsed;
+    }
+
+    /**
+     * The blacklist decision made by testing each expression in turn
+     */
+    private static boolean allowSeparately(final List<Pattern> patterns, final String seriesDescription) {
+        for (final Pattern pattern : patterns) {
+            if (pattern.matcher(seriesDescription == null ? "" : seriesDescription).matches()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
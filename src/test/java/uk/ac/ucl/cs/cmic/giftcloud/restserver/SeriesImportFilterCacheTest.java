@@ -0,0 +1,85 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+
+package uk.ac.ucl.cs.cmic.giftcloud.restserver;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.ac.ucl.cs.cmic.giftcloud.util.GiftCloudReporter;
+import uk.ac.ucl.cs.cmic.giftcloud.util.Optional;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.mockito.Mockito.mock;
+
+public class SeriesImportFilterCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testFiltersAreSharedByContent() throws Exception {
+        final SeriesImportFilterCache cache = new SeriesImportFilterCache(temporaryFolder.getRoot(), mock(GiftCloudReporter.class));
+        final SeriesImportFilter filter = cache.getFilter(SeriesImportFilterTest.createContents(SeriesImportFilter.MODE_BLACKLIST, "scout"));
+        Assert.assertSame(filter, cache.getFilter(SeriesImportFilterTest.createContents(SeriesImportFilter.MODE_BLACKLIST, "scout")));
+        Assert.assertNotSame(filter, cache.getFilter(SeriesImportFilterTest.createContents(SeriesImportFilter.MODE_WHITELIST, "scout")));
+    }
+
+    @Test
+    public void testLocalCopies() throws Exception {
+        final File folder = new File(temporaryFolder.getRoot(), "filters");
+        final SeriesImportFilterCache cache = new SeriesImportFilterCache(folder, mock(GiftCloudReporter.class));
+        Assert.assertFalse(cache.load("sitewide").isPresent());
+
+        final Optional<Map<String, String>> contents = SeriesImportFilterTest.createContents(SeriesImportFilter.MODE_WHITELIST, "t1.*\nflair");
+        cache.save("sitewide", contents);
+        cache.save("project_A/B", Optional.<Map<String, String>>empty());
+
+        // A new cache reads the copies written by the previous one
+        final SeriesImportFilterCache newCache = new SeriesImportFilterCache(folder, mock(GiftCloudReporter.class));
+        final SeriesImportFilter siteWideFilter = newCache.load("sitewide").get();
+        Assert.assertEquals(SeriesImportFilter.computeContentHash(contents), siteWideFilter.getContentHash());
+        Assert.assertTrue(siteWideFilter.allow("FLAIR"));
+        Assert.assertFalse(siteWideFilter.allow("scout"));
+        Assert.assertFalse(newCache.load("project_A/B").get().isEnabled());
+
+        // Saving again replaces the previous copy
+        cache.save("sitewide", SeriesImportFilterTest.createContents(SeriesImportFilter.MODE_BLACKLIST, "scout"));
+        Assert.assertFalse(newCache.load("sitewide").get().allow("scout"));
+    }
+
+    @Test
+    public void testMissingModeIsPreserved() throws Exception {
+        final SeriesImportFilterCache cache = new SeriesImportFilterCache(temporaryFolder.getRoot(), mock(GiftCloudReporter.class));
+        final Map<String, String> contents = new HashMap<String, String>();
+        contents.put("list", "scout");
+        cache.save("sitewide", Optional.of(contents));
+        Assert.assertEquals(SeriesImportFilter.computeContentHash(Optional.of(contents)), cache.load("sitewide").get().getContentHash());
+    }
+
+    @Test
+    public void testUnreadableCopyIsIgnored() throws Exception {
+        final SeriesImportFilterCache cache = new SeriesImportFilterCache(temporaryFolder.getRoot(), mock(GiftCloudReporter.class));
+        final FileOutputStream outputStream = new FileOutputStream(new File(temporaryFolder.getRoot(), "sitewide.json"));
+        try {
+            outputStream.write("{\"enabled\": tr".getBytes("UTF-8"));
+        } finally {
+            outputStream.close();
+        }
+        Assert.assertFalse(cache.load("sitewide").isPresent());
+    }
+}
@@ -0,0 +1,114 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+
+package uk.ac.ucl.cs.cmic.giftcloud.restserver;
+
+import org.junit.Assert;
+import org.junit.Test;
+import uk.ac.ucl.cs.cmic.giftcloud.util.Optional;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.PatternSyntaxException;
+
+public class SeriesImportFilterTest {
+
+    /**
+     * Series import filters of the kind typically used to exclude non-image and derived series
+     */
+    static final String TYPICAL_FILTER_LIST = ".*localizer.*\n.*scout.*\n.*survey.*\n.*AAScout.*\n.*PhoenixZIPReport.*\n.*Phoenix Document.*\n.*Dose Report.*\n.*screen ?save.*\n.*MoCoSeries.*\n.*_ADC$\n.*_FA$\n.*_TRACEW$\n.*ColFA.*\n.*derived.*\n.*MPR.*\n.*3D.*Reformat.*\nSR[_ ].*\n.*Patient Protocol.*\n.*Exam Summary.*\n.*KEY_IMAGES.*";
+
+    @Test
+    public void testDisabledFilterAllowsEverything() {
+        final SeriesImportFilter filter = new SeriesImportFilter(Optional.<Map<String, String>>empty());
+        Assert.assertFalse(filter.isEnabled());
+        Assert.assertTrue(filter.allow("Localizer"));
+        Assert.assertTrue(filter.allow(null));
+    }
+
+    @Test
+    public void testBlacklist() {
+        final SeriesImportFilter filter = new SeriesImportFilter(createContents(SeriesImportFilter.MODE_BLACKLIST, TYPICAL_FILTER_LIST));
+        Assert.assertFalse(filter.allow("3-plane Localizer"));
+        Assert.assertFalse(filter.allow("SCREEN SAVE"));
+        Assert.assertFalse(filter.allow("ep2d_diff_ADC"));
+        Assert.assertFalse(filter.allow("SR_1"));
+        Assert.assertTrue(filter.allow("t1_se_sag"));
+        Assert.assertTrue(filter.allow("ep2d_diff_ADC_2"));
+        Assert.assertTrue(filter.allow("Reformat 3"));
+        Assert.assertTrue(filter.allow(null));
+        Assert.assertEquals(0, filter.getNumberOfSeparatePatterns());
+    }
+
+    @Test
+    public void testWhitelistMatchesWholeDescription() {
+        final SeriesImportFilter filter = new SeriesImportFilter(createContents(SeriesImportFilter.MODE_WHITELIST, "t1.*\nflair"));
+        Assert.assertTrue(filter.allow("T1_MPRAGE"));
+        Assert.assertTrue(filter.allow("FLAIR"));
+        Assert.assertFalse(filter.allow("axial FLAIR"));
+        Assert.assertFalse(filter.allow(null));
+    }
+
+    @Test
+    public void testMissingModeIsBlacklist() {
+        final Map<String, String> contents = new HashMap<String, String>();
+        contents.put("list", "scout");
+        final SeriesImportFilter filter = new SeriesImportFilter(Optional.of(contents));
+        Assert.assertEquals(SeriesImportFilter.MODE_BLACKLIST, filter.getMode());
+        Assert.assertFalse(filter.allow("Scout"));
+        Assert.assertTrue(filter.allow("T2"));
+    }
+
+    @Test
+    public void testInlineFlagsApplyOnlyToTheirOwnExpression() {
+        final SeriesImportFilter filter = new SeriesImportFilter(createContents(SeriesImportFilter.MODE_BLACKLIST, "(?-i)SCOUT\ndose"));
+        Assert.assertFalse(filter.allow("SCOUT"));
+        Assert.assertTrue(filter.allow("scout"));
+        Assert.assertFalse(filter.allow("DOSE"));
+    }
+
+    @Test
+    public void testExpressionsWhichCannotBeCombined() {
+        final SeriesImportFilter filter = new SeriesImportFilter(createContents(SeriesImportFilter.MODE_BLACKLIST, "(a)\\1\n\\Qx|y\n(?x) dose # comment\n(?<n>b)\n(?<n>c)"));
+        Assert.assertFalse(filter.allow("aa"));
+        Assert.assertTrue(filter.allow("ab"));
+        Assert.assertFalse(filter.allow("x|y"));
+        Assert.assertTrue(filter.allow("x"));
+        Assert.assertFalse(filter.allow("dose"));
+        Assert.assertFalse(filter.allow("b"));
+        Assert.assertFalse(filter.allow("c"));
+
+        // The two expressions which use the same group name are tested separately after the combination fails
+        Assert.assertEquals(5, filter.getNumberOfSeparatePatterns());
+    }
+
+    @Test(expected = PatternSyntaxException.class)
+    public void testInvalidExpression() {
+        new SeriesImportFilter(createContents(SeriesImportFilter.MODE_BLACKLIST, "scout\n(unclosed"));
+    }
+
+    @Test
+    public void testContentHash() {
+        final String hash = SeriesImportFilter.computeContentHash(createContents(SeriesImportFilter.MODE_BLACKLIST, "scout"));
+        Assert.assertEquals(hash, new SeriesImportFilter(createContents(SeriesImportFilter.MODE_BLACKLIST, "scout")).getContentHash());
+        Assert.assertFalse(hash.equals(SeriesImportFilter.computeContentHash(createContents(SeriesImportFilter.MODE_WHITELIST, "scout"))));
+        Assert.assertFalse(hash.equals(SeriesImportFilter.computeContentHash(createContents(SeriesImportFilter.MODE_BLACKLIST, "scout2"))));
+        Assert.assertFalse(hash.equals(SeriesImportFilter.computeContentHash(Optional.<Map<String, String>>empty())));
+    }
+
+    static Optional<Map<String, String>> createContents(final String mode, final String list) {
+        final Map<String, String> contents = new HashMap<String, String>();
+        contents.put("mode", mode);
+        contents.put("list", list);
+        return Optional.of(contents);
+    }
+}
@@ -0,0 +1,44 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+
+package uk.ac.ucl.cs.cmic.giftcloud.restserver;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ServerCapabilitiesTest {
+
+    @Test
+    public void testCapabilitiesAreInitiallySupported() {
+        final ServerCapabilities capabilities = new ServerCapabilities();
+        for (final ServerCapabilities.Capability capability : ServerCapabilities.Capability.values()) {
+            Assert.assertTrue(capabilities.isSupported(capability));
+        }
+    }
+
+    @Test
+    public void testBadRequestMarksCapabilityUnsupported() {
+        final ServerCapabilities capabilities = new ServerCapabilities();
+        capabilities.recordFailure(ServerCapabilities.Capability.SUBJECT_PSEUDONYMS, new GiftCloudHttpException(400, "Bad Request", "", ""));
+        Assert.assertFalse(capabilities.isSupported(ServerCapabilities.Capability.SUBJECT_PSEUDONYMS));
+        Assert.assertTrue(capabilities.isSupported(ServerCapabilities.Capability.EXPERIMENT_UIDS));
+        Assert.assertTrue(capabilities.isSupported(ServerCapabilities.Capability.SCAN_UIDS));
+    }
+
+    @Test
+    public void testOtherFailuresDoNotChangeCapabilities() {
+        final ServerCapabilities capabilities = new ServerCapabilities();
+        capabilities.recordFailure(ServerCapabilities.Capability.SCAN_UIDS, new GiftCloudHttpException(404, "Not Found", "", ""));
+        capabilities.recordFailure(ServerCapabilities.Capability.SCAN_UIDS, new GiftCloudHttpException(500, "Internal Server Error", "", ""));
+        Assert.assertTrue(capabilities.isSupported(ServerCapabilities.Capability.SCAN_UIDS));
+    }
+}
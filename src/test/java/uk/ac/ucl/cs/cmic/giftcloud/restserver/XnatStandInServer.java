@@ -0,0 +1,794 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+
+package uk.ac.ucl.cs.cmic.giftcloud.restserver;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.nrg.util.Base64;
+import uk.ac.ucl.cs.cmic.giftcloud.metrics.LatencyHistogram;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * An in-memory HTTP server which implements the subset of the XNAT REST API used by {@link GiftCloudUploaderRestClient}
+ *
+ * <p>This allows the real HTTP path, including authentication, session cookies and zip uploads, to be tested without
+ * an XNAT server. The server supports projects, subjects, experiments, scans, scan resources and the pseudonym and UID
+ * lookups used to map patient, study and series identifiers to labels. Uploaded zip files are read to count the files
+ * they contain, but the files themselves are discarded.
+ *
+ * <p>The server can simulate a slow or unreliable network: each request can be delayed, request bodies can be read at
+ * a limited rate, a proportion of requests can fail with HTTP 500, and all sessions can be expired so that clients
+ * must log in again.
+ */
+@SuppressWarnings("unchecked")
+public class XnatStandInServer {
+
+    private static final int BACKLOG = 50;
+    private static final int BUFFER_SIZE = 8192;
+    private static final String SESSION_COOKIE_NAME = "JSESSIONID";
+
+    private final String userName;
+    private final String password;
+
+    private final Map<String, Project> projects = new LinkedHashMap<String, Project>();
+    private final Set<String> sessions = new HashSet<String>();
+    private final Random random = new Random();
+
+    private volatile long latencyMs = 0;
+    private volatile long bandwidthBytesPerSecond = 0;
+    private volatile double failureProbability = 0;
+
+    private final LatencyHistogram requestLatency = new LatencyHistogram();
+    private final AtomicLong numberOfRequests = new AtomicLong();
+    private final AtomicLong numberOfInjectedFailures = new AtomicLong();
+    private final AtomicLong numberOfUploads = new AtomicLong();
+    private final AtomicLong numberOfUploadedFiles = new AtomicLong();
+    private final AtomicLong uploadedBytes = new AtomicLong();
+
+    private HttpServer server = null;
+    private ExecutorService executor = null;
+
+    /**
+     * @param userName the only user name which will be accepted
+     * @param password the password for this user
+     */
+    public XnatStandInServer(final String userName, final String password) {
+        this.userName = userName;
+        this.password = password;
+    }
+
+    /**
+     * Starts the server on a free port on the loopback interface
+     */
+    public synchronized void start() throws IOException {
+        if (server != null) {
+            return;
+        }
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getByName(null), 0), BACKLOG);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                handleRequest(exchange);
+            }
+        });
+
+        // Requests are delayed by sleeping, so each request needs its own thread in order for delays to overlap
+        executor = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("XNAT stand-in server %d").build());
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+            executor = null;
+        }
+    }
+
+    /**
+     * @return the URL of the server, which is used as the GIFT-Cloud server URL by clients
+     */
+    public synchronized String getUrl() {
+        if (server == null) {
+            throw new IllegalStateException("The server has not been started");
+        }
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Creates a project if it does not already exist
+     */
+    public void addProject(final String projectName) {
+        synchronized (projects) {
+            if (!projects.containsKey(projectName)) {
+                projects.put(projectName, new Project());
+            }
+        }
+    }
+
+    /**
+     * @param latencyMs the delay added to the start of every request
+     */
+    public void setLatencyMs(final long latencyMs) {
+        this.latencyMs = latencyMs;
+    }
+
+    /**
+     * @param bandwidthBytesPerSecond the rate at which each request body is read, or zero for no limit
+     */
+    public void setBandwidthBytesPerSecond(final long bandwidthBytesPerSecond) {
+        this.bandwidthBytesPerSecond = bandwidthBytesPerSecond;
+    }
+
+    /**
+     * @param failureProbability the probability between 0 and 1 that a request will fail with HTTP 500. Login requests are not failed
+     */
+    public void setFailureProbability(final double failureProbability) {
+        this.failureProbability = failureProbability;
+    }
+
+    /**
+     * Invalidates all sessions, so the next request from each client will be rejected and the client must log in again
+     */
+    public void expireSessions() {
+        synchronized (sessions) {
+            sessions.clear();
+        }
+    }
+
+    /**
+     * @return the time taken to process each request, including the added latency
+     */
+    public LatencyHistogram getRequestLatency() {
+        return requestLatency;
+    }
+
+    public long getNumberOfRequests() {
+        return numberOfRequests.get();
+    }
+
+    public long getNumberOfInjectedFailures() {
+        return numberOfInjectedFailures.get();
+    }
+
+    /**
+     * @return the number of zip files which have been uploaded successfully
+     */
+    public long getNumberOfUploads() {
+        return numberOfUploads.get();
+    }
+
+    /**
+     * @return the total number of files contained in the uploaded zip files
+     */
+    public long getNumberOfUploadedFiles() {
+        return numberOfUploadedFiles.get();
+    }
+
+    /**
+     * @return the total size of the uploaded zip files
+     */
+    public long getUploadedBytes() {
+        return uploadedBytes.get();
+    }
+
+    /**
+     * @return the subject labels in the project, or an empty list if there is no such project
+     */
+    public List<String> getSubjects(final String projectName) {
+        synchronized (projects) {
+            final Project project = projects.get(projectName);
+            return project == null ? new ArrayList<String>() : new ArrayList<String>(project.subjects.keySet());
+        }
+    }
+
+    /**
+     * @return the number of files uploaded to the scan, or zero if there is no such scan
+     */
+    public int getNumberOfFiles(final String projectName, final String subjectLabel, final String experimentLabel, final String scanLabel) {
+        synchronized (projects) {
+            final Project project = projects.get(projectName);
+            final Experiment experiment = project == null ? null : project.experiments.get(experimentLabel);
+            final Scan scan = experiment == null || !experiment.subjectLabel.equals(subjectLabel) ? null : experiment.scans.get(scanLabel);
+            return scan == null ? 0 : scan.numberOfFiles;
+        }
+    }
+
+    private void handleRequest(final HttpExchange exchange) throws IOException {
+        final long startNanos = System.nanoTime();
+        numberOfRequests.incrementAndGet();
+        try {
+            if (latencyMs > 0) {
+                Thread.sleep(latencyMs);
+            }
+            final Response response = getResponse(exchange);
+
+            // The request body must be consumed even if it is not used, or the connection cannot be reused
+            readBody(exchange.getRequestBody());
+            sendResponse(exchange, response);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exchange.close();
+        } catch (Throwable t) {
+            sendResponse(exchange, new Response(500, t.toString()));
+        } finally {
+            requestLatency.recordSince(startNanos);
+        }
+    }
+
+    private Response getResponse(final HttpExchange exchange) throws IOException {
+        final String method = exchange.getRequestMethod();
+        final String path = exchange.getRequestURI().getPath();
+        final Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+
+        if (path.equals("/data/JSESSION")) {
+            return login(exchange);
+        }
+        if (!isAuthenticated(exchange)) {
+            return new Response(401, "Unauthorized");
+        }
+        if (failureProbability > 0 && getRandom() < failureProbability) {
+            numberOfInjectedFailures.incrementAndGet();
+            return new Response(500, "Injected failure");
+        }
+
+        final List<String> segments = getSegments(path);
+        if (segments.size() >= 1 && segments.get(0).equals("config")) {
+            return getConfiguration(segments);
+        }
+        if (segments.size() == 2 && segments.get(0).equals("services") && segments.get(1).equals("import") && method.equals("POST")) {
+            return importZip(exchange.getRequestBody(), query);
+        }
+        if (segments.size() >= 1 && segments.get(0).equals("projects")) {
+            synchronized (projects) {
+                if (segments.size() == 1) {
+                    return listProjects();
+                }
+                final Project project = projects.get(segments.get(1));
+                if (project == null) {
+                    return new Response(404, "Project not found");
+                }
+                if (method.equals("GET")) {
+                    return get(project, segments.subList(2, segments.size()));
+                }
+            }
+            if (segments.size() == 12 && segments.get(10).equals("files") && method.equals("PUT")) {
+                return appendZip(exchange.getRequestBody(), segments);
+            }
+            synchronized (projects) {
+                return create(projects.get(segments.get(1)), segments.subList(2, segments.size()), query);
+            }
+        }
+        return new Response(404, "Not found");
+    }
+
+    private Response login(final HttpExchange exchange) {
+        if (!isAuthenticated(exchange)) {
+            return new Response(401, "Unauthorized");
+        }
+
+        final String sessionId = UUID.randomUUID().toString().replace("-", "").toUpperCase();
+        synchronized (sessions) {
+            sessions.add(sessionId);
+        }
+        final Response response = new Response(200, sessionId);
+        response.cookie = SESSION_COOKIE_NAME + "=" + sessionId + "; Path=/";
+        return response;
+    }
+
+    /**
+     * XNAT accepts either HTTP basic authentication or an existing session cookie
+     */
+    private boolean isAuthenticated(final HttpExchange exchange) {
+        final String authorisation = exchange.getRequestHeaders().getFirst("Authorization");
+        return ("Basic " + Base64.encode(userName + ":" + password)).equals(authorisation) || hasValidSession(exchange);
+    }
+
+    private boolean hasValidSession(final HttpExchange exchange) {
+        final List<String> cookieHeaders = exchange.getRequestHeaders().get("Cookie");
+        if (cookieHeaders == null) {
+            return false;
+        }
+        for (final String cookieHeader : cookieHeaders) {
+            for (final String cookie : cookieHeader.split(";")) {
+                final String trimmed = cookie.trim();
+                if (trimmed.startsWith(SESSION_COOKIE_NAME + "=")) {
+                    synchronized (sessions) {
+                        if (sessions.contains(trimmed.substring(SESSION_COOKIE_NAME.length() + 1))) {
+                            return true;
+                        }
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Site-wide and project configuration: there are no anonymisation scripts or series import filters, so the
+     * configuration lookups are not found and project scripts are disabled
+     */
+    private Response getConfiguration(final List<String> segments) {
+        if (segments.size() >= 2 && segments.get(1).equals("edit") && segments.get(segments.size() - 1).equals("status")) {
+            final JSONObject status = new JSONObject();
+            status.put("edit", "false");
+            return resultSet(Arrays.asList(status));
+        }
+        return new Response(404, "Configuration not found");
+    }
+
+    private Response listProjects() {
+        final List<JSONObject> results = new ArrayList<JSONObject>();
+        for (final String projectName : projects.keySet()) {
+            final JSONObject result = new JSONObject();
+            result.put("id", projectName);
+            result.put("ID", projectName);
+            results.add(result);
+        }
+        return resultSet(results);
+    }
+
+    /**
+     * Handles GET requests below /projects/{project}
+     */
+    private Response get(final Project project, final List<String> path) {
+        final int length = path.size();
+        if (length == 1 && path.get(0).equals("subjects")) {
+            return listLabels(project.subjects);
+        }
+        if (length == 1 && path.get(0).equals("experiments")) {
+            final Map<String, String> experimentIds = new LinkedHashMap<String, String>();
+            for (final Map.Entry<String, Experiment> entry : project.experiments.entrySet()) {
+                experimentIds.put(entry.getKey(), entry.getValue().id);
+            }
+            return listLabels(experimentIds);
+        }
+        if (length == 1 && path.get(0).equals("pseudonyms")) {
+            return listLabels(project.pseudonyms);
+        }
+        if (length == 2 && path.get(0).equals("pseudonyms")) {
+            final String subjectLabel = project.pseudonyms.get(path.get(1));
+            return subjectLabel == null ? new Response(404, "Pseudonym not found") : item("label", subjectLabel, "ID", project.subjects.get(subjectLabel));
+        }
+        if (length < 4 || !path.get(0).equals("subjects") || !path.get(2).equals("experiments") || !project.subjects.containsKey(path.get(1))) {
+            return new Response(404, "Not found");
+        }
+
+        final String subjectLabel = path.get(1);
+        if (length == 5 && path.get(3).equals("uids")) {
+            final Experiment experiment = project.findExperiment(subjectLabel, path.get(4));
+            return experiment == null ? new Response(404, "Experiment not found") : item("label", experiment.label, "ID", experiment.id);
+        }
+
+        final Experiment experiment = project.experiments.get(path.get(3));
+        if (experiment == null || !experiment.subjectLabel.equals(subjectLabel)) {
+            return new Response(404, "Experiment not found");
+        }
+        if (length == 5 && path.get(4).equals("scans")) {
+            final Map<String, String> scanIds = new LinkedHashMap<String, String>();
+            for (final String scanLabel : experiment.scans.keySet()) {
+                scanIds.put(scanLabel, scanLabel);
+            }
+            return listLabels(scanIds);
+        }
+        if (length == 7 && path.get(4).equals("scans") && path.get(5).equals("uids")) {
+            final Scan scan = experiment.findScan(path.get(6));
+            return scan == null ? new Response(404, "Scan not found") : item("label", scan.label, "ID", scan.label);
+        }
+        if (length == 7 && path.get(4).equals("scans") && path.get(6).equals("resources")) {
+            final Scan scan = experiment.scans.get(path.get(5));
+            if (scan == null) {
+                return new Response(404, "Scan not found");
+            }
+            final Map<String, String> resourceIds = new LinkedHashMap<String, String>();
+            for (final String resourceLabel : scan.resources) {
+                resourceIds.put(resourceLabel, resourceLabel);
+            }
+            return listLabels(resourceIds);
+        }
+        return new Response(404, "Not found");
+    }
+
+    /**
+     * Handles PUT and POST requests below /projects/{project}, which create subjects, experiments, scans, resources and pseudonyms
+     */
+    private Response create(final Project project, final List<String> path, final Map<String, String> query) {
+        final int length = path.size();
+        if (length < 2 || !path.get(0).equals("subjects")) {
+            return new Response(404, "Not found");
+        }
+        final String subjectLabel = path.get(1);
+        if (length == 2) {
+            project.addSubject(subjectLabel);
+            return new Response(200, subjectLabel);
+        }
+        if (!project.subjects.containsKey(subjectLabel)) {
+            return new Response(404, "Subject not found");
+        }
+        if (length == 4 && path.get(2).equals("pseudonyms")) {
+            project.pseudonyms.put(path.get(3), subjectLabel);
+            return new Response(200, path.get(3));
+        }
+        if (!path.get(2).equals("experiments")) {
+            return new Response(404, "Not found");
+        }
+        if (length == 4) {
+            final Experiment experiment = project.addExperiment(subjectLabel, path.get(3));
+            if (experiment == null) {
+                return new Response(409, "Experiment belongs to another subject");
+            }
+            experiment.setUid(query.get("UID"));
+            return new Response(200, experiment.id);
+        }
+
+        final Experiment experiment = project.experiments.get(path.get(3));
+        if (experiment == null || !experiment.subjectLabel.equals(subjectLabel) || length < 6 || !path.get(4).equals("scans")) {
+            return new Response(404, "Not found");
+        }
+        if (length == 6) {
+            final Scan scan = experiment.addScan(path.get(5));
+            scan.setUid(query.get("UID"));
+            return new Response(200, scan.label);
+        }
+        final Scan scan = experiment.scans.get(path.get(5));
+        if (scan == null || length != 8 || !path.get(6).equals("resources")) {
+            return new Response(404, "Not found");
+        }
+        scan.resources.add(path.get(7));
+        return new Response(200, path.get(7));
+    }
+
+    /**
+     * The zip import service, which creates the subject, experiment and scan if necessary
+     */
+    private Response importZip(final InputStream body, final Map<String, String> query) throws IOException {
+        final String projectName = query.get("PROJECT_ID");
+        final String subjectLabel = query.get("SUBJECT_ID");
+        final String experimentLabel = query.get("EXPT_LABEL");
+        final String scanLabel = query.containsKey("SCAN") ? query.get("SCAN") : "1";
+        if (projectName == null || subjectLabel == null || experimentLabel == null) {
+            return new Response(400, "PROJECT_ID, SUBJECT_ID and EXPT_LABEL must be specified");
+        }
+
+        final int numberOfFiles = readZip(body);
+        synchronized (projects) {
+            final Project project = projects.get(projectName);
+            if (project == null) {
+                return new Response(404, "Project not found");
+            }
+            project.addSubject(subjectLabel);
+            final Experiment experiment = project.addExperiment(subjectLabel, experimentLabel);
+            if (experiment == null) {
+                return new Response(409, "Experiment belongs to another subject");
+            }
+            experiment.addScan(scanLabel).numberOfFiles += numberOfFiles;
+        }
+        numberOfUploads.incrementAndGet();
+        numberOfUploadedFiles.addAndGet(numberOfFiles);
+        return new Response(200, "/data/archive/projects/" + projectName + "/subjects/" + subjectLabel + "/experiments/" + experimentLabel + "\n");
+    }
+
+    /**
+     * Adds a zip file to an existing scan resource
+     */
+    private Response appendZip(final InputStream body, final List<String> segments) throws IOException {
+        final int numberOfFiles = readZip(body);
+        synchronized (projects) {
+            final Project project = projects.get(segments.get(1));
+            final Experiment experiment = project == null ? null : project.experiments.get(segments.get(5));
+            final Scan scan = experiment == null || !experiment.subjectLabel.equals(segments.get(3)) ? null : experiment.scans.get(segments.get(7));
+            if (scan == null || !scan.resources.contains(segments.get(9))) {
+                return new Response(404, "Resource not found");
+            }
+            scan.numberOfFiles += numberOfFiles;
+        }
+        numberOfUploads.incrementAndGet();
+        numberOfUploadedFiles.addAndGet(numberOfFiles);
+        return new Response(200, "");
+    }
+
+    /**
+     * Reads an uploaded zip file at the simulated bandwidth
+     *
+     * @return the number of files in the zip
+     */
+    private int readZip(final InputStream body) throws IOException {
+        final InputStream throttledBody = new ThrottledInputStream(body);
+        final ZipInputStream zipInputStream = new ZipInputStream(throttledBody);
+        int numberOfFiles = 0;
+        ZipEntry entry;
+        while ((entry = zipInputStream.getNextEntry()) != null) {
+            if (!entry.isDirectory()) {
+                numberOfFiles++;
+            }
+            readBody(zipInputStream);
+        }
+
+        // Read the central directory which follows the entries, so the whole upload is included in the transfer time
+        readBody(throttledBody);
+        return numberOfFiles;
+    }
+
+    private static void readBody(final InputStream inputStream) throws IOException {
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        while (inputStream.read(buffer) != -1) {
+        }
+    }
+
+    private synchronized double getRandom() {
+        return random.nextDouble();
+    }
+
+    private static Response listLabels(final Map<String, String> labelsAndIds) {
+        final List<JSONObject> results = new ArrayList<JSONObject>();
+        for (final Map.Entry<String, String> entry : labelsAndIds.entrySet()) {
+            final JSONObject result = new JSONObject();
+            result.put("label", entry.getKey());
+            result.put("ID", entry.getValue());
+            results.add(result);
+        }
+        return resultSet(results);
+    }
+
+    /**
+     * A listing in the format {"ResultSet":{"Result":[...]}}
+     */
+    private static Response resultSet(final List<JSONObject> results) {
+        final JSONArray resultArray = new JSONArray();
+        resultArray.addAll(results);
+        final JSONObject resultSet = new JSONObject();
+        resultSet.put("Result", resultArray);
+        resultSet.put("totalRecords", Integer.toString(results.size()));
+        final JSONObject response = new JSONObject();
+        response.put("ResultSet", resultSet);
+        return new Response(200, response.toJSONString());
+    }
+
+    /**
+     * A single item in the format {"items":[{"data_fields":{...}}]}
+     */
+    private static Response item(final String labelKey, final String label, final String idKey, final String id) {
+        final JSONObject dataFields = new JSONObject();
+        dataFields.put(labelKey, label);
+        dataFields.put(idKey, id);
+        final JSONObject item = new JSONObject();
+        item.put("data_fields", dataFields);
+        final JSONArray items = new JSONArray();
+        items.add(item);
+        final JSONObject response = new JSONObject();
+        response.put("items", items);
+        return new Response(200, response.toJSONString());
+    }
+
+    /**
+     * Splits a path into its components, removing the /REST, /data or /data/archive prefix
+     */
+    private static List<String> getSegments(final String path) {
+        final List<String> segments = new ArrayList<String>();
+        for (final String segment : path.split("/")) {
+            if (segment.length() > 0) {
+                segments.add(segment);
+            }
+        }
+        if (!segments.isEmpty() && (segments.get(0).equals("REST") || segments.get(0).equals("data"))) {
+            segments.remove(0);
+            if (!segments.isEmpty() && segments.get(0).equals("archive")) {
+                segments.remove(0);
+            }
+        }
+        return segments;
+    }
+
+    private static Map<String, String> parseQuery(final String rawQuery) throws IOException {
+        final Map<String, String> parameters = new HashMap<String, String>();
+        if (rawQuery != null) {
+            for (final String parameter : rawQuery.split("&")) {
+                final int separator = parameter.indexOf('=');
+                if (separator > 0) {
+                    parameters.put(URLDecoder.decode(parameter.substring(0, separator), "UTF-8"), URLDecoder.decode(parameter.substring(separator + 1), "UTF-8"));
+                }
+            }
+        }
+        return parameters;
+    }
+
+    private static void sendResponse(final HttpExchange exchange, final Response response) throws IOException {
+        try {
+            final byte[] bytes = response.body.getBytes("UTF-8");
+            exchange.getResponseHeaders().set("Content-Type", response.body.startsWith("{") ? "application/json" : "text/plain");
+            if (response.cookie != null) {
+                exchange.getResponseHeaders().set("Set-Cookie", response.cookie);
+            }
+            exchange.sendResponseHeaders(response.statusCode, bytes.length == 0 ? -1 : bytes.length);
+            if (bytes.length > 0) {
+                final OutputStream outputStream = exchange.getResponseBody();
+                outputStream.write(bytes);
+                outputStream.close();
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static class Response {
+        private final int statusCode;
+        private final String body;
+        private String cookie = null;
+
+        private Response(final int statusCode, final String body) {
+            this.statusCode = statusCode;
+            this.body = body;
+        }
+    }
+
+    private static class Project {
+        private final Map<String, String> subjects = new LinkedHashMap<String, String>();
+        private final Map<String, String> pseudonyms = new LinkedHashMap<String, String>();
+        private final Map<String, Experiment> experiments = new LinkedHashMap<String, Experiment>();
+
+        private void addSubject(final String subjectLabel) {
+            if (!subjects.containsKey(subjectLabel)) {
+                subjects.put(subjectLabel, "XNAT_S" + String.format("%05d", subjects.size() + 1));
+            }
+        }
+
+        /**
+         * @return the experiment, or null if an experiment with this label belongs to a different subject
+         */
+        private Experiment addExperiment(final String subjectLabel, final String experimentLabel) {
+            Experiment experiment = experiments.get(experimentLabel);
+            if (experiment == null) {
+                experiment = new Experiment(experimentLabel, "XNAT_E" + String.format("%05d", experiments.size() + 1), subjectLabel);
+                experiments.put(experimentLabel, experiment);
+            }
+            return experiment.subjectLabel.equals(subjectLabel) ? experiment : null;
+        }
+
+        private Experiment findExperiment(final String subjectLabel, final String uid) {
+            for (final Experiment experiment : experiments.values()) {
+                if (experiment.subjectLabel.equals(subjectLabel) && uid.equals(experiment.uid)) {
+                    return experiment;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static class Experiment {
+        private final String label;
+        private final String id;
+        private final String subjectLabel;
+        private final Map<String, Scan> scans = new LinkedHashMap<String, Scan>();
+        private String uid = null;
+
+        private Experiment(final String label, final String id, final String subjectLabel) {
+            this.label = label;
+            this.id = id;
+            this.subjectLabel = subjectLabel;
+        }
+
+        private void setUid(final String uid) {
+            if (uid != null) {
+                this.uid = uid;
+            }
+        }
+
+        private Scan addScan(final String scanLabel) {
+            if (!scans.containsKey(scanLabel)) {
+                scans.put(scanLabel, new Scan(scanLabel));
+            }
+            return scans.get(scanLabel);
+        }
+
+        private Scan findScan(final String uid) {
+            for (final Scan scan : scans.values()) {
+                if (uid.equals(scan.uid)) {
+                    return scan;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static class Scan {
+        private final String label;
+        private final Set<String> resources = new HashSet<String>();
+        private String uid = null;
+        private int numberOfFiles = 0;
+
+        private Scan(final String label) {
+            this.label = label;
+        }
+
+        private void setUid(final String uid) {
+            if (uid != null) {
+                this.uid = uid;
+            }
+        }
+    }
+
+    /**
+     * Limits the rate at which a request body is read, which limits the rate at which the client can send it
+     */
+    private class ThrottledInputStream extends InputStream {
+        private final InputStream inputStream;
+        private final long startNanos = System.nanoTime();
+        private long bytesRead = 0;
+
+        private ThrottledInputStream(final InputStream inputStream) {
+            this.inputStream = inputStream;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+            final int count = inputStream.read(buffer, offset, length);
+            if (count > 0) {
+                bytesRead += count;
+                uploadedBytes.addAndGet(count);
+                throttle();
+            }
+            return count;
+        }
+
+        private void throttle() throws IOException {
+            final long bandwidth = bandwidthBytesPerSecond;
+            if (bandwidth <= 0) {
+                return;
+            }
+            final long dueNanos = startNanos + bytesRead * 1000000000L / bandwidth;
+            final long waitMs = (dueNanos - System.nanoTime()) / 1000000L;
+            if (waitMs > 0) {
+                try {
+                    Thread.sleep(waitMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while throttling upload");
+                }
+            }
+        }
+    }
+}
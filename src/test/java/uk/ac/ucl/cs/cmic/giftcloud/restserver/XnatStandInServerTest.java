@@ -0,0 +1,128 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+
+package uk.ac.ucl.cs.cmic.giftcloud.restserver;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.ucl.cs.cmic.giftcloud.httpconnection.HttpConnectionFactory;
+import uk.ac.ucl.cs.cmic.giftcloud.request.BandwidthLimiter;
+import uk.ac.ucl.cs.cmic.giftcloud.util.GiftCloudReporter;
+import uk.ac.ucl.cs.cmic.giftcloud.util.Optional;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the rest client against the stand-in server, through the real HTTP connection classes
+ */
+public class XnatStandInServerTest {
+
+    private static final String PROJECT = "ProjectOne";
+    private static final String USER_NAME = "UserOne";
+    private static final String PASSWORD = "PasswordOne";
+
+    private XnatStandInServer server;
+    private GiftCloudUploaderRestClient restClient;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new XnatStandInServer(USER_NAME, PASSWORD);
+        server.addProject(PROJECT);
+        server.start();
+
+        final GiftCloudProperties giftCloudProperties = mock(GiftCloudProperties.class);
+        when(giftCloudProperties.getUserAgentString()).thenReturn("TestUserAgent");
+        when(giftCloudProperties.getSessionCookie()).thenReturn(Optional.<String>empty());
+        when(giftCloudProperties.getLastUserName()).thenReturn(Optional.of(USER_NAME));
+        when(giftCloudProperties.getLastPassword()).thenReturn(Optional.of(PASSWORD.toCharArray()));
+        when(giftCloudProperties.getUploadBandwidthSchedule()).thenReturn(Optional.<String>empty());
+        when(giftCloudProperties.getShortTimeout()).thenReturn(10000);
+        when(giftCloudProperties.getLongTimeout()).thenReturn(10000);
+
+        restClient = new GiftCloudUploaderRestClient(server.getUrl(), giftCloudProperties, new HttpConnectionFactory(), new BandwidthLimiter(), new ServerCapabilities(), mock(UserCallback.class), mock(GiftCloudReporter.class));
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void testLoginAfterSessionExpiry() throws Exception {
+        Assert.assertTrue(restClient.getListOfProjects().contains(PROJECT));
+
+        // The client should obtain a new session and repeat the request
+        server.expireSessions();
+        Assert.assertTrue(restClient.getListOfSubjects(PROJECT).isEmpty());
+    }
+
+    @Test
+    public void testUploadToNewAndExistingScan() throws Exception {
+        final GiftCloudLabel.SubjectLabel subjectLabel = GiftCloudLabel.SubjectLabel.getFactory().create("SubjectOne");
+        final GiftCloudLabel.ExperimentLabel experimentLabel = GiftCloudLabel.ExperimentLabel.getFactory().create("ExperimentOne");
+        final GiftCloudLabel.ScanLabel scanLabel = GiftCloudLabel.ScanLabel.getFactory().create("ScanOne");
+        final XnatModalityParams modalityParams = XnatModalityParams.createFromDicom("MR", "");
+
+        restClient.createSubjectAliasIfNotExisting(PROJECT, subjectLabel, "PatientHash");
+        restClient.createExperimentAliasIfNotExisting(PROJECT, subjectLabel, experimentLabel, "StudyHash", modalityParams);
+        restClient.createScanAliasIfNotExisting(PROJECT, subjectLabel, experimentLabel, scanLabel, "SeriesHash", modalityParams);
+        Assert.assertEquals(subjectLabel.getStringLabel(), restClient.getSubjectLabel(PROJECT, "PatientHash").get().getStringLabel());
+        Assert.assertEquals(experimentLabel.getStringLabel(), restClient.getExperimentLabel(PROJECT, subjectLabel, "StudyHash").get().getStringLabel());
+        Assert.assertEquals(scanLabel.getStringLabel(), restClient.getScanLabel(PROJECT, subjectLabel, experimentLabel, "SeriesHash").get().getStringLabel());
+        Assert.assertFalse(restClient.getSubjectLabel(PROJECT, "OtherPatientHash").isPresent());
+
+        restClient.uploadZipFile(PROJECT, subjectLabel, experimentLabel, scanLabel, modalityParams, createZipFile(3), false);
+        Assert.assertEquals(3, server.getNumberOfFiles(PROJECT, "SubjectOne", "ExperimentOne", "ScanOne"));
+
+        restClient.uploadZipFile(PROJECT, subjectLabel, experimentLabel, scanLabel, modalityParams, createZipFile(2), true);
+        Assert.assertEquals(5, server.getNumberOfFiles(PROJECT, "SubjectOne", "ExperimentOne", "ScanOne"));
+        Assert.assertEquals(2, server.getNumberOfUploads());
+    }
+
+    @Test
+    public void testInjectedFailure() throws Exception {
+        restClient.tryAuthentication();
+        server.setFailureProbability(1);
+        try {
+            restClient.getListOfProjects();
+            Assert.fail();
+        } catch (GiftCloudHttpException e) {
+            Assert.assertEquals(500, e.getResponseCode());
+        }
+        Assert.assertEquals(1, server.getNumberOfInjectedFailures());
+    }
+
+    private static File createZipFile(final int numberOfFiles) throws IOException {
+        final File zipFile = File.createTempFile("giftcloud", ".zip");
+        zipFile.deleteOnExit();
+        final ZipOutputStream zipOutputStream = new ZipOutputStream(new FileOutputStream(zipFile));
+        try {
+            for (int fileNumber = 0; fileNumber < numberOfFiles; fileNumber++) {
+                zipOutputStream.putNextEntry(new ZipEntry("file" + fileNumber + ".dcm"));
+                zipOutputStream.write(new byte[1000]);
+                zipOutputStream.closeEntry();
+            }
+        } finally {
+            zipOutputStream.close();
+        }
+        return zipFile;
+    }
+}
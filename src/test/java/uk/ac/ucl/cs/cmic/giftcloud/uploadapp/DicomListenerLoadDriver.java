@@ -0,0 +1,277 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+
+package uk.ac.ucl.cs.cmic.giftcloud.uploadapp;
+
+import com.pixelmed.dicom.DicomException;
+import com.pixelmed.dicom.SetOfDicomFiles;
+import com.pixelmed.dicom.TransferSyntax;
+import com.pixelmed.network.MultipleInstanceTransferStatusHandler;
+import com.pixelmed.network.StorageSOPClassSCU;
+import uk.ac.ucl.cs.cmic.giftcloud.dicom.SyntheticDicomGenerator;
+import uk.ac.ucl.cs.cmic.giftcloud.metrics.LatencyHistogram;
+import uk.ac.ucl.cs.cmic.giftcloud.metrics.MetricsRegistry;
+import uk.ac.ucl.cs.cmic.giftcloud.restserver.GiftCloudProperties;
+import uk.ac.ucl.cs.cmic.giftcloud.restserver.GiftCloudServer;
+import uk.ac.ucl.cs.cmic.giftcloud.restserver.MockRestClientFactory;
+import uk.ac.ucl.cs.cmic.giftcloud.restserver.RestClientFactory;
+import uk.ac.ucl.cs.cmic.giftcloud.restserver.UserCallback;
+import uk.ac.ucl.cs.cmic.giftcloud.uploader.FileImportRecord;
+import uk.ac.ucl.cs.cmic.giftcloud.uploader.GiftCloudUploader;
+import uk.ac.ucl.cs.cmic.giftcloud.uploader.InMemoryPropertyStore;
+import uk.ac.ucl.cs.cmic.giftcloud.uploader.UploadSpool;
+import uk.ac.ucl.cs.cmic.giftcloud.uploader.UploaderStatusModel;
+import uk.ac.ucl.cs.cmic.giftcloud.util.GiftCloudReporter;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.PasswordAuthentication;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how quickly the DICOM listener can receive images and make them ready for upload, so that changes to the
+ * listener can be compared between releases
+ *
+ * <p>A synthetic corpus is written to a temporary folder and sent to a listener on the local machine over several
+ * simultaneous associations. The driver reports the number of instances received per second, the rate at which DICOM
+ * data were sent, the time taken by each association and the time until the last image had been passed to the uploader.
+ * The uploader uses a mock server and its upload service is not started, so only the receiving path is measured. This
+ * is not run as part of the test suite.
+ *
+ * <p>Arguments, all optional: number of simultaneous associations, number of studies, series per study, images per
+ * series, transfer syntax (explicit, implicit, jpeg or rle), rows and columns, and frames per image.
+ */
+public class DicomListenerLoadDriver {
+
+    private static final String CALLING_AE_TITLE = "LOADDRIVER";
+    private static final long SEED = 48;
+    private static final long TIMEOUT_MS = 30 * 60 * 1000;
+    private static final long POLL_INTERVAL_MS = 10;
+    private static final long SHUTDOWN_TIMEOUT_MS = 10000;
+
+    public static void main(String[] args) throws Exception {
+        final int numberOfAssociations = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        final int numberOfStudies = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        final int seriesPerStudy = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+        final int imagesPerSeries = args.length > 3 ? Integer.parseInt(args[3]) : 50;
+        final String transferSyntax = args.length > 4 ? args[4] : "explicit";
+        final int imageSize = args.length > 5 ? Integer.parseInt(args[5]) : 512;
+        final int frames = args.length > 6 ? Integer.parseInt(args[6]) : 1;
+
+        final File workingFolder = createTemporaryFolder();
+        System.setProperty("app.root", workingFolder.getAbsolutePath());
+
+        final SyntheticDicomGenerator generator = createGenerator(transferSyntax, imageSize, frames);
+        generator.setSeriesPerStudy(seriesPerStudy);
+        generator.setImagesPerSeries(imagesPerSeries);
+        final File corpusFolder = new File(workingFolder, "corpus");
+        System.out.println("Writing " + numberOfStudies * seriesPerStudy * imagesPerSeries + " images to " + corpusFolder);
+        final List<File> files = generator.writeStudies(corpusFolder, numberOfStudies);
+
+        final GiftCloudLogger logger = new GiftCloudLogger();
+        final GiftCloudReporterFromDaemon reporter = new GiftCloudReporterFromDaemon(logger);
+        final InMemoryPropertyStore propertyStore = new InMemoryPropertyStore();
+        propertyStore.setProperty(GiftCloudProperties.propertyName_GiftCloudLocalUploadFolder, new File(workingFolder, "upload").getAbsolutePath());
+        propertyStore.setProperty(GiftCloudProperties.propertyName_PatientListLocalCacheDirectory, new File(workingFolder, "patients").getAbsolutePath());
+        propertyStore.setProperty(GiftCloudProperties.propertyName_ListenerPort, Integer.toString(findFreePort()));
+        final GiftCloudPropertiesFromApplication properties = new GiftCloudPropertiesFromApplication(propertyStore, ResourceBundle.getBundle("uk.ac.ucl.cs.cmic.giftcloud.GiftCloudUploader"), logger);
+        properties.setLastProject("sandbox");
+
+        final File uploadFolder = properties.getUploadFolder(logger);
+        if (!uploadFolder.isDirectory() && !uploadFolder.mkdirs()) {
+            throw new IOException("Could not create the folder " + uploadFolder);
+        }
+        final UploaderStatusModel uploaderStatusModel = new UploaderStatusModel();
+        final ImportCountingUploader uploader = new ImportCountingUploader(new MockRestClientFactory(), properties, uploaderStatusModel, new LoadDriverUserCallback(), reporter);
+        final DicomListener listener = new DicomListener(uploader, new UploadSpool(uploadFolder, logger), properties, uploaderStatusModel, reporter);
+        listener.activateStorageSCP();
+        while (!listener.isListening()) {
+            Thread.sleep(POLL_INTERVAL_MS);
+        }
+
+        // Each association sends a contiguous block of the corpus, as a PACS would send a batch of series
+        final List<SetOfDicomFiles> blocks = new ArrayList<SetOfDicomFiles>();
+        long totalBytes = 0;
+        for (int association = 0; association < numberOfAssociations; association++) {
+            final SetOfDicomFiles block = new SetOfDicomFiles();
+            for (int index = association * files.size() / numberOfAssociations; index < (association + 1) * files.size() / numberOfAssociations; index++) {
+                block.add(files.get(index));
+                totalBytes += files.get(index).length();
+            }
+            blocks.add(block);
+        }
+
+        System.out.println(String.format("Sending %d instances (%s, %dx%d, %d frames) over %d associations to port %d", files.size(), transferSyntax, imageSize, imageSize, frames, numberOfAssociations, properties.getListeningPort()));
+        final LatencyHistogram associationLatency = new LatencyHistogram();
+        final AtomicInteger numberSent = new AtomicInteger();
+        final AtomicInteger numberFailed = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(numberOfAssociations);
+        final long startNanos = System.nanoTime();
+        uploader.setStartTime(startNanos);
+        for (final SetOfDicomFiles block : blocks) {
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    final long associationStartNanos = System.nanoTime();
+                    final TransferCounter counter = new TransferCounter();
+                    new StorageSOPClassSCU("localhost", properties.getListeningPort(), properties.getListenerAETitle(), CALLING_AE_TITLE, block, 0, counter, 0);
+                    associationLatency.recordSince(associationStartNanos);
+                    numberSent.addAndGet(counter.getNumberSent());
+                    // Instances which were not attempted because the association failed are also counted as failures
+                    numberFailed.addAndGet(block.size() - counter.getNumberSent());
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        final double sendSeconds = (System.nanoTime() - startNanos) / 1e9;
+
+        final long deadlineNanos = startNanos + TIMEOUT_MS * 1000000L;
+        while (uploader.getNumberOfImportedFiles() < numberSent.get() && System.nanoTime() < deadlineNanos) {
+            Thread.sleep(POLL_INTERVAL_MS);
+        }
+        final double uploadReadySeconds = uploader.getLastImportNanos() / 1e9;
+
+        System.out.println(String.format("Sent %d instances, %d failed, in %.2f s: %.1f instances/s, %.2f MB/s of DICOM data", numberSent.get(), numberFailed.get(), sendSeconds, numberSent.get() / sendSeconds, totalBytes / sendSeconds / (1024 * 1024)));
+        System.out.println(String.format("%d of %d instances ready for upload after %.2f s: %.1f instances/s", uploader.getNumberOfImportedFiles(), numberSent.get(), uploadReadySeconds, uploader.getNumberOfImportedFiles() / uploadReadySeconds));
+        printLatency("association", associationLatency.getSnapshot());
+        for (final Map.Entry<String, LatencyHistogram> histogram : MetricsRegistry.getDefault().getHistograms().entrySet()) {
+            printLatency(histogram.getKey(), histogram.getValue().getSnapshot());
+        }
+
+        listener.shutdownStorageSCPAndWait(SHUTDOWN_TIMEOUT_MS);
+        System.exit(0);
+    }
+
+    private static SyntheticDicomGenerator createGenerator(final String transferSyntax, final int imageSize, final int frames) {
+        final SyntheticDicomGenerator generator = new SyntheticDicomGenerator(SEED);
+        generator.setRows(imageSize);
+        generator.setColumns(imageSize);
+        generator.setFrames(frames);
+        if (transferSyntax.equals("explicit")) {
+            generator.setTransferSyntax(TransferSyntax.ExplicitVRLittleEndian);
+        } else if (transferSyntax.equals("implicit")) {
+            generator.setTransferSyntax(TransferSyntax.ImplicitVRLittleEndian);
+        } else if (transferSyntax.equals("rle")) {
+            generator.setTransferSyntax(TransferSyntax.RLE);
+        } else if (transferSyntax.equals("jpeg")) {
+            // Ultrasound with burnt-in annotation, which is the usual source of JPEG baseline images
+            generator.setModality("US");
+            generator.setBitsAllocated(8);
+            generator.setBurntInAnnotation(true);
+            generator.setTransferSyntax(TransferSyntax.JPEGBaseline);
+        } else {
+            throw new IllegalArgumentException("Unknown transfer syntax " + transferSyntax + ": use explicit, implicit, jpeg or rle");
+        }
+        return generator;
+    }
+
+    private static void printLatency(final String name, final LatencyHistogram.Snapshot snapshot) {
+        if (snapshot.getCount() > 0) {
+            System.out.println(String.format("%-24s n=%-6d mean=%8.1f ms  p50=%8.1f ms  p99=%8.1f ms  max=%8.1f ms", name, snapshot.getCount(), snapshot.getMeanMicros() / 1000.0, snapshot.getPercentileMicros(50) / 1000.0, snapshot.getPercentileMicros(99) / 1000.0, snapshot.getMaxMicros() / 1000.0));
+        }
+    }
+
+    private static int findFreePort() throws IOException {
+        final ServerSocket socket = new ServerSocket(0);
+        try {
+            return socket.getLocalPort();
+        } finally {
+            socket.close();
+        }
+    }
+
+    private static File createTemporaryFolder() throws IOException {
+        final File folder = File.createTempFile("giftcloud-listener-load", "");
+        if (!folder.delete() || !folder.mkdir()) {
+            throw new IOException("Could not create the folder " + folder);
+        }
+        return folder;
+    }
+
+    /**
+     * Records the number of files passed to the uploader and the time at which the last one arrived
+     */
+    private static class ImportCountingUploader extends GiftCloudUploader {
+        private final AtomicInteger numberOfImportedFiles = new AtomicInteger();
+        private final AtomicLong lastImportNanos = new AtomicLong();
+        private volatile long startNanos;
+
+        ImportCountingUploader(final RestClientFactory restClientFactory, final GiftCloudProperties giftCloudProperties, final UploaderStatusModel uploaderStatusModel, final UserCallback userCallback, final GiftCloudReporter reporter) {
+            super(restClientFactory, giftCloudProperties, uploaderStatusModel, userCallback, reporter);
+        }
+
+        @Override
+        public void importFiles(final FileImportRecord fileImportRecord) throws IOException, DicomException {
+            super.importFiles(fileImportRecord);
+            numberOfImportedFiles.addAndGet(fileImportRecord.getFilenames().size());
+            lastImportNanos.set(System.nanoTime() - startNanos);
+        }
+
+        void setStartTime(final long startNanos) {
+            this.startNanos = startNanos;
+        }
+
+        int getNumberOfImportedFiles() {
+            return numberOfImportedFiles.get();
+        }
+
+        /**
+         * @return the time in nanoseconds from the start time to the most recent import
+         */
+        long getLastImportNanos() {
+            return lastImportNanos.get();
+        }
+    }
+
+    /**
+     * Keeps the final counts reported for an association
+     */
+    private static class TransferCounter extends MultipleInstanceTransferStatusHandler {
+        private volatile int numberCompleted = 0;
+        private volatile int numberFailed = 0;
+
+        @Override
+        public void updateStatus(final int nRemaining, final int nCompleted, final int nFailed, final int nWarning, final String sopInstanceUID) {
+            numberCompleted = nCompleted;
+            numberFailed = nFailed;
+        }
+
+        int getNumberSent() {
+            return numberCompleted - numberFailed;
+        }
+    }
+
+    /**
+     * The upload service is not started, so the user is never asked for credentials
+     */
+    private static class LoadDriverUserCallback implements UserCallback {
+        @Override
+        public String getProjectName(final GiftCloudServer server) {
+            return "sandbox";
+        }
+
+        @Override
+        public PasswordAuthentication getPasswordAuthentication(final String supplementalMessage) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+
+package uk.ac.ucl.cs.cmic.giftcloud.uploadapp;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.ucl.cs.cmic.giftcloud.restserver.GiftCloudProperties;
+import uk.ac.ucl.cs.cmic.giftcloud.uploader.InMemoryPropertyStore;
+import uk.ac.ucl.cs.cmic.giftcloud.uploader.SpoolQuotaMonitor;
+import uk.ac.ucl.cs.cmic.giftcloud.util.LoggingReporter;
+
+import java.util.ResourceBundle;
+
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class GiftCloudPropertiesFromApplicationTest {
+
+    private InMemoryPropertyStore propertyStore;
+    private LoggingReporter reporter;
+    private GiftCloudPropertiesFromApplication properties;
+
+    @Before
+    public void setUp() {
+        propertyStore = new InMemoryPropertyStore();
+        reporter = mock(LoggingReporter.class);
+        properties = new GiftCloudPropertiesFromApplication(propertyStore, ResourceBundle.getBundle("uk.ac.ucl.cs.cmic.giftcloud.GiftCloudUploader"), reporter);
+    }
+
+    @Test
+    public void testDefaultSpoolWaterMarks() {
+        Assert.assertEquals(SpoolQuotaMonitor.DEFAULT_HIGH_WATER_MARK_MB, properties.getSpoolHighWaterMarkMb());
+        Assert.assertEquals(SpoolQuotaMonitor.DEFAULT_LOW_WATER_MARK_MB, properties.getSpoolLowWaterMarkMb());
+        verify(reporter, never()).silentWarning(anyString());
+    }
+
+    @Test
+    public void testLowWaterMarkFollowsHighWaterMarkWhenUnset() {
+        propertyStore.setProperty(GiftCloudProperties.propertyName_SpoolHighWaterMarkMb, "4096");
+        Assert.assertEquals(4096, properties.getSpoolHighWaterMarkMb());
+        Assert.assertEquals(3276, properties.getSpoolLowWaterMarkMb());
+        verify(reporter, never()).silentWarning(anyString());
+    }
+
+    @Test
+    public void testInvalidSpoolWaterMarks() {
+        propertyStore.setProperty(GiftCloudProperties.propertyName_SpoolHighWaterMarkMb, "4096");
+        propertyStore.setProperty(GiftCloudProperties.propertyName_SpoolLowWaterMarkMb, "16384");
+        Assert.assertEquals(3276, properties.getSpoolLowWaterMarkMb());
+        verify(reporter).silentWarning(anyString());
+
+        propertyStore.setProperty(GiftCloudProperties.propertyName_SpoolHighWaterMarkMb, "0");
+        Assert.assertEquals(SpoolQuotaMonitor.DEFAULT_HIGH_WATER_MARK_MB, properties.getSpoolHighWaterMarkMb());
+    }
+}
@@ -0,0 +1,147 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+
+package uk.ac.ucl.cs.cmic.giftcloud.uploadapp;
+
+import org.apache.commons.io.IOUtils;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.ucl.cs.cmic.giftcloud.uploader.UploaderController;
+import uk.ac.ucl.cs.cmic.giftcloud.util.Optional;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class StatusServerTest {
+
+    private UploaderController uploaderController;
+    private StatusServer statusServer;
+
+    @Before
+    public void setUp() throws Exception {
+        uploaderController = mock(UploaderController.class);
+        when(uploaderController.getLastSuccessfulUploadTime()).thenReturn(Optional.<Long>empty());
+        statusServer = new StatusServer(uploaderController, 0);
+        statusServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        statusServer.stop();
+    }
+
+    @Test
+    public void testHealthyWithoutListener() throws Exception {
+        setState(true, false, false);
+
+        assertResponse("/health", 200, "OK");
+    }
+
+    @Test
+    public void testUnhealthyWhenUploadServiceStopped() throws Exception {
+        setState(false, false, false);
+
+        assertResponse("/health", 503, "UNAVAILABLE");
+    }
+
+    @Test
+    public void testHealthWithListener() throws Exception {
+        setState(true, true, true);
+        assertResponse("/health", 200, "OK");
+
+        // A listener which has been configured but is not running makes the uploader unhealthy
+        setState(true, true, false);
+        assertResponse("/health", 503, "UNAVAILABLE");
+    }
+
+    @Test
+    public void testStatusWithoutListener() throws Exception {
+        setState(true, false, false);
+        when(uploaderController.getNumberOfPendingUploads()).thenReturn(3);
+        when(uploaderController.getNumberOfFailedUploads()).thenReturn(1);
+        when(uploaderController.getNumberOfFilesUploaded(anyLong())).thenReturn(7L);
+
+        final JSONObject status = getStatus();
+        Assert.assertEquals(Boolean.TRUE, status.get("healthy"));
+        Assert.assertEquals(Boolean.TRUE, status.get("uploadServiceRunning"));
+        Assert.assertEquals(Boolean.FALSE, status.get("dicomListenerConfigured"));
+        Assert.assertEquals(Boolean.FALSE, status.get("dicomListenerRunning"));
+        Assert.assertEquals(3L, status.get("pendingUploads"));
+        Assert.assertEquals(1L, status.get("failedUploads"));
+        Assert.assertNull(status.get("lastSuccessfulUpload"));
+        Assert.assertEquals(7L, ((JSONObject) status.get("uploadedFiles")).get("15min"));
+    }
+
+    @Test
+    public void testStatusWithListener() throws Exception {
+        setState(true, true, false);
+        when(uploaderController.getLastSuccessfulUploadTime()).thenReturn(Optional.of(0L));
+
+        final JSONObject status = getStatus();
+        Assert.assertEquals(Boolean.FALSE, status.get("healthy"));
+        Assert.assertEquals(Boolean.TRUE, status.get("dicomListenerConfigured"));
+        Assert.assertEquals(Boolean.FALSE, status.get("dicomListenerRunning"));
+        Assert.assertEquals("1970-01-01T00:00:00Z", status.get("lastSuccessfulUpload"));
+    }
+
+    private void setState(final boolean uploadServiceRunning, final boolean listenerConfigured, final boolean listenerRunning) {
+        when(uploaderController.isUploadServiceRunning()).thenReturn(uploadServiceRunning);
+        when(uploaderController.isDicomListenerConfigured()).thenReturn(listenerConfigured);
+        when(uploaderController.isDicomListenerRunning()).thenReturn(listenerRunning);
+    }
+
+    private JSONObject getStatus() throws IOException {
+        final HttpURLConnection connection = openConnection("/status");
+        try {
+            Assert.assertEquals(200, connection.getResponseCode());
+            Assert.assertTrue(connection.getContentType().startsWith("application/json"));
+            return (JSONObject) JSONValue.parse(readBody(connection));
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private void assertResponse(final String path, final int expectedCode, final String expectedBody) throws IOException {
+        final HttpURLConnection connection = openConnection(path);
+        try {
+            Assert.assertEquals(expectedCode, connection.getResponseCode());
+            Assert.assertEquals(expectedBody, readBody(connection));
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private HttpURLConnection openConnection(final String path) throws IOException {
+        Assert.assertTrue(statusServer.getPort() > 0);
+        return (HttpURLConnection) new URL("http", "127.0.0.1", statusServer.getPort(), path).openConnection();
+    }
+
+    private static String readBody(final HttpURLConnection connection) throws IOException {
+        // Error responses are read from the error stream
+        final InputStream inputStream = connection.getResponseCode() >= 400 ? connection.getErrorStream() : connection.getInputStream();
+        try {
+            return IOUtils.toString(inputStream, "UTF-8");
+        } finally {
+            inputStream.close();
+        }
+    }
+}
@@ -68,6 +68,17 @@ public class BackgroundServiceFailureListTest {
     }
 
 
+    @Test
+    public void testGetFailuresReturnsACopy() throws Exception {
+        final BackgroundServiceFailureListFake backgroundServiceFailureList = new BackgroundServiceFailureListFake();
+        backgroundServiceFailureList.addFailure("Task1", BackgroundServiceErrorRecord.createInstantRepeater());
+
+        final List<BackgroundServiceFailureList<String>.FailureRecord> failures = backgroundServiceFailureList.getFailures();
+        backgroundServiceFailureList.addFailure("Task2", BackgroundServiceErrorRecord.createInstantRepeater());
+        Assert.assertEquals(1, failures.size());
+        Assert.assertEquals(2, backgroundServiceFailureList.getFailures().size());
+    }
+
     class BackgroundServiceFailureListFake extends BackgroundServiceFailureList<String> {}
 
 }
\ No newline at end of file
@@ -0,0 +1,163 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+
+package uk.ac.ucl.cs.cmic.giftcloud.uploader;
+
+import com.pixelmed.dicom.AttributeList;
+import uk.ac.ucl.cs.cmic.giftcloud.dicom.SyntheticDicomGenerator;
+import uk.ac.ucl.cs.cmic.giftcloud.metrics.LatencyHistogram;
+import uk.ac.ucl.cs.cmic.giftcloud.metrics.MetricsRegistry;
+import uk.ac.ucl.cs.cmic.giftcloud.restserver.GiftCloudProperties;
+import uk.ac.ucl.cs.cmic.giftcloud.restserver.GiftCloudServer;
+import uk.ac.ucl.cs.cmic.giftcloud.restserver.GiftCloudUploaderRestClientFactory;
+import uk.ac.ucl.cs.cmic.giftcloud.restserver.UserCallback;
+import uk.ac.ucl.cs.cmic.giftcloud.restserver.XnatStandInServer;
+import uk.ac.ucl.cs.cmic.giftcloud.uploadapp.GiftCloudLogger;
+import uk.ac.ucl.cs.cmic.giftcloud.uploadapp.GiftCloudPropertiesFromApplication;
+import uk.ac.ucl.cs.cmic.giftcloud.uploadapp.GiftCloudReporterFromDaemon;
+import uk.ac.ucl.cs.cmic.giftcloud.util.GiftCloudUtils;
+import uk.ac.ucl.cs.cmic.giftcloud.util.Optional;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.PasswordAuthentication;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.ResourceBundle;
+
+/**
+ * Measures the upload throughput of the uploader against the XNAT stand-in server, through the same import, anonymisation,
+ * zip and HTTP upload path used for files received from a PACS
+ *
+ * <p>Synthetic MR studies are written to a temporary upload folder and imported all at once. The driver waits until the
+ * upload queue has drained, then reports the throughput and the latency distributions of the HTTP requests. This is not
+ * run as part of the test suite.
+ *
+ * <p>Arguments, all optional: number of studies, series per study, images per series, added latency per request in ms,
+ * server bandwidth in bytes per second (0 for unlimited), and the probability of an injected request failure.
+ */
+public class GiftCloudUploaderLoadDriver {
+
+    private static final String PROJECT = "LoadTest";
+    private static final String USER_NAME = "loadtest";
+    private static final String PASSWORD = "loadtest";
+    private static final int IMAGE_SIZE = 256;
+    private static final long SEED = 47;
+    private static final long TIMEOUT_MS = 30 * 60 * 1000;
+    private static final long POLL_INTERVAL_MS = 100;
+
+    public static void main(String[] args) throws Exception {
+        final int numberOfStudies = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        final int seriesPerStudy = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        final int imagesPerSeries = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        final long latencyMs = args.length > 3 ? Long.parseLong(args[3]) : 0;
+        final long bandwidthBytesPerSecond = args.length > 4 ? Long.parseLong(args[4]) : 0;
+        final double failureProbability = args.length > 5 ? Double.parseDouble(args[5]) : 0;
+
+        final File workingFolder = createTemporaryFolder();
+        System.setProperty("app.root", workingFolder.getAbsolutePath());
+
+        final XnatStandInServer server = new XnatStandInServer(USER_NAME, PASSWORD);
+        server.addProject(PROJECT);
+        server.setLatencyMs(latencyMs);
+        server.setBandwidthBytesPerSecond(bandwidthBytesPerSecond);
+        server.setFailureProbability(failureProbability);
+        server.start();
+
+        final GiftCloudLogger logger = new GiftCloudLogger();
+        final GiftCloudReporterFromDaemon reporter = new GiftCloudReporterFromDaemon(logger);
+        final InMemoryPropertyStore propertyStore = new InMemoryPropertyStore();
+        propertyStore.setProperty(GiftCloudProperties.propertyName_GiftCloudLocalUploadFolder, new File(workingFolder, "upload").getAbsolutePath());
+        propertyStore.setProperty(GiftCloudProperties.propertyName_PatientListLocalCacheDirectory, new File(workingFolder, "patients").getAbsolutePath());
+        final GiftCloudPropertiesFromApplication properties = new GiftCloudPropertiesFromApplication(propertyStore, ResourceBundle.getBundle("uk.ac.ucl.cs.cmic.giftcloud.GiftCloudUploader"), logger);
+        properties.setGiftCloudUrl(server.getUrl());
+        properties.setLastUserName(USER_NAME);
+        properties.setLastPassword(PASSWORD.toCharArray());
+        properties.setLastProject(PROJECT);
+
+        final File uploadFolder = properties.getUploadFolder(logger);
+        if (!uploadFolder.isDirectory() && !uploadFolder.mkdirs()) {
+            throw new IOException("Could not create the folder " + uploadFolder);
+        }
+        final GiftCloudUploader uploader = new GiftCloudUploader(new GiftCloudUploaderRestClientFactory(), properties, new UploaderStatusModel(), new LoadDriverUserCallback(), reporter);
+        if (!uploader.tryAuthentication()) {
+            throw new IllegalStateException("Could not log in to the stand-in server");
+        }
+
+        System.out.println("Writing " + numberOfStudies * seriesPerStudy * imagesPerSeries + " images to " + uploadFolder);
+        final SyntheticDicomGenerator generator = new SyntheticDicomGenerator(SEED);
+        generator.setRows(IMAGE_SIZE);
+        generator.setColumns(IMAGE_SIZE);
+        generator.setSeriesPerStudy(seriesPerStudy);
+        generator.setImagesPerSeries(imagesPerSeries);
+        long totalBytes = 0;
+        final List<String> files = new ArrayList<String>();
+        for (final File file : generator.writeStudies(uploadFolder, numberOfStudies)) {
+            totalBytes += file.length();
+            files.add(file.getPath());
+        }
+
+        final LatencyHistogram.Snapshot serverLatencyBefore = server.getRequestLatency().getSnapshot();
+        final long startNanos = System.nanoTime();
+        for (final String file : files) {
+            uploader.importFiles(new DicomFileImportRecord(file, GiftCloudUtils.getDateAsAString(), PendingUploadTask.DeleteAfterUpload.DELETE_AFTER_UPLOAD, Optional.<AttributeList>empty()));
+        }
+        uploader.setUploadServiceRunningState(true);
+
+        final long deadlineNanos = startNanos + TIMEOUT_MS * 1000000L;
+        while (uploader.getNumberOfPendingUploads() > 0 && System.nanoTime() < deadlineNanos) {
+            Thread.sleep(POLL_INTERVAL_MS);
+        }
+        final double elapsedSeconds = (System.nanoTime() - startNanos) / 1e9;
+
+        System.out.println(String.format("Uploaded %d of %d files in %.1f s: %.1f files/s, %.2f MB/s of DICOM data", server.getNumberOfUploadedFiles(), files.size(), elapsedSeconds, server.getNumberOfUploadedFiles() / elapsedSeconds, totalBytes / elapsedSeconds / (1024 * 1024)));
+        System.out.println(String.format("%d zip uploads, %d server requests, %d injected failures, %d failed uploads", server.getNumberOfUploads(), server.getNumberOfRequests(), server.getNumberOfInjectedFailures(), uploader.getNumberOfFailedUploads()));
+        printLatency("server request", server.getRequestLatency().getSnapshot().minus(serverLatencyBefore));
+        for (final Map.Entry<String, LatencyHistogram> histogram : MetricsRegistry.getDefault().getHistograms().entrySet()) {
+            printLatency(histogram.getKey(), histogram.getValue().getSnapshot());
+        }
+
+        uploader.setUploadServiceRunningState(false);
+        server.stop();
+        System.exit(0);
+    }
+
+    private static void printLatency(final String name, final LatencyHistogram.Snapshot snapshot) {
+        if (snapshot.getCount() > 0) {
+            System.out.println(String.format("%-24s n=%-6d mean=%8.1f ms  p50=%8.1f ms  p99=%8.1f ms  max=%8.1f ms", name, snapshot.getCount(), snapshot.getMeanMicros() / 1000.0, snapshot.getPercentileMicros(50) / 1000.0, snapshot.getPercentileMicros(99) / 1000.0, snapshot.getMaxMicros() / 1000.0));
+        }
+    }
+
+    private static File createTemporaryFolder() throws IOException {
+        final File folder = File.createTempFile("giftcloud-load", "");
+        if (!folder.delete() || !folder.mkdir()) {
+            throw new IOException("Could not create the folder " + folder);
+        }
+        return folder;
+    }
+
+    /**
+     * Supplies the stand-in server credentials and project without prompting
+     */
+    private static class LoadDriverUserCallback implements UserCallback {
+        @Override
+        public String getProjectName(final GiftCloudServer server) {
+            return PROJECT;
+        }
+
+        @Override
+        public PasswordAuthentication getPasswordAuthentication(final String supplementalMessage) {
+            return new PasswordAuthentication(USER_NAME, PASSWORD.toCharArray());
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+
+package uk.ac.ucl.cs.cmic.giftcloud.uploader;
+
+import uk.ac.ucl.cs.cmic.giftcloud.util.Optional;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Holds the properties in memory, so that test drivers do not change the properties of an installed uploader
+ */
+public class InMemoryPropertyStore implements PropertyStore {
+    private final Map<String, String> properties = new HashMap<String, String>();
+    private final Map<String, char[]> passwords = new HashMap<String, char[]>();
+
+    @Override
+    public synchronized String getProperty(final String propertyName) {
+        return properties.get(propertyName);
+    }
+
+    @Override
+    public synchronized void setProperty(final String propertyName, final String propertyValue) {
+        properties.put(propertyName, propertyValue);
+    }
+
+    @Override
+    public synchronized Optional<char[]> getPassword(final String passwordKey) {
+        return Optional.ofNullable(passwords.get(passwordKey));
+    }
+
+    @Override
+    public synchronized void setPassword(final String passwordKey, final char[] lastPassword) {
+        passwords.put(passwordKey, lastPassword);
+    }
+
+    @Override
+    public void save(final String comment) {
+    }
+}
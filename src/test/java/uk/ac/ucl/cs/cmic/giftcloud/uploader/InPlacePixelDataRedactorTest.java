@@ -0,0 +1,212 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+
+package uk.ac.ucl.cs.cmic.giftcloud.uploader;
+
+import com.pixelmed.dicom.*;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.awt.*;
+import java.awt.geom.Rectangle2D;
+import java.io.File;
+import java.util.Vector;
+
+public class InPlacePixelDataRedactorTest {
+
+    private static final int ROWS = 4;
+    private static final int COLUMNS = 5;
+    private static final int FRAMES = 3;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testIsSupported() throws Exception {
+        Assert.assertTrue(InPlacePixelDataRedactor.isSupported(createHeaders(TransferSyntax.ExplicitVRLittleEndian), false));
+        Assert.assertTrue(InPlacePixelDataRedactor.isSupported(createHeaders(TransferSyntax.ImplicitVRLittleEndian), false));
+        Assert.assertFalse(InPlacePixelDataRedactor.isSupported(createHeaders(TransferSyntax.ExplicitVRLittleEndian), true));
+        Assert.assertFalse(InPlacePixelDataRedactor.isSupported(createHeaders(TransferSyntax.JPEGBaseline), false));
+        Assert.assertFalse(InPlacePixelDataRedactor.isSupported(createHeaders(TransferSyntax.DeflatedExplicitVRLittleEndian), false));
+    }
+
+    @Test
+    public void testGetBlackoutValue() throws Exception {
+        final AttributeList headers = createHeaders(TransferSyntax.ExplicitVRLittleEndian);
+        Assert.assertEquals(0, InPlacePixelDataRedactor.getBlackoutValue(headers, true, false));
+
+        final Attribute pixelPadding = new UnsignedShortAttribute(TagFromName.PixelPaddingValue);
+        pixelPadding.addValue(99);
+        headers.put(pixelPadding);
+        Assert.assertEquals(99, InPlacePixelDataRedactor.getBlackoutValue(headers, true, false));
+        Assert.assertEquals(0, InPlacePixelDataRedactor.getBlackoutValue(headers, true, true));
+        Assert.assertEquals(0, InPlacePixelDataRedactor.getBlackoutValue(headers, false, false));
+    }
+
+    @Test
+    public void testRedactSixteenBitExplicitVrMultiFrame() throws Exception {
+        redactAndCheck(TransferSyntax.ExplicitVRLittleEndian, 16, 1, 0, FRAMES);
+    }
+
+    @Test
+    public void testRedactSixteenBitImplicitVrSingleFrame() throws Exception {
+        redactAndCheck(TransferSyntax.ImplicitVRLittleEndian, 16, 1, 0, 1);
+    }
+
+    @Test
+    public void testRedactEightBitExplicitVrMultiFrame() throws Exception {
+        redactAndCheck(TransferSyntax.ExplicitVRLittleEndian, 8, 1, 0, FRAMES);
+    }
+
+    @Test
+    public void testRedactEightBitImplicitVrMultiFrame() throws Exception {
+        redactAndCheck(TransferSyntax.ImplicitVRLittleEndian, 8, 1, 0, FRAMES);
+    }
+
+    @Test
+    public void testRedactRgbColourByPixel() throws Exception {
+        redactAndCheck(TransferSyntax.ExplicitVRLittleEndian, 8, 3, 0, FRAMES);
+    }
+
+    @Test
+    public void testRedactRgbColourByPlane() throws Exception {
+        redactAndCheck(TransferSyntax.ImplicitVRLittleEndian, 8, 3, 1, FRAMES);
+    }
+
+    @Test
+    public void testOutputCanBeDeletedAfterRedaction() throws Exception {
+        // The output file must not be held open or mapped once redaction has finished, so that it can be deleted after
+        // it has been uploaded
+        final File outputFile = redactAndCheck(TransferSyntax.ExplicitVRLittleEndian, 16, 1, 0, FRAMES);
+        Assert.assertTrue(outputFile.delete());
+    }
+
+    /**
+     * Writes an image with the given format, redacts it, and checks that exactly the samples in the redacted regions
+     * have been replaced by the blackout value
+     *
+     * @return the redacted file
+     */
+    private File redactAndCheck(final String transferSyntaxUID, final int bitsAllocated, final int samplesPerPixel, final int planarConfiguration, final int frames) throws Exception {
+        final File inputFile = temporaryFolder.newFile("input.dcm");
+        final File outputFile = temporaryFolder.newFile("output.dcm");
+        final int blackoutValue = bitsAllocated == 8 ? 0xee : 0x0abc;
+
+        final AttributeList inputList = createHeaders(transferSyntaxUID, bitsAllocated, samplesPerPixel, planarConfiguration, frames);
+        final int numberOfSamples = ROWS * COLUMNS * samplesPerPixel * frames;
+        final Attribute pixelData;
+        if (bitsAllocated == 8) {
+            final byte[] samples = new byte[numberOfSamples];
+            for (int index = 0; index < samples.length; index++) {
+                samples[index] = (byte) (index + 1);
+            }
+            pixelData = new OtherByteAttribute(TagFromName.PixelData);
+            pixelData.setValues(samples);
+        } else {
+            final short[] samples = new short[numberOfSamples];
+            for (int index = 0; index < samples.length; index++) {
+                samples[index] = (short) (index + 1);
+            }
+            pixelData = new OtherWordAttribute(TagFromName.PixelData);
+            pixelData.setValues(samples);
+        }
+        inputList.put(pixelData);
+        inputList.write(inputFile, transferSyntaxUID, true, true);
+
+        // The output is always written as Explicit VR Little Endian
+        final AttributeList outputHeaders = createHeaders(TransferSyntax.ExplicitVRLittleEndian, bitsAllocated, samplesPerPixel, planarConfiguration, frames);
+        final Vector<Shape> shapes = new Vector<Shape>();
+        shapes.add(new Rectangle2D.Double(1, 1, 2, 2));
+        shapes.add(new Rectangle2D.Double(4, 3, 10, 10));
+        InPlacePixelDataRedactor.redact(inputFile, outputFile, outputHeaders, shapes, blackoutValue);
+
+        final AttributeList outputList = new AttributeList();
+        final DicomInputStream dicomInputStream = new DicomInputStream(outputFile);
+        try {
+            outputList.read(dicomInputStream);
+        } finally {
+            dicomInputStream.close();
+        }
+        Assert.assertEquals(TransferSyntax.ExplicitVRLittleEndian, Attribute.getSingleStringValueOrEmptyString(outputList, TagFromName.TransferSyntaxUID));
+
+        final int[] redactedSamples = getSamples(outputList.get(TagFromName.PixelData), bitsAllocated);
+        Assert.assertEquals(numberOfSamples, redactedSamples.length);
+        final int mask = bitsAllocated == 8 ? 0xff : 0xffff;
+        for (int frame = 0; frame < frames; frame++) {
+            for (int y = 0; y < ROWS; y++) {
+                for (int x = 0; x < COLUMNS; x++) {
+                    for (int sample = 0; sample < samplesPerPixel; sample++) {
+                        final int pixelIndex = y * COLUMNS + x;
+                        final int index = frame * ROWS * COLUMNS * samplesPerPixel + (planarConfiguration == 1 ? sample * ROWS * COLUMNS + pixelIndex : pixelIndex * samplesPerPixel + sample);
+                        final boolean redacted = (x >= 1 && x < 3 && y >= 1 && y < 3) || (x == 4 && y == 3);
+                        Assert.assertEquals("Sample " + index, redacted ? blackoutValue : (index + 1) & mask, redactedSamples[index]);
+                    }
+                }
+            }
+        }
+        return outputFile;
+    }
+
+    private static int[] getSamples(final Attribute pixelData, final int bitsAllocated) throws DicomException {
+        if (bitsAllocated == 8) {
+            final byte[] bytes = pixelData.getByteValues();
+            final int[] samples = new int[bytes.length];
+            for (int index = 0; index < bytes.length; index++) {
+                samples[index] = bytes[index] & 0xff;
+            }
+            return samples;
+        } else {
+            final short[] shorts = pixelData.getShortValues();
+            final int[] samples = new int[shorts.length];
+            for (int index = 0; index < shorts.length; index++) {
+                samples[index] = shorts[index] & 0xffff;
+            }
+            return samples;
+        }
+    }
+
+    private static AttributeList createHeaders(final String transferSyntaxUID) throws DicomException {
+        return createHeaders(transferSyntaxUID, 16, 1, 0, FRAMES);
+    }
+
+    private static AttributeList createHeaders(final String transferSyntaxUID, final int bitsAllocated, final int samplesPerPixel, final int planarConfiguration, final int frames) throws DicomException {
+        final AttributeList attributeList = new AttributeList();
+        addAttribute(attributeList, new UniqueIdentifierAttribute(TagFromName.SOPClassUID), SOPClass.UltrasoundMultiframeImageStorage);
+        addAttribute(attributeList, new UniqueIdentifierAttribute(TagFromName.SOPInstanceUID), "1.2.3.4.5");
+        addAttribute(attributeList, new CodeStringAttribute(TagFromName.PhotometricInterpretation), samplesPerPixel == 3 ? "RGB" : "MONOCHROME2");
+        addAttribute(attributeList, new IntegerStringAttribute(TagFromName.NumberOfFrames), Integer.toString(frames));
+        addIntegerAttribute(attributeList, new UnsignedShortAttribute(TagFromName.Rows), ROWS);
+        addIntegerAttribute(attributeList, new UnsignedShortAttribute(TagFromName.Columns), COLUMNS);
+        addIntegerAttribute(attributeList, new UnsignedShortAttribute(TagFromName.SamplesPerPixel), samplesPerPixel);
+        if (samplesPerPixel > 1) {
+            addIntegerAttribute(attributeList, new UnsignedShortAttribute(TagFromName.PlanarConfiguration), planarConfiguration);
+        }
+        addIntegerAttribute(attributeList, new UnsignedShortAttribute(TagFromName.BitsAllocated), bitsAllocated);
+        addIntegerAttribute(attributeList, new UnsignedShortAttribute(TagFromName.BitsStored), bitsAllocated == 8 ? 8 : 12);
+        addIntegerAttribute(attributeList, new UnsignedShortAttribute(TagFromName.HighBit), bitsAllocated == 8 ? 7 : 11);
+        addIntegerAttribute(attributeList, new UnsignedShortAttribute(TagFromName.PixelRepresentation), 0);
+        FileMetaInformation.addFileMetaInformation(attributeList, transferSyntaxUID, "TEST");
+        return attributeList;
+    }
+
+    private static void addAttribute(final AttributeList attributeList, final Attribute attribute, final String value) throws DicomException {
+        attribute.addValue(value);
+        attributeList.put(attribute);
+    }
+
+    private static void addIntegerAttribute(final AttributeList attributeList, final Attribute attribute, final int value) throws DicomException {
+        attribute.addValue(value);
+        attributeList.put(attribute);
+    }
+}
@@ -0,0 +1,180 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+
+package uk.ac.ucl.cs.cmic.giftcloud.uploader;
+
+import com.pixelmed.dicom.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Vector;
+
+public class JpegBlockRedactorTest {
+
+    private static final int ROWS = 32;
+    private static final int COLUMNS = 48;
+    private static final int FRAMES = 5;
+
+    @Test
+    public void testRedact() throws Exception {
+        final File inputFile = File.createTempFile("JpegBlockRedactorTestInput", ".dcm");
+        final File outputFile = File.createTempFile("JpegBlockRedactorTestOutput", ".dcm");
+        final File secondOutputFile = File.createTempFile("JpegBlockRedactorTestSecondOutput", ".dcm");
+        inputFile.deleteOnExit();
+        outputFile.deleteOnExit();
+        secondOutputFile.deleteOnExit();
+
+        final byte[][] inputFrames = new byte[FRAMES][];
+        for (int frame = 0; frame < FRAMES; frame++) {
+            inputFrames[frame] = createJpegFrame(frame);
+        }
+
+        // Pixelmed writes an empty basic offset table, so frames are located using the start of image markers
+        final AttributeList inputList = createHeaders();
+        inputList.put(new OtherByteAttributeMultipleCompressedFrames(TagFromName.PixelData, inputFrames));
+        inputList.write(inputFile, TransferSyntax.JPEGBaseline, true, true);
+
+        final Vector<Shape> shapes = new Vector<Shape>();
+        shapes.add(new Rectangle2D.Double(0, 0, 16, 8));
+        JpegBlockRedactor.redact(inputFile, outputFile, createHeaders(), shapes);
+
+        final byte[][] outputFrames = readFrames(outputFile);
+        Assert.assertEquals(FRAMES, outputFrames.length);
+        for (int frame = 0; frame < FRAMES; frame++) {
+            Assert.assertArrayEquals(redactFrame(inputFrames[frame], shapes), trimPadding(outputFrames[frame]));
+        }
+
+        // The output has a basic offset table, which will be used to locate the frames
+        JpegBlockRedactor.redact(outputFile, secondOutputFile, createHeaders(), shapes);
+        final byte[][] secondOutputFrames = readFrames(secondOutputFile);
+        Assert.assertEquals(FRAMES, secondOutputFrames.length);
+        for (int frame = 0; frame < FRAMES; frame++) {
+            Assert.assertArrayEquals(redactFrame(trimPadding(outputFrames[frame]), shapes), trimPadding(secondOutputFrames[frame]));
+        }
+    }
+
+    @Test(expected = DicomException.class)
+    public void testTooFewFrames() throws Exception {
+        final File inputFile = File.createTempFile("JpegBlockRedactorTestInput", ".dcm");
+        final File outputFile = File.createTempFile("JpegBlockRedactorTestOutput", ".dcm");
+        inputFile.deleteOnExit();
+        outputFile.deleteOnExit();
+
+        final AttributeList inputList = createHeaders();
+        inputList.put(new OtherByteAttributeMultipleCompressedFrames(TagFromName.PixelData, new byte[][]{createJpegFrame(0)}));
+        inputList.write(inputFile, TransferSyntax.JPEGBaseline, true, true);
+
+        final Vector<Shape> shapes = new Vector<Shape>();
+        shapes.add(new Rectangle2D.Double(0, 0, 16, 8));
+        JpegBlockRedactor.redact(inputFile, outputFile, createHeaders(), shapes);
+    }
+
+    @Test
+    public void testNoShapesIsAnError() throws Exception {
+        final File inputFile = File.createTempFile("JpegBlockRedactorTestInput", ".dcm");
+        final File outputFile = File.createTempFile("JpegBlockRedactorTestOutput", ".dcm");
+        inputFile.deleteOnExit();
+        outputFile.deleteOnExit();
+
+        final AttributeList inputList = createHeaders();
+        inputList.put(new OtherByteAttributeMultipleCompressedFrames(TagFromName.PixelData, new byte[][]{createJpegFrame(0), createJpegFrame(1), createJpegFrame(2), createJpegFrame(3), createJpegFrame(4)}));
+        inputList.write(inputFile, TransferSyntax.JPEGBaseline, true, true);
+
+        // A filter without shapes must not result in the frames being copied unredacted
+        for (final Vector<Shape> shapes : Arrays.asList(new Vector<Shape>(), null)) {
+            try {
+                JpegBlockRedactor.redact(inputFile, outputFile, createHeaders(), shapes);
+                Assert.fail("Expected a DicomException");
+            } catch (DicomException e) {
+                // Expected
+            }
+            Assert.assertEquals(0, outputFile.length());
+        }
+    }
+
+    private static byte[] createJpegFrame(final int frame) throws Exception {
+        final BufferedImage image = new BufferedImage(COLUMNS, ROWS, BufferedImage.TYPE_BYTE_GRAY);
+        for (int y = 0; y < ROWS; y++) {
+            for (int x = 0; x < COLUMNS; x++) {
+                image.getRaster().setSample(x, y, 0, (x * 5 + y * 3 + frame * 20) % 256);
+            }
+        }
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpeg", outputStream);
+        return outputStream.toByteArray();
+    }
+
+    private static byte[] redactFrame(final byte[] frame, final Vector<Shape> shapes) throws Exception {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        com.pixelmed.codec.jpeg.Parse.parse(new ByteArrayInputStream(frame), outputStream, shapes);
+        return outputStream.toByteArray();
+    }
+
+    private static byte[] trimPadding(final byte[] frame) {
+        // Frames are padded to an even length; a JPEG frame ends with the two byte end of image marker
+        int length = frame.length;
+        while (length > 2 && !((frame[length - 2] & 0xff) == 0xff && (frame[length - 1] & 0xff) == 0xd9)) {
+            length--;
+        }
+        final byte[] trimmed = new byte[length];
+        System.arraycopy(frame, 0, trimmed, 0, length);
+        return trimmed;
+    }
+
+    private static byte[][] readFrames(final File file) throws Exception {
+        final AttributeList attributeList = new AttributeList();
+        attributeList.setDecompressPixelData(false);
+        final DicomInputStream dicomInputStream = new DicomInputStream(file);
+        try {
+            attributeList.read(dicomInputStream);
+        } finally {
+            dicomInputStream.close();
+        }
+        Assert.assertEquals(TransferSyntax.JPEGBaseline, Attribute.getSingleStringValueOrEmptyString(attributeList, TagFromName.TransferSyntaxUID));
+        return ((OtherByteAttributeMultipleCompressedFrames) attributeList.get(TagFromName.PixelData)).getFrames();
+    }
+
+    private static AttributeList createHeaders() throws DicomException {
+        final AttributeList attributeList = new AttributeList();
+        addAttribute(attributeList, new UniqueIdentifierAttribute(TagFromName.SOPClassUID), SOPClass.UltrasoundMultiframeImageStorage);
+        addAttribute(attributeList, new UniqueIdentifierAttribute(TagFromName.SOPInstanceUID), "1.2.3.4.5");
+        addAttribute(attributeList, new CodeStringAttribute(TagFromName.PhotometricInterpretation), "MONOCHROME2");
+        addAttribute(attributeList, new IntegerStringAttribute(TagFromName.NumberOfFrames), Integer.toString(FRAMES));
+        addIntegerAttribute(attributeList, new UnsignedShortAttribute(TagFromName.Rows), ROWS);
+        addIntegerAttribute(attributeList, new UnsignedShortAttribute(TagFromName.Columns), COLUMNS);
+        addIntegerAttribute(attributeList, new UnsignedShortAttribute(TagFromName.SamplesPerPixel), 1);
+        addIntegerAttribute(attributeList, new UnsignedShortAttribute(TagFromName.BitsAllocated), 8);
+        addIntegerAttribute(attributeList, new UnsignedShortAttribute(TagFromName.BitsStored), 8);
+        addIntegerAttribute(attributeList, new UnsignedShortAttribute(TagFromName.HighBit), 7);
+        addIntegerAttribute(attributeList, new UnsignedShortAttribute(TagFromName.PixelRepresentation), 0);
+        FileMetaInformation.addFileMetaInformation(attributeList, TransferSyntax.JPEGBaseline, "TEST");
+        return attributeList;
+    }
+
+    private static void addAttribute(final AttributeList attributeList, final Attribute attribute, final String value) throws DicomException {
+        attribute.addValue(value);
+        attributeList.put(attribute);
+    }
+
+    private static void addIntegerAttribute(final AttributeList attributeList, final Attribute attribute, final int value) throws DicomException {
+        attribute.addValue(value);
+        attributeList.put(attribute);
+    }
+}
@@ -0,0 +1,139 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+
+package uk.ac.ucl.cs.cmic.giftcloud.uploader;
+
+import com.pixelmed.dicom.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class PixelDataAnonymiseFilterIndexTest {
+
+    @Test
+    public void testCandidatesMatchDiscriminatingTags() throws Exception {
+        final PixelDataAnonymiseFilter filter960 = createFilter("US_960_720", 720, 960, "RGB");
+        final PixelDataAnonymiseFilter filter800 = createFilter("US_800_600", 600, 800, "RGB");
+        final PixelDataAnonymiseFilter filter960Mono = createFilter("US_960_720_MONO", 720, 960, "MONOCHROME2");
+        final PixelDataAnonymiseFilterIndex index = new PixelDataAnonymiseFilterIndex(Arrays.asList(filter960, filter800, filter960Mono));
+
+        Assert.assertEquals(Arrays.asList(filter960, filter960Mono), index.getCandidates(createAttributes("1.2.3", 720, 960, "RGB")));
+        Assert.assertEquals(Arrays.asList(filter800), index.getCandidates(createAttributes("1.2.3", 600, 800, "RGB")));
+        Assert.assertTrue(index.getCandidates(createAttributes("1.2.3", 100, 100, "RGB")).isEmpty());
+    }
+
+    @Test
+    public void testFiltersWithoutDiscriminatingTagsAreAlwaysCandidates() throws Exception {
+        final List<PixelDataAnonymiseFilterRequiredTag> requiredTags = new ArrayList<PixelDataAnonymiseFilterRequiredTag>();
+        requiredTags.add(new StringFilterTag(TagFromName.PhotometricInterpretation.getGroup(), TagFromName.PhotometricInterpretation.getElement(), "RGB"));
+        final PixelDataAnonymiseFilter genericFilter = new PixelDataAnonymiseFilter("generic", requiredTags, new ArrayList<Rectangle2D.Double>());
+        final PixelDataAnonymiseFilter filter960 = createFilter("US_960_720", 720, 960, "RGB");
+        final PixelDataAnonymiseFilterIndex index = new PixelDataAnonymiseFilterIndex(Arrays.asList(genericFilter, filter960));
+
+        Assert.assertEquals(Arrays.asList(genericFilter, filter960), index.getCandidates(createAttributes("1.2.3", 720, 960, "RGB")));
+        Assert.assertEquals(Arrays.asList(genericFilter), index.getCandidates(createAttributes("1.2.3", 600, 800, "RGB")));
+    }
+
+    @Test
+    public void testMissingAttributesExcludeFilters() throws Exception {
+        final PixelDataAnonymiseFilter filter960 = createFilter("US_960_720", 720, 960, "RGB");
+        final PixelDataAnonymiseFilterIndex index = new PixelDataAnonymiseFilterIndex(Arrays.asList(filter960));
+        Assert.assertTrue(index.getCandidates(new AttributeList()).isEmpty());
+    }
+
+    @Test
+    public void testSeriesSignature() throws Exception {
+        final PixelDataAnonymiseFilterIndex index = new PixelDataAnonymiseFilterIndex(Arrays.asList(createFilter("US_960_720", 720, 960, "RGB"), createFilter("US_960_720_MONO", 720, 960, "MONOCHROME2")));
+        final String signature = index.getSeriesSignature(createAttributes("1.2.3", 720, 960, "RGB"));
+
+        // The filters differ only in PhotometricInterpretation, so images which differ in this must not share a decision
+        Assert.assertFalse(signature.equals(index.getSeriesSignature(createAttributes("1.2.3", 720, 960, "MONOCHROME2"))));
+        Assert.assertFalse(signature.equals(index.getSeriesSignature(createAttributes("1.2.4", 720, 960, "RGB"))));
+        Assert.assertFalse(signature.equals(index.getSeriesSignature(createAttributes("1.2.3", 600, 960, "RGB"))));
+        Assert.assertEquals(signature, index.getSeriesSignature(createAttributes("1.2.3", 720, 960, "RGB")));
+    }
+
+    @Test
+    public void testSeriesSignatureIncludesEveryRequiredTag() throws Exception {
+        final List<PixelDataAnonymiseFilterRequiredTag> requiredTags = new ArrayList<PixelDataAnonymiseFilterRequiredTag>();
+        requiredTags.add(new StringFilterTag(TagFromName.Modality.getGroup(), TagFromName.Modality.getElement(), "US"));
+        final PixelDataAnonymiseFilter modalityFilter = new PixelDataAnonymiseFilter("modality", requiredTags, new ArrayList<Rectangle2D.Double>());
+        final PixelDataAnonymiseFilterIndex index = new PixelDataAnonymiseFilterIndex(Arrays.asList(modalityFilter));
+
+        final AttributeList withoutModality = createAttributes("1.2.3", 720, 960, "RGB");
+        final AttributeList ultrasound = createAttributes("1.2.3", 720, 960, "RGB");
+        ultrasound.put(createCodeString(TagFromName.Modality, "US"));
+        final AttributeList otherModality = createAttributes("1.2.3", 720, 960, "RGB");
+        otherModality.put(createCodeString(TagFromName.Modality, "OT"));
+        final AttributeList emptyModality = createAttributes("1.2.3", 720, 960, "RGB");
+        emptyModality.put(new CodeStringAttribute(TagFromName.Modality));
+
+        final String signature = index.getSeriesSignature(ultrasound);
+        Assert.assertFalse(signature.equals(index.getSeriesSignature(otherModality)));
+        Assert.assertFalse(signature.equals(index.getSeriesSignature(withoutModality)));
+        Assert.assertFalse(index.getSeriesSignature(emptyModality).equals(index.getSeriesSignature(withoutModality)));
+
+        // Tags which no filter requires do not affect the signature
+        final AttributeList differentRows = createAttributes("1.2.3", 600, 800, "MONOCHROME2");
+        differentRows.put(createCodeString(TagFromName.Modality, "US"));
+        Assert.assertEquals(signature, index.getSeriesSignature(differentRows));
+    }
+
+    private static PixelDataAnonymiseFilter createFilter(final String name, final int rows, final int columns, final String photometricInterpretation) {
+        final List<PixelDataAnonymiseFilterRequiredTag> requiredTags = new ArrayList<PixelDataAnonymiseFilterRequiredTag>();
+        requiredTags.add(new StringFilterTag(TagFromName.PhotometricInterpretation.getGroup(), TagFromName.PhotometricInterpretation.getElement(), photometricInterpretation));
+        requiredTags.add(new StringFilterTag(TagFromName.SOPClassUID.getGroup(), TagFromName.SOPClassUID.getElement(), SOPClass.UltrasoundImageStorage));
+        requiredTags.add(new IntFilterTag(TagFromName.Rows.getGroup(), TagFromName.Rows.getElement(), rows));
+        requiredTags.add(new IntFilterTag(TagFromName.Columns.getGroup(), TagFromName.Columns.getElement(), columns));
+        return new PixelDataAnonymiseFilter(name, requiredTags, new ArrayList<Rectangle2D.Double>());
+    }
+
+    private static AttributeList createAttributes(final String seriesInstanceUid, final int rows, final int columns, final String photometricInterpretation) throws DicomException {
+        final AttributeList attributeList = new AttributeList();
+        {
+            final Attribute attribute = new UniqueIdentifierAttribute(TagFromName.SeriesInstanceUID);
+            attribute.addValue(seriesInstanceUid);
+            attributeList.put(attribute);
+        }
+        {
+            final Attribute attribute = new UniqueIdentifierAttribute(TagFromName.SOPClassUID);
+            attribute.addValue(SOPClass.UltrasoundImageStorage);
+            attributeList.put(attribute);
+        }
+        {
+            final Attribute attribute = new CodeStringAttribute(TagFromName.PhotometricInterpretation);
+            attribute.addValue(photometricInterpretation);
+            attributeList.put(attribute);
+        }
+        {
+            final Attribute attribute = new UnsignedShortAttribute(TagFromName.Rows);
+            attribute.addValue(rows);
+            attributeList.put(attribute);
+        }
+        {
+            final Attribute attribute = new UnsignedShortAttribute(TagFromName.Columns);
+            attribute.addValue(columns);
+            attributeList.put(attribute);
+        }
+        return attributeList;
+    }
+
+    private static Attribute createCodeString(final AttributeTag tag, final String value) throws DicomException {
+        final Attribute attribute = new CodeStringAttribute(tag);
+        attribute.addValue(value);
+        return attribute;
+    }
+}
@@ -0,0 +1,78 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+
+package uk.ac.ucl.cs.cmic.giftcloud.uploader;
+
+import org.junit.Assert;
+import org.junit.Test;
+import uk.ac.ucl.cs.cmic.giftcloud.util.LoggingReporter;
+
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class SpoolQuotaMonitorTest {
+
+    @Test
+    public void testBackpressure() {
+        final SpoolQuotaMonitor monitor = new SpoolQuotaMonitor(1000, 600, mock(LoggingReporter.class));
+        Assert.assertEquals(1000, monitor.getHighWaterMark());
+        Assert.assertEquals(600, monitor.getLowWaterMark());
+
+        // Below the low-water mark
+        monitor.addPendingBytes(500);
+        Assert.assertEquals(500, monitor.getPendingBytes());
+        Assert.assertEquals(0, monitor.getAssociationAcceptanceDelay());
+        Assert.assertTrue(monitor.canStoreReceivedObjects());
+
+        // Between the marks, associations are slowed down
+        monitor.addPendingBytes(300);
+        Assert.assertEquals(SpoolQuotaMonitor.MAXIMUM_ASSOCIATION_DELAY_MS / 2, monitor.getAssociationAcceptanceDelay());
+        Assert.assertTrue(monitor.canStoreReceivedObjects());
+        Assert.assertFalse(monitor.isRefusing());
+
+        // At the high-water mark, data sets are refused
+        monitor.addPendingBytes(200);
+        Assert.assertFalse(monitor.canStoreReceivedObjects());
+        Assert.assertTrue(monitor.isRefusing());
+        Assert.assertEquals(SpoolQuotaMonitor.MAXIMUM_ASSOCIATION_DELAY_MS, monitor.getAssociationAcceptanceDelay());
+
+        // Data sets continue to be refused until below the low-water mark
+        monitor.removePendingBytes(300);
+        Assert.assertFalse(monitor.canStoreReceivedObjects());
+        monitor.removePendingBytes(150);
+        Assert.assertTrue(monitor.canStoreReceivedObjects());
+        Assert.assertEquals(0, monitor.getAssociationAcceptanceDelay());
+
+        monitor.removePendingBytes(10000);
+        Assert.assertEquals(0, monitor.getPendingBytes());
+    }
+
+    @Test
+    public void testInvalidMarksFallBackToDefaults() {
+        final LoggingReporter reporter = mock(LoggingReporter.class);
+        final SpoolQuotaMonitor monitor = new SpoolQuotaMonitor(100, 100, reporter);
+        Assert.assertEquals(SpoolQuotaMonitor.DEFAULT_HIGH_WATER_MARK_MB * 1024 * 1024, monitor.getHighWaterMark());
+        Assert.assertEquals(SpoolQuotaMonitor.DEFAULT_LOW_WATER_MARK_MB * 1024 * 1024, monitor.getLowWaterMark());
+        verify(reporter).silentWarning(anyString());
+
+        Assert.assertFalse(SpoolQuotaMonitor.areValidMarks(100, -1));
+        Assert.assertFalse(SpoolQuotaMonitor.areValidMarks(100, 200));
+        Assert.assertTrue(SpoolQuotaMonitor.areValidMarks(100, 0));
+    }
+
+    @Test
+    public void testDefaultLowWaterMark() {
+        Assert.assertEquals(SpoolQuotaMonitor.DEFAULT_LOW_WATER_MARK_MB, SpoolQuotaMonitor.getDefaultLowWaterMark(SpoolQuotaMonitor.DEFAULT_HIGH_WATER_MARK_MB));
+        Assert.assertEquals(3276, SpoolQuotaMonitor.getDefaultLowWaterMark(4096));
+    }
+}
@@ -0,0 +1,239 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+
+package uk.ac.ucl.cs.cmic.giftcloud.uploader;
+
+import com.pixelmed.dicom.*;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.ucl.cs.cmic.giftcloud.util.LoggingReporter;
+import uk.ac.ucl.cs.cmic.giftcloud.util.OneWayHash;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+
+public class UploadSpoolTest {
+
+    private File spoolFolder;
+
+    @Before
+    public void setUp() throws Exception {
+        spoolFolder = File.createTempFile("UploadSpoolTest", "");
+        Assert.assertTrue(spoolFolder.delete());
+        Assert.assertTrue(spoolFolder.mkdirs());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(spoolFolder);
+    }
+
+    @Test
+    public void testAddFile() throws Exception {
+        final UploadSpool uploadSpool = new UploadSpool(spoolFolder, mock(LoggingReporter.class));
+        final File receivedFile = createReceivedFile("a");
+        final File storedFile = uploadSpool.addFile(receivedFile, createHeaders("1.2.3", "1.2.3.4", "1.2.3.4.5"));
+
+        Assert.assertFalse(receivedFile.exists());
+        Assert.assertTrue(storedFile.isFile());
+        Assert.assertEquals(OneWayHash.hashUid("1.2.3.4.5"), storedFile.getName());
+        Assert.assertEquals(uploadSpool.makeSeriesFolder("1.2.3", "1.2.3.4"), storedFile.getParentFile());
+        Assert.assertTrue(uploadSpool.getUnindexedFiles().isEmpty());
+
+        // Files added in the current session are not recovered, as they have already been imported
+        Assert.assertTrue(uploadSpool.recoverIndexedSeries().isEmpty());
+    }
+
+    @Test
+    public void testRecoverIndexedSeries() throws Exception {
+        final UploadSpool firstSession = new UploadSpool(spoolFolder, mock(LoggingReporter.class));
+        final File series1File1 = firstSession.addFile(createReceivedFile("a"), createHeaders("1.2.3", "1.2.3.4", "1.2.3.4.1"));
+        final File series2File1 = firstSession.addFile(createReceivedFile("b"), createHeaders("1.2.3", "1.2.3.5", "1.2.3.5.1"));
+        final File series1File2 = firstSession.addFile(createReceivedFile("c"), createHeaders("1.2.3", "1.2.3.4", "1.2.3.4.2"));
+        final File uploadedFile = firstSession.addFile(createReceivedFile("d"), createHeaders("1.2.3", "1.2.3.4", "1.2.3.4.3"));
+        final File noSeriesFile = firstSession.addFile(createReceivedFile("e"), createHeaders("1.2.3", "", "1.2.3.6.1"));
+        Assert.assertTrue(uploadedFile.delete());
+
+        // Simulate a crash part-way through writing an index entry
+        final FileWriter indexWriter = new FileWriter(new File(spoolFolder, UploadSpool.INDEX_FILE_NAME), true);
+        indexWriter.write("1.2.3.7");
+        indexWriter.close();
+
+        final UploadSpool secondSession = new UploadSpool(spoolFolder, mock(LoggingReporter.class));
+        final List<List<File>> recoveredSeries = secondSession.recoverIndexedSeries();
+        Assert.assertEquals(3, recoveredSeries.size());
+        Assert.assertEquals(2, recoveredSeries.get(0).size());
+        Assert.assertEquals(series1File1, recoveredSeries.get(0).get(0));
+        Assert.assertEquals(series1File2, recoveredSeries.get(0).get(1));
+        Assert.assertEquals(1, recoveredSeries.get(1).size());
+        Assert.assertEquals(series2File1, recoveredSeries.get(1).get(0));
+        Assert.assertEquals(1, recoveredSeries.get(2).size());
+        Assert.assertEquals(noSeriesFile, recoveredSeries.get(2).get(0));
+
+        // Entries for missing files have been removed, and new entries are appended to the rewritten index
+        final File series3File1 = secondSession.addFile(createReceivedFile("f"), createHeaders("1.2.8", "1.2.8.1", "1.2.8.1.1"));
+        final List<String> indexLines = FileUtils.readLines(new File(spoolFolder, UploadSpool.INDEX_FILE_NAME), "UTF-8");
+        Assert.assertEquals(5, indexLines.size());
+
+        final List<List<File>> thirdSessionSeries = new UploadSpool(spoolFolder, mock(LoggingReporter.class)).recoverIndexedSeries();
+        Assert.assertEquals(4, thirdSessionSeries.size());
+        Assert.assertEquals(series3File1, thirdSessionSeries.get(2).get(0));
+        Assert.assertEquals(noSeriesFile, thirdSessionSeries.get(3).get(0));
+    }
+
+    @Test
+    public void testUnindexedFiles() throws Exception {
+        final UploadSpool uploadSpool = new UploadSpool(spoolFolder, mock(LoggingReporter.class));
+        uploadSpool.addFile(createReceivedFile("a"), createHeaders("1.2.3", "1.2.3.4", "1.2.3.4.5"));
+        final File legacyFile = createReceivedFile("b");
+
+        final List<File> unindexedFiles = uploadSpool.getUnindexedFiles();
+        Assert.assertEquals(1, unindexedFiles.size());
+        Assert.assertEquals(legacyFile, unindexedFiles.get(0));
+    }
+
+    @Test
+    public void testRecoverWithoutIndex() throws Exception {
+        final UploadSpool firstSession = new UploadSpool(spoolFolder, mock(LoggingReporter.class));
+        final File series1File1 = firstSession.addFile(createDicomFile("a", "1.2.3", "1.2.3.4", "1.2.3.4.1"), createHeaders("1.2.3", "1.2.3.4", "1.2.3.4.1"));
+        final File series1File2 = firstSession.addFile(createDicomFile("b", "1.2.3", "1.2.3.4", "1.2.3.4.2"), createHeaders("1.2.3", "1.2.3.4", "1.2.3.4.2"));
+        final File series2File1 = firstSession.addFile(createDicomFile("c", "1.2.5", "1.2.5.6", "1.2.5.6.1"), createHeaders("1.2.5", "1.2.5.6", "1.2.5.6.1"));
+        new UploadSpool(spoolFolder, mock(LoggingReporter.class)).recoverIndexedSeries();
+        Assert.assertTrue(new File(spoolFolder, UploadSpool.INDEX_FILE_NAME).delete());
+
+        final List<List<File>> recoveredSeries = new UploadSpool(spoolFolder, mock(LoggingReporter.class)).recoverIndexedSeries();
+        assertSeries(recoveredSeries, series1File1, series1File2, series2File1);
+
+        // The index has been rebuilt, so the files are recovered from it in the next session
+        Assert.assertEquals(3, FileUtils.readLines(new File(spoolFolder, UploadSpool.INDEX_FILE_NAME), "UTF-8").size());
+        assertSeries(new UploadSpool(spoolFolder, mock(LoggingReporter.class)).recoverIndexedSeries(), series1File1, series1File2, series2File1);
+    }
+
+    @Test
+    public void testRecoverWithCorruptIndex() throws Exception {
+        final UploadSpool firstSession = new UploadSpool(spoolFolder, mock(LoggingReporter.class));
+        final File series1File1 = firstSession.addFile(createDicomFile("a", "1.2.3", "1.2.3.4", "1.2.3.4.1"), createHeaders("1.2.3", "1.2.3.4", "1.2.3.4.1"));
+        final File series1File2 = firstSession.addFile(createDicomFile("b", "1.2.3", "1.2.3.4", "1.2.3.4.2"), createHeaders("1.2.3", "1.2.3.4", "1.2.3.4.2"));
+        final File series2File1 = firstSession.addFile(createDicomFile("c", "1.2.5", "1.2.5.6", "1.2.5.6.1"), createHeaders("1.2.5", "1.2.5.6", "1.2.5.6.1"));
+        new UploadSpool(spoolFolder, mock(LoggingReporter.class)).recoverIndexedSeries();
+        FileUtils.writeStringToFile(new File(spoolFolder, UploadSpool.INDEX_FILE_NAME), "\u0000\u0000garbage\n\tnot/a/file\n");
+
+        assertSeries(new UploadSpool(spoolFolder, mock(LoggingReporter.class)).recoverIndexedSeries(), series1File1, series1File2, series2File1);
+    }
+
+    @Test
+    public void testIndexDoesNotContainUids() throws Exception {
+        final UploadSpool uploadSpool = new UploadSpool(spoolFolder, mock(LoggingReporter.class));
+        uploadSpool.addFile(createReceivedFile("a"), createHeaders("1.2.3", "1.2.3.4", "1.2.3.4.5"));
+
+        final String index = FileUtils.readFileToString(new File(spoolFolder, UploadSpool.INDEX_FILE_NAME), "UTF-8");
+        Assert.assertFalse(index.contains("1.2.3"));
+        Assert.assertTrue(index.startsWith(UploadSpool.makeSeriesKey("1.2.3.4") + "\t"));
+    }
+
+    @Test
+    public void testRecoverIndexWithUids() throws Exception {
+        final UploadSpool firstSession = new UploadSpool(spoolFolder, mock(LoggingReporter.class));
+        final File series1File1 = firstSession.addFile(createReceivedFile("a"), createHeaders("1.2.3", "1.2.3.4", "1.2.3.4.1"));
+        final File series1File2 = firstSession.addFile(createReceivedFile("b"), createHeaders("1.2.3", "1.2.3.4", "1.2.3.4.2"));
+        final File series2File1 = firstSession.addFile(createReceivedFile("c"), createHeaders("1.2.5", "1.2.5.6", "1.2.5.6.1"));
+
+        // Simulate an index written by an earlier version, which contains the series instance UIDs
+        final File indexFile = new File(spoolFolder, UploadSpool.INDEX_FILE_NAME);
+        final String hashedIndex = FileUtils.readFileToString(indexFile, "UTF-8");
+        FileUtils.writeStringToFile(indexFile, hashedIndex.replace(UploadSpool.makeSeriesKey("1.2.3.4") + "\t", "1.2.3.4\t").replace(UploadSpool.makeSeriesKey("1.2.5.6") + "\t", "1.2.5.6\t"), "UTF-8");
+
+        assertSeries(new UploadSpool(spoolFolder, mock(LoggingReporter.class)).recoverIndexedSeries(), series1File1, series1File2, series2File1);
+        Assert.assertFalse(FileUtils.readFileToString(indexFile, "UTF-8").contains("1.2.3.4"));
+    }
+
+    @Test
+    public void testRemoveEmptyFolders() throws Exception {
+        final UploadSpool uploadSpool = new UploadSpool(spoolFolder, mock(LoggingReporter.class));
+        final File series1File1 = uploadSpool.addFile(createReceivedFile("a"), createHeaders("1.2.3", "1.2.3.4", "1.2.3.4.1"));
+        final File series1File2 = uploadSpool.addFile(createReceivedFile("b"), createHeaders("1.2.3", "1.2.3.4", "1.2.3.4.2"));
+        final File series2File1 = uploadSpool.addFile(createReceivedFile("c"), createHeaders("1.2.3", "1.2.3.5", "1.2.3.5.1"));
+        final File seriesFolder = series1File1.getParentFile();
+        final File studyFolder = seriesFolder.getParentFile();
+        final File shardFolder = studyFolder.getParentFile();
+
+        // A folder which still contains files is not removed
+        Assert.assertTrue(series1File1.delete());
+        uploadSpool.removeEmptyFolders(series1File1);
+        Assert.assertTrue(seriesFolder.isDirectory());
+
+        Assert.assertTrue(series1File2.delete());
+        uploadSpool.removeEmptyFolders(series1File2);
+        Assert.assertFalse(seriesFolder.exists());
+        Assert.assertTrue(studyFolder.isDirectory());
+
+        Assert.assertTrue(series2File1.delete());
+        uploadSpool.removeEmptyFolders(series2File1);
+        Assert.assertFalse(studyFolder.exists());
+        Assert.assertFalse(shardFolder.exists());
+        Assert.assertTrue(spoolFolder.isDirectory());
+
+        // Files outside the spool are ignored
+        final File outsideFolder = new File(spoolFolder.getParentFile(), spoolFolder.getName() + "-outside");
+        Assert.assertTrue(outsideFolder.mkdir());
+        try {
+            uploadSpool.removeEmptyFolders(new File(outsideFolder, "file"));
+            Assert.assertTrue(outsideFolder.isDirectory());
+        } finally {
+            FileUtils.deleteDirectory(outsideFolder);
+        }
+    }
+
+    private static void assertSeries(final List<List<File>> recoveredSeries, final File series1File1, final File series1File2, final File series2File1) {
+        Assert.assertEquals(2, recoveredSeries.size());
+        Assert.assertEquals(2, recoveredSeries.get(0).size());
+        Assert.assertTrue(recoveredSeries.get(0).contains(series1File1));
+        Assert.assertTrue(recoveredSeries.get(0).contains(series1File2));
+        Assert.assertEquals(1, recoveredSeries.get(1).size());
+        Assert.assertEquals(series2File1, recoveredSeries.get(1).get(0));
+    }
+
+    private File createDicomFile(final String name, final String studyUid, final String seriesUid, final String sopInstanceUid) throws IOException, DicomException {
+        final AttributeList attributeList = createHeaders(studyUid, seriesUid, sopInstanceUid);
+        addAttribute(attributeList, new UniqueIdentifierAttribute(TagFromName.SOPClassUID), SOPClass.SecondaryCaptureImageStorage);
+        FileMetaInformation.addFileMetaInformation(attributeList, TransferSyntax.ExplicitVRLittleEndian, "SPOOLTEST");
+        final File file = new File(spoolFolder, name);
+        attributeList.write(file, TransferSyntax.ExplicitVRLittleEndian, true, true);
+        return file;
+    }
+
+    private File createReceivedFile(final String name) throws IOException {
+        final File file = new File(spoolFolder, name);
+        FileUtils.writeStringToFile(file, name);
+        return file;
+    }
+
+    private static AttributeList createHeaders(final String studyUid, final String seriesUid, final String sopInstanceUid) throws DicomException {
+        final AttributeList attributeList = new AttributeList();
+        addAttribute(attributeList, new UniqueIdentifierAttribute(TagFromName.StudyInstanceUID), studyUid);
+        addAttribute(attributeList, new UniqueIdentifierAttribute(TagFromName.SeriesInstanceUID), seriesUid);
+        addAttribute(attributeList, new UniqueIdentifierAttribute(TagFromName.SOPInstanceUID), sopInstanceUid);
+        return attributeList;
+    }
+
+    private static void addAttribute(final AttributeList attributeList, final Attribute attribute, final String value) throws DicomException {
+        attribute.addValue(value);
+        attributeList.put(attribute);
+    }
+}
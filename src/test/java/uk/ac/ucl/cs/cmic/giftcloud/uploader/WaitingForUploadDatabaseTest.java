@@ -14,6 +14,7 @@ package uk.ac.ucl.cs.cmic.giftcloud.uploader;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import uk.ac.ucl.cs.cmic.giftcloud.util.LoggingReporter;
 
 import javax.swing.table.TableModel;
 import java.io.File;
@@ -21,6 +22,8 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
+import static org.mockito.Mockito.mock;
+
 public class WaitingForUploadDatabaseTest {
     private WaitingForUploadDatabase database;
     private TableModel tableModel;
@@ -28,7 +31,7 @@ public class WaitingForUploadDatabaseTest {
 
     @Before
     public void setUp() throws Exception {
-        database = new WaitingForUploadDatabase(10);
+        database = new WaitingForUploadDatabase(10, new SpoolQuotaMonitor(Long.MAX_VALUE, 0, mock(LoggingReporter.class)), mock(UploadSpool.class));
         tableModel = database.getTableModel();
         tableModelListener = new TableListener();
         tableModel.addTableModelListener(tableModelListener);
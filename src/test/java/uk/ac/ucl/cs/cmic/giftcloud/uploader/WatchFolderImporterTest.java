@@ -0,0 +1,160 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+
+package uk.ac.ucl.cs.cmic.giftcloud.uploader;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.ucl.cs.cmic.giftcloud.util.LoggingReporter;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+
+public class WatchFolderImporterTest {
+
+    private static final long SETTLE_TIME = 1000;
+    private static final long FULL_SCAN_INTERVAL = 60000;
+
+    private File rootFolder;
+    private File watchFolder;
+    private File stateFile;
+    private RecordingImporter importer;
+
+    @Before
+    public void setUp() throws Exception {
+        rootFolder = File.createTempFile("WatchFolderImporterTest", "");
+        Assert.assertTrue(rootFolder.delete());
+        watchFolder = new File(rootFolder, "watch");
+        Assert.assertTrue(watchFolder.mkdirs());
+        stateFile = new File(rootFolder, "state.txt");
+        importer = new RecordingImporter();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(rootFolder);
+    }
+
+    @Test
+    public void testImportsSettledFilesOnce() throws Exception {
+        final File file1 = createFile(watchFolder, "file1", "abc");
+        final WatchFolderImporter watchFolderImporter = createImporter();
+
+        // New files are not imported until they have settled
+        long now = System.currentTimeMillis();
+        watchFolderImporter.poll(now);
+        Assert.assertTrue(importer.importedFiles.isEmpty());
+
+        // A file which is still being written restarts the settling time
+        FileUtils.writeStringToFile(file1, "abcdef");
+        watchFolderImporter.poll(now + SETTLE_TIME);
+        Assert.assertTrue(importer.importedFiles.isEmpty());
+
+        watchFolderImporter.poll(now + 2 * SETTLE_TIME);
+        Assert.assertEquals(1, importer.importedFiles.size());
+        Assert.assertEquals(file1, importer.importedFiles.get(0));
+
+        // Files are not imported again
+        watchFolderImporter.poll(now + 3 * SETTLE_TIME);
+        Assert.assertEquals(1, importer.importedFiles.size());
+    }
+
+    @Test
+    public void testNewFilesInSubfolders() throws Exception {
+        final WatchFolderImporter watchFolderImporter = createImporter();
+        final long now = System.currentTimeMillis();
+        watchFolderImporter.poll(now);
+
+        // Make the new folder and its parent appear to have changed since the last poll
+        final File subFolder = new File(watchFolder, "sub");
+        Assert.assertTrue(subFolder.mkdirs());
+        final File file2 = createFile(subFolder, "file2", "xyz");
+        Assert.assertTrue(watchFolder.setLastModified(now - 10000));
+
+        watchFolderImporter.poll(now + 1);
+        watchFolderImporter.poll(now + 1 + SETTLE_TIME);
+        Assert.assertEquals(1, importer.importedFiles.size());
+        Assert.assertEquals(file2, importer.importedFiles.get(0));
+    }
+
+    @Test
+    public void testStatePersistsAcrossRestarts() throws Exception {
+        final File file1 = createFile(watchFolder, "file1", "abc");
+        final long now = System.currentTimeMillis();
+        final WatchFolderImporter firstSession = createImporter();
+        firstSession.poll(now);
+        firstSession.poll(now + SETTLE_TIME);
+        Assert.assertEquals(1, importer.importedFiles.size());
+
+        // An unchanged file is not imported again, but a changed file is
+        final WatchFolderImporter secondSession = createImporter();
+        secondSession.poll(now + 2 * SETTLE_TIME);
+        secondSession.poll(now + 3 * SETTLE_TIME);
+        Assert.assertEquals(1, importer.importedFiles.size());
+
+        FileUtils.writeStringToFile(file1, "changed");
+        Assert.assertTrue(file1.setLastModified(file1.lastModified() + 5000));
+        final WatchFolderImporter thirdSession = createImporter();
+        thirdSession.poll(now + 4 * SETTLE_TIME);
+        thirdSession.poll(now + 5 * SETTLE_TIME);
+        Assert.assertEquals(2, importer.importedFiles.size());
+    }
+
+    @Test
+    public void testFailedImportIsRetried() throws Exception {
+        createFile(watchFolder, "file1", "abc");
+        final WatchFolderImporter watchFolderImporter = new WatchFolderImporter(watchFolder, stateFile, 1000, SETTLE_TIME, FULL_SCAN_INTERVAL, new WatchFolderImporter.FileBatchImporter() {
+            private boolean failed = false;
+
+            @Override
+            public void importFiles(final List<File> files) throws Exception {
+                if (!failed) {
+                    failed = true;
+                    throw new Exception("Simulated failure");
+                }
+                importer.importFiles(files);
+            }
+        }, mock(LoggingReporter.class));
+
+        final long now = System.currentTimeMillis();
+        watchFolderImporter.poll(now);
+        watchFolderImporter.poll(now + SETTLE_TIME);
+        Assert.assertTrue(importer.importedFiles.isEmpty());
+        watchFolderImporter.poll(now + 2 * SETTLE_TIME);
+        Assert.assertEquals(1, importer.importedFiles.size());
+    }
+
+    private WatchFolderImporter createImporter() {
+        return new WatchFolderImporter(watchFolder, stateFile, 1000, SETTLE_TIME, FULL_SCAN_INTERVAL, importer, mock(LoggingReporter.class));
+    }
+
+    private static File createFile(final File folder, final String name, final String contents) throws Exception {
+        final File file = new File(folder, name);
+        FileUtils.writeStringToFile(file, contents);
+        return file;
+    }
+
+    private static class RecordingImporter implements WatchFolderImporter.FileBatchImporter {
+        private final List<File> importedFiles = new ArrayList<File>();
+
+        @Override
+        public void importFiles(final List<File> files) {
+            importedFiles.addAll(files);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+
+package uk.ac.ucl.cs.cmic.giftcloud.util;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares canonicalising every path with the FileIdentityResolver, for files in a deep directory tree. This is not
+ * run as part of the test suite; run the main method directly, optionally giving the number of files as the first
+ * argument and the directory in which to create the tree as the second argument (which should be on a network
+ * drive to see the largest difference)
+ */
+public class FileIdentityResolverBenchmark {
+
+    private static final int DIRECTORY_DEPTH = 12;
+    private static final int FILES_PER_DIRECTORY = 100;
+
+    public static void main(final String[] args) throws Exception {
+        final int numberOfFiles = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        final File root = args.length > 1 ? new File(args[1]) : new File(System.getProperty("java.io.tmpdir"), "GiftCloudFileIdentityBenchmark");
+
+        final List<File> files = createTree(root, numberOfFiles);
+        System.out.println("Created " + files.size() + " files at depth " + DIRECTORY_DEPTH + " under " + root.getAbsolutePath());
+        try {
+            // Warm up both before timing them
+            canonicalise(files);
+            resolve(new FileIdentityResolver(), files);
+
+            final long canonicalStart = System.nanoTime();
+            canonicalise(files);
+            final long canonicalNanos = System.nanoTime() - canonicalStart;
+
+            final long resolverStart = System.nanoTime();
+            resolve(new FileIdentityResolver(), files);
+            final long resolverNanos = System.nanoTime() - resolverStart;
+
+            System.out.println("getCanonicalPath: " + canonicalNanos / 1000000 + " ms");
+            System.out.println("FileIdentityResolver (empty cache): " + resolverNanos / 1000000 + " ms");
+        } finally {
+            for (final File file : files) {
+                file.delete();
+            }
+            deleteDirectories(root);
+        }
+    }
+
+    private static List<File> createTree(final File root, final int numberOfFiles) throws Exception {
+        final List<File> files = new ArrayList<File>();
+        int directoryNumber = 0;
+        while (files.size() < numberOfFiles) {
+            File directory = root;
+            for (int level = 0; level < DIRECTORY_DEPTH; level++) {
+                directory = new File(directory, "level" + level + "_" + (level == DIRECTORY_DEPTH - 1 ? directoryNumber : directoryNumber / 10));
+            }
+            directory.mkdirs();
+            for (int i = 0; i < FILES_PER_DIRECTORY && files.size() < numberOfFiles; i++) {
+                final File file = new File(directory, "IM" + i + ".dcm");
+                file.createNewFile();
+                files.add(file);
+            }
+            directoryNumber++;
+        }
+        return files;
+    }
+
+    private static long canonicalise(final List<File> files) throws Exception {
+        long length = 0;
+        for (final File file : files) {
+            length += file.getCanonicalPath().length();
+        }
+        return length;
+    }
+
+    private static long resolve(final FileIdentityResolver resolver, final List<File> files) throws Exception {
+        long length = 0;
+        for (final File file : files) {
+            length += resolver.getKey(file).length();
+        }
+        return length;
+    }
+
+    private static void deleteDirectories(final File directory) {
+        final File[] children = directory.listFiles();
+        if (children != null) {
+            for (final File child : children) {
+                deleteDirectories(child);
+            }
+        }
+        directory.delete();
+    }
+}
@@ -0,0 +1,83 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+
+package uk.ac.ucl.cs.cmic.giftcloud.util;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Locale;
+
+public class FileIdentityResolverTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testDifferentPathsGiveSameKey() throws Exception {
+        final File directory = temporaryFolder.newFolder("a");
+        final File file = new File(directory, "file.dcm");
+        Assert.assertTrue(file.createNewFile());
+
+        final FileIdentityResolver resolver = new FileIdentityResolver();
+        final String key = resolver.getKey(file);
+        Assert.assertEquals(FileIdentityResolver.isCaseInsensitive(directory.getCanonicalFile()) ? file.getCanonicalPath().toLowerCase(Locale.ENGLISH) : file.getCanonicalPath(), key);
+        Assert.assertEquals(key, resolver.getKey(new File(new File(directory, "../a"), "file.dcm")));
+        Assert.assertEquals(key, resolver.getKey(new File(directory.getPath() + File.separator + "." + File.separator + "file.dcm")));
+        Assert.assertFalse(key.equals(resolver.getKey(new File(directory, "other.dcm"))));
+    }
+
+    @Test
+    public void testCaseVariantPaths() throws Exception {
+        final File directory = temporaryFolder.newFolder("Mixed");
+        final File file = new File(directory, "File.dcm");
+        Assert.assertTrue(file.createNewFile());
+        final File caseVariant = new File(new File(temporaryFolder.getRoot(), "mIXED"), "fILE.DCM");
+
+        final FileIdentityResolver resolver = new FileIdentityResolver();
+        final String key = resolver.getKey(file);
+        if (caseVariant.exists()) {
+            // On a case-insensitive file system both paths refer to the same file
+            Assert.assertTrue(FileIdentityResolver.isCaseInsensitive(directory.getCanonicalFile()));
+            Assert.assertEquals(key, resolver.getKey(caseVariant));
+            Assert.assertEquals(key, resolver.getKey(new File(directory, "FILE.dcm")));
+        } else {
+            Assert.assertFalse(FileIdentityResolver.isCaseInsensitive(directory.getCanonicalFile()));
+            Assert.assertFalse(key.equals(resolver.getKey(new File(directory, "FILE.dcm"))));
+        }
+    }
+
+    @Test
+    public void testCaseSensitivityWithCaseVariantDirectories() throws Exception {
+        final File directory = temporaryFolder.newFolder("Case");
+        final File otherCaseDirectory = new File(temporaryFolder.getRoot(), "cASE");
+
+        // A separate directory can only be created if the file system is case-sensitive
+        if (otherCaseDirectory.mkdir()) {
+            Assert.assertFalse(FileIdentityResolver.isCaseInsensitive(directory.getCanonicalFile()));
+            Assert.assertFalse(FileIdentityResolver.isCaseInsensitive(otherCaseDirectory.getCanonicalFile()));
+        } else {
+            Assert.assertTrue(FileIdentityResolver.isCaseInsensitive(directory.getCanonicalFile()));
+        }
+    }
+
+    @Test
+    public void testDirectoryReferences() throws Exception {
+        final File directory = temporaryFolder.newFolder("b");
+        final FileIdentityResolver resolver = new FileIdentityResolver();
+        Assert.assertEquals(temporaryFolder.getRoot().getCanonicalPath(), resolver.getKey(new File(directory, "..")));
+        Assert.assertEquals(directory.getCanonicalPath(), resolver.getKey(new File(directory, ".")));
+    }
+}
@@ -0,0 +1,82 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+
+package uk.ac.ucl.cs.cmic.giftcloud.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Compares the MapRegistry and IndexedRegistry when building and walking a study with a large number of series,
+ * where each series is represented by its instance UID. This is not run as part of the test suite; run the main
+ * method directly, optionally giving the number of series as the first argument
+ */
+public class IndexedRegistryBenchmark {
+
+    private static final int REPETITIONS = 5;
+
+    public static void main(final String[] args) throws Exception {
+        final int numberOfSeries = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        final List<String> seriesUids = new ArrayList<String>();
+        for (int i = 0; i < numberOfSeries; i++) {
+            seriesUids.add("1.2.826.0.1.3680043.2.1125." + i);
+        }
+
+        // Files usually arrive grouped by series but the series are not in sorted order
+        Collections.shuffle(seriesUids, new Random(1));
+
+        // Warm up both registries before timing them
+        for (int i = 0; i < 2; i++) {
+            run(new MapRegistry<String>(new TreeMap<String, String>()), seriesUids);
+            run(new IndexedRegistry<String>(), seriesUids);
+        }
+
+        report("MapRegistry", seriesUids, false);
+        report("IndexedRegistry", seriesUids, true);
+    }
+
+    private static void report(final String name, final List<String> seriesUids, final boolean indexed) {
+        long buildNanos = 0;
+        long walkNanos = 0;
+        for (int i = 0; i < REPETITIONS; i++) {
+            final Registry<String> registry = indexed ? new IndexedRegistry<String>() : new MapRegistry<String>(new TreeMap<String, String>());
+            final long[] times = run(registry, seriesUids);
+            buildNanos += times[0];
+            walkNanos += times[1];
+        }
+        System.out.println(name + ": " + seriesUids.size() + " series built in " + buildNanos / REPETITIONS / 1000000 + " ms and walked by index in " + walkNanos / REPETITIONS / 1000000 + " ms");
+    }
+
+    private static long[] run(final Registry<String> registry, final List<String> seriesUids) {
+        final long start = System.nanoTime();
+        for (final String uid : seriesUids) {
+            // Each file in a series looks up the series again
+            registry.get(uid);
+            registry.get(uid);
+        }
+        final long built = System.nanoTime();
+
+        // Walk the series in order, as a table model does, finding each series' row by index and back again
+        long checksum = 0;
+        for (int index = 0; index < registry.size(); index++) {
+            checksum += registry.getIndex(registry.get(index));
+        }
+        final long walked = System.nanoTime();
+        if (checksum != (long) registry.size() * (registry.size() - 1) / 2) {
+            throw new IllegalStateException("The registry indexes are inconsistent");
+        }
+        return new long[]{built - start, walked - built};
+    }
+}
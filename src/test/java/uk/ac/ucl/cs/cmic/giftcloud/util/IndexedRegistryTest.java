@@ -0,0 +1,85 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+
+package uk.ac.ucl.cs.cmic.giftcloud.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+public class IndexedRegistryTest {
+
+    @Test
+    public void testGetReturnsRegisteredItem() {
+        final IndexedRegistry<String> registry = new IndexedRegistry<String>();
+        final String first = new String("A");
+        Assert.assertSame(first, registry.get(first));
+        Assert.assertSame(first, registry.get(new String("A")));
+        Assert.assertEquals(1, registry.size());
+    }
+
+    @Test
+    public void testIndexesFollowSortOrder() {
+        final IndexedRegistry<Integer> registry = new IndexedRegistry<Integer>();
+        final List<Integer> expected = new ArrayList<Integer>();
+        final Random random = new Random(1);
+        for (int i = 0; i < 2000; i++) {
+            final Integer value = random.nextInt(5000);
+            registry.get(value);
+            if (!expected.contains(value)) {
+                expected.add(value);
+            }
+        }
+        Collections.sort(expected);
+
+        Assert.assertEquals(expected.size(), registry.size());
+        for (int index = 0; index < expected.size(); index++) {
+            Assert.assertEquals(expected.get(index), registry.get(index));
+            Assert.assertEquals(index, registry.getIndex(expected.get(index)));
+        }
+        Assert.assertEquals(-1, registry.getIndex(-1));
+        Assert.assertEquals(expected, new ArrayList<Integer>(registry.getAll()));
+
+        try {
+            registry.get(expected.size());
+            Assert.fail();
+        } catch (IndexOutOfBoundsException e) {
+        }
+    }
+
+    @Test
+    public void testSnapshotsAreUnaffectedByLaterAdditions() {
+        // Integer items are boxed explicitly so that get(T) is called rather than get(int)
+        final IndexedRegistry<Integer> registry = new IndexedRegistry<Integer>();
+        Assert.assertTrue(registry.isEmpty());
+        registry.get(Integer.valueOf(2));
+        registry.get(Integer.valueOf(4));
+        final Collection<Integer> snapshot = registry.getAll();
+        final Iterator<Integer> iterator = registry.iterator();
+
+        registry.get(Integer.valueOf(3));
+        registry.get(Integer.valueOf(1));
+
+        Assert.assertEquals(2, snapshot.size());
+        Assert.assertEquals(Integer.valueOf(2), iterator.next());
+        Assert.assertEquals(Integer.valueOf(4), iterator.next());
+        Assert.assertFalse(iterator.hasNext());
+        Assert.assertEquals(4, registry.size());
+        Assert.assertEquals(2, registry.getIndex(Integer.valueOf(3)));
+    }
+}
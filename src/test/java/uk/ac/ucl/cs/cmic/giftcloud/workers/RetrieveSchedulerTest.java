@@ -0,0 +1,153 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+
+package uk.ac.ucl.cs.cmic.giftcloud.workers;
+
+import com.pixelmed.dicom.AttributeList;
+import com.pixelmed.network.MoveProgressListener;
+import org.junit.Assert;
+import org.junit.Test;
+import uk.ac.ucl.cs.cmic.giftcloud.util.LoggingReporter;
+import uk.ac.ucl.cs.cmic.giftcloud.util.Progress;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.Mockito.mock;
+
+public class RetrieveSchedulerTest {
+
+    @Test
+    public void testMovesRunInParallelUpToTheLimit() throws Exception {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final List<String> moved = Collections.synchronizedList(new ArrayList<String>());
+
+        final RetrieveScheduler scheduler = new RetrieveScheduler(new RetrieveScheduler.Mover() {
+            @Override
+            public void move(final AttributeList identifier, final String retrieveAE, final MoveProgressListener progressListener) throws Exception {
+                final int nowRunning = running.incrementAndGet();
+                synchronized (maxRunning) {
+                    maxRunning.set(Math.max(maxRunning.get(), nowRunning));
+                }
+                Thread.sleep(50);
+                progressListener.moveResponseReceived(0x0000, 0, 10, 0, 0);
+                moved.add(retrieveAE);
+                running.decrementAndGet();
+            }
+        }, 3, 1, 0, mock(Progress.class), mock(LoggingReporter.class));
+
+        final List<RetrieveScheduler.RetrieveItem> items = new ArrayList<RetrieveScheduler.RetrieveItem>();
+        for (int i = 0; i < 9; i++) {
+            items.add(new TestItem("study" + i));
+        }
+
+        Assert.assertTrue(scheduler.retrieve(items).isEmpty());
+        Assert.assertEquals(9, moved.size());
+        Assert.assertTrue(maxRunning.get() > 1);
+        Assert.assertTrue(maxRunning.get() <= 3);
+        Assert.assertEquals(90, scheduler.getCompletedSuboperations());
+        Assert.assertEquals(0, scheduler.getRemainingSuboperations());
+    }
+
+    @Test
+    public void testFailedMovesAreSplitAndRetried() throws Exception {
+        final Map<String, Integer> attempts = new HashMap<String, Integer>();
+
+        final RetrieveScheduler scheduler = new RetrieveScheduler(new RetrieveScheduler.Mover() {
+            @Override
+            public void move(final AttributeList identifier, final String retrieveAE, final MoveProgressListener progressListener) throws Exception {
+                synchronized (attempts) {
+                    attempts.put(retrieveAE, attempts.containsKey(retrieveAE) ? attempts.get(retrieveAE) + 1 : 1);
+                }
+                if (retrieveAE.equals("study") || retrieveAE.equals("series2")) {
+                    throw new Exception("Simulated failure");
+                }
+            }
+        }, 2, 3, 0, mock(Progress.class), mock(LoggingReporter.class));
+
+        final TestItem study = new TestItem("study", new TestItem("series1"), new TestItem("series2"));
+        final List<RetrieveScheduler.RetrieveItem> failed = scheduler.retrieve(Collections.<RetrieveScheduler.RetrieveItem>singletonList(study));
+
+        // The study fails once and is split; only the series which keeps failing is retried until the limit
+        Assert.assertEquals(1, (int) attempts.get("study"));
+        Assert.assertEquals(1, (int) attempts.get("series1"));
+        Assert.assertEquals(2, (int) attempts.get("series2"));
+        Assert.assertEquals(1, failed.size());
+        Assert.assertEquals("series2", failed.get(0).getRetrieveAE());
+    }
+
+    @Test
+    public void testOnlyPartsWithFailedInstancesAreRetried() throws Exception {
+        final Map<String, Integer> attempts = new HashMap<String, Integer>();
+
+        final RetrieveScheduler scheduler = new RetrieveScheduler(new RetrieveScheduler.Mover() {
+            @Override
+            public void move(final AttributeList identifier, final String retrieveAE, final MoveProgressListener progressListener) throws Exception {
+                synchronized (attempts) {
+                    attempts.put(retrieveAE, attempts.containsKey(retrieveAE) ? attempts.get(retrieveAE) + 1 : 1);
+                }
+                if (retrieveAE.equals("study")) {
+                    progressListener.moveResponseReceived(0xB000, 0, 2, 1, 0);
+                    progressListener.failedSOPInstancesReceived(new String[]{"series3"});
+                    throw new Exception("Simulated failure");
+                }
+            }
+        }, 2, 3, 0, mock(Progress.class), mock(LoggingReporter.class));
+
+        final TestItem study = new TestItem("study", new TestItem("series1"), new TestItem("series2"), new TestItem("series3"));
+        Assert.assertTrue(scheduler.retrieve(Collections.<RetrieveScheduler.RetrieveItem>singletonList(study)).isEmpty());
+
+        // The series which completed are not moved again
+        Assert.assertEquals(1, (int) attempts.get("study"));
+        Assert.assertFalse(attempts.containsKey("series1"));
+        Assert.assertFalse(attempts.containsKey("series2"));
+        Assert.assertEquals(1, (int) attempts.get("series3"));
+    }
+
+    private static class TestItem implements RetrieveScheduler.RetrieveItem {
+        private final String name;
+        private final List<RetrieveScheduler.RetrieveItem> parts;
+
+        TestItem(final String name, final RetrieveScheduler.RetrieveItem... parts) {
+            this.name = name;
+            this.parts = Arrays.asList(parts);
+        }
+
+        @Override
+        public AttributeList getIdentifier() {
+            return new AttributeList();
+        }
+
+        @Override
+        public String getRetrieveAE() {
+            return name;
+        }
+
+        @Override
+        public String getDescription() {
+            return name;
+        }
+
+        @Override
+        public List<RetrieveScheduler.RetrieveItem> split(final Set<String> failedInstanceUids) {
+            // Parts are named after the instances they contain; if none is known to have failed, all are retried
+            final List<RetrieveScheduler.RetrieveItem> failedParts = new ArrayList<RetrieveScheduler.RetrieveItem>();
+            for (final RetrieveScheduler.RetrieveItem part : parts) {
+                if (failedInstanceUids.contains(part.getRetrieveAE())) {
+                    failedParts.add(part);
+                }
+            }
+            return failedParts.isEmpty() ? parts : failedParts;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*=============================================================================
+
+  GIFT-Cloud: A data storage and collaboration platform
+
+  Copyright (c) University College London (UCL). All rights reserved.
+  Released under the Modified BSD License
+  github.com/gift-surg
+
+  Author: Tom Doel
+=============================================================================*/
+
+
+package uk.ac.ucl.cs.cmic.giftcloud.workers;
+
+import com.pixelmed.dicom.AttributeList;
+import org.junit.Assert;
+import org.junit.Test;
+import uk.ac.ucl.cs.cmic.giftcloud.uploadapp.QueryParams;
+
+import java.util.Calendar;
+
+public class StudyDatePagerTest {
+
+    @Test
+    public void testDateRanges() {
+        final Calendar today = Calendar.getInstance();
+        today.clear();
+        today.set(2015, Calendar.MARCH, 31);
+        final StudyDatePager pager = new StudyDatePager(today);
+
+        // The first page is open-ended to include future dates
+        Assert.assertEquals("20150302-", pager.getNextDateRange());
+
+        // Too many results halves the size of the next page
+        pager.recordResults(StudyDatePager.TARGET_RESULTS_PER_PAGE + 1);
+        Assert.assertEquals("20150215-20150301", pager.getNextDateRange());
+
+        // A reasonable number of results keeps the same size
+        pager.recordResults(StudyDatePager.TARGET_RESULTS_PER_PAGE);
+        Assert.assertEquals("20150131-20150214", pager.getNextDateRange());
+
+        // Few results doubles the size, until the last date range which is open-ended
+        int numberOfPages = 0;
+        String lastDateRange = null;
+        String lastRange = null;
+        while (!pager.isFinished()) {
+            pager.recordResults(0);
+            lastDateRange = lastRange;
+            lastRange = pager.getNextDateRange();
+            numberOfPages++;
+        }
+        Assert.assertTrue(numberOfPages < 30);
+        Assert.assertTrue(lastDateRange.startsWith("-"));
+
+        // The final page is for studies without a study date
+        Assert.assertEquals(StudyDatePager.EMPTY_DATE, lastRange);
+    }
+
+    @Test
+    public void testStudiesWithoutDateAreIncluded() {
+        final Calendar today = Calendar.getInstance();
+        today.clear();
+        today.set(1900, Calendar.JANUARY, 15);
+
+        // A single page has no date range, so it already includes studies without a date
+        final StudyDatePager singlePagePager = new StudyDatePager(today);
+        Assert.assertEquals("", singlePagePager.getNextDateRange());
+        Assert.assertTrue(singlePagePager.isFinished());
+
+        today.set(1900, Calendar.MARCH, 15);
+        final StudyDatePager pager = new StudyDatePager(today);
+        Assert.assertEquals("19000214-", pager.getNextDateRange());
+        Assert.assertFalse(pager.isFinished());
+        Assert.assertEquals("19000115-19000213", pager.getNextDateRange());
+        Assert.assertEquals("-19000114", pager.getNextDateRange());
+        Assert.assertFalse(pager.isFinished());
+        Assert.assertEquals(StudyDatePager.EMPTY_DATE, pager.getNextDateRange());
+        Assert.assertTrue(pager.isFinished());
+    }
+
+    @Test
+    public void testIsBroadQuery() throws Exception {
+        Assert.assertTrue(StudyDatePager.isBroadQuery(new QueryParams().build()));
+
+        final QueryParams wildcardParams = new QueryParams();
+        wildcardParams.setPatientName("*");
+        Assert.assertTrue(StudyDatePager.isBroadQuery(wildcardParams.build()));
+
+        final QueryParams patientParams = new QueryParams();
+        patientParams.setPatientId("12345");
+        Assert.assertFalse(StudyDatePager.isBroadQuery(patientParams.build()));
+
+        final QueryParams dateParams = new QueryParams();
+        dateParams.setStudyDate("20150101");
+        final AttributeList dateFilter = dateParams.build();
+        Assert.assertFalse(StudyDatePager.isBroadQuery(dateFilter));
+    }
+}